@@ -0,0 +1,12 @@
+#!/bin/sh
+# Compiles the robot classes (excluding JUnit tests) and runs the benchmark
+# suite. Arguments are passed on to the benchmark program, e.g.
+#   ./bench.sh --robots 1000,100000 --filter clock
+# Set BENCH_MAIN to run one of the other programs in robot.bench instead, e.g.
+#   BENCH_MAIN=robot.bench.HeadlessRunner ./bench.sh --engine array
+set -e
+cd "$(dirname "$0")"
+classes=$(mktemp -d)
+trap 'rm -rf "$classes"' EXIT
+javac -nowarn -d "$classes" $(find src -name '*.java' ! -name 'Test*.java')
+java -Djava.awt.headless=true -cp "$classes" "${BENCH_MAIN:-robot.bench.BenchmarkSuite}" "$@"
@@ -1,6 +1,5 @@
 package robot;
 
-import javax.imageio.ImageIO;
 import java.awt.*;
 import java.io.File;
 import java.io.IOException;
@@ -14,6 +13,8 @@ import java.io.IOException;
 
 public class AggrgateRobot extends Robot{
 
+    // Image drawn for every AggrgateRobot, read through ImageCache.shared().
+    private static final File IMAGE = new File("robot.png");
 
     public AggrgateRobot() {
         super();
@@ -50,11 +51,11 @@ public class AggrgateRobot extends Robot{
     @Override
     protected void doPaint(Painter painter) {
         try{
-            File image2 = new File("robot.png");
-            Image image = ImageIO.read(image2);
-            image = image.getScaledInstance(_width, _height, Image.SCALE_DEFAULT);
-            painter.drawImage(image, _x,_y,null);
-
+            // Null if the image could not be read and has not changed since.
+            Image image = ImageCache.shared().get(IMAGE, _width, _height);
+            if (image != null) {
+                painter.drawImage(image, _x,_y,null);
+            }
         }
         catch (IOException e){
             System.out.println("Image for AggregateRobot Not found");
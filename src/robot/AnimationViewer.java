@@ -20,7 +20,8 @@ import javax.swing.Timer;
  * AnimationViewer object comprises a list of Robots and a Timer object. An
  * AnimationViewer instance subscribes to events that are published by a Timer.
  * In response to receiving an event from the Timer, the AnimationViewer iterates 
- * through a list of Robots requesting that each Robot paints and moves itself.
+ * through a list of Robots requesting that each Robot moves itself, and then
+ * repaints itself, requesting that each Robot paints itself.
  * 
  * @author Craig Sutherland
  * 
@@ -87,18 +88,12 @@ public class AnimationViewer extends JPanel implements ActionListener {
 		// Call inherited implementation to handle background painting.
 		super.paintComponent(g);
 		
-		// Calculate bounds of animation screen area.
-		int width = getSize().width;
-		int height = getSize().height;
-		
 		// Create a GraphicsPainter that Robot objects will use for drawing.
 		// The GraphicsPainter delegates painting to a basic Graphics object.
 		Painter painter = new GraphicsPainter(g);
 		
-		// Progress the animation.
 		for(Robot robot : _robots) {
 			robot.paint(painter);
-			robot.move(width, height);
 		}
 	}
 
@@ -107,6 +102,16 @@ public class AnimationViewer extends JPanel implements ActionListener {
 	 * received by the Timer.
 	 */
 	public void actionPerformed(ActionEvent e) {
+		// Calculate bounds of animation screen area.
+		int width = getSize().width;
+		int height = getSize().height;
+		
+		// Progress the animation. Moving is kept out of paintComponent() so
+		// that the animation speed does not depend on how often Swing paints.
+		for(Robot robot : _robots) {
+			robot.move(width, height);
+		}
+		
 		// Request that the AnimationViewer repaints itself. The call to 
 		// repaint() will cause the AnimationViewer's paintComponent() method 
 		// to be called.
@@ -0,0 +1,364 @@
+package robot;
+
+import java.util.Arrays;
+
+/**
+ * SimulationEngine implementation that stores the movement state of every
+ * Robot in a composition in parallel primitive arrays. Each Robot is given a
+ * dense slot number (its position in a preorder walk of the composition) and
+ * x, y, deltaX, deltaY, width, height and the bounce flags of the Robot are
+ * held at that index in the arrays. A clock() call is then a single linear
+ * pass over the arrays, rather than a walk over Robot objects scattered
+ * across the heap.
+ *
+ * While attached to an ArraySimulationEngine, a Robot object acts as a view
+ * onto its slot: its accessor methods and paint() refresh the Robot's fields
+ * from the arrays before reading them. Slots are reassigned lazily - after
+ * a Robot is added to or removed from the composition, the arrays are rebuilt
+ * at the start of the next clock() call.
+ *
+ * Collisions between the children of CarrierRobots that have collision
+ * detection enabled are resolved after each step, using per-carrier lists of
+ * child slots recorded when the slots are assigned.
+ *
+ * Note that this engine reproduces the movement rules of Robot's move()
+ * method. Robot subclasses that override move() are moved according to
+ * Robot's rules, not their own.
+ */
+public class ArraySimulationEngine implements SimulationEngine {
+	// Bit values for the bounce flags array.
+	static final int BOUNCED_OFF_VERTICAL = 1;
+
+	static final int BOUNCED_OFF_HORIZONTAL = 2;
+
+	private static final int INITIAL_CAPACITY = 64;
+
+	// === Per-slot state.
+	int[] _x = new int[INITIAL_CAPACITY];
+
+	int[] _y = new int[INITIAL_CAPACITY];
+
+	int[] _deltaX = new int[INITIAL_CAPACITY];
+
+	int[] _deltaY = new int[INITIAL_CAPACITY];
+
+	int[] _width = new int[INITIAL_CAPACITY];
+
+	int[] _height = new int[INITIAL_CAPACITY];
+
+	int[] _bounced = new int[INITIAL_CAPACITY];
+
+	// Width and height of the area each slot moves within, i.e. the size of
+	// the slot's parent. Slot 0 (the root) moves within the model bounds.
+	int[] _boundWidth = new int[INITIAL_CAPACITY];
+
+	int[] _boundHeight = new int[INITIAL_CAPACITY];
+
+	// Robot attached to each slot.
+	Robot[] _robots = new Robot[INITIAL_CAPACITY];
+
+	// Slot of each slot's parent, or -1 for the root.
+	int[] _parentSlot = new int[INITIAL_CAPACITY];
+	// ===
+
+	// === Child slots of each CarrierRobot, in compressed form: the children
+	// of the carrier in slot _carrierSlots[k] are held in
+	// _childSlots[_childStart[k] .. _childStart[k + 1] - 1].
+	private int[] _carrierSlots = new int[0];
+
+	private int[] _childStart = new int[1];
+
+	private int[] _childSlots = new int[0];
+
+	private int _carrierCount = 0;
+	// ===
+
+	// Set when the slots have been reassigned since collisions were last
+	// resolved.
+	private boolean _slotsChanged = true;
+
+	// Number of slots in use.
+	int _count = 0;
+
+	// Incremented whenever the arrays change, so attached Robots can tell
+	// whether their fields are out of date.
+	int _generation = 0;
+
+	// Set when the composition has changed since the slots were assigned.
+	private boolean _stale = true;
+
+	// Scratch stack used when walking the composition.
+	private Robot[] _stack = new Robot[INITIAL_CAPACITY];
+
+	/**
+	 * @see robot.SimulationEngine.clock
+	 */
+	@Override
+	public void clock(CarrierRobot root, int width, int height) {
+		if (_stale) {
+			rebuild(root);
+		}
+		_boundWidth[0] = width;
+		_boundHeight[0] = height;
+
+		step(0, _count);
+		resolveCollisions();
+		_generation++;
+	}
+
+	/**
+	 * Detaches the composition's Robots, computes each Robot's state directly
+	 * (see BounceMotion) and reassigns slots at the next clock() call.
+	 * @see robot.SimulationEngine.advance
+	 */
+	@Override
+	public void advance(CarrierRobot root, int width, int height, long ticks) {
+		detach();
+		_stale = true;
+		BounceMotion.advance(root, width, height, ticks);
+	}
+
+	/**
+	 * @see robot.SimulationEngine.structureChanged
+	 */
+	@Override
+	public void structureChanged() {
+		_stale = true;
+	}
+
+	/**
+	 * Returns the number of Robots currently held in this engine's arrays.
+	 */
+	public int slotCount() {
+		return _count;
+	}
+
+	/*
+	 * Moves slots from (inclusive) to to (exclusive) by one step, applying the
+	 * same bounce rules as Robot's move() method.
+	 */
+	void step(int from, int to) {
+		int[] xs = _x;
+		int[] ys = _y;
+		int[] dxs = _deltaX;
+		int[] dys = _deltaY;
+		int[] ws = _width;
+		int[] hs = _height;
+		int[] bws = _boundWidth;
+		int[] bhs = _boundHeight;
+		int[] bounced = _bounced;
+
+		for (int i = from; i < to; i++) {
+			int nextX = xs[i] + dxs[i];
+			int nextY = ys[i] + dys[i];
+			int flags = 0;
+
+			if (nextX <= 0) {
+				nextX = 0;
+				dxs[i] = -dxs[i];
+				flags = BOUNCED_OFF_VERTICAL;
+			} else if (nextX + ws[i] >= bws[i]) {
+				nextX = bws[i] - ws[i];
+				dxs[i] = -dxs[i];
+				flags = BOUNCED_OFF_VERTICAL;
+			}
+
+			if (nextY <= 0) {
+				nextY = 0;
+				dys[i] = -dys[i];
+				flags |= BOUNCED_OFF_HORIZONTAL;
+			} else if (nextY + hs[i] >= bhs[i]) {
+				nextY = bhs[i] - hs[i];
+				dys[i] = -dys[i];
+				flags |= BOUNCED_OFF_HORIZONTAL;
+			}
+
+			xs[i] = nextX;
+			ys[i] = nextY;
+			bounced[i] = flags;
+		}
+	}
+
+	/*
+	 * Resolves collisions between the children of each CarrierRobot that has
+	 * collision detection enabled.
+	 */
+	private void resolveCollisions() {
+		for (int k = 0; k < _carrierCount; k++) {
+			int slot = _carrierSlots[k];
+			CollisionGrid grid = ((CarrierRobot) _robots[slot])._collisions;
+			if (grid != null) {
+				grid.resolve(_slotsChanged, _childSlots, _childStart[k], _childStart[k + 1],
+						_width[slot], _height[slot], _x, _y, _width, _height, _deltaX, _deltaY);
+			}
+		}
+		_slotsChanged = false;
+	}
+
+	/*
+	 * Copies the state held in robot's slot into robot's fields.
+	 */
+	void read(Robot robot) {
+		int slot = robot._slot;
+		robot._x = _x[slot];
+		robot._y = _y[slot];
+		robot._deltaX = _deltaX[slot];
+		robot._deltaY = _deltaY[slot];
+		robot._didBounceOffVertical = (_bounced[slot] & BOUNCED_OFF_VERTICAL) != 0;
+		robot._didBounceOffHorizontal = (_bounced[slot] & BOUNCED_OFF_HORIZONTAL) != 0;
+		robot._pulledGeneration = _generation;
+	}
+
+	/*
+	 * Copies robot's fields into its slot. Used when an attached Robot has
+	 * been moved directly rather than through this engine.
+	 */
+	void write(Robot robot) {
+		int slot = robot._slot;
+		_x[slot] = robot._x;
+		_y[slot] = robot._y;
+		_deltaX[slot] = robot._deltaX;
+		_deltaY[slot] = robot._deltaY;
+		_bounced[slot] = (robot._didBounceOffVertical ? BOUNCED_OFF_VERTICAL : 0)
+				| (robot._didBounceOffHorizontal ? BOUNCED_OFF_HORIZONTAL : 0);
+		_generation++;
+		robot._pulledGeneration = _generation;
+	}
+
+	/*
+	 * Detaches all currently attached Robots, leaving their fields up to date.
+	 */
+	private void detach() {
+		for (int i = 0; i < _count; i++) {
+			Robot robot = _robots[i];
+			robot.pull();
+			robot._engine = null;
+			robot._slot = -1;
+			_robots[i] = null;
+		}
+		_count = 0;
+		_carrierCount = 0;
+		_generation++;
+	}
+
+	/*
+	 * Detaches all currently attached Robots and then assigns fresh slots by
+	 * walking the composition in preorder.
+	 */
+	private void rebuild(CarrierRobot root) {
+		detach();
+
+		int top = 0;
+		_stack[top++] = root;
+		int[] parentSlots = new int[_stack.length];
+		parentSlots[0] = -1;
+
+		while (top > 0) {
+			top--;
+			Robot robot = _stack[top];
+			int parentSlot = parentSlots[top];
+			int slot = attach(robot, parentSlot);
+
+			if (robot instanceof CarrierRobot) {
+				CarrierRobot carrier = (CarrierRobot) robot;
+				int children = carrier._ChildRobotList.size();
+
+				if (top + children > _stack.length) {
+					int capacity = Math.max(_stack.length * 2, top + children);
+					_stack = Arrays.copyOf(_stack, capacity);
+					parentSlots = Arrays.copyOf(parentSlots, capacity);
+				}
+
+				// Push children in reverse so that they are visited in order.
+				for (int i = children - 1; i >= 0; i--) {
+					_stack[top] = carrier._ChildRobotList.get(i);
+					parentSlots[top] = slot;
+					top++;
+				}
+			}
+		}
+		Arrays.fill(_stack, null);
+		indexChildren();
+		_stale = false;
+		_slotsChanged = true;
+	}
+
+	/*
+	 * Records the child slots of every CarrierRobot. Children are listed in
+	 * slot order, which is the order in which their parent holds them.
+	 */
+	private void indexChildren() {
+		int[] carrierIndex = new int[_count];
+		_carrierCount = 0;
+		for (int slot = 0; slot < _count; slot++) {
+			if (_robots[slot] instanceof CarrierRobot) {
+				carrierIndex[slot] = _carrierCount++;
+			}
+		}
+		_carrierSlots = new int[_carrierCount];
+		_childStart = new int[_carrierCount + 1];
+		_childSlots = new int[Math.max(_count - 1, 0)];
+
+		for (int slot = 0; slot < _count; slot++) {
+			if (_robots[slot] instanceof CarrierRobot) {
+				_carrierSlots[carrierIndex[slot]] = slot;
+			}
+			if (_parentSlot[slot] >= 0) {
+				_childStart[carrierIndex[_parentSlot[slot]] + 1]++;
+			}
+		}
+		for (int k = 0; k < _carrierCount; k++) {
+			_childStart[k + 1] += _childStart[k];
+		}
+
+		int[] next = Arrays.copyOf(_childStart, _carrierCount);
+		for (int slot = 1; slot < _count; slot++) {
+			_childSlots[next[carrierIndex[_parentSlot[slot]]]++] = slot;
+		}
+	}
+
+	/*
+	 * Assigns the next free slot to robot and copies its state into the
+	 * arrays.
+	 */
+	private int attach(Robot robot, int parentSlot) {
+		if (_count == _x.length) {
+			grow();
+		}
+		int slot = _count++;
+		_x[slot] = robot._x;
+		_y[slot] = robot._y;
+		_deltaX[slot] = robot._deltaX;
+		_deltaY[slot] = robot._deltaY;
+		_width[slot] = robot._width;
+		_height[slot] = robot._height;
+		_bounced[slot] = (robot._didBounceOffVertical ? BOUNCED_OFF_VERTICAL : 0)
+				| (robot._didBounceOffHorizontal ? BOUNCED_OFF_HORIZONTAL : 0);
+		if (parentSlot >= 0) {
+			_boundWidth[slot] = _width[parentSlot];
+			_boundHeight[slot] = _height[parentSlot];
+		}
+		_robots[slot] = robot;
+		_parentSlot[slot] = parentSlot;
+
+		robot._engine = this;
+		robot._slot = slot;
+		robot._pulledGeneration = _generation;
+		return slot;
+	}
+
+	private void grow() {
+		int capacity = _x.length * 2;
+		_x = Arrays.copyOf(_x, capacity);
+		_y = Arrays.copyOf(_y, capacity);
+		_deltaX = Arrays.copyOf(_deltaX, capacity);
+		_deltaY = Arrays.copyOf(_deltaY, capacity);
+		_width = Arrays.copyOf(_width, capacity);
+		_height = Arrays.copyOf(_height, capacity);
+		_bounced = Arrays.copyOf(_bounced, capacity);
+		_boundWidth = Arrays.copyOf(_boundWidth, capacity);
+		_boundHeight = Arrays.copyOf(_boundHeight, capacity);
+		_robots = Arrays.copyOf(_robots, capacity);
+		_parentSlot = Arrays.copyOf(_parentSlot, capacity);
+	}
+}
@@ -0,0 +1,417 @@
+package robot;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * RobotModelListener that decouples a slow listener from the RobotModel that
+ * notifies it. An AsyncDispatcher is registered with a RobotModel in place of
+ * the listener it wraps; each event it receives is appended to a bounded
+ * queue and update() returns at once, while the events are delivered to the
+ * wrapped listener, in order, by a task run on the AsyncDispatcher's own
+ * Executor. A listener that falls behind therefore delays only itself, not
+ * clock() or the model's other listeners.
+ *
+ * When the queue is full, the OverflowPolicy decides what happens to a new
+ * event. The RobotSnapshot attached to each queued event is retained until
+ * the event has been delivered or discarded.
+ *
+ * update() never blocks. It is called from within the model's methods, which
+ * hold the model's lock, and the listener may itself need that lock (e.g. to
+ * call takeDamage() or robotAt()); waiting there for the listener to make
+ * room would deadlock. Policies that do not discard an event therefore queue
+ * it beyond capacity, and the RobotModel the AsyncDispatcher is registered
+ * with waits for room at the end of each clock() and advance() call, once
+ * it has released its lock.
+ *
+ * An AsyncDispatcher keeps metrics describing how well its listener keeps
+ * up: the depth of its queue, its lag in ticks behind the model, and the time
+ * taken by each delivery. An exception thrown by the listener is counted and
+ * does not stop later deliveries.
+ */
+public class AsyncDispatcher implements RobotModelListener, Closeable {
+	/**
+	 * What an AsyncDispatcher does with an event that arrives when its queue
+	 * is full.
+	 */
+	public enum OverflowPolicy {
+		/**
+		 * Discard the oldest queued event to make room. Suits listeners that
+		 * only need the latest state, such as views that read snapshots.
+		 */
+		DROP_OLDEST,
+		/**
+		 * Merge each RobotMoved event into a RobotMoved event at the tail of
+		 * the queue, whether or not the queue is full; if the queue is still
+		 * full, discard its oldest RobotMoved event, and if it holds none,
+		 * queue the event beyond capacity and hold up the model at the end
+		 * of the tick until the listener has made room. RobotAdded and 
+		 * RobotRemoved events are never discarded.
+		 */
+		COALESCE_MOVED,
+		/**
+		 * Queue every event, and hold up the model at the end of each tick
+		 * until the listener has made room. No event is lost, but a slow
+		 * listener throttles the model.
+		 */
+		BLOCK
+	}
+
+	// Default queue capacity.
+	public static final int DEFAULT_CAPACITY = 64;
+
+	private final RobotModelListener _listener;
+
+	private final int _capacity;
+
+	private final OverflowPolicy _policy;
+
+	private final Executor _executor;
+
+	// Executor created by this AsyncDispatcher, shut down on close(), or null.
+	private final ExecutorService _ownedExecutor;
+
+	// === Guarded by _lock.
+	private final ArrayDeque<RobotModelEvent> _queue = new ArrayDeque<RobotModelEvent>();
+	private boolean _draining = false;
+	private boolean _closed = false;
+	// ===
+
+	private final ReentrantLock _lock = new ReentrantLock();
+
+	private final Condition _notFull = _lock.newCondition();
+
+	// === Metrics. The tick counts are written with _lock held, by both the
+	// notifying thread and the Executor.
+	private volatile long _ticksReceived = 0;
+	private volatile long _ticksHandled = 0;
+	private volatile long _delivered = 0;
+	private volatile long _dropped = 0;
+	private volatile long _coalesced = 0;
+	private volatile long _failures = 0;
+	private volatile long _dispatchNanos = 0;
+	private volatile long _maxDispatchNanos = 0;
+	// ===
+
+	private final Runnable _drain = new Runnable() {
+		public void run() {
+			drain();
+		}
+	};
+
+	/**
+	 * Creates an AsyncDispatcher with the default capacity that coalesces
+	 * RobotMoved events and delivers events on a dedicated daemon thread.
+	 */
+	public AsyncDispatcher(RobotModelListener listener) {
+		this(listener, DEFAULT_CAPACITY, OverflowPolicy.COALESCE_MOVED);
+	}
+
+	/**
+	 * Creates an AsyncDispatcher that delivers events on a dedicated daemon
+	 * thread, which is stopped by close().
+	 */
+	public AsyncDispatcher(RobotModelListener listener, int capacity, OverflowPolicy policy) {
+		this(listener, capacity, policy, null);
+	}
+
+	/**
+	 * Creates an AsyncDispatcher.
+	 * @param listener the listener to which events are delivered.
+	 * @param capacity the maximum number of events queued.
+	 * @param policy what to do with an event that arrives when the queue is
+	 * full.
+	 * @param executor the Executor on which deliveries run, e.g. one that
+	 * starts a virtual thread per task; null to use a dedicated daemon
+	 * thread. Deliveries never run concurrently with each other.
+	 * @throws IllegalArgumentException if capacity is less than 1.
+	 */
+	public AsyncDispatcher(RobotModelListener listener, int capacity, OverflowPolicy policy,
+			Executor executor) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException();
+		}
+		_listener = listener;
+		_capacity = capacity;
+		_policy = policy;
+		if (executor == null) {
+			final String name = "robot-listener-" + listener.getClass().getSimpleName();
+			_ownedExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable task) {
+					Thread thread = new Thread(task, name);
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			_executor = _ownedExecutor;
+		} else {
+			_ownedExecutor = null;
+			_executor = executor;
+		}
+	}
+
+	/**
+	 * Queues event for delivery, applying the OverflowPolicy if the queue is
+	 * full. Never blocks.
+	 */
+	@Override
+	public void update(RobotModelEvent event) {
+		if (event.snapshot() != null) {
+			event.snapshot().retain();
+		}
+		boolean schedule = false;
+		_lock.lock();
+		try {
+			if (_closed) {
+				discard(event);
+				return;
+			}
+			_ticksReceived += event.ticks();
+
+			if (!(_policy == OverflowPolicy.COALESCE_MOVED && coalesce(event))) {
+				while (_queue.size() >= _capacity && makeRoom()) {
+					// Discarded a queued event.
+				}
+				_queue.addLast(event);
+			}
+			if (!_draining) {
+				_draining = true;
+				schedule = true;
+			}
+		} finally {
+			_lock.unlock();
+		}
+		if (schedule) {
+			_executor.execute(_drain);
+		}
+	}
+
+	/**
+	 * Waits until the queue has room for another event, or this 
+	 * AsyncDispatcher is closed. Called by the RobotModel at the end of each
+	 * clock() and advance() call, without holding the model's lock.
+	 */
+	void awaitRoom() {
+		if (_policy == OverflowPolicy.DROP_OLDEST) {
+			return;
+		}
+		_lock.lock();
+		try {
+			while (_queue.size() >= _capacity && !_closed) {
+				_notFull.awaitUninterruptibly();
+			}
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Discards any queued events and stops the dedicated delivery thread, if
+	 * this AsyncDispatcher created one. The AsyncDispatcher should first be
+	 * deregistered from its RobotModel; events it receives after closing are
+	 * discarded.
+	 */
+	@Override
+	public void close() {
+		_lock.lock();
+		try {
+			_closed = true;
+			while (!_queue.isEmpty()) {
+				discard(_queue.pollFirst());
+			}
+			_notFull.signalAll();
+		} finally {
+			_lock.unlock();
+		}
+		if (_ownedExecutor != null) {
+			_ownedExecutor.shutdown();
+		}
+	}
+
+	/**
+	 * Returns the listener to which this AsyncDispatcher delivers events.
+	 */
+	public RobotModelListener listener() {
+		return _listener;
+	}
+
+	/**
+	 * Returns the number of events waiting to be delivered.
+	 */
+	public int queueDepth() {
+		_lock.lock();
+		try {
+			return _queue.size();
+		} finally {
+			_lock.unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of ticks by which the listener lags behind the
+	 * model: the ticks of RobotMoved events received but not yet delivered,
+	 * including any in the delivery under way.
+	 */
+	public long lag() {
+		return _ticksReceived - _ticksHandled;
+	}
+
+	/**
+	 * Returns the number of events delivered to the listener.
+	 */
+	public long deliveredEvents() {
+		return _delivered;
+	}
+
+	/**
+	 * Returns the number of events discarded by the DROP_OLDEST and
+	 * COALESCE_MOVED policies to make room.
+	 */
+	public long droppedEvents() {
+		return _dropped;
+	}
+
+	/**
+	 * Returns the number of RobotMoved events merged into a queued RobotMoved
+	 * event by the COALESCE_MOVED policy.
+	 */
+	public long coalescedEvents() {
+		return _coalesced;
+	}
+
+	/**
+	 * Returns the number of deliveries in which the listener threw an
+	 * exception.
+	 */
+	public long failures() {
+		return _failures;
+	}
+
+	/**
+	 * Returns the mean time taken by the listener to handle an event, in
+	 * nanoseconds, or 0 if no event has been delivered.
+	 */
+	public double meanDispatchNanos() {
+		long delivered = _delivered;
+		return delivered == 0 ? 0 : (double) _dispatchNanos / delivered;
+	}
+
+	/**
+	 * Returns the longest time taken by the listener to handle an event, in
+	 * nanoseconds.
+	 */
+	public long maxDispatchNanos() {
+		return _maxDispatchNanos;
+	}
+
+	/*
+	 * Merges a RobotMoved event into a RobotMoved event at the tail of the
+	 * queue. Returns false if event could not be merged. Called with _lock
+	 * held.
+	 */
+	private boolean coalesce(RobotModelEvent event) {
+		RobotModelEvent tail = _queue.peekLast();
+		if (event.eventType() != RobotModelEvent.EventType.RobotMoved || tail == null
+				|| tail.eventType() != RobotModelEvent.EventType.RobotMoved) {
+			return false;
+		}
+		RobotModelEvent merged = RobotModelEvent.makeCoalescedMovedEvent(tail, event);
+		_queue.pollLast();
+		_queue.addLast(merged);
+		if (tail.snapshot() != null) {
+			tail.snapshot().release();
+		}
+		_coalesced++;
+		return true;
+	}
+
+	/*
+	 * Discards a queued event to make room, if the policy allows. Returns
+	 * false if the event must be queued beyond capacity instead. Called with
+	 * _lock held.
+	 */
+	private boolean makeRoom() {
+		switch (_policy) {
+		case DROP_OLDEST:
+			drop(_queue.pollFirst());
+			return true;
+		case COALESCE_MOVED:
+			for (Iterator<RobotModelEvent> i = _queue.iterator(); i.hasNext();) {
+				RobotModelEvent queued = i.next();
+				if (queued.eventType() == RobotModelEvent.EventType.RobotMoved) {
+					i.remove();
+					drop(queued);
+					return true;
+				}
+			}
+			return false;
+		default:
+			return false;
+		}
+	}
+
+	/*
+	 * Counts a queued event as dropped and discards it.
+	 */
+	private void drop(RobotModelEvent event) {
+		_dropped++;
+		_ticksHandled += event.ticks();
+		discard(event);
+	}
+
+	/*
+	 * Releases the snapshot retained for event.
+	 */
+	private void discard(RobotModelEvent event) {
+		if (event.snapshot() != null) {
+			event.snapshot().release();
+		}
+	}
+
+	/*
+	 * Delivers queued events until the queue is empty. Runs on the Executor;
+	 * at most one drain() runs at a time.
+	 */
+	private void drain() {
+		// Ticks of the event last delivered, counted as handled with _lock
+		// held when the next event is polled.
+		long handled = 0;
+		for (;;) {
+			RobotModelEvent event;
+			_lock.lock();
+			try {
+				_ticksHandled += handled;
+				handled = 0;
+				event = _queue.pollFirst();
+				if (event == null) {
+					_draining = false;
+					return;
+				}
+				_notFull.signal();
+			} finally {
+				_lock.unlock();
+			}
+
+			long start = System.nanoTime();
+			try {
+				_listener.update(event);
+			} catch (RuntimeException e) {
+				_failures++;
+			} finally {
+				long nanos = System.nanoTime() - start;
+				_dispatchNanos += nanos;
+				_maxDispatchNanos = Math.max(_maxDispatchNanos, nanos);
+				_delivered++;
+				handled = event.ticks();
+				discard(event);
+			}
+		}
+	}
+}
@@ -0,0 +1,204 @@
+package robot;
+
+import java.util.List;
+
+/**
+ * Closed-form implementation of Robot's movement algorithm, used to jump a
+ * robot composition forward by any number of ticks at a cost independent of
+ * the number of ticks.
+ *
+ * Each axis of a Robot's movement is independent of the other and of every
+ * other Robot: a Robot moves within the fixed width and height of its parent,
+ * and its position is relative to its parent, so it is unaffected by how the
+ * parent itself moves. Along one axis, once a Robot has made a single step it
+ * lies between 0 and limit (the bound less the Robot's size). From there it
+ * travels to one wall, and then shuttles between the walls with a period of
+ * 2 * ceil(limit / speed) ticks, so its state after any number of ticks can
+ * be computed directly. A Robot at least as large as its bounds (limit <= 0)
+ * is pinned between the walls and falls into a short cycle of at most four
+ * states within a few steps; it is handled by stepping through that cycle,
+ * whatever its speed. Otherwise an axis with no speed repeats its first
+ * step.
+ *
+ * The children of a CarrierRobot with collision detection enabled affect each
+ * other's deltas, so they are stepped tick by tick; their own children are
+ * still advanced in closed form.
+ *
+ * Note that, like ArraySimulationEngine, this class reproduces the movement
+ * rules of Robot's move() method, not those of subclasses that override it.
+ */
+final class BounceMotion {
+	// Least common multiple of the lengths of the cycles a pinned axis can
+	// fall into.
+	private static final int PINNED_CYCLE = 12;
+
+	// Upper bound on the number of steps a pinned axis takes to enter its
+	// cycle.
+	private static final int PINNED_LEAD_IN = 4;
+
+	private BounceMotion() {
+	}
+
+	/**
+	 * Moves carrier and every Robot below it forward by ticks steps, leaving
+	 * each in the state that ticks successive move(width, height) calls on
+	 * carrier would.
+	 */
+	static void advance(CarrierRobot carrier, int width, int height, long ticks) {
+		if (ticks <= 0) {
+			return;
+		}
+		advanceRobot(carrier, width, height, ticks);
+		advanceChildren(carrier, ticks);
+	}
+
+	/*
+	 * Moves the children of carrier, and their descendants, forward by ticks
+	 * steps.
+	 */
+	private static void advanceChildren(CarrierRobot carrier, long ticks) {
+		List<Robot> children = carrier._ChildRobotList;
+
+		if (carrier._collisions != null) {
+			for (long tick = 0; tick < ticks; tick++) {
+				for (int i = 0; i < children.size(); i++) {
+					children.get(i).moveSelf(carrier._width, carrier._height);
+				}
+				carrier.resolveCollisions();
+			}
+		} else {
+			for (int i = 0; i < children.size(); i++) {
+				advanceRobot(children.get(i), carrier._width, carrier._height, ticks);
+			}
+		}
+
+		for (int i = 0; i < children.size(); i++) {
+			Robot child = children.get(i);
+			if (child instanceof CarrierRobot) {
+				advanceChildren((CarrierRobot) child, ticks);
+			}
+		}
+	}
+
+	/*
+	 * Moves robot alone forward by ticks steps within the specified bounds.
+	 */
+	private static void advanceRobot(Robot robot, int width, int height, long ticks) {
+		robot.pull();
+
+		Axis horizontal = new Axis(robot._x, robot._deltaX);
+		horizontal.advance(robot._width, width, ticks);
+		Axis vertical = new Axis(robot._y, robot._deltaY);
+		vertical.advance(robot._height, height, ticks);
+
+		robot._x = horizontal._position;
+		robot._deltaX = horizontal._delta;
+		robot._didBounceOffVertical = horizontal._bounced;
+		robot._y = vertical._position;
+		robot._deltaY = vertical._delta;
+		robot._didBounceOffHorizontal = vertical._bounced;
+
+		if (robot._engine != null) {
+			robot._engine.write(robot);
+		}
+	}
+
+	/*
+	 * Movement state along one axis.
+	 */
+	private static class Axis {
+		int _position;
+		int _delta;
+		boolean _bounced;
+
+		Axis(int position, int delta) {
+			_position = position;
+			_delta = delta;
+		}
+
+		/*
+		 * Makes one step within bound, exactly as Robot's moveSelf() does.
+		 */
+		void step(int size, int bound) {
+			int next = _position + _delta;
+			_bounced = false;
+
+			if (next <= 0) {
+				next = 0;
+				_delta = -_delta;
+				_bounced = true;
+			} else if (next + size >= bound) {
+				next = bound - size;
+				_delta = -_delta;
+				_bounced = true;
+			}
+			_position = next;
+		}
+
+		/*
+		 * Makes ticks steps (at least one) within bound.
+		 */
+		void advance(int size, int bound, long ticks) {
+			step(size, bound);
+			ticks--;
+			if (ticks == 0) {
+				return;
+			}
+
+			int limit = bound - size;
+			if (limit <= 0) {
+				// Pinned to a wall: step into the cycle and then through the
+				// remainder of the cycle. This holds for a stationary axis
+				// too: when limit < 0 its first step may leave it at limit, 
+				// from where its second step takes it to 0.
+				long leadIn = Math.min(ticks, PINNED_LEAD_IN);
+				for (long i = 0; i < leadIn; i++) {
+					step(size, bound);
+				}
+				ticks -= leadIn;
+				for (long i = ticks % PINNED_CYCLE; i > 0; i--) {
+					step(size, bound);
+				}
+				return;
+			}
+
+			// Now 0 <= position <= limit.
+			if (_delta == 0) {
+				// A stationary axis within its bounds repeats its first step
+				// indefinitely.
+				return;
+			}
+
+			// Travel to the wall being approached.
+			long speed = Math.abs((long) _delta);
+			long toWall = Math.max(1, _delta > 0
+					? ceilDiv(limit - _position, speed) : ceilDiv(_position, speed));
+			if (ticks < toWall) {
+				_position += (int) (ticks * _delta);
+				_bounced = false;
+				return;
+			}
+			ticks -= toWall;
+			_position = _delta > 0 ? limit : 0;
+			_delta = -_delta;
+			_bounced = true;
+
+			// Shuttle between the walls.
+			long crossing = ceilDiv(limit, speed);
+			ticks %= 2 * crossing;
+			if (ticks >= crossing) {
+				_position = _position == 0 ? limit : 0;
+				_delta = -_delta;
+				ticks -= crossing;
+			}
+			if (ticks > 0) {
+				_position += (int) (ticks * _delta);
+				_bounced = false;
+			}
+		}
+
+		private static long ceilDiv(long dividend, long divisor) {
+			return (dividend + divisor - 1) / divisor;
+		}
+	}
+}
@@ -1,10 +1,26 @@
 package robot;
 
-import java.util.ArrayList;
+import java.awt.Rectangle;
+import java.util.Collection;
 import java.util.List;
 
 public class CarrierRobot extends Robot {
-    protected List<Robot> _ChildRobotList = new ArrayList<>();
+    protected List<Robot> _ChildRobotList = new ChildRobotList();
+
+    // Number of robots below this carrier; maintained by ParallelSimulationEngine.
+    int _descendantCount = 0;
+
+    // Prefix sums of the children's weights (each child plus the robots
+    // below it), so that _childWeights[j] - _childWeights[i] weighs children
+    // i to j - 1; maintained by ParallelSimulationEngine.
+    int[] _childWeights = null;
+
+    // Incremented whenever a child is added or removed.
+    int _modCount = 0;
+
+    // Broadphase used to detect collisions between children, or null if
+    // collision detection is disabled.
+    CollisionGrid _collisions = null;
 
     /**
      * Creates a CarrierRobot object with default values for state.
@@ -59,21 +75,95 @@ public class CarrierRobot extends Robot {
      */
     public void move(int width, int height) {
         super.move(width,height);
-        for(Robot robot: _ChildRobotList) {
-            robot.move(_width,_height);
+        // Indexed, so that moving does not allocate an iterator per carrier.
+        for (int i = 0; i < _ChildRobotList.size(); i++) {
+            _ChildRobotList.get(i).move(_width,_height);
+        }
+        resolveCollisions();
+    }
+
+    /**
+     * Enables or disables collision detection between the children of this
+     * CarrierRobot. When enabled, two children whose bounding boxes overlap
+     * after moving have their deltas reversed along each axis on which they
+     * are approaching each other. Collision detection is disabled by default.
+     * @param enabled true to enable collision detection.
+     */
+    public void setCollisionDetection(boolean enabled) {
+        if (!enabled) {
+            _collisions = null;
+        } else if (_collisions == null) {
+            _collisions = new CollisionGrid();
+        }
+    }
+
+    /**
+     * @return true if collision detection between the children of this
+     * CarrierRobot is enabled.
+     */
+    public boolean collisionDetection() {
+        return _collisions != null;
+    }
+
+    /**
+     * Detects and responds to collisions between the children of this
+     * CarrierRobot, if collision detection is enabled. Called once the
+     * children have moved.
+     */
+    void resolveCollisions() {
+        if (_collisions != null) {
+            _collisions.resolve(this);
         }
     }
 
+    /**
+     * Returns a copy of this CarrierRobot with no children.
+     */
+    @Override
+    Robot shadow() {
+        CarrierRobot copy = (CarrierRobot) super.shadow();
+        copy._ChildRobotList = new ChildRobotList();
+        copy._descendantCount = 0;
+        copy._childWeights = null;
+        copy._collisions = null;
+        return copy;
+    }
+
     /**
      * Paints a carrier robot object by drawing a rectangle around the  edge of
-     * its bounding box. The CarrierRobots children are then painted.
+     * its bounding box. The CarrierRobots children are then painted, except
+     * those lying wholly outside the painter's clip, whose whole subtrees are
+     * skipped; the names of robots within a skipped subtree are therefore not
+     * painted even if they overflow it.
      * @param painter painter instance for drawing the robot
      */
     protected void doPaint(Painter painter) {
+        paintWith(painter, _ChildRobotList);
+    }
+
+    /**
+     * Paints this CarrierRobot as paint() does, but with only the specified
+     * children, which must be in the order they are held. Used by 
+     * TiledRenderer, which has already picked out the children that can
+     * affect each tile.
+     */
+    void paint(Painter painter, List<Robot> children) {
+        pull();
+        if (_Name != null) {
+            painter.drawCentredText(_Name,_x,_y,_width,_height);
+        }
+        paintWith(painter, children);
+    }
+
+    private void paintWith(Painter painter, List<Robot> children) {
         painter.drawRect(_x, _y, _width, _height);
         painter.translate(_x,_y);
-        for (Robot robot : _ChildRobotList) {
-            robot.paint(painter);
+        Rectangle clip = painter.getClipBounds();
+        for (int i = 0; i < children.size(); i++) {
+            Robot robot = children.get(i);
+            if (clip == null || robot.isVisibleIn(clip)) {
+                robot.paint(painter);
+            }
         }
         painter.translate(-_x,-_y);
     }
@@ -90,17 +180,54 @@ public class CarrierRobot extends Robot {
      */
     void add(Robot robot) throws IllegalArgumentException {
             if (robot._ParentCarrierRobot == null) {
+                robot.pull();
                 if(robot._x + robot._width > this._width || robot._y + robot._height > this._height) {
                     throw new IllegalArgumentException();
                 } else {
                     _ChildRobotList.add(robot);
                     robot._ParentCarrierRobot = this;
+                    robot.invalidatePath();
+                    _modCount++;
                 }
             } else {
                 throw new IllegalArgumentException();
             }
     }
 
+    /**
+     * Adds the specified Robots to a CarrierRobot object, in iteration order,
+     * after checking in one pass that every one of them can be added. Either
+     * all of the Robots are added or, if any cannot be, none is.
+     * @param robots the Robots to be added.
+     * @throws IllegalArgumentException if any Robot is already a child of a CarrierRobot,
+     * appears more than once, or exceeds the dimensions of the carrierRobot's size.
+     */
+    void addAll(Collection<? extends Robot> robots) throws IllegalArgumentException {
+        for (Robot robot : robots) {
+            robot.pull();
+            if (robot._ParentCarrierRobot != null
+                    || robot._x + robot._width > this._width || robot._y + robot._height > this._height) {
+                throw new IllegalArgumentException();
+            }
+        }
+        ((ChildRobotList) _ChildRobotList).ensureCapacity(robots.size());
+        int added = 0;
+        for (Robot robot : robots) {
+            if (robot._ParentCarrierRobot != null) {
+                // A duplicate: undo the adds made so far, newest first.
+                for (int i = _ChildRobotList.size() - 1; added > 0; i--, added--) {
+                    remove(_ChildRobotList.get(i));
+                }
+                throw new IllegalArgumentException();
+            }
+            _ChildRobotList.add(robot);
+            robot._ParentCarrierRobot = this;
+            robot.invalidatePath();
+            added++;
+        }
+        _modCount++;
+    }
+
     /**
      * Removes a particular Robot from the instance of CarrierRobot. Deletes the
      * two-way link between the child and parent relationship.
@@ -109,9 +236,44 @@ public class CarrierRobot extends Robot {
     void remove(Robot robot) {
             _ChildRobotList.remove(robot);
             robot._ParentCarrierRobot = null;
+            robot.invalidatePath();
+            _modCount++;
 
     }
 
+    /**
+     * Discards the cached paths of this CarrierRobot and its descendants.
+     * Descendants of a Robot without a cached path have none either, so the
+     * walk stops there.
+     */
+    @Override
+    void invalidatePath() {
+        if (!hasPath()) {
+            return;
+        }
+        super.invalidatePath();
+        for (int i = 0; i < _ChildRobotList.size(); i++) {
+            _ChildRobotList.get(i).invalidatePath();
+        }
+    }
+
+    /**
+     * Returns true if removals have left gaps in the list of children that
+     * compactChildren() would close.
+     */
+    boolean hasChildGaps() {
+        return ((ChildRobotList) _ChildRobotList).hasGaps();
+    }
+
+    /**
+     * Closes any gaps left in the list of children by removals. Robots keep
+     * their order, and reads are correct either way; closing the gaps makes
+     * them constant-time again.
+     */
+    void compactChildren() {
+        ((ChildRobotList) _ChildRobotList).compact();
+    }
+
     /**
      * Returns the robot at a specified position within a CarrierRobot.
      * @param index the specified index position
@@ -0,0 +1,259 @@
+package robot;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.RandomAccess;
+
+/**
+ * List of the children of a CarrierRobot, in the order they were added. Each
+ * Robot records its position within the list it belongs to, so indexOf(),
+ * contains() and remove() find a Robot without scanning; a Robot may belong
+ * to at most one ChildRobotList at a time.
+ *
+ * Removing a Robot leaves a gap in the underlying array rather than shifting
+ * the Robots that follow it. A Fenwick tree counting the Robots present at
+ * each position is kept up to date by every add and removal, at logarithmic
+ * cost, and while gaps remain it maps between positions in the list and in
+ * the array, making get() and indexOf() logarithmic rather than constant.
+ * The gaps are closed once they make up more than half of the positions
+ * used, so removal is cheap when amortised. RobotModel also closes them with
+ * compact() at the end of a batch and, after a removal outside a batch, at
+ * the next tick boundary, so that the simulation never iterates a gapped
+ * list for more than one tick. The list never changes as a side effect of
+ * reading it, so it may be read by several threads at once.
+ */
+final class ChildRobotList extends AbstractList<Robot> implements RandomAccess {
+	private static final int INITIAL_CAPACITY = 4;
+
+	// Robots, with null marking the gaps left by removals.
+	private Robot[] _robots = new Robot[INITIAL_CAPACITY];
+
+	// Number of array positions used, including gaps.
+	private int _used = 0;
+
+	// Number of Robots in the list.
+	private int _size = 0;
+
+	// One-based Fenwick tree over the array, counting the Robots present.
+	private int[] _present = new int[INITIAL_CAPACITY + 1];
+
+	@Override
+	public Robot get(int index) {
+		if (index < 0 || index >= _size) {
+			throw new IndexOutOfBoundsException();
+		}
+		return _robots[_used == _size ? index : position(index)];
+	}
+
+	@Override
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Appends robot to this list.
+	 */
+	@Override
+	public boolean add(Robot robot) {
+		if (_used == _robots.length) {
+			if (4 * (_used - _size) >= _used && _used != _size) {
+				// Closing the gaps frees at least a quarter of the array.
+				compact();
+			} else {
+				resize(_robots.length * 2);
+			}
+		}
+		robot._childIndex = _used;
+		_robots[_used] = robot;
+		count(_used, 1);
+		_used++;
+		_size++;
+		modCount++;
+		return true;
+	}
+
+	/**
+	 * Makes room for the specified number of Robots to be appended without
+	 * growing the array again.
+	 */
+	void ensureCapacity(int additional) {
+		compact();
+		if (_used + additional > _robots.length) {
+			resize(Math.max(_used + additional, _robots.length * 2));
+		}
+	}
+
+	@Override
+	public int indexOf(Object object) {
+		if (!(object instanceof Robot)) {
+			return -1;
+		}
+		int position = ((Robot) object)._childIndex;
+		if (position < 0 || position >= _used || _robots[position] != object) {
+			return -1;
+		}
+		return _used == _size ? position : countBefore(position);
+	}
+
+	@Override
+	public int lastIndexOf(Object object) {
+		return indexOf(object);
+	}
+
+	@Override
+	public boolean contains(Object object) {
+		return indexOf(object) >= 0;
+	}
+
+	/**
+	 * Removes robot from this list, if present, leaving a gap unless it is
+	 * the last Robot. Closes the gaps once they make up more than half of
+	 * the positions used.
+	 */
+	@Override
+	public boolean remove(Object object) {
+		if (!contains(object)) {
+			return false;
+		}
+		Robot robot = (Robot) object;
+		int position = robot._childIndex;
+		robot._childIndex = -1;
+		_robots[position] = null;
+		_size--;
+		modCount++;
+		count(position, -1);
+		if (position == _used - 1) {
+			// Removing the last Robot leaves no gap, and uncovers any gaps
+			// before it.
+			do {
+				_used--;
+			} while (_used > 0 && _robots[_used - 1] == null);
+		} else if (2 * (_used - _size) > _used) {
+			compact();
+		}
+		return true;
+	}
+
+	@Override
+	public Robot remove(int index) {
+		Robot robot = get(index);
+		remove(robot);
+		return robot;
+	}
+
+	@Override
+	public void clear() {
+		for (int i = 0; i < _used; i++) {
+			if (_robots[i] != null) {
+				_robots[i]._childIndex = -1;
+				_robots[i] = null;
+			}
+		}
+		_used = 0;
+		_size = 0;
+		Arrays.fill(_present, 0);
+		modCount++;
+	}
+
+	/**
+	 * Closes any gaps left by removals, moving the Robots that follow them
+	 * towards the start of the array, and shrinks the array if it is mostly
+	 * empty.
+	 */
+	void compact() {
+		if (_used == _size) {
+			return;
+		}
+		int to = 0;
+		for (int from = 0; from < _used; from++) {
+			Robot robot = _robots[from];
+			if (robot != null) {
+				if (to != from) {
+					robot._childIndex = to;
+					_robots[to] = robot;
+				}
+				to++;
+			}
+		}
+		Arrays.fill(_robots, to, _used, null);
+		_used = to;
+		if (_used < _robots.length / 4 && _robots.length > INITIAL_CAPACITY) {
+			resize(Math.max(INITIAL_CAPACITY, _used * 2));
+		} else {
+			buildPresent();
+		}
+	}
+
+	/**
+	 * Returns true if removals have left gaps that compact() would close.
+	 */
+	boolean hasGaps() {
+		return _used != _size;
+	}
+
+	/*
+	 * Moves the Robots into an array of the specified capacity, which must
+	 * hold the positions used, and rebuilds the Fenwick tree to match.
+	 */
+	private void resize(int capacity) {
+		_robots = Arrays.copyOf(_robots, capacity);
+		buildPresent();
+	}
+
+	/*
+	 * Builds the Fenwick tree for the current array in linear time, adding
+	 * each node's count into the next node covering it.
+	 */
+	private void buildPresent() {
+		if (_present.length != _robots.length + 1) {
+			_present = new int[_robots.length + 1];
+		} else {
+			Arrays.fill(_present, 0);
+		}
+		for (int i = 1; i < _present.length; i++) {
+			if (i <= _used && _robots[i - 1] != null) {
+				_present[i]++;
+			}
+			int parent = i + (i & -i);
+			if (parent < _present.length) {
+				_present[parent] += _present[i];
+			}
+		}
+	}
+
+	/*
+	 * Adds delta to the count at the specified array position.
+	 */
+	private void count(int position, int delta) {
+		for (int i = position + 1; i < _present.length; i += i & -i) {
+			_present[i] += delta;
+		}
+	}
+
+	/*
+	 * Returns the number of Robots before the specified array position.
+	 */
+	private int countBefore(int position) {
+		int count = 0;
+		for (int i = position; i > 0; i -= i & -i) {
+			count += _present[i];
+		}
+		return count;
+	}
+
+	/*
+	 * Returns the array position of the Robot at the specified index.
+	 */
+	private int position(int index) {
+		int position = 0;
+		int remaining = index + 1;
+		for (int step = Integer.highestOneBit(_present.length - 1); step > 0; step >>= 1) {
+			int next = position + step;
+			if (next < _present.length && _present[next] < remaining) {
+				position = next;
+				remaining -= _present[next];
+			}
+		}
+		return position;
+	}
+}
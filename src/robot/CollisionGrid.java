@@ -0,0 +1,326 @@
+package robot;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Uniform grid (spatial hash) used to detect collisions between the children
+ * of a CarrierRobot. Each child is filed in the grid cell holding its top
+ * left corner. Cells are sized from the typical child: the cell size is that
+ * of the largest child no more than twice the median child size, so that a
+ * few large children do not collapse the grid into a handful of cells. Two
+ * children no larger than a cell can only overlap if their cells are the
+ * same or adjacent; the narrowphase therefore compares each such child only
+ * with the children filed in the surrounding 3x3 block of cells. Children
+ * larger than a cell are kept in a separate list instead, and each is
+ * compared with every other child. The cost of a pass therefore grows
+ * linearly with the number of children when they are spread across the
+ * carrier and only a few are oversized.
+ *
+ * The grid is maintained incrementally. Cells are doubly linked lists threaded
+ * through per-member arrays, and on each pass only members whose cell has
+ * changed are unlinked and relinked. The grid is rebuilt from scratch only
+ * when the membership of the carrier changes.
+ *
+ * When two children overlap, each has the sign of its delta reversed on every
+ * axis along which the two are approaching each other. A child responds at
+ * most once per axis per pass, so multiple simultaneous contacts do not
+ * cancel each other out.
+ */
+final class CollisionGrid {
+	// Bit values for the per-member response flags.
+	private static final int REVERSED_X = 1;
+	private static final int REVERSED_Y = 2;
+
+	private int _cellSize = 1;
+	private int _columns = 0;
+	private int _rows = 0;
+
+	// First member position filed in each cell, or -1.
+	private int[] _head = new int[0];
+
+	// === Per member position.
+	// Cell in which the member is filed, or -1 if it is oversized.
+	private int[] _cell = new int[0];
+	private int[] _next = new int[0];
+	private int[] _previous = new int[0];
+	private int[] _responded = new int[0];
+	private int[] _sizes = new int[0];
+	// ===
+
+	private int _count = 0;
+
+	// Positions of the members larger than a cell, in increasing order.
+	private int[] _oversized = new int[0];
+	private int _oversizedCount = 0;
+
+	// Modification count of the carrier when the grid was last rebuilt, used
+	// by resolve(CarrierRobot).
+	private int _modCount = -1;
+
+	// Scratch arrays into which resolve(CarrierRobot) gathers child state.
+	private int[] _members = new int[0];
+	private int[] _x = new int[0];
+	private int[] _y = new int[0];
+	private int[] _width = new int[0];
+	private int[] _height = new int[0];
+	private int[] _deltaX = new int[0];
+	private int[] _deltaY = new int[0];
+
+	/**
+	 * Detects and responds to collisions between the children of carrier,
+	 * updating the deltas of any children that collide.
+	 * @return the number of colliding pairs found.
+	 */
+	int resolve(CarrierRobot carrier) {
+		List<Robot> children = carrier._ChildRobotList;
+		int count = children.size();
+
+		if (_x.length < count) {
+			int capacity = Math.max(count, _x.length * 2);
+			_x = new int[capacity];
+			_y = new int[capacity];
+			_width = new int[capacity];
+			_height = new int[capacity];
+			_deltaX = new int[capacity];
+			_deltaY = new int[capacity];
+			_members = new int[capacity];
+			for (int i = 0; i < capacity; i++) {
+				_members[i] = i;
+			}
+		}
+
+		for (int i = 0; i < count; i++) {
+			Robot child = children.get(i);
+			child.pull();
+			_x[i] = child._x;
+			_y[i] = child._y;
+			_width[i] = child._width;
+			_height[i] = child._height;
+			_deltaX[i] = child._deltaX;
+			_deltaY[i] = child._deltaY;
+		}
+
+		boolean rebuild = carrier._modCount != _modCount;
+		_modCount = carrier._modCount;
+		int collisions = resolve(rebuild, _members, 0, count, carrier._width, carrier._height,
+				_x, _y, _width, _height, _deltaX, _deltaY);
+
+		if (collisions > 0) {
+			for (int i = 0; i < count; i++) {
+				if (_responded[i] != 0) {
+					Robot child = children.get(i);
+					child._deltaX = _deltaX[i];
+					child._deltaY = _deltaY[i];
+				}
+			}
+		}
+		return collisions;
+	}
+
+	/**
+	 * Detects and responds to collisions between the members listed in
+	 * members[from .. to-1], whose state is held in the specified arrays at the
+	 * indices given by members. The arrays of deltas are updated in place.
+	 * @param rebuild true if the membership has changed since the previous
+	 * call.
+	 * @param boundWidth width of the area the members move within.
+	 * @param boundHeight height of the area the members move within.
+	 * @return the number of colliding pairs found.
+	 */
+	int resolve(boolean rebuild, int[] members, int from, int to, int boundWidth, int boundHeight,
+			int[] xs, int[] ys, int[] ws, int[] hs, int[] dxs, int[] dys) {
+		int count = to - from;
+		if (rebuild || count != _count) {
+			rebuild(members, from, count, boundWidth, boundHeight, xs, ys, ws, hs);
+		} else {
+			for (int p = 0; p < count; p++) {
+				if (_cell[p] == -1) {
+					continue;
+				}
+				int m = members[from + p];
+				int cell = cellOf(xs[m], ys[m]);
+				if (cell != _cell[p]) {
+					unlink(p);
+					link(p, cell);
+				}
+			}
+		}
+		Arrays.fill(_responded, 0, count, 0);
+
+		int collisions = 0;
+		for (int p = 0; p < count; p++) {
+			if (_cell[p] == -1) {
+				continue;
+			}
+			int m = members[from + p];
+			int column = _cell[p] % _columns;
+			int row = _cell[p] / _columns;
+
+			for (int r = Math.max(row - 1, 0); r <= Math.min(row + 1, _rows - 1); r++) {
+				for (int c = Math.max(column - 1, 0); c <= Math.min(column + 1, _columns - 1); c++) {
+					for (int q = _head[r * _columns + c]; q != -1; q = _next[q]) {
+						if (q > p) {
+							collisions += collide(p, q, members, from, xs, ys, ws, hs, dxs, dys);
+						}
+					}
+				}
+			}
+		}
+
+		// Compare each oversized member with every other member, taking
+		// pairs of oversized members once.
+		for (int i = 0; i < _oversizedCount; i++) {
+			int p = _oversized[i];
+			for (int q = 0; q < count; q++) {
+				if (q != p && (_cell[q] != -1 || q > p)) {
+					collisions += collide(p, q, members, from, xs, ys, ws, hs, dxs, dys);
+				}
+			}
+		}
+		return collisions;
+	}
+
+	/*
+	 * Responds to a collision between the members at positions p and q if
+	 * they overlap. Returns 1 if they do, and 0 otherwise.
+	 */
+	private int collide(int p, int q, int[] members, int from, int[] xs, int[] ys, int[] ws, int[] hs,
+			int[] dxs, int[] dys) {
+		int m = members[from + p];
+		int n = members[from + q];
+		if (xs[m] < xs[n] + ws[n] && xs[n] < xs[m] + ws[m]
+				&& ys[m] < ys[n] + hs[n] && ys[n] < ys[m] + hs[m]) {
+			respond(p, m, q, n, xs, dxs, REVERSED_X);
+			respond(p, m, q, n, ys, dys, REVERSED_Y);
+			return 1;
+		}
+		return 0;
+	}
+
+	/*
+	 * Reverses the deltas of members m and n (at positions p and q) along one
+	 * axis if they are approaching each other along it.
+	 */
+	private void respond(int p, int m, int q, int n, int[] positions, int[] deltas, int flag) {
+		if ((long) (positions[n] - positions[m]) * (deltas[n] - deltas[m]) >= 0) {
+			return;
+		}
+		if ((_responded[p] & flag) == 0) {
+			deltas[m] = -deltas[m];
+			_responded[p] |= flag;
+		}
+		if ((_responded[q] & flag) == 0) {
+			deltas[n] = -deltas[n];
+			_responded[q] |= flag;
+		}
+	}
+
+	/*
+	 * Sizes the grid for the current members, files every member no larger
+	 * than a cell and lists the others as oversized.
+	 */
+	private void rebuild(int[] members, int from, int count, int boundWidth, int boundHeight,
+			int[] xs, int[] ys, int[] ws, int[] hs) {
+		if (_cell.length < count) {
+			int capacity = Math.max(count, _cell.length * 2);
+			_cell = new int[capacity];
+			_next = new int[capacity];
+			_previous = new int[capacity];
+			_responded = new int[capacity];
+			_sizes = new int[capacity];
+			_oversized = new int[capacity];
+		}
+		for (int p = 0; p < count; p++) {
+			int m = members[from + p];
+			_sizes[p] = Math.max(1, Math.max(ws[m], hs[m]));
+		}
+
+		// The largest size no more than twice the median.
+		int[] sorted = Arrays.copyOf(_sizes, count);
+		Arrays.sort(sorted);
+		int cellSize = 1;
+		if (count > 0) {
+			int typical = 2 * sorted[count / 2];
+			for (int i = count - 1; i >= 0; i--) {
+				if (sorted[i] <= typical) {
+					cellSize = sorted[i];
+					break;
+				}
+			}
+		}
+		// Cells smaller than this would outnumber the members several times
+		// over.
+		double minimum = Math.sqrt((double) Math.max(boundWidth, 1) * Math.max(boundHeight, 1)
+				/ (4.0 * Math.max(count, 1)));
+		_cellSize = Math.max(cellSize, (int) Math.ceil(minimum));
+		_columns = Math.max(boundWidth, 1) / _cellSize + 1;
+		_rows = Math.max(boundHeight, 1) / _cellSize + 1;
+
+		int cells = _columns * _rows;
+		if (_head.length < cells) {
+			_head = new int[cells];
+		}
+		Arrays.fill(_head, 0, cells, -1);
+
+		_oversizedCount = 0;
+		for (int p = 0; p < count; p++) {
+			if (_sizes[p] > _cellSize) {
+				_cell[p] = -1;
+				_oversized[_oversizedCount++] = p;
+			} else {
+				int m = members[from + p];
+				link(p, cellOf(xs[m], ys[m]));
+			}
+		}
+		_count = count;
+	}
+
+	/**
+	 * Returns the size of the grid's cells, as last chosen for the members.
+	 */
+	int cellSize() {
+		return _cellSize;
+	}
+
+	/**
+	 * Returns the number of members larger than a cell.
+	 */
+	int oversizedCount() {
+		return _oversizedCount;
+	}
+
+	/*
+	 * Returns the index of the cell holding position (x, y). Positions
+	 * outside the carrier are filed in the nearest edge cell.
+	 */
+	private int cellOf(int x, int y) {
+		int column = Math.min(Math.max(x / _cellSize, 0), _columns - 1);
+		int row = Math.min(Math.max(y / _cellSize, 0), _rows - 1);
+		return row * _columns + column;
+	}
+
+	private void link(int p, int cell) {
+		int head = _head[cell];
+		_cell[p] = cell;
+		_previous[p] = -1;
+		_next[p] = head;
+		if (head != -1) {
+			_previous[head] = p;
+		}
+		_head[cell] = p;
+	}
+
+	private void unlink(int p) {
+		int previous = _previous[p];
+		int next = _next[p];
+		if (previous == -1) {
+			_head[_cell[p]] = next;
+		} else {
+			_next[previous] = next;
+		}
+		if (next != -1) {
+			_previous[next] = previous;
+		}
+	}
+}
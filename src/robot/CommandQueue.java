@@ -0,0 +1,82 @@
+package robot;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free, unbounded, multiple-producer single-consumer queue of the
+ * structural changes submitted to a RobotModel. Any number of threads may
+ * offer() commands concurrently; a single consumer at a time (the RobotModel,
+ * under its own lock) polls them in the order in which they were offered.
+ *
+ * The queue is an intrusive linked list. A producer swaps itself in as the
+ * tail with one atomic operation and then links the previous tail to itself,
+ * so offer() never blocks or retries. Between those two steps the consumer
+ * sees the queue as ending at the previous tail; the command becomes visible
+ * to the next poll() once linked.
+ */
+final class CommandQueue {
+	static final int ADD = 0;
+	static final int REMOVE = 1;
+	static final int REPARENT = 2;
+
+	/*
+	 * A submitted change. The consumer's most recently polled command serves
+	 * as the sentinel at the head of the list.
+	 */
+	static final class Command {
+		int _type;
+		Robot _robot;
+		CarrierRobot _parent;
+		volatile Command _next;
+
+		Command(int type, Robot robot, CarrierRobot parent) {
+			_type = type;
+			_robot = robot;
+			_parent = parent;
+		}
+	}
+
+	// Sentinel preceding the oldest unconsumed command; owned by the consumer.
+	private Command _head;
+
+	private final AtomicReference<Command> _tail;
+
+	CommandQueue() {
+		_head = new Command(ADD, null, null);
+		_tail = new AtomicReference<Command>(_head);
+	}
+
+	/**
+	 * Appends a command. Safe to call from any thread.
+	 */
+	void offer(int type, Robot robot, CarrierRobot parent) {
+		Command command = new Command(type, robot, parent);
+		Command previous = _tail.getAndSet(command);
+		previous._next = command;
+	}
+
+	/**
+	 * Returns the most recently offered command. Passing it to poll() 
+	 * limits a drain to the commands offered before the drain began.
+	 */
+	Command last() {
+		return _tail.get();
+	}
+
+	/**
+	 * Removes and returns the oldest command, or returns null if none is 
+	 * visible or if last, a command previously returned by last(), has 
+	 * already been polled. Must only be called by one thread at a time.
+	 */
+	Command poll(Command last) {
+		Command next = _head._next;
+		if (next == null || _head == last) {
+			return null;
+		}
+		// The previous sentinel no longer needs its payload.
+		_head._robot = null;
+		_head._parent = null;
+		_head = next;
+		return next;
+	}
+}
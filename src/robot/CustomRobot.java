@@ -34,5 +34,14 @@ public class CustomRobot extends WheeledRobot {
 	protected void doPaint(Painter painter) {
 		painter.drawImage(_picture,_x,_y,_width,_height);
 	}
+
+	/**
+	 * Returns null: a CustomRobot looks like its image, which is not part of
+	 * its sprite state.
+	 */
+	@Override
+	protected Object spriteState() {
+		return null;
+	}
 }
 
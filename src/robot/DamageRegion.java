@@ -0,0 +1,155 @@
+package robot;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Class to represent the area of an animation that needs repainting, as a
+ * small set of rectangles. Rectangles that overlap or touch an existing
+ * rectangle are merged into it; once the set holds more than MAX_RECTANGLES
+ * rectangles, the two rectangles whose union wastes the least area are merged
+ * so that a view repainting the region makes a bounded number of paint calls.
+ * A region may instead be marked as full, meaning that everything must be
+ * repainted.
+ */
+public class DamageRegion {
+	// Maximum number of separate rectangles held.
+	public static final int MAX_RECTANGLES = 8;
+
+	private final List<Rectangle> _rectangles = new ArrayList<Rectangle>();
+
+	private boolean _full = false;
+
+	/**
+	 * Adds the specified rectangle to this region.
+	 */
+	public void add(int x, int y, int width, int height) {
+		if (_full || width <= 0 || height <= 0) {
+			return;
+		}
+		Rectangle added = new Rectangle(x, y, width, height);
+
+		// Absorb any rectangles that overlap or touch the new one.
+		boolean merged = true;
+		while (merged) {
+			merged = false;
+			for (int i = 0; i < _rectangles.size(); i++) {
+				Rectangle existing = _rectangles.get(i);
+				if (touches(existing, added)) {
+					added.add(existing);
+					_rectangles.remove(i);
+					merged = true;
+					break;
+				}
+			}
+		}
+		_rectangles.add(added);
+
+		if (_rectangles.size() > MAX_RECTANGLES) {
+			mergeCheapestPair();
+		}
+	}
+
+	/**
+	 * Adds every rectangle of other to this region.
+	 */
+	public void add(DamageRegion other) {
+		if (other._full) {
+			markFull();
+		}
+		for (Rectangle rectangle : other._rectangles) {
+			add(rectangle.x, rectangle.y, rectangle.width, rectangle.height);
+		}
+	}
+
+	/**
+	 * Marks this region as covering everything.
+	 */
+	public void markFull() {
+		_full = true;
+		_rectangles.clear();
+	}
+
+	/**
+	 * Returns true if this region covers everything.
+	 */
+	public boolean isFull() {
+		return _full;
+	}
+
+	/**
+	 * Returns true if nothing needs repainting.
+	 */
+	public boolean isEmpty() {
+		return !_full && _rectangles.isEmpty();
+	}
+
+	/**
+	 * Returns the rectangles making up this region. The result is empty for
+	 * a full region.
+	 */
+	public List<Rectangle> rectangles() {
+		return Collections.unmodifiableList(_rectangles);
+	}
+
+	/**
+	 * Returns the total area of the rectangles making up this region.
+	 */
+	public long area() {
+		long area = 0;
+		for (Rectangle rectangle : _rectangles) {
+			area += (long) rectangle.width * rectangle.height;
+		}
+		return area;
+	}
+
+	/**
+	 * Returns the bounding box of the rectangles making up this region, which
+	 * is empty for an empty or full region.
+	 */
+	public Rectangle bounds() {
+		Rectangle bounds = new Rectangle();
+		for (Rectangle rectangle : _rectangles) {
+			bounds = bounds.isEmpty() ? new Rectangle(rectangle) : bounds.union(rectangle);
+		}
+		return bounds;
+	}
+
+	/*
+	 * Returns true if a and b overlap or share an edge.
+	 */
+	private static boolean touches(Rectangle a, Rectangle b) {
+		return a.x <= b.x + b.width && b.x <= a.x + a.width
+				&& a.y <= b.y + b.height && b.y <= a.y + a.height;
+	}
+
+	/*
+	 * Replaces the two rectangles whose bounding box adds the least area by
+	 * that bounding box.
+	 */
+	private void mergeCheapestPair() {
+		int bestI = 0;
+		int bestJ = 1;
+		long bestCost = Long.MAX_VALUE;
+		for (int i = 0; i < _rectangles.size(); i++) {
+			Rectangle a = _rectangles.get(i);
+			for (int j = i + 1; j < _rectangles.size(); j++) {
+				Rectangle b = _rectangles.get(j);
+				Rectangle union = a.union(b);
+				long cost = (long) union.width * union.height - (long) a.width * a.height
+						- (long) b.width * b.height;
+				if (cost < bestCost) {
+					bestCost = cost;
+					bestI = i;
+					bestJ = j;
+				}
+			}
+		}
+		Rectangle union = _rectangles.get(bestI).union(_rectangles.get(bestJ));
+		_rectangles.remove(bestJ);
+		_rectangles.remove(bestI);
+		add(union.x, union.y, union.width, union.height);
+	}
+}
@@ -0,0 +1,143 @@
+package robot;
+
+import java.awt.FontMetrics;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Class to track the regions of a robot composition that change between
+ * frames. Each call to track() walks the composition in preorder, computing
+ * the absolute area each Robot paints - its bounds, plus the pixel that 
+ * drawRect() and drawOval() paint beyond them, plus its name as laid out by
+ * drawCentredText() - and compares it with the area recorded by the previous
+ * call. The old and new areas of every Robot that has moved, bounced or been
+ * renamed are added to the damage, which take() hands over to a view. Any
+ * change to the structure of the composition damages everything.
+ */
+final class DamageTracker {
+	// drawRect() and drawOval() paint one pixel beyond a Robot's width and
+	// height.
+	private static final int STROKE = 1;
+
+	private final FontMetrics _metrics;
+
+	private DamageRegion _damage = new DamageRegion();
+
+	// === Painted area and appearance of each Robot, in preorder.
+	private Robot[] _robots = new Robot[16];
+	private int[] _x = new int[16];
+	private int[] _y = new int[16];
+	private int[] _width = new int[16];
+	private int[] _height = new int[16];
+	private byte[] _flags = new byte[16];
+	private String[] _names = new String[16];
+	private int[] _nameWidths = new int[16];
+	// ===
+
+	// Number of Robots recorded, or -1 if track() has not yet been called.
+	private int _count = -1;
+
+	// State of the walk made by track().
+	private int _visited;
+	private boolean _restructured;
+
+	/**
+	 * Creates a DamageTracker for views that paint names with the specified
+	 * font. Everything is damaged until the first track() call.
+	 */
+	DamageTracker(FontMetrics metrics) {
+		_metrics = metrics;
+		_damage.markFull();
+	}
+
+	/**
+	 * Records the current state of the composition rooted at root, adding
+	 * the areas that have changed since the previous call to the damage.
+	 */
+	void track(CarrierRobot root) {
+		_visited = 0;
+		_restructured = _count < 0;
+		visit(root, 0, 0);
+		if (_restructured || _visited != _count) {
+			_damage.markFull();
+		}
+		Arrays.fill(_robots, _visited, Math.max(_visited, _count), null);
+		Arrays.fill(_names, _visited, Math.max(_visited, _count), null);
+		_count = _visited;
+	}
+
+	/**
+	 * Returns the damage accumulated since the previous call.
+	 */
+	DamageRegion take() {
+		DamageRegion damage = _damage;
+		_damage = new DamageRegion();
+		return damage;
+	}
+
+	/*
+	 * Records robot, whose parent's absolute position is (originX, originY),
+	 * and its descendants.
+	 */
+	private void visit(Robot robot, int originX, int originY) {
+		int i = _visited++;
+		if (i == _robots.length) {
+			grow();
+		}
+		robot.pull();
+		int robotX = originX + robot._x;
+		int robotY = originY + robot._y;
+
+		int left = robotX;
+		int top = robotY;
+		int right = robotX + robot._width + STROKE;
+		int bottom = robotY + robot._height + STROKE;
+
+		String name = robot._Name;
+		if (name != null && _metrics != null) {
+			int nameWidth = name == _names[i] ? _nameWidths[i] : _metrics.stringWidth(name);
+			_nameWidths[i] = nameWidth;
+			int nameX = robotX + robot._width / 2 - nameWidth / 2;
+			int nameY = robotY + (robot._height - _metrics.getHeight()) / 2;
+			left = Math.min(left, nameX - STROKE);
+			top = Math.min(top, nameY);
+			right = Math.max(right, nameX + nameWidth + STROKE);
+			bottom = Math.max(bottom, nameY + _metrics.getHeight());
+		}
+		byte flags = (byte) ((robot._didBounceOffVertical ? 1 : 0) | (robot._didBounceOffHorizontal ? 2 : 0));
+
+		if (_robots[i] != robot) {
+			_restructured = true;
+		} else if (!_restructured && (_x[i] != left || _y[i] != top || _width[i] != right - left
+				|| _height[i] != bottom - top || _flags[i] != flags || _names[i] != name)) {
+			_damage.add(_x[i], _y[i], _width[i], _height[i]);
+			_damage.add(left, top, right - left, bottom - top);
+		}
+		_robots[i] = robot;
+		_x[i] = left;
+		_y[i] = top;
+		_width[i] = right - left;
+		_height[i] = bottom - top;
+		_flags[i] = flags;
+		_names[i] = name;
+
+		if (robot instanceof CarrierRobot) {
+			List<Robot> children = ((CarrierRobot) robot)._ChildRobotList;
+			for (int j = 0; j < children.size(); j++) {
+				visit(children.get(j), robotX, robotY);
+			}
+		}
+	}
+
+	private void grow() {
+		int capacity = _robots.length * 2;
+		_robots = Arrays.copyOf(_robots, capacity);
+		_x = Arrays.copyOf(_x, capacity);
+		_y = Arrays.copyOf(_y, capacity);
+		_width = Arrays.copyOf(_width, capacity);
+		_height = Arrays.copyOf(_height, capacity);
+		_flags = Arrays.copyOf(_flags, capacity);
+		_names = Arrays.copyOf(_names, capacity);
+		_nameWidths = Arrays.copyOf(_nameWidths, capacity);
+	}
+}
@@ -63,7 +63,6 @@ public class DynamicWheeledRobot extends WheeledRobot{
         Color temp = painter.getColor();
         painter.setColor(_RobotColor);
         painter.fillRect(_x,_y,_width,_height);
-        hasBouncedOffVertical = true;
         painter.setColor(temp);
     }
 
@@ -71,20 +70,56 @@ public class DynamicWheeledRobot extends WheeledRobot{
      * Paints this DynamicWheeledRobot object using the supplied Painter object.
      */
     protected void doPaint(Painter painter) {
-
-        if (this.didBounceOffVertical() && this.didBounceOffHorizontal()) {
-           drawFilledRobot(painter);
-        } else if (this.didBounceOffVertical()) {
+        if (updateFilled()) {
             drawFilledRobot(painter);
-        } else if (this.didBounceOffHorizontal()) {
+        } else {
             painter.drawRect(_x, _y, _width, _height);
+        }
+    }
+
+    /**
+     * Returns this robot's fill colour if it is filled, after updating its
+     * fill as doPaint() would.
+     */
+    @Override
+    protected Object spriteState() {
+        return updateFilled() ? _RobotColor : PLAIN_SPRITE;
+    }
+
+    /*
+     * Returns this robot's fill colour, for journalling.
+     */
+    Color robotColor() {
+        return _RobotColor;
+    }
+
+    /*
+     * Returns true if this robot was filled when last painted, for
+     * journalling.
+     */
+    boolean isFilled() {
+        return hasBouncedOffVertical;
+    }
+
+    /*
+     * Restores the colour and fill of a journalled robot.
+     */
+    void restore(Color robotColor, boolean filled) {
+        _RobotColor = robotColor;
+        hasBouncedOffVertical = filled;
+    }
+
+    /*
+     * Returns true if this robot is painted filled: it fills on bouncing off
+     * a vertical wall, and stays filled until it bounces off a horizontal
+     * wall alone.
+     */
+    private boolean updateFilled() {
+        if (this.didBounceOffVertical()) {
+            hasBouncedOffVertical = true;
+        } else if (this.didBounceOffHorizontal()) {
             hasBouncedOffVertical = false;
-        } else {
-            if (!hasBouncedOffVertical) {
-                painter.drawRect(_x, _y, _width, _height);
-            } else {
-                drawFilledRobot(painter);
-            }
         }
+        return hasBouncedOffVertical;
     }
 }
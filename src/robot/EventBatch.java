@@ -0,0 +1,115 @@
+package robot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import robot.RobotModelEvent.EventType;
+
+/**
+ * Class to collect the RobotModelEvents fired within a RobotModel batch()
+ * call, coalescing them so that listeners are notified once per run of 
+ * related changes rather than once per change:
+ * <ul>
+ * <li>successive RobotAdded events for consecutive indices of the same
+ * parent become one RobotsAdded event;</li>
+ * <li>successive RobotRemoved events that empty a contiguous range of the
+ * same parent - repeatedly removing the Robot at one index, or working 
+ * backwards from the end of the range - become one RobotsRemoved event;</li>
+ * <li>successive RobotMoved events become one RobotMoved event whose ticks
+ * are their sum.</li>
+ * </ul>
+ * A run of a single add or remove is reported with its original event.
+ */
+final class EventBatch {
+	private final List<RobotModelEvent> _events = new ArrayList<RobotModelEvent>();
+
+	// === Run of adds or removes being coalesced.
+	private RobotModelEvent _runFirst = null;
+	private List<Robot> _runRobots = new ArrayList<Robot>();
+	private int _runIndex;
+	// True if the run removes Robots from its end towards its start.
+	private boolean _runBackward;
+	// ===
+
+	/**
+	 * Adds event to the batch.
+	 */
+	void add(RobotModelEvent event) {
+		EventType type = event.eventType();
+		if (_runFirst != null && event.parent() == _runFirst.parent() && type == _runFirst.eventType()) {
+			int size = _runRobots.size();
+			if (type == EventType.RobotAdded && event.index() == _runIndex + size) {
+				_runRobots.add(event.operand());
+				return;
+			}
+			if (type == EventType.RobotRemoved) {
+				if (event.index() == _runIndex && (size == 1 || !_runBackward)) {
+					_runBackward = false;
+					_runRobots.add(event.operand());
+					return;
+				}
+				if (event.index() == _runIndex - 1 && (size == 1 || _runBackward)) {
+					_runBackward = true;
+					_runIndex--;
+					_runRobots.add(event.operand());
+					return;
+				}
+			}
+		}
+		closeRun();
+
+		if (type == EventType.RobotAdded || type == EventType.RobotRemoved) {
+			_runFirst = event;
+			_runIndex = event.index();
+			_runRobots.add(event.operand());
+		} else if (type == EventType.RobotMoved && !_events.isEmpty()
+				&& _events.get(_events.size() - 1).eventType() == EventType.RobotMoved) {
+			RobotModelEvent previous = _events.remove(_events.size() - 1);
+			_events.add(RobotModelEvent.makeRobotMovedEvent(
+					event.operand(), event.source(), previous.ticks() + event.ticks()));
+		} else {
+			_events.add(event);
+		}
+	}
+
+	/**
+	 * Returns the coalesced events, in the order their changes were made,
+	 * and empties the batch.
+	 */
+	List<RobotModelEvent> drain() {
+		closeRun();
+		if (_events.isEmpty()) {
+			// Most batches, such as those applying submitted commands on each
+			// tick, are empty; draining them should not allocate.
+			return Collections.emptyList();
+		}
+		List<RobotModelEvent> events = new ArrayList<RobotModelEvent>(_events);
+		_events.clear();
+		return events;
+	}
+
+	/*
+	 * Appends the event describing the current run, if any.
+	 */
+	private void closeRun() {
+		if (_runFirst == null) {
+			return;
+		}
+		if (_runRobots.size() == 1) {
+			_events.add(_runFirst);
+		} else {
+			if (_runBackward) {
+				Collections.reverse(_runRobots);
+			}
+			_events.add(_runFirst.eventType() == EventType.RobotAdded
+					? RobotModelEvent.makeRobotsAddedEvent(_runRobots, _runFirst.parent(), _runIndex,
+							_runFirst.source())
+					: RobotModelEvent.makeRobotsRemovedEvent(_runRobots, _runFirst.parent(), _runIndex,
+							_runFirst.source()));
+		}
+		_runFirst = null;
+		_runRobots.clear();
+		_runBackward = false;
+	}
+}
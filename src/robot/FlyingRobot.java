@@ -53,4 +53,9 @@ public class FlyingRobot extends Robot {
     protected void doPaint(Painter painter) {
         painter.drawOval(_x,_y,_width,_height);
     }
+
+    @Override
+    protected Object spriteState() {
+        return PLAIN_SPRITE;
+    }
 }
\ No newline at end of file
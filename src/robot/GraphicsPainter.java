@@ -79,5 +79,10 @@ public class GraphicsPainter implements Painter {
 		_g.drawImage(img, x, y, width, height, null);		
 	}
 
+	@Override
+	public Rectangle getClipBounds() {
+		return _g.getClipBounds();
+	}
+
 
 }
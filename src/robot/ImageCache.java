@@ -0,0 +1,210 @@
+package robot;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Cache of images read from files and scaled to a particular size, so that
+ * robots painted with an image do not read, decode and scale it on every
+ * paint. Images are stored as BufferedImages compatible with the screen, when
+ * there is one, so that drawing them needs no conversion.
+ *
+ * Entries are keyed by file, width and height. The cache holds at most
+ * maxBytes bytes of pixels, evicting the least recently used entries first;
+ * an entry for a file whose modification time has changed is read again.
+ * Modification times are checked at most once per check interval, so that
+ * painting does not query the file system on every frame.
+ */
+public class ImageCache {
+	// Default bound on the size of the shared cache.
+	public static final long DEFAULT_MAX_BYTES = 32L * 1024 * 1024;
+
+	// Default interval between checks of a file's modification time.
+	public static final long DEFAULT_CHECK_INTERVAL_MILLIS = 1000;
+
+	private static final ImageCache SHARED = new ImageCache(DEFAULT_MAX_BYTES, DEFAULT_CHECK_INTERVAL_MILLIS);
+
+	private final long _maxBytes;
+
+	private final long _checkIntervalNanos;
+
+	// Entries in order of use, least recently used first.
+	private final LinkedHashMap<Key, Entry> _entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true);
+
+	private long _bytes = 0;
+
+	/**
+	 * Returns the ImageCache shared by all robots.
+	 */
+	public static ImageCache shared() {
+		return SHARED;
+	}
+
+	/**
+	 * Creates an ImageCache.
+	 * @param maxBytes the maximum number of bytes of pixels held.
+	 * @param checkIntervalMillis the minimum interval between checks of a
+	 * cached file's modification time; 0 to check on every get() call.
+	 */
+	public ImageCache(long maxBytes, long checkIntervalMillis) {
+		if (maxBytes < 0 || checkIntervalMillis < 0) {
+			throw new IllegalArgumentException();
+		}
+		_maxBytes = maxBytes;
+		_checkIntervalNanos = checkIntervalMillis * 1000000L;
+	}
+
+	/**
+	 * Returns the image read from file, scaled to width by height pixels.
+	 * @return the image, or null if the file could not be read when last
+	 * tried and has not been modified since.
+	 * @throws IOException if the file cannot be read now. The failure is
+	 * remembered, so the file is not read again until it is modified.
+	 * @throws IllegalArgumentException if width or height is not positive.
+	 */
+	public synchronized BufferedImage get(File file, int width, int height) throws IOException {
+		if (width <= 0 || height <= 0) {
+			throw new IllegalArgumentException();
+		}
+		Key key = new Key(file.getAbsolutePath(), width, height);
+		Entry entry = _entries.get(key);
+		long now = System.nanoTime();
+
+		if (entry != null) {
+			if (now - entry._checked < _checkIntervalNanos) {
+				return entry._image;
+			}
+			entry._checked = now;
+			if (file.lastModified() == entry._modified) {
+				return entry._image;
+			}
+			remove(key);
+		}
+
+		entry = new Entry();
+		entry._modified = file.lastModified();
+		entry._checked = now;
+		_entries.put(key, entry);
+		BufferedImage source = ImageIO.read(file);
+		if (source == null) {
+			throw new IOException("Unreadable image: " + file);
+		}
+		entry._image = scale(source, width, height);
+		entry._bytes = 4L * width * height;
+		_bytes += entry._bytes;
+		evict(key);
+		return entry._image;
+	}
+
+	/**
+	 * Discards every entry.
+	 */
+	public synchronized void clear() {
+		_entries.clear();
+		_bytes = 0;
+	}
+
+	/**
+	 * Returns the number of bytes of pixels held.
+	 */
+	public synchronized long bytes() {
+		return _bytes;
+	}
+
+	/**
+	 * Returns the number of entries held, including those recording files
+	 * that could not be read.
+	 */
+	public synchronized int size() {
+		return _entries.size();
+	}
+
+	/*
+	 * Evicts least recently used entries, other than the one for key, until
+	 * the cache is within its bound.
+	 */
+	private void evict(Key key) {
+		for (Iterator<Map.Entry<Key, Entry>> i = _entries.entrySet().iterator();
+				_bytes > _maxBytes && i.hasNext();) {
+			Map.Entry<Key, Entry> eldest = i.next();
+			if (!eldest.getKey().equals(key)) {
+				_bytes -= eldest.getValue()._bytes;
+				i.remove();
+			}
+		}
+	}
+
+	private void remove(Key key) {
+		Entry entry = _entries.remove(key);
+		if (entry != null) {
+			_bytes -= entry._bytes;
+		}
+	}
+
+	/*
+	 * Returns source scaled to width by height pixels, in a format compatible
+	 * with the screen where there is one.
+	 */
+	private static BufferedImage scale(BufferedImage source, int width, int height) {
+		BufferedImage image;
+		if (GraphicsEnvironment.isHeadless()) {
+			image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		} else {
+			GraphicsConfiguration configuration = GraphicsEnvironment.getLocalGraphicsEnvironment()
+					.getDefaultScreenDevice().getDefaultConfiguration();
+			image = configuration.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+		}
+		Graphics2D g = image.createGraphics();
+		g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+		g.drawImage(source, 0, 0, width, height, null);
+		g.dispose();
+		return image;
+	}
+
+	private static final class Key {
+		private final String _path;
+		private final int _width;
+		private final int _height;
+
+		Key(String path, int width, int height) {
+			_path = path;
+			_width = width;
+			_height = height;
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return _path.equals(key._path) && _width == key._width && _height == key._height;
+		}
+
+		@Override
+		public int hashCode() {
+			return (_path.hashCode() * 31 + _width) * 31 + _height;
+		}
+	}
+
+	private static final class Entry {
+		// Scaled image, or null if the file could not be read.
+		BufferedImage _image;
+		long _bytes;
+		// Modification time of the file when read.
+		long _modified;
+		// Time of the latest check of the modification time, from nanoTime().
+		long _checked;
+	}
+}
@@ -0,0 +1,354 @@
+package robot;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class to rebuild RobotModels from a journal written by a TickJournal. On
+ * creation a JournalReplayer skims the journal's record headers, noting the
+ * class definitions, the total number of ticks and the position of each
+ * keyframe. replay() then rebuilds the model as it was at a given tick by
+ * loading the last keyframe at or before that tick and applying the records
+ * that follow it; runs of ticks are applied with RobotModel's advance()
+ * method, so a replay costs time proportional to the size of the model and
+ * the number of mutations since the keyframe, not to the number of ticks.
+ *
+ * A journal whose final record is incomplete (e.g. because the application
+ * was terminated while writing it) is read up to the last complete record.
+ */
+public class JournalReplayer {
+	private static final int BUFFER_SIZE = 128 * 1024;
+
+	private final Path _path;
+
+	private final Dimension _bounds;
+
+	// Class names, indexed by class ID.
+	private final List<String> _classNames = new ArrayList<String>();
+
+	// Ticks and file offsets of the keyframes, in file order.
+	private long[] _keyframeTicks = new long[16];
+	private long[] _keyframeOffsets = new long[16];
+	private int _keyframeCount = 0;
+
+	private long _ticks = 0;
+
+	// File offset of the end of the last complete record.
+	private long _end;
+
+	/**
+	 * Creates a JournalReplayer for the specified journal file.
+	 * @throws IOException if the file cannot be read or is not a journal.
+	 */
+	public JournalReplayer(Path path) throws IOException {
+		_path = path;
+		try (Reader reader = new Reader(path)) {
+			if (!reader.request(14) || reader._buffer.getInt() != TickJournal.MAGIC) {
+				throw new IOException("Not a robot journal: " + path);
+			}
+			short version = reader._buffer.getShort();
+			// Version 1 journals differ only in never recording colours.
+			if (version < 1 || version > TickJournal.VERSION) {
+				throw new IOException("Unsupported journal version " + version);
+			}
+			_bounds = new Dimension(reader._buffer.getInt(), reader._buffer.getInt());
+			_end = reader.position();
+			scan(reader);
+		}
+		if (_keyframeCount == 0) {
+			throw new IOException("Journal holds no keyframe: " + path);
+		}
+	}
+
+	/**
+	 * Returns the number of ticks recorded in the journal.
+	 */
+	public long ticks() {
+		return _ticks;
+	}
+
+	/**
+	 * Returns the bounds of the recorded RobotModel.
+	 */
+	public Dimension bounds() {
+		return new Dimension(_bounds);
+	}
+
+	/**
+	 * Rebuilds the recorded RobotModel as it was at the specified tick, using
+	 * the default SimulationEngine.
+	 * @see #replay(long, SimulationEngine)
+	 */
+	public RobotModel replay(long tick) throws IOException {
+		return replay(tick, new TreeSimulationEngine());
+	}
+
+	/**
+	 * Rebuilds the recorded RobotModel as it was immediately after the 
+	 * specified tick, i.e. as RobotModelListeners observed it when notified
+	 * of that tick's movement. Replaying tick 0 rebuilds the model as it was
+	 * when journalling began.
+	 * @param engine the SimulationEngine for the rebuilt model to use.
+	 * @throws IllegalArgumentException if tick is negative or greater than
+	 * ticks().
+	 * @throws IOException if the journal cannot be read or references a robot
+	 * class that cannot be instantiated.
+	 */
+	public RobotModel replay(long tick, SimulationEngine engine) throws IOException {
+		if (tick < 0 || tick > _ticks) {
+			throw new IllegalArgumentException();
+		}
+		int keyframe = 0;
+		while (keyframe + 1 < _keyframeCount && _keyframeTicks[keyframe + 1] <= tick) {
+			keyframe++;
+		}
+
+		RobotModel model = new RobotModel(_bounds, engine);
+		Map<Integer, Robot> robots = new HashMap<Integer, Robot>();
+		Map<Integer, Constructor<?>[]> constructors = new HashMap<Integer, Constructor<?>[]>();
+
+		try (Reader reader = new Reader(_path)) {
+			reader.seek(_keyframeOffsets[keyframe]);
+			reader.request(TickJournal.RECORD_HEADER_SIZE + 8);
+			reader._buffer.get();
+			reader._buffer.getInt();
+			long current = reader._buffer.getLong();
+
+			// Restore the root's own state and then rebuild its children.
+			readRobot(reader, model, null, robots, constructors);
+
+			while (current < tick && reader.position() < _end) {
+				long start = reader.position();
+				reader.request(TickJournal.RECORD_HEADER_SIZE);
+				byte type = reader._buffer.get();
+				long end = start + TickJournal.RECORD_HEADER_SIZE + reader._buffer.getInt();
+
+				if (type == TickJournal.CLOCK) {
+					reader.request(8);
+					long ticks = reader._buffer.getLong();
+					if (current + ticks > tick) {
+						model.advance(tick - current);
+						break;
+					}
+					model.advance(ticks);
+					current += ticks;
+				} else if (type == TickJournal.ADD) {
+					reader.request(4);
+					CarrierRobot parent = (CarrierRobot) robots.get(reader._buffer.getInt());
+					readRobot(reader, model, parent, robots, constructors);
+				} else if (type == TickJournal.REMOVE) {
+					reader.request(4);
+					model.remove(robots.remove(reader._buffer.getInt()));
+				} else if (type == TickJournal.KEYFRAME) {
+					// Written only at a tick beyond the one requested.
+					break;
+				}
+				reader.seek(end);
+			}
+		}
+		return model;
+	}
+
+	/*
+	 * Skims the records following the header.
+	 */
+	private void scan(Reader reader) throws IOException {
+		long size = reader._channel.size();
+
+		while (reader.request(TickJournal.RECORD_HEADER_SIZE)) {
+			long start = reader.position();
+			byte type = reader._buffer.get();
+			long end = start + TickJournal.RECORD_HEADER_SIZE + reader._buffer.getInt();
+			if (end > size) {
+				break;
+			}
+
+			if (type == TickJournal.DEFINE_CLASS) {
+				reader.request(4);
+				int classId = reader._buffer.getInt();
+				String name = reader.readString();
+				while (_classNames.size() <= classId) {
+					_classNames.add(null);
+				}
+				_classNames.set(classId, name);
+			} else if (type == TickJournal.CLOCK) {
+				reader.request(8);
+				_ticks += reader._buffer.getLong();
+			} else if (type == TickJournal.KEYFRAME) {
+				reader.request(8);
+				if (_keyframeCount == _keyframeTicks.length) {
+					_keyframeTicks = Arrays.copyOf(_keyframeTicks, _keyframeCount * 2);
+					_keyframeOffsets = Arrays.copyOf(_keyframeOffsets, _keyframeCount * 2);
+				}
+				_keyframeTicks[_keyframeCount] = reader._buffer.getLong();
+				_keyframeOffsets[_keyframeCount] = start;
+				_keyframeCount++;
+			}
+			reader.seek(end);
+			_end = end;
+		}
+	}
+
+	/*
+	 * Reads a robot and its descendants and adds it to parent. If parent is
+	 * null the state read is applied to the model's root.
+	 */
+	private Robot readRobot(Reader reader, RobotModel model, CarrierRobot parent,
+			Map<Integer, Robot> robots, Map<Integer, Constructor<?>[]> constructors)
+			throws IOException {
+		reader.request(37);
+		int id = reader._buffer.getInt();
+		int classId = reader._buffer.getInt();
+		int x = reader._buffer.getInt();
+		int y = reader._buffer.getInt();
+		int deltaX = reader._buffer.getInt();
+		int deltaY = reader._buffer.getInt();
+		int width = reader._buffer.getInt();
+		int height = reader._buffer.getInt();
+		int flags = reader._buffer.get();
+		String name = (flags & TickJournal.NAMED) != 0 ? reader.readString() : null;
+		Color colour = null;
+		if ((flags & TickJournal.COLOURED) != 0) {
+			reader.request(4);
+			colour = new Color(reader._buffer.getInt(), true);
+		}
+
+		Robot robot;
+		if (parent == null) {
+			robot = model.root();
+			robot._x = x;
+			robot._y = y;
+			robot._deltaX = deltaX;
+			robot._deltaY = deltaY;
+		} else {
+			robot = create(classId, x, y, deltaX, deltaY, width, height, name, constructors);
+		}
+		if (robot instanceof DynamicWheeledRobot && colour != null) {
+			((DynamicWheeledRobot) robot).restore(colour, (flags & TickJournal.FILLED) != 0);
+		}
+		robot._didBounceOffVertical = (flags & TickJournal.BOUNCED_OFF_VERTICAL) != 0;
+		robot._didBounceOffHorizontal = (flags & TickJournal.BOUNCED_OFF_HORIZONTAL) != 0;
+		robots.put(id, robot);
+
+		reader.request(4);
+		int children = reader._buffer.getInt();
+		if (robot instanceof CarrierRobot) {
+			CarrierRobot carrier = (CarrierRobot) robot;
+			carrier.setCollisionDetection((flags & TickJournal.COLLISION_DETECTION) != 0);
+			for (int i = 0; i < children; i++) {
+				readRobot(reader, model, carrier, robots, constructors);
+			}
+		}
+		if (parent != null && !model.add(robot, parent)) {
+			throw new IOException("Journalled robot " + id + " does not fit its parent");
+		}
+		return robot;
+	}
+
+	/*
+	 * Instantiates a robot of the class with the specified ID through its
+	 * (x, y, deltaX, deltaY, width, height[, name]) constructor. The 
+	 * constructors found are cached, indexed by class ID: element 0 of each 
+	 * array is the unnamed constructor and element 1 the named one.
+	 */
+	private Robot create(int classId, int x, int y, int deltaX, int deltaY, int width, int height,
+			String name, Map<Integer, Constructor<?>[]> constructors) throws IOException {
+		String className = classId < _classNames.size() ? _classNames.get(classId) : null;
+		try {
+			Constructor<?>[] cached = constructors.get(classId);
+			if (cached == null) {
+				cached = new Constructor<?>[2];
+				constructors.put(classId, cached);
+			}
+			int which = name == null ? 0 : 1;
+			if (cached[which] == null) {
+				Class<? extends Robot> type = Class.forName(className).asSubclass(Robot.class);
+				cached[which] = name == null
+						? type.getConstructor(int.class, int.class, int.class, int.class, int.class, int.class)
+						: type.getConstructor(int.class, int.class, int.class, int.class, int.class, int.class,
+								String.class);
+			}
+			return (Robot) (name == null ? cached[0].newInstance(x, y, deltaX, deltaY, width, height)
+					: cached[1].newInstance(x, y, deltaX, deltaY, width, height, name));
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			throw new IOException("Cannot recreate journalled robot of class " + className, e);
+		}
+	}
+
+	/*
+	 * Buffered reader over a FileChannel that tracks its file position.
+	 */
+	private static class Reader implements Closeable {
+		final FileChannel _channel;
+		final ByteBuffer _buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+		// File offset of the first byte in the buffer.
+		private long _bufferStart = 0;
+
+		Reader(Path path) throws IOException {
+			_channel = FileChannel.open(path, StandardOpenOption.READ);
+			_buffer.limit(0);
+		}
+
+		long position() {
+			return _bufferStart + _buffer.position();
+		}
+
+		void seek(long position) {
+			if (position >= _bufferStart && position <= _bufferStart + _buffer.limit()) {
+				_buffer.position((int) (position - _bufferStart));
+			} else {
+				_bufferStart = position;
+				_buffer.limit(0);
+			}
+		}
+
+		/*
+		 * Ensures that the buffer holds at least the specified number of bytes
+		 * from the current position. Returns false if the file ends first.
+		 */
+		boolean request(int bytes) throws IOException {
+			if (_buffer.remaining() >= bytes) {
+				return true;
+			}
+			long position = position();
+			_buffer.compact();
+			_bufferStart = position;
+			while (_buffer.position() < bytes) {
+				int read = _channel.read(_buffer, _bufferStart + _buffer.position());
+				if (read < 0) {
+					break;
+				}
+			}
+			_buffer.flip();
+			return _buffer.remaining() >= bytes;
+		}
+
+		String readString() throws IOException {
+			request(2);
+			int length = _buffer.getShort() & 0xFFFF;
+			request(length);
+			byte[] bytes = new byte[length];
+			_buffer.get(bytes);
+			return new String(bytes, StandardCharsets.UTF_8);
+		}
+
+		@Override
+		public void close() throws IOException {
+			_channel.close();
+		}
+	}
+}
@@ -9,6 +9,11 @@ import java.awt.image.ImageObserver;
  * logging simply logging them. The contents of a MockPainter object's
  * log can be retrieved by a call to toString() on the MockPainter.
  * 
+ * A MockPainter can be given a clip, as a Graphics object would have, to
+ * check that robots outside it are not painted. The clip is specified in the
+ * coordinate space in effect when it is set, and followed through
+ * subsequent translate() calls.
+ * 
  * @author Craig Sutherland
  * 
  */
@@ -17,6 +22,13 @@ public class MockPainter implements Painter {
 	private StringBuffer _log = new StringBuffer();
 	private Color _storedColor;
 
+	// Clip, in untranslated coordinates, or null if not clipped.
+	private Rectangle _clip;
+
+	// Sum of the translate() calls made.
+	private int _translateX;
+	private int _translateY;
+
 	/**
 	 * Returns the contents of this MockPainter's log.
 	 */
@@ -69,7 +81,23 @@ public class MockPainter implements Painter {
 
 	@Override
 	public void translate(int x, int y) {
+		_translateX += x;
+		_translateY += y;
+	}
 
+	/**
+	 * Sets the clip, in the current coordinate space, or removes it if clip
+	 * is null.
+	 */
+	public void setClip(Rectangle clip) {
+		_clip = clip == null ? null
+				: new Rectangle(clip.x + _translateX, clip.y + _translateY, clip.width, clip.height);
+	}
+
+	@Override
+	public Rectangle getClipBounds() {
+		return _clip == null ? null
+				: new Rectangle(_clip.x - _translateX, _clip.y - _translateY, _clip.width, _clip.height);
 	}
 
 	@Override
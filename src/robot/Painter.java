@@ -41,4 +41,22 @@ public interface Painter {
 	public void drawCentredText(String name, int x, int y, int width, int height);
 
 	public void drawImage(Image _picture, int _x, int _y, int _width, int _height);
+
+	/**
+	 * Returns the bounds of the area that painting can affect, in the current
+	 * coordinate space (i.e. allowing for any translate() calls), or null if
+	 * painting is not clipped. Robots lying wholly outside these bounds need
+	 * not be painted.
+	 */
+	public Rectangle getClipBounds();
+
+	/**
+	 * Draws robot, including its name, in one step, e.g. from a cached
+	 * image. Returns false, having drawn nothing, if robot must instead be
+	 * painted with the primitive drawing methods, which is what this default
+	 * implementation always does.
+	 */
+	public default boolean drawSprite(Robot robot) {
+		return false;
+	}
 }
@@ -0,0 +1,253 @@
+package robot;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * SimulationEngine implementation that moves the robots in a composition
+ * using fork/join parallelism. The children of a CarrierRobot move
+ * independently of one another - each is bounded only by its parent's width
+ * and height - so a large child list can be split into ranges and a large
+ * subtree can be moved as a separate task.
+ *
+ * Work is measured in robots moved: a child weighs one plus the number of
+ * robots below it. A range of children weighing more than threshold is
+ * split in two halves of about equal weight, so a wide tree of modest
+ * carriers is divided as finely as one large child list; a child
+ * CarrierRobot is moved as a separate task whenever its subtree holds at
+ * least threshold robots. Smaller pieces of work are moved sequentially,
+ * exactly as TreeSimulationEngine would move them.
+ *
+ * Collisions between the children of a CarrierRobot that has collision
+ * detection enabled are resolved once all of those children have moved.
+ *
+ * Note that CarrierRobots are moved according to Robot's move() rules and
+ * their children are then moved by this engine, so a CarrierRobot subclass
+ * that overrides move() is not honoured.
+ */
+public class ParallelSimulationEngine implements SimulationEngine {
+	// Default minimum amount of work (robots) worth handing to another task.
+	public static final int DEFAULT_THRESHOLD = 2048;
+
+	private final ForkJoinPool _pool;
+
+	private volatile int _threshold;
+
+	// Set when the composition has changed and subtree sizes are out of date.
+	private boolean _stale = true;
+
+	/**
+	 * Creates a ParallelSimulationEngine that runs on the common ForkJoinPool
+	 * with the default threshold.
+	 */
+	public ParallelSimulationEngine() {
+		this(DEFAULT_THRESHOLD, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a ParallelSimulationEngine that runs on the common ForkJoinPool
+	 * with the specified threshold.
+	 */
+	public ParallelSimulationEngine(int threshold) {
+		this(threshold, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a ParallelSimulationEngine.
+	 * @param threshold the number of robots above which work is split into
+	 * separate tasks.
+	 * @param pool the ForkJoinPool on which tasks are run.
+	 * @throws IllegalArgumentException if threshold is less than 1.
+	 */
+	public ParallelSimulationEngine(int threshold, ForkJoinPool pool) {
+		setThreshold(threshold);
+		_pool = pool;
+	}
+
+	/**
+	 * Returns the number of robots above which work is split.
+	 */
+	public int threshold() {
+		return _threshold;
+	}
+
+	/**
+	 * Sets the number of robots above which work is split into separate
+	 * tasks. Lower values expose more parallelism at the cost of more task
+	 * overhead.
+	 * @throws IllegalArgumentException if threshold is less than 1.
+	 */
+	public void setThreshold(int threshold) {
+		if (threshold < 1) {
+			throw new IllegalArgumentException();
+		}
+		_threshold = threshold;
+	}
+
+	/**
+	 * Returns the parallelism of the ForkJoinPool this engine runs on.
+	 */
+	public int parallelism() {
+		return _pool.getParallelism();
+	}
+
+	/**
+	 * @see robot.SimulationEngine.clock
+	 */
+	@Override
+	public void clock(CarrierRobot root, int width, int height) {
+		if (_stale) {
+			countDescendants(root);
+			_stale = false;
+		}
+		root.moveSelf(width, height);
+
+		if (root._descendantCount < _threshold) {
+			moveChildren(root);
+		} else {
+			_pool.invoke(new MoveTask(root, 0, root._ChildRobotList.size(), _threshold));
+		}
+		root.resolveCollisions();
+	}
+
+	/**
+	 * Computes each Robot's state directly (see BounceMotion). This takes
+	 * time proportional to the number of robots rather than to ticks, so it
+	 * is not split into tasks.
+	 * @see robot.SimulationEngine.advance
+	 */
+	@Override
+	public void advance(CarrierRobot root, int width, int height, long ticks) {
+		BounceMotion.advance(root, width, height, ticks);
+	}
+
+	/**
+	 * @see robot.SimulationEngine.structureChanged
+	 */
+	@Override
+	public void structureChanged() {
+		_stale = true;
+	}
+
+	/*
+	 * Moves the children of carrier (and their children) sequentially,
+	 * forking no tasks. Used when the whole composition is smaller than the
+	 * threshold.
+	 */
+	private static void moveChildren(CarrierRobot carrier) {
+		List<Robot> children = carrier._ChildRobotList;
+		for (int i = 0; i < children.size(); i++) {
+			children.get(i).move(carrier._width, carrier._height);
+		}
+	}
+
+	/*
+	 * Records on each CarrierRobot in the composition rooted at carrier the
+	 * number of robots below it and the prefix sums of its children's
+	 * weights, and returns that number.
+	 */
+	private static int countDescendants(CarrierRobot carrier) {
+		List<Robot> children = carrier._ChildRobotList;
+		int[] weights = carrier._childWeights;
+		if (weights == null || weights.length != children.size() + 1) {
+			weights = new int[children.size() + 1];
+			carrier._childWeights = weights;
+		}
+		int count = 0;
+		for (int i = 0; i < children.size(); i++) {
+			Robot child = children.get(i);
+			count++;
+			if (child instanceof CarrierRobot) {
+				count += countDescendants((CarrierRobot) child);
+			}
+			weights[i + 1] = count;
+		}
+		carrier._descendantCount = count;
+		return count;
+	}
+
+	/*
+	 * Task that moves a range of a CarrierRobot's children, together with
+	 * their descendants.
+	 */
+	@SuppressWarnings("serial")
+	private static class MoveTask extends RecursiveAction {
+		private final CarrierRobot _carrier;
+		private final int _from;
+		private final int _to;
+		private final int _threshold;
+
+		// Link to the previously forked sibling task, so forked tasks can be
+		// joined without allocating a collection.
+		private MoveTask _next;
+
+		MoveTask(CarrierRobot carrier, int from, int to, int threshold) {
+			_carrier = carrier;
+			_from = from;
+			_to = to;
+			_threshold = threshold;
+		}
+
+		@Override
+		protected void compute() {
+			// Weights are only missing if the composition changed without
+			// structureChanged(); the range is then moved as a whole.
+			int[] weights = _carrier._childWeights;
+			if (_to - _from > 1 && weights != null && weights.length > _to
+					&& weights[_to] - weights[_from] > _threshold) {
+				int middle = middle(weights, _from, _to);
+				invokeAll(new MoveTask(_carrier, _from, middle, _threshold),
+						new MoveTask(_carrier, middle, _to, _threshold));
+				return;
+			}
+
+			List<Robot> children = _carrier._ChildRobotList;
+			MoveTask forked = null;
+
+			for (int i = _from; i < _to; i++) {
+				Robot child = children.get(i);
+
+				if (child instanceof CarrierRobot && ((CarrierRobot) child)._descendantCount >= _threshold) {
+					// Large subtree: move the child itself here and hand its
+					// children to a separate task.
+					CarrierRobot carrier = (CarrierRobot) child;
+					carrier.moveSelf(_carrier._width, _carrier._height);
+					MoveTask task = new MoveTask(carrier, 0, carrier._ChildRobotList.size(), _threshold);
+					task._next = forked;
+					forked = task;
+					task.fork();
+				} else {
+					child.move(_carrier._width, _carrier._height);
+				}
+			}
+
+			while (forked != null) {
+				forked.join();
+				// Collisions can only be resolved once every child has moved.
+				forked._carrier.resolveCollisions();
+				forked = forked._next;
+			}
+		}
+
+		/*
+		 * Returns the index, strictly between from and to, that splits the
+		 * children from to to - 1 into two ranges of about equal weight.
+		 */
+		private static int middle(int[] weights, int from, int to) {
+			int half = (weights[from] + weights[to]) >>> 1;
+			int low = from + 1;
+			int high = to - 1;
+			// Find the first index whose prefix weight reaches half.
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (weights[mid] < half) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			return low;
+		}
+	}
+}
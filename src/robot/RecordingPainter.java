@@ -0,0 +1,299 @@
+package robot;
+
+import java.awt.Color;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.image.ImageObserver;
+import java.util.Arrays;
+
+/**
+ * Implementation of the Painter interface that records the calls made to it
+ * as a display list, which can later be replayed onto any other Painter. A
+ * frame can thus be recorded on one thread, e.g. from a RobotSnapshot with a
+ * SnapshotRenderer, and replayed on the Event Dispatch Thread, and two frames
+ * can be compared without painting either.
+ *
+ * Calls are recorded as a stream of opcodes with their int operands held in
+ * a separate array, and their object operands (colours, images and names)
+ * by reference in a third. The arrays are kept when the display list is
+ * cleared, so a RecordingPainter reused from frame to frame allocates nothing
+ * once it has grown to the size of a frame, except when getClipBounds()
+ * returns a clip.
+ *
+ * getColor() returns the colour most recently set, or null if none has been,
+ * and replaying setColor(null) restores the colour the target Painter had
+ * when replay started. A RecordingPainter is not thread-safe; a display list
+ * handed between threads must be published safely, as with any other object.
+ */
+public class RecordingPainter implements Painter {
+	// Opcodes, followed by the number of int and object operands recorded.
+	private static final byte RECT = 0;			// 4 ints
+	private static final byte OVAL = 1;			// 4 ints
+	private static final byte LINE = 2;			// 4 ints
+	private static final byte FILL_RECT = 3;	// 4 ints
+	private static final byte COLOR = 4;		// 1 object
+	private static final byte IMAGE = 5;		// 2 ints, 2 objects
+	private static final byte TRANSLATE = 6;	// 2 ints
+	private static final byte TEXT = 7;			// 4 ints, 1 object
+	private static final byte SCALED_IMAGE = 8;	// 4 ints, 1 object
+
+	private byte[] _ops = new byte[256];
+	private int[] _ints = new int[1024];
+	private Object[] _objects = new Object[64];
+
+	private int _opCount = 0;
+	private int _intCount = 0;
+	private int _objectCount = 0;
+
+	// Colour most recently set, or null.
+	private Color _color;
+
+	// Clip, in untranslated coordinates, or null if not clipped.
+	private Rectangle _clip;
+
+	// Sum of the translate() calls recorded.
+	private int _translateX;
+	private int _translateY;
+
+	/**
+	 * Discards the display list, keeping the clip, so that this
+	 * RecordingPainter can record another frame.
+	 */
+	public void clear() {
+		// Drop references to colours and images that are no longer painted.
+		Arrays.fill(_objects, 0, _objectCount, null);
+		_opCount = 0;
+		_intCount = 0;
+		_objectCount = 0;
+		_color = null;
+		_translateX = 0;
+		_translateY = 0;
+	}
+
+	/**
+	 * Returns the number of calls recorded since the display list was last
+	 * cleared.
+	 */
+	public int size() {
+		return _opCount;
+	}
+
+	/**
+	 * Sets the clip that getClipBounds() reports, in the current coordinate
+	 * space, or removes it if clip is null. Robots outside the clip are then
+	 * left out of the display list.
+	 */
+	public void setClip(Rectangle clip) {
+		_clip = clip == null ? null
+				: new Rectangle(clip.x + _translateX, clip.y + _translateY, clip.width, clip.height);
+	}
+
+	/**
+	 * Makes the calls recorded onto painter, in order. setColor() calls that
+	 * would not change painter's colour are left out.
+	 */
+	public void replay(Painter painter) {
+		int ints = 0;
+		int objects = 0;
+		boolean colorSet = false;
+		Color initial = null;
+		Color current = null;
+
+		for (int op = 0; op < _opCount; op++) {
+			switch (_ops[op]) {
+			case RECT:
+				painter.drawRect(_ints[ints], _ints[ints + 1], _ints[ints + 2], _ints[ints + 3]);
+				ints += 4;
+				break;
+			case OVAL:
+				painter.drawOval(_ints[ints], _ints[ints + 1], _ints[ints + 2], _ints[ints + 3]);
+				ints += 4;
+				break;
+			case LINE:
+				painter.drawLine(_ints[ints], _ints[ints + 1], _ints[ints + 2], _ints[ints + 3]);
+				ints += 4;
+				break;
+			case FILL_RECT:
+				painter.fillRect(_ints[ints], _ints[ints + 1], _ints[ints + 2], _ints[ints + 3]);
+				ints += 4;
+				break;
+			case COLOR:
+				if (!colorSet) {
+					initial = painter.getColor();
+					current = initial;
+					colorSet = true;
+				}
+				Color color = (Color) _objects[objects++];
+				if (color == null) {
+					color = initial;
+				}
+				if (color != null && !color.equals(current)) {
+					painter.setColor(color);
+					current = color;
+				}
+				break;
+			case IMAGE:
+				painter.drawImage((Image) _objects[objects], _ints[ints], _ints[ints + 1],
+						(ImageObserver) _objects[objects + 1]);
+				ints += 2;
+				objects += 2;
+				break;
+			case TRANSLATE:
+				painter.translate(_ints[ints], _ints[ints + 1]);
+				ints += 2;
+				break;
+			case TEXT:
+				painter.drawCentredText((String) _objects[objects++], _ints[ints], _ints[ints + 1],
+						_ints[ints + 2], _ints[ints + 3]);
+				ints += 4;
+				break;
+			case SCALED_IMAGE:
+				painter.drawImage((Image) _objects[objects++], _ints[ints], _ints[ints + 1],
+						_ints[ints + 2], _ints[ints + 3]);
+				ints += 4;
+				break;
+			default:
+				throw new IllegalStateException("Unknown opcode " + _ops[op]);
+			}
+		}
+	}
+
+	/**
+	 * Returns true if this RecordingPainter's display list makes the same
+	 * calls as other's. Colours and names are compared with equals(), images
+	 * and observers by identity.
+	 */
+	public boolean sameAs(RecordingPainter other) {
+		if (_opCount != other._opCount || _intCount != other._intCount
+				|| _objectCount != other._objectCount) {
+			return false;
+		}
+		for (int i = 0; i < _opCount; i++) {
+			if (_ops[i] != other._ops[i]) {
+				return false;
+			}
+		}
+		for (int i = 0; i < _intCount; i++) {
+			if (_ints[i] != other._ints[i]) {
+				return false;
+			}
+		}
+		for (int i = 0; i < _objectCount; i++) {
+			Object object = _objects[i];
+			Object otherObject = other._objects[i];
+			if (object != otherObject && (object == null || object instanceof Image
+					|| object instanceof ImageObserver || !object.equals(otherObject))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public void drawRect(int x, int y, int width, int height) {
+		record(RECT, x, y, width, height);
+	}
+
+	@Override
+	public void drawOval(int x, int y, int width, int height) {
+		record(OVAL, x, y, width, height);
+	}
+
+	@Override
+	public void drawLine(int x1, int y1, int x2, int y2) {
+		record(LINE, x1, y1, x2, y2);
+	}
+
+	@Override
+	public void fillRect(int x, int y, int width, int height) {
+		record(FILL_RECT, x, y, width, height);
+	}
+
+	@Override
+	public void setColor(Color robotColor) {
+		op(COLOR);
+		object(robotColor);
+		_color = robotColor;
+	}
+
+	@Override
+	public Color getColor() {
+		return _color;
+	}
+
+	@Override
+	public void drawImage(Image image, int x, int y, ImageObserver observer) {
+		op(IMAGE);
+		ints(2);
+		_ints[_intCount++] = x;
+		_ints[_intCount++] = y;
+		object(image);
+		object(observer);
+	}
+
+	@Override
+	public void translate(int x, int y) {
+		op(TRANSLATE);
+		ints(2);
+		_ints[_intCount++] = x;
+		_ints[_intCount++] = y;
+		_translateX += x;
+		_translateY += y;
+	}
+
+	@Override
+	public void drawCentredText(String name, int x, int y, int width, int height) {
+		record(TEXT, x, y, width, height);
+		object(name);
+	}
+
+	@Override
+	public void drawImage(Image image, int x, int y, int width, int height) {
+		record(SCALED_IMAGE, x, y, width, height);
+		object(image);
+	}
+
+	@Override
+	public Rectangle getClipBounds() {
+		return _clip == null ? null
+				: new Rectangle(_clip.x - _translateX, _clip.y - _translateY, _clip.width, _clip.height);
+	}
+
+	/*
+	 * Records an opcode taking four int operands.
+	 */
+	private void record(byte opcode, int a, int b, int c, int d) {
+		op(opcode);
+		ints(4);
+		int[] ints = _ints;
+		int count = _intCount;
+		ints[count] = a;
+		ints[count + 1] = b;
+		ints[count + 2] = c;
+		ints[count + 3] = d;
+		_intCount = count + 4;
+	}
+
+	private void op(byte opcode) {
+		if (_opCount == _ops.length) {
+			_ops = Arrays.copyOf(_ops, _ops.length * 2);
+		}
+		_ops[_opCount++] = opcode;
+	}
+
+	/*
+	 * Makes room for the specified number of int operands.
+	 */
+	private void ints(int count) {
+		if (_intCount + count > _ints.length) {
+			_ints = Arrays.copyOf(_ints, _ints.length * 2);
+		}
+	}
+
+	private void object(Object object) {
+		if (_objectCount == _objects.length) {
+			_objects = Arrays.copyOf(_objects, _objects.length * 2);
+		}
+		_objects[_objectCount++] = object;
+	}
+}
@@ -1,6 +1,8 @@
 package robot;
 
-import java.util.ArrayList;
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -12,7 +14,7 @@ import java.util.List;
  * @author Craig Sutherland
  * 
  */
-public abstract class Robot {
+public abstract class Robot implements Cloneable {
 	// === Constants for default values. ===
 	protected static final int DEFAULT_X_POS = 0;
 	
@@ -25,6 +27,10 @@ public abstract class Robot {
 	protected static final int DEFAULT_HEIGHT = 35;
 
 	protected static final int DEFAULT_WIDTH = 25;
+
+	// Sprite state of Robots that look the same whenever their class, width,
+	// height and name match (see spriteState()).
+	protected static final Object PLAIN_SPRITE = new Object();
 	// ===
 
 	// === Instance variables, accessible by subclasses.
@@ -49,6 +55,23 @@ public abstract class Robot {
 	protected String _Name = null;
 	// ===
 
+	// === Slot binding, set while this Robot is attached to an 
+	// ArraySimulationEngine. While attached, the engine's arrays hold the
+	// authoritative movement state and the fields above are refreshed lazily.
+	ArraySimulationEngine _engine = null;
+
+	int _slot = -1;
+
+	int _pulledGeneration = -1;
+	// ===
+
+	// Position of this Robot within its parent's ChildRobotList, or -1.
+	int _childIndex = -1;
+
+	// Immutable path from the root to this Robot, or null until path() is
+	// next called. Whenever it is set, so is the parent's path.
+	private volatile List<Robot> _path = null;
+
 	/**
 	 * Creates a Robot object with default values for instance variables.
 	 */
@@ -102,6 +125,17 @@ public abstract class Robot {
 	 * @param height height of two-dimensional world.
 	 */
 	public void move(int width, int height) {
+		moveSelf(width, height);
+	}
+
+	/**
+	 * Implements Robot's movement algorithm for this Robot alone, regardless
+	 * of any move() override. SimulationEngines use this to move a
+	 * CarrierRobot without also moving its children.
+	 */
+	final void moveSelf(int width, int height) {
+		pull();
+		
 		int nextX = _x + _deltaX;
 		int nextY = _y + _deltaY;
 		_didBounceOffHorizontal = false;
@@ -129,6 +163,10 @@ public abstract class Robot {
 
 		_x = nextX;
 		_y = nextY;
+		
+		if (_engine != null) {
+			_engine.write(this);
+		}
 	}
 
 	/**
@@ -138,12 +176,52 @@ public abstract class Robot {
 	 * @param painter the Painter object used for drawing
 	 */
 	public void paint(Painter painter) {
+		pull();
+		if (painter.drawSprite(this)) {
+			return;
+		}
+		paintDirectly(painter);
+	}
+
+	/*
+	 * Paints this Robot's name, if it has one, and then its shape.
+	 */
+	final void paintDirectly(Painter painter) {
 		if (_Name != null) {
 			painter.drawCentredText(_Name,_x,_y,_width,_height);
 		}
 		doPaint(painter);
 	}
 
+	/**
+	 * Returns an object identifying how this Robot looks, so that a 
+	 * SpriteCachingPainter can draw it from a sprite shared with Robots of 
+	 * the same class, width, height and name that return an equal object and
+	 * are painted in the same colour and font. Returns null, the default, if
+	 * this Robot must always be painted directly, e.g. because doPaint() 
+	 * draws outside its bounds or reads other state. Robots that look the
+	 * same whenever those properties match return PLAIN_SPRITE.
+	 * 
+	 * doPaint() is not called when this Robot is drawn from a sprite, so any
+	 * state that doPaint() updates must be updated here too.
+	 */
+	protected Object spriteState() {
+		return null;
+	}
+
+	/**
+	 * Returns true if painting this Robot could affect the area clip, given
+	 * in its parent's coordinate space. Bounds and outline are tested; a 
+	 * Robot with a name always counts as visible, since the name may overflow
+	 * its bounds.
+	 */
+	boolean isVisibleIn(Rectangle clip) {
+		pull();
+		// An outline drawn with drawRect() covers one more pixel each way.
+		return _Name != null || (_x < clip.x + clip.width && clip.x <= _x + _width
+				&& _y < clip.y + clip.height && clip.y <= _y + _height);
+	}
+
 	/**
 	 * Method to be implemented by concrete subclasses to handle subclass
 	 * specific painting.
@@ -155,6 +233,7 @@ public abstract class Robot {
 	 * Returns this Robot object's x position.
 	 */
 	public int x() {
+		pull();
 		return _x;
 	}
 	
@@ -162,6 +241,7 @@ public abstract class Robot {
 	 * Returns this Robot object's y position.
 	 */
 	public int y() {
+		pull();
 		return _y;
 	}
 	
@@ -169,6 +249,7 @@ public abstract class Robot {
 	 * Returns this Robot object's speed and direction.
 	 */
 	public int deltaX() {
+		pull();
 		return _deltaX;
 	}
 	
@@ -176,6 +257,7 @@ public abstract class Robot {
 	 * Returns this Robot object's speed and direction.
 	 */
 	public int deltaY() {
+		pull();
 		return _deltaY;
 	}
 	
@@ -198,6 +280,7 @@ public abstract class Robot {
 	 * @return returns if the robot has bounced off a vertical wall
 	 */
 	public boolean didBounceOffVertical() {
+		pull();
 		return _didBounceOffVertical;
 	}
 
@@ -206,6 +289,7 @@ public abstract class Robot {
 	 * @return returns if the robot has bounced off a horizontal wall
 	 */
 	public boolean didBounceOffHorizontal() {
+		pull();
 		return _didBounceOffHorizontal;
 	}
 	
@@ -229,20 +313,51 @@ public abstract class Robot {
 
 	/**
 	 * Method to get the hierarchy of a robot. This method is useful when there are robots
-	 * which can carry other robots
-	 * @return a list of 'Robot'(s) that are in the path of the particular robot instance.
+	 * which can carry other robots. The path is cached until this robot or one of its
+	 * ancestors is added to or removed from a CarrierRobot, so repeated calls are
+	 * constant-time and do not allocate.
+	 * @return an unmodifiable list of 'Robot'(s) that are in the path of the particular
+	 * robot instance, starting with the root.
 	 *
 	 */
 	public List<Robot> path() {
-		List<Robot> temp = new ArrayList<>();
-		if (this._ParentCarrierRobot == null) {
-			temp.add(this);
-			return temp;
-		} else {
-			temp.addAll(this._ParentCarrierRobot.path());
-			temp.add(this);
-			return temp;
+		List<Robot> path = _path;
+		if (path == null) {
+			Robot[] robots;
+			if (this._ParentCarrierRobot == null) {
+				robots = new Robot[] {this};
+			} else {
+				List<Robot> parentPath = this._ParentCarrierRobot.path();
+				robots = parentPath.toArray(new Robot[parentPath.size() + 1]);
+				robots[robots.length - 1] = this;
+			}
+			path = Collections.unmodifiableList(Arrays.asList(robots));
+			_path = path;
 		}
+		return path;
+	}
+
+	/**
+	 * Returns the number of ancestors of this robot: 0 for a robot without a
+	 * parent.
+	 */
+	public int depth() {
+		return path().size() - 1;
+	}
+
+	/**
+	 * Discards the cached paths of this robot and its descendants, following
+	 * a change of parent.
+	 */
+	void invalidatePath() {
+		_path = null;
+	}
+
+	/*
+	 * Returns true if this robot's path is cached.
+	 */
+	boolean hasPath() {
+		return _path != null;
 	}
 
 	/**
@@ -257,4 +372,37 @@ public abstract class Robot {
 	public String text() {
 		return _Name;
 	}
+
+	/**
+	 * Returns a copy of this Robot that is detached from any parent and 
+	 * SimulationEngine, for painting state recorded in a RobotSnapshot (see
+	 * SnapshotRenderer). The copy shares any other state, such as images,
+	 * with this Robot.
+	 */
+	Robot shadow() {
+		try {
+			Robot copy = (Robot) clone();
+			copy._ParentCarrierRobot = null;
+			copy._engine = null;
+			copy._slot = -1;
+			copy._pulledGeneration = -1;
+			copy._childIndex = -1;
+			copy._path = null;
+			return copy;
+		} catch (CloneNotSupportedException e) {
+			throw new AssertionError(e);
+		}
+	}
+
+	/**
+	 * Refreshes this Robot's movement fields from its ArraySimulationEngine
+	 * slot, if it is attached to one and the slot has changed since the last
+	 * refresh. Code within the package that reads the movement fields 
+	 * directly should call this method first.
+	 */
+	final void pull() {
+		if (_engine != null && _pulledGeneration != _engine._generation) {
+			_engine.read(this);
+		}
+	}
 }
@@ -1,8 +1,15 @@
 package robot;
 
 import java.awt.Dimension;
+import java.awt.FontMetrics;
+import java.awt.Point;
+import java.awt.Rectangle;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Class to represent a robot composition. Classes whose instances are 
@@ -13,6 +20,44 @@ import java.util.List;
  * move() request) the RobotModel notifies all registered listeners by firing a
  * RobotModelEvent.
  * 
+ * Calls to add(), remove() and clock() are serialised, so a RobotModel may be
+ * clocked by a simulation thread (see SimulationLoop) while robots are added
+ * and removed from another thread. Listeners are notified on the thread that
+ * changed the model.
+ * 
+ * Changes made within a batch() call are reported when the batch ends, with
+ * runs of related events coalesced: adding 10,000 robots to a CarrierRobot
+ * in a batch fires a single RobotsAdded event, so that views can update
+ * themselves once rather than 10,000 times.
+ * 
+ * Threads that must not wait for the model's lock, such as background 
+ * workers and network handlers, can instead submit adds, removes and 
+ * reparents to a lock-free queue (see submitAdd(), submitRemove() and 
+ * submitReparent()). Queued changes are applied, in the order submitted, at
+ * the start of the next clock() or advance() call - i.e. at a tick boundary
+ * on the simulation thread - or by calling applyCommands().
+ * 
+ * A RobotModel also indexes its robots by their absolute position, so that
+ * the robots at a point or within a region can be found without visiting
+ * every robot (see robotAt(), robotsIn() and nearestRobots()). The index is
+ * brought up to date with the latest clock() call the next time it is 
+ * queried.
+ * 
+ * A RobotModel can also track the areas of the animation that change as its
+ * robots move (see setDamageTracking() and takeDamage()), so that a view need
+ * only repaint those areas.
+ * 
+ * A RobotModel can publish an immutable RobotSnapshot of its robots after
+ * every change (see setPublishSnapshots()). Each RobotModelEvent carries the
+ * snapshot published by its change, so views can read the state of every
+ * robot from a single, consistent frame without locking the model, however
+ * far the simulation has moved on by the time the event reaches them. When
+ * damage is also tracked, each snapshot carries the damage of its frame.
+ * Snapshots are pooled and reused once their readers release them.
+ * 
+ * Every change to a RobotModel can be recorded to disk by registering a
+ * TickJournal, and the model rebuilt at any tick with a JournalReplayer.
+ * 
  * @author Craig Sutherland
  *
  */
@@ -27,14 +72,68 @@ public class RobotModel {
 	// List of RobotModelListeners.
 	private List<RobotModelListener> _listeners;
 	
+	// The registered listeners that are AsyncDispatchers, for which clock()
+	// and advance() wait once the model's lock is released.
+	private volatile AsyncDispatcher[] _dispatchers = new AsyncDispatcher[0];
+	
+	// Strategy used to move the robots on each clock() call.
+	private SimulationEngine _engine;
+	
+	// Spatial index of the robots, in absolute coordinates.
+	private RobotQuadtree _index;
+	
+	// Tracker of the areas changed by each update, or null if not tracking.
+	private DamageTracker _damage;
+	
+	// Whether a RobotSnapshot is published after each change.
+	private boolean _publishSnapshots = false;
+	
+	// Latest RobotSnapshot, on which the model holds a reference, or null.
+	private volatile RobotSnapshot _snapshot;
+	
+	// RobotSnapshots released by their readers, ready for reuse.
+	private final SnapshotPool _snapshotPool = new SnapshotPool();
+	
+	// Structural changes submitted by other threads, awaiting a tick boundary.
+	private final CommandQueue _commands = new CommandQueue();
+	
+	// Depth of nested batch() calls, and the events they have held back.
+	private int _batchDepth = 0;
+	private final EventBatch _batch = new EventBatch();
+	
+	// CarrierRobots whose child lists have gaps left by removals, to be
+	// compacted at the end of the current batch or, for removals outside a
+	// batch, at the next tick boundary.
+	private final List<CarrierRobot> _gapped = new ArrayList<CarrierRobot>();
+	
+	// RobotMoved event fired by clock() when not publishing snapshots.
+	private RobotModelEvent _movedEvent;
+	
 	
 	/**
-	 * Creates a RobotModel with specified height and width bounds.
+	 * Creates a RobotModel with specified height and width bounds. The 
+	 * RobotModel progresses its robots by walking the robot composition (see
+	 * TreeSimulationEngine).
 	 */
 	public RobotModel(Dimension bounds) {
+		this(bounds, new TreeSimulationEngine());
+	}
+	
+	/**
+	 * Creates a RobotModel with specified height and width bounds that uses
+	 * the specified SimulationEngine to progress its robots. An
+	 * ArraySimulationEngine, for example, is better suited to models holding
+	 * large numbers of robots.
+	 * @param bounds the bounds of the world in which robots move.
+	 * @param engine the SimulationEngine; this must not be shared with any
+	 * other RobotModel.
+	 */
+	public RobotModel(Dimension bounds, SimulationEngine engine) {
 		_root = new CarrierRobot(0, 0, 0, 0, bounds.width, bounds.height);
 		_bounds = bounds;
 		_listeners = new ArrayList<RobotModelListener>();
+		_engine = engine;
+		_index = new RobotQuadtree();
 	}
 
 	/**
@@ -44,6 +143,13 @@ public class RobotModel {
 		return _root;
 	}
 	
+	/**
+	 * Returns the bounds of the world in which this RobotModel's robots move.
+	 */
+	public Dimension bounds() {
+		return new Dimension(_bounds);
+	}
+	
 	/**
 	 * Attempts to add a new Robot to a specified CarrierRobot held within the
 	 * RobotModel. If the robot cannot be added, no action is taken and this 
@@ -55,14 +161,18 @@ public class RobotModel {
 	 * @param robot the new robot to add to this RobotModel.
 	 * @param parent the intended parent of the new robot.
 	 */
-	public boolean add(Robot robot, CarrierRobot parent) {
+	public synchronized boolean add(Robot robot, CarrierRobot parent) {
 		boolean success = true;
 		
 		try {
 			parent.add(robot);
+			_engine.structureChanged();
+			_index.structureChanged();
+			trackDamage();
+			publish();
 			
 			// Fire event.
-			fire(RobotModelEvent.makeRobotAddedEvent(robot, this));
+			fire(RobotModelEvent.makeRobotAddedEvent(robot, parent.robotCount() - 1, this));
 		} catch(IllegalArgumentException e) {
 			success = false;
 		}
@@ -77,44 +187,502 @@ public class RobotModel {
 	 * RobotModelEvent.
 	 * @param robot the Robot to remove.
 	 */
-	public void remove(Robot robot) {
+	public synchronized void remove(Robot robot) {
 		// Remove robot from its parent.
 		CarrierRobot parent = robot.parent();
 		
 		if(parent != null) {
 			int index = parent.indexOf(robot);
+			boolean gapped = parent.hasChildGaps();
 			parent.remove(robot);
+			if (!gapped && parent.hasChildGaps()) {
+				// Close the gaps at the end of the batch, or at the start of
+				// the next clock() or advance() call, which ends the batch
+				// that applies queued commands.
+				_gapped.add(parent);
+			}
+			_engine.structureChanged();
+			_index.structureChanged();
+			trackDamage();
+			publish();
 		
 			// Fire event.
 			fire(RobotModelEvent.makeRobotRemovedEvent(robot, parent, index, this));
 		}
 	}
 
+	/**
+	 * Attempts to add the specified robots to a CarrierRobot held within the
+	 * RobotModel, as the last children of parent in iteration order. The 
+	 * robots are checked in one pass before any is added: if any of them 
+	 * cannot be added, for the reasons given for add(), none is and this 
+	 * method returns false. Otherwise the robots are added, growing the 
+	 * parent's child storage once, and a single RobotsAdded event (or a
+	 * RobotAdded event, for one robot) is fired for the whole range.
+	 * @param robots the new robots to add to this RobotModel.
+	 * @param parent the intended parent of the new robots.
+	 */
+	public synchronized boolean addAll(Collection<? extends Robot> robots, CarrierRobot parent) {
+		if (robots.isEmpty()) {
+			return true;
+		}
+		int index = parent.robotCount();
+		try {
+			parent.addAll(robots);
+		} catch(IllegalArgumentException e) {
+			return false;
+		}
+		_engine.structureChanged();
+		_index.structureChanged();
+		trackDamage();
+		publish();
+		
+		// Fire event.
+		if (robots.size() == 1) {
+			fire(RobotModelEvent.makeRobotAddedEvent(parent.robotAt(index), index, this));
+		} else {
+			fire(RobotModelEvent.makeRobotsAddedEvent(
+					parent._ChildRobotList.subList(index, parent.robotCount()), parent, index, this));
+		}
+		return true;
+	}
+	
+	/**
+	 * Removes the specified robots from this RobotModel, ignoring any that 
+	 * do not have a parent. The robots are removed as one batch (see 
+	 * batch()), each parent's children being removed from the last to the 
+	 * first, so that every contiguous range of a parent's children removed is
+	 * reported by a single RobotsRemoved event. The ranges of a parent are 
+	 * reported from the last to the first, so the indices of each event are
+	 * those its robots occupied before the removal.
+	 * @param robots the robots to remove.
+	 * @return true if any robot was removed.
+	 */
+	public synchronized boolean removeAll(Collection<? extends Robot> robots) {
+		// Group the robots by parent, in order of first appearance.
+		final Map<CarrierRobot, List<Robot>> byParent = new IdentityHashMap<CarrierRobot, List<Robot>>();
+		final List<CarrierRobot> parents = new ArrayList<CarrierRobot>();
+		for (Robot robot : robots) {
+			CarrierRobot parent = robot.parent();
+			if (parent != null) {
+				List<Robot> children = byParent.get(parent);
+				if (children == null) {
+					children = new ArrayList<Robot>();
+					byParent.put(parent, children);
+					parents.add(parent);
+				}
+				children.add(robot);
+			}
+		}
+		if (parents.isEmpty()) {
+			return false;
+		}
+		
+		batch(new Runnable() {
+			public void run() {
+				for (CarrierRobot parent : parents) {
+					List<Robot> children = byParent.get(parent);
+					// Sort the indices, each being distinct, then remove the 
+					// children from the highest index down.
+					long[] keys = new long[children.size()];
+					for (int i = 0; i < keys.length; i++) {
+						keys[i] = ((long) parent.indexOf(children.get(i)) << 32) | i;
+					}
+					Arrays.sort(keys);
+					Robot previous = null;
+					for (int i = keys.length - 1; i >= 0; i--) {
+						Robot robot = children.get((int) keys[i]);
+						if (robot != previous) {
+							remove(robot);
+						}
+						previous = robot;
+					}
+				}
+			}
+		});
+		return true;
+	}
+
 	/**
 	 * Progresses the animation. Calling this method causes each Robot in this 
 	 * RobotModel to move before notifying each registered RobotModelListener 
 	 * of the movement. Note that a clock() call results in ONE RobotModelEvent
-	 * being fired; the event identifies the root CarrierRobot.
+	 * being fired; the event identifies the root CarrierRobot. So that ticks
+	 * do not allocate, the RobotMoved event object is reused: when publishing
+	 * snapshots it is reused along with its snapshot, and a listener that
+	 * keeps it beyond update() must retain the snapshot. Once the event has
+	 * been fired and the model's lock released, clock() waits for any
+	 * registered AsyncDispatcher whose policy requires it to make room.
 	 */
 	public void clock() {
-		_root.move(_bounds.width, _bounds.height);
+		synchronized (this) {
+			applyCommands();
+			_engine.clock(_root, _bounds.width, _bounds.height);
+			_index.positionsChanged();
+			trackDamage();
+			publish();
+			
+			// Fire event.
+			fire(movedEvent());
+		}
+		awaitDispatchers();
+	}
+
+	/**
+	 * Progresses the animation by the specified number of ticks, leaving 
+	 * every Robot in the state that ticks successive clock() calls would. The
+	 * new state of each Robot is computed directly, so the time taken does not
+	 * depend on ticks - except for the children of CarrierRobots with 
+	 * collision detection enabled, which are moved one tick at a time. A 
+	 * single RobotMoved event, whose ticks() value is ticks, is fired 
+	 * identifying the root CarrierRobot. Advancing by zero ticks has no 
+	 * effect. Like clock(), advance() then waits for AsyncDispatchers.
+	 * @throws IllegalArgumentException if ticks is negative.
+	 */
+	public void advance(long ticks) {
+		if (ticks < 0) {
+			throw new IllegalArgumentException();
+		}
+		if (ticks == 0) {
+			return;
+		}
+		synchronized (this) {
+			applyCommands();
+			_engine.advance(_root, _bounds.width, _bounds.height, ticks);
+			_index.positionsChanged();
+			trackDamage();
+			publish();
+			
+			// Fire event.
+			fire(RobotModelEvent.makeRobotMovedEvent(_root, this, ticks));
+		}
+		awaitDispatchers();
+	}
+	
+	/**
+	 * Runs changes, which may call add(), remove(), clock() and the other
+	 * methods of this RobotModel, as a batch: no events are fired while it
+	 * runs, and when it completes (normally or not) the events it caused are
+	 * fired with consecutive adds and removes of children of the same 
+	 * CarrierRobot coalesced into RobotsAdded and RobotsRemoved events, and
+	 * consecutive RobotMoved events into one. Damage tracking and snapshot
+	 * publishing are likewise performed once, at the end of the batch, and 
+	 * every event fired carries the snapshot of the final state. Batches may
+	 * be nested; events are fired when the outermost batch completes. Other
+	 * threads cannot change the model while a batch runs.
+	 */
+	public synchronized void batch(Runnable changes) {
+		_batchDepth++;
+		try {
+			changes.run();
+		} finally {
+			endBatch();
+		}
+	}
+	
+	/**
+	 * Queues a request to add robot to parent, to be applied at the next tick
+	 * boundary as if by add(). This method does not block and may be called
+	 * from any thread. If the robot cannot be added when the request is 
+	 * applied, the request is ignored.
+	 */
+	public void submitAdd(Robot robot, CarrierRobot parent) {
+		_commands.offer(CommandQueue.ADD, robot, parent);
+	}
+	
+	/**
+	 * Queues a request to remove robot, to be applied at the next tick 
+	 * boundary as if by remove(). This method does not block and may be 
+	 * called from any thread.
+	 */
+	public void submitRemove(Robot robot) {
+		_commands.offer(CommandQueue.REMOVE, robot, null);
+	}
+	
+	/**
+	 * Queues a request to move robot from its current parent to newParent,
+	 * keeping its position relative to its parent, to be applied at the next
+	 * tick boundary. The move fires a RobotRemoved event followed by a 
+	 * RobotAdded event. This method does not block and may be called from any
+	 * thread. The request is ignored if, when it is applied, robot has no
+	 * parent, already belongs to newParent, does not fit within newParent or
+	 * would become its own descendant.
+	 */
+	public void submitReparent(Robot robot, CarrierRobot newParent) {
+		_commands.offer(CommandQueue.REPARENT, robot, newParent);
+	}
+	
+	/**
+	 * Applies the requests queued by submitAdd(), submitRemove() and 
+	 * submitReparent() before this call began, in the order they were 
+	 * submitted. Requests submitted while this method runs are left for the
+	 * next call. clock() and advance() call this method before moving the
+	 * robots. The requests are applied as one batch (see batch()).
+	 * @return the number of requests that changed the model.
+	 */
+	public synchronized int applyCommands() {
+		int applied = 0;
+		CommandQueue.Command last = _commands.last();
+		CommandQueue.Command command;
 		
-		// Fire event.
-		fire(RobotModelEvent.makeRobotMovedEvent(_root, this));
+		_batchDepth++;
+		try {
+			while ((command = _commands.poll(last)) != null) {
+				Robot robot = command._robot;
+				CarrierRobot parent = command._parent;
+				switch (command._type) {
+				case CommandQueue.ADD:
+					if (add(robot, parent)) {
+						applied++;
+					}
+					break;
+				case CommandQueue.REMOVE:
+					if (robot.parent() != null) {
+						remove(robot);
+						applied++;
+					}
+					break;
+				case CommandQueue.REPARENT:
+					if (canReparent(robot, parent)) {
+						remove(robot);
+						add(robot, parent);
+						applied++;
+					}
+					break;
+				}
+			}
+		} finally {
+			endBatch();
+		}
+		return applied;
+	}
+	
+	/**
+	 * Returns the deepest Robot in this RobotModel whose bounds contain the
+	 * specified point, given in the coordinate space of the root. Where
+	 * robots at the same depth overlap, the one painted on top is returned.
+	 * @return the Robot found, or null if the point lies only within the 
+	 * root.
+	 */
+	public synchronized Robot robotAt(Point point) {
+		_index.refresh(_root, _bounds.width, _bounds.height);
+		return _index.robotAt(point.x, point.y);
+	}
+	
+	/**
+	 * Returns the Robots in this RobotModel, other than the root, whose 
+	 * bounds intersect the specified region, given in the coordinate space of
+	 * the root. The Robots are returned in no particular order.
+	 */
+	public synchronized List<Robot> robotsIn(Rectangle region) {
+		_index.refresh(_root, _bounds.width, _bounds.height);
+		return _index.robotsIn(region.x, region.y, region.width, region.height);
+	}
+	
+	/**
+	 * Returns the k Robots in this RobotModel, other than the root, that are
+	 * nearest to the specified point, ordered by increasing distance. The
+	 * distance to a Robot is measured to the nearest point within its bounds,
+	 * so Robots containing the point come first. Fewer than k Robots are 
+	 * returned if the model holds fewer than k Robots.
+	 */
+	public synchronized List<Robot> nearestRobots(Point point, int k) {
+		_index.refresh(_root, _bounds.width, _bounds.height);
+		return _index.nearest(point.x, point.y, k);
 	}
 
+	/**
+	 * Starts or stops tracking the areas of the animation that change. While
+	 * tracking, each add(), remove(), clock() and advance() call compares the
+	 * area painted by every Robot with the area it painted after the previous
+	 * call, and the areas of Robots that have changed are accumulated until
+	 * takeDamage() is called. Tracking costs a walk of the composition per
+	 * call, so it is off by default. Only one view should take the damage of
+	 * a RobotModel.
+	 * @param metrics metrics of the font with which Robot names are painted,
+	 * or null to stop tracking.
+	 */
+	public synchronized void setDamageTracking(FontMetrics metrics) {
+		_damage = metrics == null ? null : new DamageTracker(metrics);
+	}
+	
+	/**
+	 * Returns the areas of the animation, in the coordinate space of the 
+	 * root, that have changed since the previous takeDamage() call. The 
+	 * region returned is full if the whole animation may have changed: on the
+	 * first call after tracking starts, after a Robot is added or removed and
+	 * whenever tracking is off. While snapshots are published, each one takes
+	 * the damage accumulated before it (see RobotSnapshot.damage()), so that
+	 * a view painting it can repaint exactly what changed in that frame;
+	 * this method then returns only the damage since the latest snapshot.
+	 */
+	public synchronized DamageRegion takeDamage() {
+		if (_damage == null) {
+			DamageRegion damage = new DamageRegion();
+			damage.markFull();
+			return damage;
+		}
+		return _damage.take();
+	}
+	
+	/**
+	 * Starts or stops publishing a RobotSnapshot after each add(), remove(),
+	 * clock() and advance() call. Publishing costs a walk of the composition
+	 * per call, so it is off by default. When started, a snapshot of the 
+	 * current state is published immediately.
+	 */
+	public synchronized void setPublishSnapshots(boolean publish) {
+		_publishSnapshots = publish;
+		if (publish) {
+			publish();
+		} else if (_snapshot != null) {
+			_snapshot.release();
+			_snapshot = null;
+		}
+	}
+	
+	/**
+	 * Returns the latest RobotSnapshot, with a reference held on behalf of 
+	 * the caller, who must release it. This method does not block while the
+	 * model is changing. Returns null if snapshots are not being published.
+	 */
+	public RobotSnapshot acquireSnapshot() {
+		for (;;) {
+			RobotSnapshot snapshot = _snapshot;
+			if (snapshot == null || snapshot.tryRetain()) {
+				return snapshot;
+			}
+			// The snapshot was superseded and released meanwhile; retry.
+		}
+	}
+	
 	/**
 	 * Registers a RobotModelListener on this RobotModel object.
 	 */
-	public void addRobotModelListener(RobotModelListener listener) {
+	public synchronized void addRobotModelListener(RobotModelListener listener) {
 		_listeners.add(listener);
+		updateDispatchers();
 	}
 	
 	/**
 	 * Deregisters a RobotModelListener from this RobotModel object.
 	 */
-	public void removeRobotModelListener(RobotModelListener listener) {
+	public synchronized void removeRobotModelListener(RobotModelListener listener) {
 		_listeners.remove(listener);
+		updateDispatchers();
+	}
+	
+	/*
+	 * Collects the registered AsyncDispatchers, so that ticks need not.
+	 */
+	private void updateDispatchers() {
+		List<AsyncDispatcher> dispatchers = new ArrayList<AsyncDispatcher>();
+		for (RobotModelListener listener : _listeners) {
+			if (listener instanceof AsyncDispatcher) {
+				dispatchers.add((AsyncDispatcher) listener);
+			}
+		}
+		_dispatchers = dispatchers.toArray(new AsyncDispatcher[dispatchers.size()]);
+	}
+	
+	/*
+	 * Waits for each registered AsyncDispatcher to have room for another
+	 * event. Does nothing if the calling thread holds the model's lock (e.g.
+	 * when clock() is called within batch()), as the dispatchers' listeners
+	 * may need it to make room.
+	 */
+	private void awaitDispatchers() {
+		if (Thread.holdsLock(this)) {
+			return;
+		}
+		AsyncDispatcher[] dispatchers = _dispatchers;
+		for (int i = 0; i < dispatchers.length; i++) {
+			dispatchers[i].awaitRoom();
+		}
+	}
+	
+	/*
+	 * Returns true if robot can be moved from its parent to newParent.
+	 */
+	private boolean canReparent(Robot robot, CarrierRobot newParent) {
+		CarrierRobot parent = robot.parent();
+		if (parent == null || parent == newParent) {
+			return false;
+		}
+		for (Robot ancestor = newParent; ancestor != null; ancestor = ancestor.parent()) {
+			if (ancestor == robot) {
+				return false;
+			}
+		}
+		return robot.x() + robot.width() <= newParent.width()
+				&& robot.y() + robot.height() <= newParent.height();
+	}
+	
+	/*
+	 * Ends a batch, firing the events it held back if it is the outermost.
+	 */
+	private void endBatch() {
+		if (--_batchDepth > 0) {
+			return;
+		}
+		for (int i = 0; i < _gapped.size(); i++) {
+			_gapped.get(i).compactChildren();
+		}
+		_gapped.clear();
+		List<RobotModelEvent> events = _batch.drain();
+		if (!events.isEmpty()) {
+			trackDamage();
+			publish();
+			for (RobotModelEvent event : events) {
+				fire(event);
+			}
+		}
+	}
+	
+	/*
+	 * Records the areas changed by the latest update, if tracking.
+	 */
+	private void trackDamage() {
+		if (_damage != null && _batchDepth == 0) {
+			_damage.track(_root);
+		}
+	}
+	
+	/*
+	 * Publishes a RobotSnapshot of the current state, if publishing, reusing
+	 * a released snapshot where possible.
+	 */
+	private void publish() {
+		if (_publishSnapshots && _batchDepth == 0) {
+			RobotSnapshot snapshot = _snapshotPool.poll();
+			if (snapshot == null) {
+				snapshot = new RobotSnapshot(_snapshotPool);
+			}
+			snapshot.capture(_root, _damage == null ? null : _damage.take());
+			RobotSnapshot previous = _snapshot;
+			_snapshot = snapshot;
+			if (previous != null) {
+				previous.release();
+			}
+		}
+	}
+	
+	/*
+	 * Returns the RobotMoved event for a single tick: the one belonging to
+	 * the snapshot just published, a shared one if not publishing, or a new
+	 * one within a batch, where no snapshot is published.
+	 */
+	private RobotModelEvent movedEvent() {
+		if (_batchDepth > 0) {
+			return RobotModelEvent.makeRobotMovedEvent(_root, this);
+		}
+		if (_publishSnapshots) {
+			return _snapshot.movedEvent(this);
+		}
+		if (_movedEvent == null) {
+			_movedEvent = RobotModelEvent.makeRobotMovedEvent(_root, this);
+		}
+		return _movedEvent;
 	}
 	
 	/*
@@ -122,8 +690,20 @@ public class RobotModel {
 	 * RobotModelEvent to each in turn.
 	 */
 	private void fire(RobotModelEvent event) {
-		for(RobotModelListener listener : _listeners) {
+		if (_batchDepth > 0) {
+			_batch.add(event);
+			return;
+		}
+		event.setSnapshot(_snapshot);
+		// Indexed, so that firing does not allocate an iterator.
+		for(int i = 0; i < _listeners.size(); i++) {
+			RobotModelListener listener = _listeners.get(i);
 			listener.update(event);
+			if (i < _listeners.size() && _listeners.get(i) != listener) {
+				// The listener deregistered itself (as a failed TickJournal
+				// does); its successor now holds index i.
+				i--;
+			}
 		}
 	}
 }
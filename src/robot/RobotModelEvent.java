@@ -1,17 +1,28 @@
 package robot;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Class to describe a change to the state of a RobotModel object. An instance
  * of RobotModelEvent is sent in a notification message (an update() call) by a
  * RobotModel when communicating updates to its RobotModelListeners.
  * 
+ * RobotsAdded and RobotsRemoved events describe a contiguous range of 
+ * children of one CarrierRobot that were added or removed within a single
+ * RobotModel batch() call: index() is the index of the first Robot in the
+ * range and count() the number of Robots, which operands() returns in index
+ * order. For RobotsRemoved events the indices are those the Robots occupied
+ * before any of them was removed.
+ * 
  * @author Craig Sutherland
  *
  */
 public class RobotModelEvent {
 
 	// Set of event types.
-	public enum EventType {RobotAdded, RobotRemoved, RobotMoved};
+	public enum EventType {RobotAdded, RobotRemoved, RobotMoved, RobotsAdded, RobotsRemoved};
 	
 	private EventType _type;      // Type of event.
 	private Robot _operand;       // Robot to which the event relates.
@@ -21,6 +32,14 @@ public class RobotModelEvent {
 	private CarrierRobot _parent; // Parent CarrierRobot of fOperand; for 
 	                              // RobotRemoved events this is the former 
 	                              // parent of fOperand.
+	private long _ticks;          // Number of steps a RobotMoved event 
+	                              // covers, 0 for other events.
+	private RobotSnapshot _snapshot; // State of the model after the change,
+	                                 // or null if not published.
+	private List<Robot> _operands; // Robots in the range of a RobotsAdded or
+	                               // RobotsRemoved event, null otherwise.
+	private DamageRegion _damage; // Damage of the RobotMoved events merged
+	                              // into this one, or null if not merged.
 	                    
 	/**
 	 * Creates a RobotAdded RobotModelEvent.
@@ -36,6 +55,45 @@ public class RobotModelEvent {
 	}
 	
 	
+	/**
+	 * Creates a RobotAdded RobotModelEvent for a Robot known to be at the 
+	 * specified index within its parent.
+	 */
+	static RobotModelEvent makeRobotAddedEvent(Robot robotAdded, int index, RobotModel source) {
+		return new RobotModelEvent(EventType.RobotAdded, robotAdded, robotAdded.parent(), index, source);
+	}
+	
+	/**
+	 * Creates a RobotsAdded RobotModelEvent.
+	 * @param robotsAdded the Robots added, in index order.
+	 * @param parent the CarrierRobot to which they were added.
+	 * @param index the index of the first Robot within parent.
+	 * @param source the RobotModel object that fires the event.
+	 */
+	public static RobotModelEvent makeRobotsAddedEvent(
+			List<Robot> robotsAdded, CarrierRobot parent, int index, RobotModel source) {
+		RobotModelEvent event = new RobotModelEvent(
+				EventType.RobotsAdded, robotsAdded.get(0), parent, index, source);
+		event._operands = Collections.unmodifiableList(new ArrayList<Robot>(robotsAdded));
+		return event;
+	}
+	
+	/**
+	 * Creates a RobotsRemoved RobotModelEvent.
+	 * @param robotsRemoved the Robots removed, in index order.
+	 * @param formerParent the CarrierRobot from which they were removed.
+	 * @param index the index the first Robot occupied within formerParent
+	 * before the Robots were removed.
+	 * @param source the RobotModel object that fires the event.
+	 */
+	public static RobotModelEvent makeRobotsRemovedEvent(
+			List<Robot> robotsRemoved, CarrierRobot formerParent, int index, RobotModel source) {
+		RobotModelEvent event = new RobotModelEvent(
+				EventType.RobotsRemoved, robotsRemoved.get(0), formerParent, index, source);
+		event._operands = Collections.unmodifiableList(new ArrayList<Robot>(robotsRemoved));
+		return event;
+	}
+	
 	/**
 	 * Creates a RobotRemoved RobotModelEvent.
 	 * @param robotRemoved the Robot object that has been removed from a 
@@ -59,6 +117,18 @@ public class RobotModelEvent {
 	 */
 	public static RobotModelEvent makeRobotMovedEvent(
 			Robot robotMoved, RobotModel source) {
+		return makeRobotMovedEvent(robotMoved, source, 1);
+	}
+	
+	/**
+	 * Creates a RobotMoved RobotModelEvent that covers several steps, e.g. 
+	 * following a RobotModel advance() call.
+	 * @param robotMoved the Robot object that has moved.
+	 * @param source the RobotModel object that fires the event.
+	 * @param ticks the number of steps robotMoved has made.
+	 */
+	public static RobotModelEvent makeRobotMovedEvent(
+			Robot robotMoved, RobotModel source, long ticks) {
 		CarrierRobot parent = robotMoved.parent();
 		int index = -1;
 		
@@ -66,7 +136,35 @@ public class RobotModelEvent {
 			index = parent.indexOf(robotMoved);
 		}
 		
-		return new RobotModelEvent(EventType.RobotMoved, robotMoved, parent, index, source);
+		RobotModelEvent event = new RobotModelEvent(EventType.RobotMoved, robotMoved, parent, index, source);
+		event._ticks = ticks;
+		return event;
+	}
+	
+	/**
+	 * Creates a RobotMoved RobotModelEvent standing for two consecutive 
+	 * RobotMoved events, as when a dispatcher coalesces them: it covers the
+	 * steps of both, carries the snapshot of later and the union of their
+	 * damage (see damage()).
+	 * @param earlier the RobotMoved event fired first.
+	 * @param later the RobotMoved event fired next.
+	 */
+	public static RobotModelEvent makeCoalescedMovedEvent(
+			RobotModelEvent earlier, RobotModelEvent later) {
+		RobotModelEvent event = makeRobotMovedEvent(
+				later.operand(), later.source(), earlier.ticks() + later.ticks());
+		event._snapshot = later._snapshot;
+		if (earlier.damage() != null || later.damage() != null) {
+			event._damage = new DamageRegion();
+			for (RobotModelEvent merged : new RobotModelEvent[] {earlier, later}) {
+				if (merged.damage() == null) {
+					event._damage.markFull();
+				} else {
+					event._damage.add(merged.damage());
+				}
+			}
+		}
+		return event;
 	}
 	
 	/*
@@ -82,14 +180,16 @@ public class RobotModelEvent {
 	
 	/**
 	 * Returns the type of the event, one of RobotAdded, RobotRemoved, 
-	 * RobotMoved.
+	 * RobotMoved, RobotsAdded, RobotsRemoved.
 	 */
 	public EventType eventType() {
 		return _type;
 	}
 	
 	/**
-	 * Returns the Robot object to which this RobotModelEvent applies.
+	 * Returns the Robot object to which this RobotModelEvent applies. For a
+	 * RobotsAdded or RobotsRemoved event, this is the first Robot in the
+	 * range.
 	 */
 	public Robot operand() {
 		return _operand;
@@ -123,4 +223,61 @@ public class RobotModelEvent {
 	public int index() {
 		return _index;
 	}
+	
+	/**
+	 * Returns the number of steps covered by a RobotMoved event: 1 for an 
+	 * event fired by clock(), or the number of ticks passed to advance().
+	 * Returns 0 for other types of event.
+	 */
+	public long ticks() {
+		return _ticks;
+	}
+	
+	/**
+	 * Returns the RobotSnapshot published by the RobotModel immediately after
+	 * the change this RobotModelEvent describes, or null if the model does
+	 * not publish snapshots. The snapshot may be read during the update() 
+	 * call delivering this event; to read it later, call its retain() method
+	 * during update().
+	 */
+	public RobotSnapshot snapshot() {
+		return _snapshot;
+	}
+	
+	/**
+	 * Returns the areas of the animation that changed between the snapshot
+	 * published before the change this RobotModelEvent describes and 
+	 * snapshot(), or null if the model does not publish snapshots or was not
+	 * tracking damage. For a RobotMoved event that coalesces several, this is
+	 * the union of their damage. The region must not be modified.
+	 */
+	public DamageRegion damage() {
+		if (_damage != null) {
+			return _damage;
+		}
+		return _snapshot == null ? null : _snapshot.damage();
+	}
+	
+	/**
+	 * Returns the number of Robots this RobotModelEvent applies to: the size
+	 * of the range for RobotsAdded and RobotsRemoved events, 1 otherwise.
+	 */
+	public int count() {
+		return _operands == null ? 1 : _operands.size();
+	}
+	
+	/**
+	 * Returns the Robots this RobotModelEvent applies to, in index order: 
+	 * the range of a RobotsAdded or RobotsRemoved event, or operand() alone.
+	 */
+	public List<Robot> operands() {
+		return _operands == null ? Collections.singletonList(_operand) : _operands;
+	}
+	
+	/*
+	 * Attaches the snapshot published by the change this event describes.
+	 */
+	void setSnapshot(RobotSnapshot snapshot) {
+		_snapshot = snapshot;
+	}
 }
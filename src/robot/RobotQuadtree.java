@@ -0,0 +1,511 @@
+package robot;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Spatial index over the robots of a composition, in absolute (world)
+ * coordinates. A RobotModel uses a RobotQuadtree to answer hit-testing and
+ * region queries without visiting every robot.
+ *
+ * The index is a loose quadtree of fixed depth whose nodes are stored
+ * implicitly, level by level, in arrays. A robot is filed in the deepest node
+ * whose cell is at least as large as the robot and contains the robot's
+ * centre; the bounds of a node's cell are loosened by half a cell on each side
+ * so that they always enclose the robots filed in it. Because a robot's node
+ * depends only on its size and centre, moving robots usually stay in the same
+ * node, and refresh() only relinks the robots that have changed node. Each
+ * node records the number of robots filed within its subtree so that queries
+ * skip empty regions.
+ *
+ * Robots are numbered by their position in a preorder walk of the
+ * composition, excluding the root. The index is rebuilt only when robots are
+ * added or removed. A rebuild also lists the robots that can move: those
+ * with a non-zero delta and those carried by them. A robot's delta only ever
+ * changes sign, so between rebuilds refresh() updates just the listed
+ * robots, taking each one's position from its parent's entry, and a
+ * composition that is largely stationary is refreshed cheaply.
+ */
+final class RobotQuadtree {
+	// Maximum number of levels, bounding the number of nodes to 87381.
+	private static final int MAX_LEVELS = 9;
+
+	// Smallest cell size used for the deepest level.
+	private static final int MIN_LEAF_CELL = 8;
+
+	// Number of bits used for the node number in a k-nearest search key.
+	private static final int NODE_BITS = 17;
+
+	private int _levels = 1;
+
+	// Cell size at the deepest level. Each level up doubles the cell size.
+	private int _leafCell = 1;
+
+	// === Per node.
+	// First entry filed in the node, or -1.
+	private int[] _head = new int[0];
+
+	// Number of entries filed in the node and its descendants.
+	private int[] _population = new int[0];
+	// ===
+
+	// === Per entry; entries are numbered in preorder.
+	private Robot[] _robots = new Robot[0];
+	private int[] _x = new int[0];
+	private int[] _y = new int[0];
+	private int[] _width = new int[0];
+	private int[] _height = new int[0];
+	private int[] _depth = new int[0];
+	private int[] _node = new int[0];
+	private int[] _next = new int[0];
+	private int[] _previous = new int[0];
+
+	// Entry of the robot's parent, or -1 for children of the root.
+	private int[] _parent = new int[0];
+	// ===
+
+	private int _count = 0;
+
+	// Entries of the robots that can move, in preorder, and their number. If
+	// the root itself can move, every entry is listed.
+	private int[] _moving = new int[0];
+	private int _movingCount = 0;
+
+	// Set when robots have been added or removed since the last refresh.
+	private boolean _stale = true;
+
+	// Set when robots may have moved since the last refresh.
+	private boolean _dirty = true;
+
+	// Scratch stacks used when walking the composition and the tree.
+	private Robot[] _walkRobots = new Robot[16];
+	private int[] _walkX = new int[16];
+	private int[] _walkY = new int[16];
+	private int[] _walkDepth = new int[16];
+	private int[] _walkParent = new int[16];
+	private int[] _hits = new int[16];
+
+	/**
+	 * Records that robots have been added to or removed from the composition,
+	 * so that the next refresh() rebuilds the index.
+	 */
+	void structureChanged() {
+		_stale = true;
+	}
+
+	/**
+	 * Records that robots may have moved, so that the next refresh() updates
+	 * the bounds held in the index.
+	 */
+	void positionsChanged() {
+		_dirty = true;
+	}
+
+	/**
+	 * Brings the index up to date with the composition rooted at root, whose
+	 * robots move within a world of the specified size.
+	 */
+	void refresh(CarrierRobot root, int worldWidth, int worldHeight) {
+		if (_stale) {
+			resize(worldWidth, worldHeight);
+			rebuild(root);
+			_stale = false;
+			_dirty = false;
+		} else if (_dirty) {
+			update(root);
+			_dirty = false;
+		}
+	}
+
+	/**
+	 * Returns the deepest robot whose bounds contain point (x, y). Where
+	 * robots at the same depth overlap, the one painted last (i.e. on top) is
+	 * returned.
+	 * @return the robot found, or null if no robot contains the point.
+	 */
+	Robot robotAt(int x, int y) {
+		int hits = search(x, y, 1, 1);
+		int best = -1;
+		for (int i = 0; i < hits; i++) {
+			int entry = _hits[i];
+			if (best == -1 || _depth[entry] > _depth[best]
+					|| (_depth[entry] == _depth[best] && entry > best)) {
+				best = entry;
+			}
+		}
+		return best == -1 ? null : _robots[best];
+	}
+
+	/**
+	 * Returns the robots whose bounds intersect the specified rectangle, in
+	 * no particular order.
+	 */
+	List<Robot> robotsIn(int x, int y, int width, int height) {
+		int hits = search(x, y, width, height);
+		List<Robot> robots = new ArrayList<Robot>(hits);
+		for (int i = 0; i < hits; i++) {
+			robots.add(_robots[_hits[i]]);
+		}
+		return robots;
+	}
+
+	/**
+	 * Returns up to k robots ordered by increasing distance between their
+	 * bounds and point (x, y). Robots whose bounds contain the point are at
+	 * distance zero.
+	 */
+	List<Robot> nearest(int x, int y, int k) {
+		List<Robot> robots = new ArrayList<Robot>();
+		if (k <= 0 || _count == 0) {
+			return robots;
+		}
+
+		// Candidates found so far, as {distance, entry}, furthest first.
+		PriorityQueue<long[]> best = new PriorityQueue<long[]>(k, new Comparator<long[]>() {
+			@Override
+			public int compare(long[] a, long[] b) {
+				return a[0] != b[0] ? Long.compare(b[0], a[0]) : Long.compare(b[1], a[1]);
+			}
+		});
+
+		// Nodes to visit, keyed by (distance << NODE_BITS) | node.
+		PriorityQueue<Long> nodes = new PriorityQueue<Long>();
+		nodes.add(0L);
+
+		while (!nodes.isEmpty()) {
+			long key = nodes.poll();
+			long distance = key >>> NODE_BITS;
+			int node = (int) (key & ((1 << NODE_BITS) - 1));
+			if (best.size() == k && distance > best.peek()[0]) {
+				break;
+			}
+
+			for (int entry = _head[node]; entry != -1; entry = _next[entry]) {
+				long d = distance(x, y, _x[entry], _y[entry], _width[entry], _height[entry]);
+				if (best.size() < k) {
+					best.add(new long[] {d, entry});
+				} else if (d < best.peek()[0]) {
+					best.poll();
+					best.add(new long[] {d, entry});
+				}
+			}
+
+			int level = levelOf(node);
+			if (level + 1 < _levels) {
+				int local = node - offset(level);
+				int cx = local & ((1 << level) - 1);
+				int cy = local >> level;
+				int cell = cellSize(level + 1);
+				for (int j = 0; j < 2; j++) {
+					for (int i = 0; i < 2; i++) {
+						int child = nodeAt(level + 1, 2 * cx + i, 2 * cy + j);
+						if (_population[child] > 0) {
+							long d = distance(x, y, (2 * cx + i) * cell - cell / 2,
+									(2 * cy + j) * cell - cell / 2, 2 * cell, 2 * cell);
+							nodes.add((Math.min(d, Long.MAX_VALUE >>> NODE_BITS) << NODE_BITS) | child);
+						}
+					}
+				}
+			}
+		}
+
+		long[][] found = best.toArray(new long[best.size()][]);
+		Arrays.sort(found, best.comparator());
+		for (int i = found.length - 1; i >= 0; i--) {
+			robots.add(_robots[(int) found[i][1]]);
+		}
+		return robots;
+	}
+
+	/*
+	 * Collects into _hits the entries whose bounds intersect the specified
+	 * rectangle, and returns their number.
+	 */
+	private int search(int x, int y, int width, int height) {
+		int hits = 0;
+		if (_count == 0) {
+			return hits;
+		}
+		int[] stack = new int[4 * _levels + 1];
+		int top = 0;
+		stack[top++] = 0;
+
+		while (top > 0) {
+			int node = stack[--top];
+			for (int entry = _head[node]; entry != -1; entry = _next[entry]) {
+				if (x < _x[entry] + _width[entry] && _x[entry] < x + width
+						&& y < _y[entry] + _height[entry] && _y[entry] < y + height) {
+					if (hits == _hits.length) {
+						_hits = Arrays.copyOf(_hits, hits * 2);
+					}
+					_hits[hits++] = entry;
+				}
+			}
+
+			int level = levelOf(node);
+			if (level + 1 < _levels) {
+				int local = node - offset(level);
+				int cx = local & ((1 << level) - 1);
+				int cy = local >> level;
+				int cell = cellSize(level + 1);
+				for (int j = 0; j < 2; j++) {
+					for (int i = 0; i < 2; i++) {
+						int child = nodeAt(level + 1, 2 * cx + i, 2 * cy + j);
+						int left = (2 * cx + i) * cell - cell / 2;
+						int upper = (2 * cy + j) * cell - cell / 2;
+						if (_population[child] > 0 && x < left + 2 * cell && left < x + width
+								&& y < upper + 2 * cell && upper < y + height) {
+							stack[top++] = child;
+						}
+					}
+				}
+			}
+		}
+		return hits;
+	}
+
+	/*
+	 * Walks the composition rooted at root in preorder, assigning and filing
+	 * an entry for each robot and listing the robots that can move.
+	 */
+	private void rebuild(CarrierRobot root) {
+		Arrays.fill(_head, -1);
+		Arrays.fill(_population, 0);
+		Arrays.fill(_robots, 0, _count, null);
+		_count = 0;
+		_movingCount = 0;
+		root.pull();
+		boolean rootMoves = root._deltaX != 0 || root._deltaY != 0;
+
+		int top = 0;
+		int entry = 0;
+		top = push(root, root._x, root._y, 0, -1, top);
+
+		while (top > 0) {
+			top--;
+			Robot robot = _walkRobots[top];
+			int x = _walkX[top];
+			int y = _walkY[top];
+			int depth = _walkDepth[top];
+			int parent = _walkParent[top];
+			_walkRobots[top] = null;
+
+			robot.pull();
+			x += robot._x;
+			y += robot._y;
+
+			if (entry == _robots.length) {
+				grow();
+			}
+			_robots[entry] = robot;
+			_depth[entry] = depth;
+			_parent[entry] = parent;
+			_width[entry] = robot._width;
+			_height[entry] = robot._height;
+			_x[entry] = x;
+			_y[entry] = y;
+			link(entry, nodeFor(x, y, robot._width, robot._height));
+			_count++;
+
+			if (rootMoves || robot._deltaX != 0 || robot._deltaY != 0
+					|| (parent != -1 && isMoving(parent))) {
+				_moving[_movingCount++] = entry;
+			}
+
+			if (robot instanceof CarrierRobot) {
+				top = push((CarrierRobot) robot, x, y, depth, entry, top);
+			}
+			entry++;
+		}
+	}
+
+	/*
+	 * Updates the bounds of the robots that can move and relinks those whose
+	 * node has changed. Entries are visited in preorder, so each parent's
+	 * entry is brought up to date before its children's.
+	 */
+	private void update(CarrierRobot root) {
+		root.pull();
+		for (int i = 0; i < _movingCount; i++) {
+			int entry = _moving[i];
+			Robot robot = _robots[entry];
+			robot.pull();
+			int parent = _parent[entry];
+			int x = robot._x + (parent == -1 ? root._x : _x[parent]);
+			int y = robot._y + (parent == -1 ? root._y : _y[parent]);
+			_x[entry] = x;
+			_y[entry] = y;
+			int node = nodeFor(x, y, _width[entry], _height[entry]);
+			if (node != _node[entry]) {
+				unlink(entry);
+				link(entry, node);
+			}
+		}
+	}
+
+	/*
+	 * Returns true if entry is listed as able to move. Entries are listed in
+	 * increasing order.
+	 */
+	private boolean isMoving(int entry) {
+		return Arrays.binarySearch(_moving, 0, _movingCount, entry) >= 0;
+	}
+
+	/*
+	 * Pushes the children of carrier, whose absolute position is (x, y) and
+	 * whose entry is parent, onto the walk stack in reverse order so that
+	 * they are visited in order. Returns the new stack size.
+	 */
+	private int push(CarrierRobot carrier, int x, int y, int depth, int parent, int top) {
+		List<Robot> children = carrier._ChildRobotList;
+		int count = children.size();
+		if (top + count > _walkRobots.length) {
+			int capacity = Math.max(_walkRobots.length * 2, top + count);
+			_walkRobots = Arrays.copyOf(_walkRobots, capacity);
+			_walkX = Arrays.copyOf(_walkX, capacity);
+			_walkY = Arrays.copyOf(_walkY, capacity);
+			_walkDepth = Arrays.copyOf(_walkDepth, capacity);
+			_walkParent = Arrays.copyOf(_walkParent, capacity);
+		}
+		for (int i = count - 1; i >= 0; i--) {
+			_walkRobots[top] = children.get(i);
+			// Parent's absolute position; the child's offset is added on visiting.
+			_walkX[top] = x;
+			_walkY[top] = y;
+			_walkDepth[top] = depth + 1;
+			_walkParent[top] = parent;
+			top++;
+		}
+		return top;
+	}
+
+	/*
+	 * Chooses the number of levels and the cell size for a world of the
+	 * specified size, and allocates the node arrays.
+	 */
+	private void resize(int worldWidth, int worldHeight) {
+		int side = Math.max(Math.max(worldWidth, worldHeight), 1);
+		_levels = 1;
+		_leafCell = side;
+		while (_levels < MAX_LEVELS && _leafCell / 2 >= MIN_LEAF_CELL) {
+			_leafCell = (_leafCell + 1) / 2;
+			_levels++;
+		}
+		int nodes = offset(_levels);
+		if (_head.length != nodes) {
+			_head = new int[nodes];
+			_population = new int[nodes];
+		}
+	}
+
+	/*
+	 * Returns the node in which a robot with the specified absolute bounds is
+	 * filed.
+	 */
+	private int nodeFor(int x, int y, int width, int height) {
+		int size = Math.max(width, height);
+		int level = _levels - 1;
+		int cell = _leafCell;
+		while (level > 0 && size > cell) {
+			level--;
+			cell <<= 1;
+		}
+		int cells = 1 << level;
+		int cx = Math.min(Math.max((x + width / 2) / cell, 0), cells - 1);
+		int cy = Math.min(Math.max((y + height / 2) / cell, 0), cells - 1);
+		return nodeAt(level, cx, cy);
+	}
+
+	private void link(int entry, int node) {
+		int head = _head[node];
+		_node[entry] = node;
+		_previous[entry] = -1;
+		_next[entry] = head;
+		if (head != -1) {
+			_previous[head] = entry;
+		}
+		_head[node] = entry;
+		adjustPopulation(node, 1);
+	}
+
+	private void unlink(int entry) {
+		int node = _node[entry];
+		int previous = _previous[entry];
+		int next = _next[entry];
+		if (previous == -1) {
+			_head[node] = next;
+		} else {
+			_next[previous] = next;
+		}
+		if (next != -1) {
+			_previous[next] = previous;
+		}
+		adjustPopulation(node, -1);
+	}
+
+	/*
+	 * Adds delta to the population of node and each of its ancestors.
+	 */
+	private void adjustPopulation(int node, int delta) {
+		int level = levelOf(node);
+		int local = node - offset(level);
+		int cx = local & ((1 << level) - 1);
+		int cy = local >> level;
+		for (; level >= 0; level--) {
+			_population[nodeAt(level, cx, cy)] += delta;
+			cx >>= 1;
+			cy >>= 1;
+		}
+	}
+
+	private int cellSize(int level) {
+		return _leafCell << (_levels - 1 - level);
+	}
+
+	private static int nodeAt(int level, int cx, int cy) {
+		return offset(level) + (cy << level) + cx;
+	}
+
+	/*
+	 * Returns the number of nodes in the levels above level.
+	 */
+	private static int offset(int level) {
+		return ((1 << (2 * level)) - 1) / 3;
+	}
+
+	private static int levelOf(int node) {
+		int level = 0;
+		while (offset(level + 1) <= node) {
+			level++;
+		}
+		return level;
+	}
+
+	/*
+	 * Returns the squared distance from point (px, py) to the nearest pixel
+	 * of the specified rectangle.
+	 */
+	private static long distance(int px, int py, int x, int y, int width, int height) {
+		long dx = Math.max(Math.max(x - px, px - (x + width - 1)), 0);
+		long dy = Math.max(Math.max(y - py, py - (y + height - 1)), 0);
+		return dx * dx + dy * dy;
+	}
+
+	private void grow() {
+		int capacity = Math.max(_robots.length * 2, 16);
+		_robots = Arrays.copyOf(_robots, capacity);
+		_x = Arrays.copyOf(_x, capacity);
+		_y = Arrays.copyOf(_y, capacity);
+		_width = Arrays.copyOf(_width, capacity);
+		_height = Arrays.copyOf(_height, capacity);
+		_depth = Arrays.copyOf(_depth, capacity);
+		_node = Arrays.copyOf(_node, capacity);
+		_next = Arrays.copyOf(_next, capacity);
+		_previous = Arrays.copyOf(_previous, capacity);
+		_parent = Arrays.copyOf(_parent, capacity);
+		_moving = Arrays.copyOf(_moving, capacity);
+	}
+}
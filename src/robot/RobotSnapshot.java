@@ -0,0 +1,371 @@
+package robot;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Class to represent the state of a robot composition at one instant, as
+ * published by a RobotModel after each change (see
+ * RobotModel.setPublishSnapshots()). A RobotSnapshot holds the state of every
+ * Robot in arrays indexed in preorder, the root being at index 0, so that
+ * views running on other threads can read a consistent frame without locking
+ * the model and without reading Robots while they move.
+ *
+ * RobotSnapshots are pooled and reused by their RobotModel, so they are
+ * reference counted: a RobotSnapshot may only be read while a reference to it
+ * is held. The RobotSnapshot attached to a RobotModelEvent may be read during
+ * the update() call that delivers the event; a listener that reads it later
+ * must call retain() during update(), and release() once it has finished with
+ * it. A RobotSnapshot must not be read after its last reference has been
+ * released, since the model may then overwrite it with a later frame.
+ */
+public final class RobotSnapshot {
+	private static final int INITIAL_CAPACITY = 64;
+
+	private static final byte BOUNCED_OFF_VERTICAL = 1;
+	private static final byte BOUNCED_OFF_HORIZONTAL = 2;
+
+	// Pool to which this RobotSnapshot returns when it is no longer referenced.
+	private final SnapshotPool _pool;
+
+	// Next RobotSnapshot in _pool, while this RobotSnapshot is pooled.
+	RobotSnapshot _nextFree;
+
+	private final AtomicInteger _references = new AtomicInteger();
+
+	private int _size;
+
+	// === State of each Robot, in preorder.
+	private Robot[] _robots = new Robot[INITIAL_CAPACITY];
+	private int[] _x = new int[INITIAL_CAPACITY];
+	private int[] _y = new int[INITIAL_CAPACITY];
+	private int[] _deltaX = new int[INITIAL_CAPACITY];
+	private int[] _deltaY = new int[INITIAL_CAPACITY];
+	private int[] _width = new int[INITIAL_CAPACITY];
+	private int[] _height = new int[INITIAL_CAPACITY];
+	private byte[] _flags = new byte[INITIAL_CAPACITY];
+	private String[] _names = new String[INITIAL_CAPACITY];
+	private int[] _parents = new int[INITIAL_CAPACITY];
+	private int[] _positions = new int[INITIAL_CAPACITY];
+	// ===
+
+	// Children of the Robot at index i are at _children[_childStart[i]] up
+	// to, but excluding, _children[_childStart[i] + _childCount[i]].
+	private int[] _childStart = new int[INITIAL_CAPACITY];
+	private int[] _childCount = new int[INITIAL_CAPACITY];
+	private int[] _children = new int[INITIAL_CAPACITY];
+
+	// Open-addressed identity hash table mapping Robots to index + 1.
+	private int[] _table = new int[INITIAL_CAPACITY * 2];
+
+	// State of the walk made by capture().
+	private int _nextChild;
+
+	// RobotMoved event for a single tick carrying this RobotSnapshot, reused
+	// each time the RobotSnapshot is, or null until first needed.
+	private RobotModelEvent _movedEvent;
+
+	// Areas changed since the previous RobotSnapshot was published, or null
+	// if the model was not tracking damage.
+	private DamageRegion _damage;
+
+	RobotSnapshot(SnapshotPool pool) {
+		_pool = pool;
+	}
+
+	/**
+	 * Adds a reference to this RobotSnapshot, which the caller must later
+	 * release.
+	 * @return this RobotSnapshot.
+	 * @throws IllegalStateException if this RobotSnapshot has already been
+	 * released by all of its holders.
+	 */
+	public RobotSnapshot retain() {
+		if (!tryRetain()) {
+			throw new IllegalStateException();
+		}
+		return this;
+	}
+
+	/**
+	 * Releases a reference to this RobotSnapshot. Once every reference has
+	 * been released the RobotSnapshot is returned to its model for reuse.
+	 */
+	public void release() {
+		if (_references.decrementAndGet() == 0) {
+			_pool.offer(this);
+		}
+	}
+
+	/**
+	 * Returns the number of Robots in this RobotSnapshot, including the root.
+	 */
+	public int size() {
+		return _size;
+	}
+
+	/**
+	 * Returns the index of the specified Robot within this RobotSnapshot, or
+	 * -1 if it was not part of the model when this RobotSnapshot was taken.
+	 */
+	public int indexOf(Robot robot) {
+		int mask = _table.length - 1;
+		for (int slot = hash(robot) & mask; _table[slot] != 0; slot = (slot + 1) & mask) {
+			if (_robots[_table[slot] - 1] == robot) {
+				return _table[slot] - 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the Robot at the specified index.
+	 */
+	public Robot robot(int index) {
+		return _robots[checkIndex(index)];
+	}
+
+	/**
+	 * Returns the index of the parent of the Robot at the specified index, or
+	 * -1 for the root.
+	 */
+	public int parent(int index) {
+		return _parents[checkIndex(index)];
+	}
+
+	/**
+	 * Returns the position of the Robot at the specified index among the
+	 * children of its parent, or -1 for the root.
+	 */
+	public int indexInParent(int index) {
+		return _positions[checkIndex(index)];
+	}
+
+	/**
+	 * Returns the number of children of the Robot at the specified index.
+	 */
+	public int childCount(int index) {
+		return _childCount[checkIndex(index)];
+	}
+
+	/**
+	 * Returns the index of the nth child of the Robot at the specified index.
+	 * @throws IndexOutOfBoundsException if n is negative or not less than
+	 * childCount(index).
+	 */
+	public int child(int index, int n) {
+		if (n < 0 || n >= _childCount[checkIndex(index)]) {
+			throw new IndexOutOfBoundsException();
+		}
+		return _children[_childStart[index] + n];
+	}
+
+	/**
+	 * Returns the x position, relative to its parent, of the Robot at the
+	 * specified index.
+	 */
+	public int x(int index) {
+		return _x[checkIndex(index)];
+	}
+
+	/**
+	 * Returns the y position, relative to its parent, of the Robot at the
+	 * specified index.
+	 */
+	public int y(int index) {
+		return _y[checkIndex(index)];
+	}
+
+	/**
+	 * Returns the horizontal speed and direction of the Robot at the specified
+	 * index.
+	 */
+	public int deltaX(int index) {
+		return _deltaX[checkIndex(index)];
+	}
+
+	/**
+	 * Returns the vertical speed and direction of the Robot at the specified
+	 * index.
+	 */
+	public int deltaY(int index) {
+		return _deltaY[checkIndex(index)];
+	}
+
+	/**
+	 * Returns the width of the Robot at the specified index.
+	 */
+	public int width(int index) {
+		return _width[checkIndex(index)];
+	}
+
+	/**
+	 * Returns the height of the Robot at the specified index.
+	 */
+	public int height(int index) {
+		return _height[checkIndex(index)];
+	}
+
+	/**
+	 * Returns true if the Robot at the specified index bounced off a vertical
+	 * wall on its latest move.
+	 */
+	public boolean didBounceOffVertical(int index) {
+		return (_flags[checkIndex(index)] & BOUNCED_OFF_VERTICAL) != 0;
+	}
+
+	/**
+	 * Returns true if the Robot at the specified index bounced off a
+	 * horizontal wall on its latest move.
+	 */
+	public boolean didBounceOffHorizontal(int index) {
+		return (_flags[checkIndex(index)] & BOUNCED_OFF_HORIZONTAL) != 0;
+	}
+
+	/**
+	 * Returns the name of the Robot at the specified index, or null.
+	 */
+	public String name(int index) {
+		return _names[checkIndex(index)];
+	}
+
+	/**
+	 * Returns the areas of the animation that changed between the previous
+	 * RobotSnapshot published by the model and this one, or null if the 
+	 * model was not tracking damage (see RobotModel.setDamageTracking()). The
+	 * region must not be modified.
+	 */
+	public DamageRegion damage() {
+		return _damage;
+	}
+
+	/*
+	 * Adds a reference unless every reference has been released.
+	 */
+	boolean tryRetain() {
+		for (;;) {
+			int references = _references.get();
+			if (references == 0) {
+				return false;
+			}
+			if (_references.compareAndSet(references, references + 1)) {
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Records the state of the composition rooted at root, and the damage
+	 * since the previous RobotSnapshot, and sets the reference count to one,
+	 * held by the caller. Must only be called while the composition cannot
+	 * change and this RobotSnapshot is unreferenced.
+	 */
+	void capture(CarrierRobot root, DamageRegion damage) {
+		_damage = damage;
+		Arrays.fill(_robots, 0, _size, null);
+		Arrays.fill(_names, 0, _size, null);
+		_size = 0;
+		_nextChild = 0;
+		visit(root, -1, -1);
+
+		if (_table.length < _size * 2) {
+			_table = new int[Integer.highestOneBit(_size * 2) * 2];
+		} else {
+			Arrays.fill(_table, 0);
+		}
+		int mask = _table.length - 1;
+		for (int i = 0; i < _size; i++) {
+			int slot = hash(_robots[i]) & mask;
+			while (_table[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			_table[slot] = i + 1;
+		}
+		_references.set(1);
+	}
+
+	/**
+	 * Returns a RobotMoved event for one tick of the root, carrying this
+	 * RobotSnapshot. The event is reused whenever this RobotSnapshot is, so a
+	 * listener that keeps it beyond update() must retain this RobotSnapshot,
+	 * as it must to read it.
+	 */
+	RobotModelEvent movedEvent(RobotModel source) {
+		if (_movedEvent == null) {
+			_movedEvent = RobotModelEvent.makeRobotMovedEvent(_robots[0], source);
+			_movedEvent.setSnapshot(this);
+		}
+		return _movedEvent;
+	}
+
+	/*
+	 * Records robot, whose parent is at the specified index and which is at
+	 * the specified position among its siblings, and its descendants.
+	 */
+	private void visit(Robot robot, int parent, int position) {
+		int i = _size++;
+		if (i == _robots.length) {
+			grow();
+		}
+		robot.pull();
+		_robots[i] = robot;
+		_x[i] = robot._x;
+		_y[i] = robot._y;
+		_deltaX[i] = robot._deltaX;
+		_deltaY[i] = robot._deltaY;
+		_width[i] = robot._width;
+		_height[i] = robot._height;
+		_flags[i] = (byte) ((robot._didBounceOffVertical ? BOUNCED_OFF_VERTICAL : 0)
+				| (robot._didBounceOffHorizontal ? BOUNCED_OFF_HORIZONTAL : 0));
+		_names[i] = robot._Name;
+		_parents[i] = parent;
+		_positions[i] = position;
+
+		if (robot instanceof CarrierRobot) {
+			List<Robot> children = ((CarrierRobot) robot)._ChildRobotList;
+			int count = children.size();
+			_childStart[i] = _nextChild;
+			_childCount[i] = count;
+			_nextChild += count;
+			if (_nextChild > _children.length) {
+				_children = Arrays.copyOf(_children, Math.max(_nextChild, _children.length * 2));
+			}
+			for (int j = 0; j < count; j++) {
+				_children[_childStart[i] + j] = _size;
+				visit(children.get(j), i, j);
+			}
+		} else {
+			_childStart[i] = 0;
+			_childCount[i] = 0;
+		}
+	}
+
+	private void grow() {
+		int capacity = _robots.length * 2;
+		_robots = Arrays.copyOf(_robots, capacity);
+		_x = Arrays.copyOf(_x, capacity);
+		_y = Arrays.copyOf(_y, capacity);
+		_deltaX = Arrays.copyOf(_deltaX, capacity);
+		_deltaY = Arrays.copyOf(_deltaY, capacity);
+		_width = Arrays.copyOf(_width, capacity);
+		_height = Arrays.copyOf(_height, capacity);
+		_flags = Arrays.copyOf(_flags, capacity);
+		_names = Arrays.copyOf(_names, capacity);
+		_parents = Arrays.copyOf(_parents, capacity);
+		_positions = Arrays.copyOf(_positions, capacity);
+		_childStart = Arrays.copyOf(_childStart, capacity);
+		_childCount = Arrays.copyOf(_childCount, capacity);
+	}
+
+	private int checkIndex(int index) {
+		if (index < 0 || index >= _size) {
+			throw new IndexOutOfBoundsException();
+		}
+		return index;
+	}
+
+	private static int hash(Robot robot) {
+		return System.identityHashCode(robot) * 0x9E3779B9 >>> 7;
+	}
+}
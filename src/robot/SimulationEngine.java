@@ -0,0 +1,39 @@
+package robot;
+
+/**
+ * Interface to represent a strategy for progressing the robots held by a 
+ * RobotModel. A RobotModel delegates the movement part of each clock() call
+ * to its SimulationEngine, and tells the engine whenever the structure of the
+ * robot composition changes. Every implementation must produce the same 
+ * positions, deltas and bounce flags as repeatedly calling Robot's move() 
+ * method on the composition. A SimulationEngine instance belongs to a single
+ * RobotModel and must not be shared.
+ */
+public interface SimulationEngine {
+	/**
+	 * Moves every Robot in the composition rooted at root by one step. The 
+	 * root moves within the bounds given by width and height; every other
+	 * Robot moves within the bounds of its parent CarrierRobot.
+	 * @param root the root CarrierRobot of the composition.
+	 * @param width width of the two-dimensional world.
+	 * @param height height of the two-dimensional world.
+	 */
+	public void clock(CarrierRobot root, int width, int height);
+	
+	/**
+	 * Moves every Robot in the composition rooted at root forward by ticks
+	 * steps, leaving the composition in the same state as ticks successive
+	 * clock() calls would.
+	 * @param root the root CarrierRobot of the composition.
+	 * @param width width of the two-dimensional world.
+	 * @param height height of the two-dimensional world.
+	 * @param ticks the number of steps, which must not be negative.
+	 */
+	public void advance(CarrierRobot root, int width, int height, long ticks);
+	
+	/**
+	 * Notifies this SimulationEngine that a Robot has been added to or
+	 * removed from the composition it is progressing.
+	 */
+	public void structureChanged();
+}
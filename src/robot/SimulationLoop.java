@@ -0,0 +1,182 @@
+package robot;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Class to progress a RobotModel from a dedicated simulation thread, at a
+ * fixed rate that is independent of how quickly the model's views are able
+ * to render. A SimulationLoop uses a fixed-timestep accumulator: elapsed
+ * real time is added to an accumulator and the model is clocked once for
+ * every whole tick period the accumulator holds. If the loop falls behind
+ * (e.g. because the host is overloaded) it performs at most maxCatchUpSteps
+ * clock() calls in a row before discarding the remaining backlog, so that a
+ * stall is not followed by a burst of fast-forwarded animation.
+ *
+ * Each clock() call fires a RobotMoved event on the simulation thread. Views
+ * that must run on a particular thread, such as Swing components, should be
+ * registered through a listener that hands events over to that thread.
+ *
+ * If clock() throws a RuntimeException, e.g. from a listener, the loop stops:
+ * isRunning() returns false, failure() returns the exception, and the
+ * exception is reported to the simulation thread's UncaughtExceptionHandler.
+ */
+public class SimulationLoop implements Runnable {
+	// Default number of clock() calls per second.
+	public static final int DEFAULT_TICK_RATE = 40;
+
+	// Default limit on clock() calls made back-to-back to catch up.
+	public static final int DEFAULT_MAX_CATCH_UP_STEPS = 5;
+
+	private final RobotModel _model;
+
+	private final long _tickNanos;
+
+	private final int _maxCatchUpSteps;
+
+	private volatile boolean _running = false;
+
+	private Thread _thread;
+
+	// Statistics, written only by the simulation thread.
+	private volatile long _ticks = 0;
+
+	private volatile long _droppedTicks = 0;
+
+	// Exception that stopped the loop, or null.
+	private volatile RuntimeException _failure;
+
+	/**
+	 * Creates a SimulationLoop that clocks model at the default rate.
+	 */
+	public SimulationLoop(RobotModel model) {
+		this(model, DEFAULT_TICK_RATE, DEFAULT_MAX_CATCH_UP_STEPS);
+	}
+
+	/**
+	 * Creates a SimulationLoop.
+	 * @param model the RobotModel to progress.
+	 * @param tickRate the number of clock() calls to make per second.
+	 * @param maxCatchUpSteps the maximum number of clock() calls made in a
+	 * row when the loop has fallen behind.
+	 * @throws IllegalArgumentException if tickRate or maxCatchUpSteps is
+	 * less than 1.
+	 */
+	public SimulationLoop(RobotModel model, int tickRate, int maxCatchUpSteps) {
+		if (tickRate < 1 || maxCatchUpSteps < 1) {
+			throw new IllegalArgumentException();
+		}
+		_model = model;
+		_tickNanos = TimeUnit.SECONDS.toNanos(1) / tickRate;
+		_maxCatchUpSteps = maxCatchUpSteps;
+	}
+
+	/**
+	 * Starts the simulation thread. Has no effect if the loop is already
+	 * running.
+	 */
+	public synchronized void start() {
+		if (_running) {
+			return;
+		}
+		_running = true;
+		_failure = null;
+		_thread = new Thread(this, "robot-simulation");
+		_thread.setDaemon(true);
+		_thread.start();
+	}
+
+	/**
+	 * Stops the simulation thread, waiting for the current tick to finish.
+	 */
+	public synchronized void stop() {
+		if (_thread == null) {
+			return;
+		}
+		_running = false;
+		LockSupport.unpark(_thread);
+		try {
+			_thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		_thread = null;
+	}
+
+	/**
+	 * Returns true if the simulation thread is running, i.e. it has been
+	 * started and has neither been stopped nor failed.
+	 */
+	public boolean isRunning() {
+		return _running;
+	}
+
+	/**
+	 * Returns the number of clock() calls made since the loop was created.
+	 */
+	public long ticks() {
+		return _ticks;
+	}
+
+	/**
+	 * Returns the number of ticks that were discarded because the loop fell
+	 * more than maxCatchUpSteps ticks behind.
+	 */
+	public long droppedTicks() {
+		return _droppedTicks;
+	}
+
+	/**
+	 * Returns the RuntimeException thrown by clock() that stopped the loop,
+	 * or null if the loop has not failed since it was last started.
+	 */
+	public RuntimeException failure() {
+		return _failure;
+	}
+
+	/**
+	 * Runs the fixed-timestep loop until stop() is called or clock() throws.
+	 * This method is executed by the simulation thread.
+	 */
+	@Override
+	public void run() {
+		try {
+			tick();
+		} catch (RuntimeException e) {
+			_failure = e;
+			_running = false;
+			Thread thread = Thread.currentThread();
+			thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+		}
+	}
+
+	/*
+	 * Clocks the model at the tick rate while the loop is running.
+	 */
+	private void tick() {
+		long previous = System.nanoTime();
+		long accumulator = 0;
+
+		while (_running) {
+			long now = System.nanoTime();
+			accumulator += now - previous;
+			previous = now;
+
+			int steps = 0;
+			while (accumulator >= _tickNanos && steps < _maxCatchUpSteps) {
+				_model.clock();
+				accumulator -= _tickNanos;
+				steps++;
+			}
+			_ticks += steps;
+
+			if (accumulator >= _tickNanos) {
+				// Too far behind: drop the backlog rather than racing ahead.
+				_droppedTicks += accumulator / _tickNanos;
+				accumulator %= _tickNanos;
+			}
+
+			LockSupport.parkNanos(_tickNanos - accumulator);
+		}
+	}
+}
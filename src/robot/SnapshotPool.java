@@ -0,0 +1,48 @@
+package robot;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lock-free pool of released RobotSnapshots, from which a RobotModel reuses
+ * snapshots when it publishes. A RobotSnapshot may be released, and so
+ * offered to the pool, on any thread; a single consumer at a time (the
+ * RobotModel, under its own lock) polls snapshots from it.
+ *
+ * The pool is an intrusive stack linked through the RobotSnapshots
+ * themselves, so neither offer() nor poll() allocates. Since only the
+ * consumer removes snapshots, the snapshot at the top cannot be polled and
+ * offered again between a poll()'s read and its compare-and-set.
+ */
+final class SnapshotPool {
+	private final AtomicReference<RobotSnapshot> _top = new AtomicReference<RobotSnapshot>();
+
+	/**
+	 * Returns snapshot to the pool. Safe to call from any thread.
+	 */
+	void offer(RobotSnapshot snapshot) {
+		for (;;) {
+			RobotSnapshot top = _top.get();
+			snapshot._nextFree = top;
+			if (_top.compareAndSet(top, snapshot)) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Removes and returns a pooled snapshot, or returns null if the pool is
+	 * empty. Must only be called by the consumer.
+	 */
+	RobotSnapshot poll() {
+		for (;;) {
+			RobotSnapshot top = _top.get();
+			if (top == null) {
+				return null;
+			}
+			if (_top.compareAndSet(top, top._nextFree)) {
+				top._nextFree = null;
+				return top;
+			}
+		}
+	}
+}
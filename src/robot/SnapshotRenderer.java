@@ -0,0 +1,89 @@
+package robot;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Class to paint the robot composition recorded by a RobotSnapshot. Robots
+ * paint themselves from their own fields, so a SnapshotRenderer keeps a
+ * detached copy - a shadow - of each Robot it has painted. Before painting a
+ * frame it loads each shadow with the state recorded in the snapshot and
+ * links the shadows into a composition mirroring the snapshot's, then paints
+ * the root shadow. The live Robots are never read, so a frame can be painted
+ * while the model moves on to the next.
+ *
+ * Shadows are retained between frames, so state that a Robot keeps from one
+ * paint to the next (e.g. a DynamicWheeledRobot's fill) carries over as it
+ * would for the live Robot. A SnapshotRenderer is not thread-safe; it is
+ * intended to be owned by a single view.
+ */
+public class SnapshotRenderer {
+	private final Map<Robot, Robot> _shadows = new IdentityHashMap<Robot, Robot>();
+
+	// Shadows of the latest frame, indexed as in its snapshot.
+	private Robot[] _frame = new Robot[64];
+
+	/**
+	 * Paints the composition recorded by snapshot. The caller must hold a
+	 * reference to snapshot.
+	 */
+	public void paint(RobotSnapshot snapshot, Painter painter) {
+		Robot root = load(snapshot);
+		if (root != null) {
+			root.paint(painter);
+		}
+	}
+
+	/**
+	 * Loads the shadows with the composition recorded by snapshot and returns
+	 * the root shadow, or null if snapshot is empty. The shadows may be 
+	 * painted by several threads at once, but only until the next call to 
+	 * load() or paint(). The caller must hold a reference to snapshot.
+	 */
+	public Robot load(RobotSnapshot snapshot) {
+		int size = snapshot.size();
+		if (_frame.length < size) {
+			_frame = Arrays.copyOf(_frame, Math.max(size, _frame.length * 2));
+		}
+
+		for (int i = 0; i < size; i++) {
+			Robot robot = snapshot.robot(i);
+			Robot shadow = _shadows.get(robot);
+			if (shadow == null) {
+				shadow = robot.shadow();
+				_shadows.put(robot, shadow);
+			}
+			shadow._x = snapshot.x(i);
+			shadow._y = snapshot.y(i);
+			shadow._deltaX = snapshot.deltaX(i);
+			shadow._deltaY = snapshot.deltaY(i);
+			shadow._width = snapshot.width(i);
+			shadow._height = snapshot.height(i);
+			shadow._didBounceOffVertical = snapshot.didBounceOffVertical(i);
+			shadow._didBounceOffHorizontal = snapshot.didBounceOffHorizontal(i);
+			shadow._Name = snapshot.name(i);
+			if (shadow instanceof CarrierRobot) {
+				((CarrierRobot) shadow)._ChildRobotList.clear();
+			}
+			int parent = snapshot.parent(i);
+			if (parent >= 0) {
+				List<Robot> siblings = ((CarrierRobot) _frame[parent])._ChildRobotList;
+				siblings.add(shadow);
+			}
+			_frame[i] = shadow;
+		}
+
+		// Forget the shadows of Robots that have left the model.
+		if (_shadows.size() > 2 * size) {
+			_shadows.clear();
+			for (int i = 0; i < size; i++) {
+				_shadows.put(snapshot.robot(i), _frame[i]);
+			}
+		}
+		Arrays.fill(_frame, size, _frame.length, null);
+
+		return size > 0 ? _frame[0] : null;
+	}
+}
@@ -0,0 +1,200 @@
+package robot;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.image.BufferedImage;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Cache of the sprites drawn by SpriteCachingPainters: images of Robots
+ * rasterised once for each combination of Robot class, width, height, name,
+ * colour, font and sprite state (see Robot.spriteState()). A SpriteCache
+ * outlives the SpriteCachingPainters that use it, which are typically
+ * created for a single paint, and may be shared by several threads.
+ *
+ * The cache holds at most maxBytes bytes of pixels, evicting the least
+ * recently used sprites first. Looking up a sprite that is cached allocates
+ * nothing.
+ */
+public class SpriteCache {
+	// Default bound on the size of a SpriteCache.
+	public static final long DEFAULT_MAX_BYTES = 16L * 1024 * 1024;
+
+	private final long _maxBytes;
+
+	// Sprites in order of use, least recently used first.
+	private final LinkedHashMap<Key, Sprite> _sprites = new LinkedHashMap<Key, Sprite>(64, 0.75f, true);
+
+	// Key reused for lookups, guarded by this SpriteCache's lock.
+	private final Key _probe = new Key();
+
+	private long _bytes = 0;
+
+	private long _hits = 0;
+
+	private long _misses = 0;
+
+	/**
+	 * Creates a SpriteCache holding at most DEFAULT_MAX_BYTES bytes of pixels.
+	 */
+	public SpriteCache() {
+		this(DEFAULT_MAX_BYTES);
+	}
+
+	/**
+	 * Creates a SpriteCache holding at most maxBytes bytes of pixels.
+	 */
+	public SpriteCache(long maxBytes) {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException();
+		}
+		_maxBytes = maxBytes;
+	}
+
+	/**
+	 * Returns the sprite cached for the specified appearance, or null if
+	 * there is none.
+	 */
+	synchronized Sprite get(Class<?> type, int width, int height, String name, Color color, Font font,
+			Object state) {
+		_probe.set(type, width, height, name, color, font, state);
+		Sprite sprite = _sprites.get(_probe);
+		if (sprite == null) {
+			_misses++;
+		} else {
+			_hits++;
+		}
+		return sprite;
+	}
+
+	/**
+	 * Caches sprite for the specified appearance, evicting least recently
+	 * used sprites as necessary.
+	 */
+	synchronized void put(Class<?> type, int width, int height, String name, Color color, Font font,
+			Object state, Sprite sprite) {
+		Key key = new Key();
+		key.set(type, width, height, name, color, font, state);
+		Sprite previous = _sprites.put(key, sprite);
+		if (previous != null) {
+			_bytes -= previous.bytes();
+		}
+		_bytes += sprite.bytes();
+
+		for (Iterator<Map.Entry<Key, Sprite>> i = _sprites.entrySet().iterator();
+				_bytes > _maxBytes && i.hasNext();) {
+			Map.Entry<Key, Sprite> eldest = i.next();
+			if (eldest.getValue() != sprite) {
+				_bytes -= eldest.getValue().bytes();
+				i.remove();
+			}
+		}
+	}
+
+	/**
+	 * Discards every sprite.
+	 */
+	public synchronized void clear() {
+		_sprites.clear();
+		_bytes = 0;
+	}
+
+	/**
+	 * Returns the number of sprites held.
+	 */
+	public synchronized int size() {
+		return _sprites.size();
+	}
+
+	/**
+	 * Returns the number of bytes of pixels held.
+	 */
+	public synchronized long bytes() {
+		return _bytes;
+	}
+
+	/**
+	 * Returns the number of lookups that found a cached sprite.
+	 */
+	public synchronized long hits() {
+		return _hits;
+	}
+
+	/**
+	 * Returns the number of lookups that found no cached sprite, each of
+	 * which led to a Robot being rasterised.
+	 */
+	public synchronized long misses() {
+		return _misses;
+	}
+
+	/**
+	 * Image of a Robot, drawn with its top left corner offset from the
+	 * Robot's position by (offsetX, offsetY).
+	 */
+	static final class Sprite {
+		final BufferedImage _image;
+		final int _offsetX;
+		final int _offsetY;
+
+		Sprite(BufferedImage image, int offsetX, int offsetY) {
+			_image = image;
+			_offsetX = offsetX;
+			_offsetY = offsetY;
+		}
+
+		long bytes() {
+			return 4L * _image.getWidth() * _image.getHeight();
+		}
+	}
+
+	private static final class Key {
+		private Class<?> _type;
+		private int _width;
+		private int _height;
+		private String _name;
+		private Color _color;
+		private Font _font;
+		private Object _state;
+		private int _hash;
+
+		void set(Class<?> type, int width, int height, String name, Color color, Font font, Object state) {
+			_type = type;
+			_width = width;
+			_height = height;
+			_name = name;
+			_color = color;
+			_font = font;
+			_state = state;
+			int hash = type.hashCode();
+			hash = hash * 31 + width;
+			hash = hash * 31 + height;
+			hash = hash * 31 + (name == null ? 0 : name.hashCode());
+			hash = hash * 31 + (color == null ? 0 : color.hashCode());
+			hash = hash * 31 + (font == null ? 0 : font.hashCode());
+			_hash = hash * 31 + state.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if (!(other instanceof Key)) {
+				return false;
+			}
+			Key key = (Key) other;
+			return _type == key._type && _width == key._width && _height == key._height
+					&& equal(_name, key._name) && equal(_color, key._color)
+					&& equal(_font, key._font) && _state.equals(key._state);
+		}
+
+		@Override
+		public int hashCode() {
+			return _hash;
+		}
+
+		private static boolean equal(Object a, Object b) {
+			return a == null ? b == null : a.equals(b);
+		}
+	}
+}
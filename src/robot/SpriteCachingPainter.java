@@ -0,0 +1,126 @@
+package robot;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsDevice;
+import java.awt.GraphicsEnvironment;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+/**
+ * GraphicsPainter that draws Robots from sprites held by a SpriteCache. The
+ * first time a Robot with a particular appearance is painted, it is painted
+ * into a translucent image compatible with the Graphics object, along with
+ * its name; afterwards, every Robot with the same appearance is painted with
+ * a single drawImage() call. Robots whose appearance is not determined by
+ * their sprite state (see Robot.spriteState()), such as CarrierRobots, are
+ * painted directly.
+ *
+ * Sprites are keyed on the Graphics object's colour and font but not on its
+ * other settings, such as rendering hints, which are copied into the sprite
+ * when it is rasterised; a SpriteCache should not be shared between
+ * Graphics objects with different settings.
+ *
+ * Drawing a sprite costs in proportion to its area rather than to the length
+ * of the Robot's outline, so sprites pay off where rasterising a Robot is
+ * expensive: with antialiasing on, for names, and on pipelines that keep
+ * images in video memory. Painting plain outlines in software onto a
+ * BufferedImage is faster without them.
+ */
+public class SpriteCachingPainter extends GraphicsPainter {
+	// Margin left around a Robot's name, for glyphs overhanging their advance.
+	private static final int TEXT_MARGIN = 2;
+
+	private final Graphics _g;
+
+	private final SpriteCache _cache;
+
+	/**
+	 * Creates a SpriteCachingPainter that paints onto g, using and adding to
+	 * the sprites held by cache.
+	 */
+	public SpriteCachingPainter(Graphics g, SpriteCache cache) {
+		super(g);
+		_g = g;
+		_cache = cache;
+	}
+
+	/**
+	 * Draws robot, including its name, from its sprite, rasterising it first
+	 * if necessary. Returns false, having drawn nothing, if robot must be
+	 * painted directly.
+	 */
+	@Override
+	public boolean drawSprite(Robot robot) {
+		Object state = robot.spriteState();
+		if (state == null) {
+			return false;
+		}
+		Class<?> type = robot.getClass();
+		Color color = _g.getColor();
+		Font font = _g.getFont();
+		SpriteCache.Sprite sprite = _cache.get(type, robot._width, robot._height, robot._Name, color, font, state);
+		if (sprite == null) {
+			sprite = rasterise(robot, color, font);
+			_cache.put(type, robot._width, robot._height, robot._Name, color, font, state, sprite);
+		}
+		_g.drawImage(sprite._image, robot._x + sprite._offsetX, robot._y + sprite._offsetY, null);
+		return true;
+	}
+
+	/*
+	 * Paints robot into a new sprite, sized to hold its outline, which covers
+	 * one more pixel each way than its width and height, and its name.
+	 */
+	private SpriteCache.Sprite rasterise(Robot robot, Color color, Font font) {
+		int left = 0;
+		int top = 0;
+		int right = robot._width + 1;
+		int bottom = robot._height + 1;
+		if (robot._Name != null) {
+			// As drawCentredText() positions the name.
+			FontMetrics metrics = _g.getFontMetrics(font);
+			int textX = robot._width / 2 - metrics.stringWidth(robot._Name) / 2;
+			int textY = (robot._height - metrics.getHeight()) / 2;
+			left = Math.min(left, textX - TEXT_MARGIN);
+			top = Math.min(top, textY - TEXT_MARGIN);
+			right = Math.max(right, textX + metrics.stringWidth(robot._Name) + TEXT_MARGIN);
+			bottom = Math.max(bottom, textY + metrics.getHeight() + TEXT_MARGIN);
+		}
+
+		BufferedImage image = createImage(right - left, bottom - top);
+		Graphics2D g = image.createGraphics();
+		if (_g instanceof Graphics2D) {
+			g.setRenderingHints(((Graphics2D) _g).getRenderingHints());
+		}
+		g.setColor(color);
+		g.setFont(font);
+		g.translate(-left - robot._x, -top - robot._y);
+		robot.paintDirectly(new GraphicsPainter(g));
+		g.dispose();
+		return new SpriteCache.Sprite(image, left, top);
+	}
+
+	/*
+	 * Returns a translucent image compatible with the screen, when painting
+	 * onto the screen. Otherwise the image is premultiplied, which is cheaper
+	 * to blend in software.
+	 */
+	private BufferedImage createImage(int width, int height) {
+		GraphicsConfiguration configuration = null;
+		if (_g instanceof Graphics2D) {
+			configuration = ((Graphics2D) _g).getDeviceConfiguration();
+		} else if (!GraphicsEnvironment.isHeadless()) {
+			configuration = GraphicsEnvironment.getLocalGraphicsEnvironment()
+					.getDefaultScreenDevice().getDefaultConfiguration();
+		}
+		if (configuration == null || configuration.getDevice().getType() == GraphicsDevice.TYPE_IMAGE_BUFFER) {
+			return new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+		}
+		return configuration.createCompatibleImage(width, height, Transparency.TRANSLUCENT);
+	}
+}
@@ -0,0 +1,307 @@
+package robot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Dimension;
+import java.awt.Point;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Class to test that an AsyncDispatcher delivers events in order on its own
+ * executor, applies its OverflowPolicy when its listener falls behind, and
+ * keeps its metrics up to date.
+ */
+public class TestAsyncDispatcher {
+
+	private static final Dimension BOUNDS = new Dimension(500, 400);
+
+	/**
+	 * Checks that a listener blocked inside update() does not stall clock(),
+	 * that the RobotMoved events queued meanwhile are coalesced without losing
+	 * any ticks, and that the lag returns to zero once the listener resumes.
+	 */
+	@Test
+	public void testSlowListenerDoesNotStallModel() throws InterruptedException {
+		RobotModel model = new RobotModel(BOUNDS);
+		model.setPublishSnapshots(true);
+		model.add(new WheeledRobot(10, 10, 3, 2, 20, 20), model.root());
+
+		final CountDownLatch blocked = new CountDownLatch(1);
+		final long[] ticks = new long[1];
+		RobotModelListener slow = new RobotModelListener() {
+			public void update(RobotModelEvent event) {
+				try {
+					blocked.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				synchronized (ticks) {
+					ticks[0] += event.ticks();
+				}
+			}
+		};
+		AsyncDispatcher dispatcher = new AsyncDispatcher(slow, 4, AsyncDispatcher.OverflowPolicy.COALESCE_MOVED);
+		model.addRobotModelListener(dispatcher);
+		try {
+			for (int i = 0; i < 1000; i++) {
+				model.clock();
+			}
+			assertTrue(dispatcher.queueDepth() <= 4);
+			assertEquals(1000, dispatcher.lag());
+			assertTrue(dispatcher.coalescedEvents() > 0);
+
+			blocked.countDown();
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (dispatcher.lag() > 0 && System.nanoTime() < deadline) {
+				Thread.sleep(5);
+			}
+			assertEquals(0, dispatcher.lag());
+			synchronized (ticks) {
+				assertEquals(1000, ticks[0]);
+			}
+			assertEquals(0, dispatcher.failures());
+			assertTrue(dispatcher.maxDispatchNanos() > 0);
+		} finally {
+			model.removeRobotModelListener(dispatcher);
+			dispatcher.close();
+		}
+	}
+
+	/**
+	 * Checks that DROP_OLDEST keeps only the latest events once the queue is
+	 * full, and delivers them in order.
+	 */
+	@Test
+	public void testDropOldestKeepsLatestEvents() {
+		ManualExecutor executor = new ManualExecutor();
+		Recorder recorder = new Recorder();
+		AsyncDispatcher dispatcher = new AsyncDispatcher(
+				recorder, 3, AsyncDispatcher.OverflowPolicy.DROP_OLDEST, executor);
+		RobotModel model = new RobotModel(BOUNDS);
+		model.addRobotModelListener(dispatcher);
+
+		List<Robot> robots = new ArrayList<Robot>();
+		for (int i = 0; i < 10; i++) {
+			Robot robot = new WheeledRobot(i, i, 1, 1, 10, 10);
+			robots.add(robot);
+			model.add(robot, model.root());
+		}
+		assertEquals(3, dispatcher.queueDepth());
+		assertEquals(7, dispatcher.droppedEvents());
+
+		executor.runAll();
+		assertEquals(robots.subList(7, 10), recorder._operands);
+		assertEquals(3, dispatcher.deliveredEvents());
+		assertEquals(0, dispatcher.queueDepth());
+	}
+
+	/**
+	 * Checks that the lag returns to zero once a listener that overflowed a
+	 * DROP_OLDEST queue catches up, though ticks are counted as handled both
+	 * by the notifying thread, for the events dropped, and by the delivery
+	 * thread.
+	 */
+	@Test
+	public void testDropOldestLagReturnsToZero() throws InterruptedException {
+		RobotModel model = new RobotModel(BOUNDS);
+		model.add(new WheeledRobot(10, 10, 3, 2, 20, 20), model.root());
+		RobotModelListener busy = new RobotModelListener() {
+			public void update(RobotModelEvent event) {
+				long end = System.nanoTime() + 2000;
+				while (System.nanoTime() < end) {
+					// Spin, so that delivery overlaps the ticks being dropped.
+				}
+			}
+		};
+		AsyncDispatcher dispatcher = new AsyncDispatcher(busy, 2, AsyncDispatcher.OverflowPolicy.DROP_OLDEST);
+		model.addRobotModelListener(dispatcher);
+		try {
+			for (int i = 0; i < 100000; i++) {
+				model.clock();
+			}
+			assertTrue(dispatcher.droppedEvents() > 0);
+
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while ((dispatcher.queueDepth() > 0 || dispatcher.lag() > 0) && System.nanoTime() < deadline) {
+				Thread.sleep(5);
+			}
+			assertEquals(0, dispatcher.queueDepth());
+			assertEquals(0, dispatcher.lag());
+			assertEquals(100000, dispatcher.deliveredEvents() + dispatcher.droppedEvents());
+		} finally {
+			model.removeRobotModelListener(dispatcher);
+			dispatcher.close();
+		}
+	}
+
+	/**
+	 * Checks that COALESCE_MOVED merges consecutive RobotMoved events, never
+	 * discards RobotAdded events, and discards the oldest RobotMoved event
+	 * when the queue is full.
+	 */
+	@Test
+	public void testCoalesceMovedKeepsStructuralEvents() {
+		ManualExecutor executor = new ManualExecutor();
+		Recorder recorder = new Recorder();
+		AsyncDispatcher dispatcher = new AsyncDispatcher(
+				recorder, 3, AsyncDispatcher.OverflowPolicy.COALESCE_MOVED, executor);
+		RobotModel model = new RobotModel(BOUNDS);
+		model.addRobotModelListener(dispatcher);
+
+		Robot first = new WheeledRobot(10, 10, 1, 1, 10, 10);
+		Robot second = new WheeledRobot(50, 50, 1, 1, 10, 10);
+		model.add(first, model.root());
+		model.clock();
+		model.clock();
+		model.advance(5);
+		assertEquals(2, dispatcher.queueDepth());
+		assertEquals(2, dispatcher.coalescedEvents());
+
+		// Fills the queue; the next add must displace the RobotMoved event.
+		model.add(second, model.root());
+		model.remove(first);
+		assertEquals(3, dispatcher.queueDepth());
+		assertEquals(1, dispatcher.droppedEvents());
+		assertEquals(0, dispatcher.lag());
+
+		executor.runAll();
+		assertEquals(3, recorder._types.size());
+		assertEquals(RobotModelEvent.EventType.RobotAdded, recorder._types.get(0));
+		assertEquals(RobotModelEvent.EventType.RobotAdded, recorder._types.get(1));
+		assertEquals(RobotModelEvent.EventType.RobotRemoved, recorder._types.get(2));
+	}
+
+	/**
+	 * Checks that BLOCK holds up the notifying thread until the listener has
+	 * made room, without holding the model's lock meanwhile, and loses no
+	 * events.
+	 */
+	@Test
+	public void testBlockWaitsForRoom() throws InterruptedException {
+		ManualExecutor executor = new ManualExecutor();
+		Recorder recorder = new Recorder();
+		final AsyncDispatcher dispatcher = new AsyncDispatcher(
+				recorder, 2, AsyncDispatcher.OverflowPolicy.BLOCK, executor);
+		final RobotModel model = new RobotModel(BOUNDS);
+		model.add(new WheeledRobot(10, 10, 1, 1, 10, 10), model.root());
+		model.addRobotModelListener(dispatcher);
+
+		Thread producer = new Thread() {
+			public void run() {
+				for (int i = 0; i < 3; i++) {
+					model.clock();
+				}
+			}
+		};
+		producer.start();
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (producer.getState() != Thread.State.WAITING && System.nanoTime() < deadline) {
+			Thread.sleep(1);
+		}
+		assertEquals(Thread.State.WAITING, producer.getState());
+		assertEquals(2, dispatcher.queueDepth());
+		assertTrue(model.takeDamage().isFull());
+
+		executor.runAll();
+		producer.join(TimeUnit.SECONDS.toMillis(10));
+		executor.runAll();
+		assertEquals(3, recorder._types.size());
+		assertEquals(0, dispatcher.droppedEvents());
+		assertEquals(0, dispatcher.lag());
+	}
+
+	/**
+	 * Checks that a listener that calls back into the model while being
+	 * notified does not deadlock with a notifying thread that is waiting for
+	 * room, under BLOCK and under the default COALESCE_MOVED policy with more
+	 * structural events than the queue holds.
+	 */
+	@Test(timeout = 20000)
+	public void testListenerUsingModelDoesNotDeadlock() throws InterruptedException {
+		RobotModelListener reentrant = new RobotModelListener() {
+			public void update(RobotModelEvent event) {
+				event.source().takeDamage();
+				event.source().robotAt(new Point(15, 15));
+			}
+		};
+
+		final RobotModel blocking = new RobotModel(BOUNDS);
+		blocking.add(new WheeledRobot(10, 10, 1, 1, 10, 10), blocking.root());
+		AsyncDispatcher first = new AsyncDispatcher(reentrant, 1, AsyncDispatcher.OverflowPolicy.BLOCK);
+		blocking.addRobotModelListener(first);
+
+		final RobotModel coalescing = new RobotModel(BOUNDS);
+		AsyncDispatcher second = new AsyncDispatcher(reentrant);
+		coalescing.addRobotModelListener(second);
+
+		Thread producer = new Thread() {
+			public void run() {
+				for (int i = 0; i < 200; i++) {
+					blocking.clock();
+				}
+				for (int i = 0; i < 100; i++) {
+					coalescing.add(new WheeledRobot(10 + i, 10, 1, 1, 10, 10), coalescing.root());
+				}
+				for (int i = 0; i < 20; i++) {
+					coalescing.clock();
+				}
+			}
+		};
+		producer.setDaemon(true);
+		producer.start();
+		producer.join(TimeUnit.SECONDS.toMillis(15));
+		try {
+			assertFalse(producer.isAlive());
+			assertEquals(0, first.failures());
+			assertEquals(0, second.failures());
+		} finally {
+			first.close();
+			second.close();
+		}
+	}
+
+	/*
+	 * Executor that queues tasks until told to run them on the calling thread.
+	 */
+	private static class ManualExecutor implements Executor {
+		private final List<Runnable> _tasks = new ArrayList<Runnable>();
+
+		public synchronized void execute(Runnable task) {
+			_tasks.add(task);
+		}
+
+		void runAll() {
+			for (;;) {
+				Runnable task;
+				synchronized (this) {
+					if (_tasks.isEmpty()) {
+						return;
+					}
+					task = _tasks.remove(0);
+				}
+				task.run();
+			}
+		}
+	}
+
+	/*
+	 * Listener that records the events delivered to it.
+	 */
+	private static class Recorder implements RobotModelListener {
+		private final List<RobotModelEvent.EventType> _types = new ArrayList<RobotModelEvent.EventType>();
+		private final List<Robot> _operands = new ArrayList<Robot>();
+
+		public void update(RobotModelEvent event) {
+			_types.add(event.eventType());
+			_operands.add(event.operand());
+		}
+	}
+}
@@ -7,7 +7,10 @@ import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.awt.Rectangle;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -60,6 +63,36 @@ public class TestCarrierRobot {
 		assertEquals("(rectangle 2,2,100,100)(rectangle 2,2,50,50)(rectangle 7,7,10,10)(rectangle 2,2,5,5)", painter.toString());
 	}
 	
+	/**
+	 * Checks that robots lying wholly outside the painter's clip, translated
+	 * through the offsets of their carriers, are not painted, and that the
+	 * subtree of a carrier outside the clip is skipped.
+	 */
+	@Test
+	public void testPaintSkipsRobotsOutsideClip() {
+		CarrierRobot outer = new CarrierRobot(0, 0, 0, 0, 100, 100);
+		CarrierRobot inner = new CarrierRobot(50, 50, 0, 0, 40, 40);
+		inner.add(new WheeledRobot(30, 30, 0, 0, 5, 5));
+		outer.add(inner);
+		outer.add(new WheeledRobot(0, 0, 0, 0, 10, 10));
+		
+		MockPainter painter = new MockPainter();
+		painter.setClip(new Rectangle(82, 82, 10, 10));
+		outer.paint(painter);
+		assertEquals("(rectangle 0,0,100,100)(rectangle 50,50,40,40)(rectangle 30,30,5,5)", painter.toString());
+		
+		painter = new MockPainter();
+		painter.setClip(new Rectangle(60, 60, 5, 5));
+		outer.paint(painter);
+		assertEquals("(rectangle 0,0,100,100)(rectangle 50,50,40,40)", painter.toString());
+		
+		// The outline of the small robot covers x and y from 0 to 10.
+		painter = new MockPainter();
+		painter.setClip(new Rectangle(10, 10, 20, 20));
+		outer.paint(painter);
+		assertEquals("(rectangle 0,0,100,100)(rectangle 0,0,10,10)", painter.toString());
+	}
+	
 	/**
 	 * Checks that method add successfuly adds a valid Robot, supplied as 
 	 * argument, to a CarrierRobot instance. 
@@ -209,4 +242,114 @@ public class TestCarrierRobot {
 		assertEquals(1, path.size());
 		assertSame(_topLevelNest, path.get(0));
 	}
+	
+	/**
+	 * Check that a Robot's path is cached, that depth() agrees with it, and
+	 * that the paths of a subtree follow it when it is moved to another
+	 * CarrierRobot.
+	 */
+	@Test
+	public void testPathFollowsReparentedSubtree() {
+		List<Robot> path = _simpleRobot.path();
+		assertSame(path, _simpleRobot.path());
+		assertEquals(2, _simpleRobot.depth());
+		assertEquals(0, _topLevelNest.depth());
+		try {
+			path.add(_simpleRobot);
+			fail();
+		} catch (UnsupportedOperationException e) {
+			// Expected.
+		}
+		
+		CarrierRobot other = new CarrierRobot(0, 0, 1, 1, 200, 200);
+		other.add(_topLevelNest);
+		assertEquals(3, _simpleRobot.depth());
+		assertSame(other, _simpleRobot.path().get(0));
+		
+		_midLevelNest.remove(_simpleRobot);
+		_bottomLevelNest.add(_simpleRobot);
+		assertEquals(4, _simpleRobot.depth());
+		assertSame(_bottomLevelNest, _simpleRobot.path().get(3));
+		assertEquals(3, _bottomLevelNest.depth());
+	}
+	
+	/**
+	 * Check that a CarrierRobot's children keep their order, and that 
+	 * indexOf(), contains() and robotAt() agree with a plain list, through a
+	 * random mix of adds and removals with and without the resulting gaps
+	 * being compacted.
+	 */
+	@Test
+	public void testChildOrderSurvivesRemovals() {
+		Random random = new Random(7);
+		CarrierRobot carrier = new CarrierRobot(0, 0, 1, 1, 100, 100);
+		List<Robot> expected = new ArrayList<Robot>();
+		List<Robot> removed = new ArrayList<Robot>();
+		
+		for (int step = 0; step < 5000; step++) {
+			int choice = random.nextInt(10);
+			if (choice < 5 || expected.isEmpty()) {
+				Robot robot = new WheeledRobot(0, 0, 1, 1, 10, 10);
+				carrier.add(robot);
+				expected.add(robot);
+			} else if (choice < 9) {
+				// Favour the ends, where removals are most common.
+				int index = random.nextBoolean() ? random.nextInt(expected.size())
+						: random.nextBoolean() ? 0 : expected.size() - 1;
+				Robot robot = expected.remove(index);
+				carrier.remove(robot);
+				removed.add(robot);
+			} else {
+				carrier.compactChildren();
+			}
+			
+			assertEquals(expected.size(), carrier.robotCount());
+			if (!expected.isEmpty()) {
+				Robot probe = expected.get(random.nextInt(expected.size()));
+				assertEquals(expected.indexOf(probe), carrier.indexOf(probe));
+				assertTrue(carrier.contains(probe));
+			}
+			if (!removed.isEmpty()) {
+				Robot gone = removed.get(random.nextInt(removed.size()));
+				if (!expected.contains(gone)) {
+					assertEquals(-1, carrier.indexOf(gone));
+					assertFalse(carrier.contains(gone));
+				}
+			}
+			if (step % 100 == 0) {
+				for (int i = 0; i < expected.size(); i++) {
+					assertSame(expected.get(i), carrier.robotAt(i));
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Check that the gaps left by removals are closed without compacting
+	 * explicitly once they make up more than half of the child list, and 
+	 * not before.
+	 */
+	@Test
+	public void testGapsAreClosedOnceHalfTheListIsEmpty() {
+		CarrierRobot carrier = new CarrierRobot(0, 0, 1, 1, 100, 100);
+		List<Robot> expected = new ArrayList<Robot>();
+		for (int i = 0; i < 1000; i++) {
+			Robot robot = new WheeledRobot(0, 0, 1, 1, 10, 10);
+			carrier.add(robot);
+			expected.add(robot);
+		}
+		
+		for (int i = 0; i < 500; i++) {
+			carrier.remove(expected.remove(0));
+		}
+		assertTrue(carrier.hasChildGaps());
+		assertSame(expected.get(250), carrier.robotAt(250));
+		
+		carrier.remove(expected.remove(0));
+		assertFalse(carrier.hasChildGaps());
+		for (int i = 0; i < expected.size(); i++) {
+			assertSame(expected.get(i), carrier.robotAt(i));
+			assertEquals(i, carrier.indexOf(expected.get(i)));
+		}
+	}
 }
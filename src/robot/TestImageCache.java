@@ -0,0 +1,120 @@
+package robot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Class to test that an ImageCache reads each image once per size, evicts the
+ * least recently used images to stay within its bound, and reads an image
+ * again when its file is modified.
+ */
+public class TestImageCache {
+
+	private File _first;
+	private File _second;
+
+	@Before
+	public void writeImages() throws IOException {
+		_first = writeImage(0xFFFF0000);
+		_second = writeImage(0xFF0000FF);
+	}
+
+	@After
+	public void deleteImages() {
+		_first.delete();
+		_second.delete();
+	}
+
+	/**
+	 * Checks that an image is read and scaled once for each size, and that the
+	 * cached image has the requested size and content.
+	 */
+	@Test
+	public void testImageIsReadOncePerSize() throws IOException {
+		ImageCache cache = new ImageCache(ImageCache.DEFAULT_MAX_BYTES, ImageCache.DEFAULT_CHECK_INTERVAL_MILLIS);
+		BufferedImage image = cache.get(_first, 25, 30);
+		assertEquals(25, image.getWidth());
+		assertEquals(30, image.getHeight());
+		assertEquals(0xFFFF0000, image.getRGB(12, 15));
+		assertSame(image, cache.get(_first, 25, 30));
+
+		BufferedImage larger = cache.get(_first, 50, 50);
+		assertNotSame(image, larger);
+		assertEquals(2, cache.size());
+		assertEquals(4L * (25 * 30 + 50 * 50), cache.bytes());
+	}
+
+	/**
+	 * Checks that the least recently used image is evicted when the cache
+	 * would otherwise exceed its bound.
+	 */
+	@Test
+	public void testLeastRecentlyUsedImageIsEvicted() throws IOException {
+		// Room for two 10x10 images.
+		ImageCache cache = new ImageCache(800, ImageCache.DEFAULT_CHECK_INTERVAL_MILLIS);
+		BufferedImage first = cache.get(_first, 10, 10);
+		BufferedImage second = cache.get(_second, 10, 10);
+		assertSame(first, cache.get(_first, 10, 10));
+
+		cache.get(_first, 10, 9);
+		assertEquals(2, cache.size());
+		assertEquals(4L * (10 * 10 + 10 * 9), cache.bytes());
+		assertSame(first, cache.get(_first, 10, 10));
+		assertNotSame(second, cache.get(_second, 10, 10));
+	}
+
+	/**
+	 * Checks that an image is read again once its file is modified, and that
+	 * a file that cannot be read is not read again until it is modified.
+	 */
+	@Test
+	public void testModifiedFileIsReadAgain() throws IOException {
+		ImageCache cache = new ImageCache(ImageCache.DEFAULT_MAX_BYTES, 0);
+		BufferedImage image = cache.get(_first, 10, 10);
+
+		ImageIO.write(solid(0xFF00FF00), "png", _first);
+		_first.setLastModified(_first.lastModified() + 2000);
+		BufferedImage modified = cache.get(_first, 10, 10);
+		assertNotSame(image, modified);
+		assertEquals(0xFF00FF00, modified.getRGB(5, 5));
+		assertEquals(1, cache.size());
+
+		File missing = new File(_first.getPath() + ".missing");
+		try {
+			cache.get(missing, 10, 10);
+			fail();
+		} catch (IOException e) {
+			// Expected.
+		}
+		assertNull(cache.get(missing, 10, 10));
+	}
+
+	private static File writeImage(int rgb) throws IOException {
+		File file = File.createTempFile("robot", ".png");
+		ImageIO.write(solid(rgb), "png", file);
+		return file;
+	}
+
+	private static BufferedImage solid(int rgb) {
+		BufferedImage image = new BufferedImage(8, 8, BufferedImage.TYPE_INT_ARGB);
+		for (int x = 0; x < 8; x++) {
+			for (int y = 0; y < 8; y++) {
+				image.setRGB(x, y, rgb);
+			}
+		}
+		return image;
+	}
+}
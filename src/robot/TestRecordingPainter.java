@@ -0,0 +1,168 @@
+package robot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Class to test that a RecordingPainter's display list replays the calls
+ * recorded, can be compared with another's, and is recorded without
+ * allocating once the RecordingPainter has been reused.
+ */
+public class TestRecordingPainter {
+
+	private CarrierRobot _carrier;
+
+	/**
+	 * Creates a CarrierRobot holding a CarrierRobot, robots of each simple
+	 * kind and a named robot.
+	 */
+	@Before
+	public void setUpRobots() {
+		_carrier = new CarrierRobot(0, 0, 2, 3, 200, 200);
+		CarrierRobot inner = new CarrierRobot(10, 10, 1, 1, 80, 80);
+		inner.add(new FlyingRobot(5, 5, 2, 2, 20, 20));
+		_carrier.add(inner);
+		_carrier.add(new TrackedRobot(100, 100, -3, 2, 50, 50));
+		_carrier.add(new WheeledRobot(120, 20, 4, -1, 30, 20, "name"));
+	}
+
+	/**
+	 * Checks that replaying a display list makes the calls recorded in it, 
+	 * including the translations into CarrierRobots.
+	 */
+	@Test
+	public void testReplayMatchesDirectPainting() {
+		MockPainter direct = new MockPainter();
+		_carrier.paint(direct);
+
+		RecordingPainter recorder = new RecordingPainter();
+		_carrier.paint(recorder);
+		MockPainter replayed = new MockPainter();
+		recorder.replay(replayed);
+		assertEquals(direct.toString(), replayed.toString());
+
+		// Replaying leaves the display list unchanged.
+		replayed = new MockPainter();
+		recorder.replay(replayed);
+		assertEquals(direct.toString(), replayed.toString());
+	}
+
+	/**
+	 * Checks that colour changes replay correctly, including the restoration
+	 * of a colour that was not set while recording.
+	 */
+	@Test
+	public void testReplayRestoresColour() {
+		_carrier.add(new DynamicWheeledRobot(10, 120, 0, 0, 30, 30, Color.red));
+		DynamicWheeledRobot filled = new DynamicWheeledRobot(0, 150, -5, 0, 40, 40, Color.blue);
+		filled.move(200, 200);
+		_carrier.add(filled);
+
+		BufferedImage direct = newImage();
+		Graphics2D g = direct.createGraphics();
+		g.setColor(Color.green);
+		_carrier.paint(new GraphicsPainter(g));
+		g.dispose();
+
+		RecordingPainter recorder = new RecordingPainter();
+		_carrier.paint(recorder);
+		BufferedImage replayed = newImage();
+		g = replayed.createGraphics();
+		g.setColor(Color.green);
+		recorder.replay(new GraphicsPainter(g));
+		assertEquals(Color.green, g.getColor());
+		g.dispose();
+
+		for (int y = 0; y < direct.getHeight(); y++) {
+			for (int x = 0; x < direct.getWidth(); x++) {
+				assertEquals(direct.getRGB(x, y), replayed.getRGB(x, y));
+			}
+		}
+	}
+
+	/**
+	 * Checks that display lists of the same frame compare the same, and of
+	 * different frames differently.
+	 */
+	@Test
+	public void testSameAs() {
+		RecordingPainter previous = new RecordingPainter();
+		RecordingPainter current = new RecordingPainter();
+		_carrier.paint(previous);
+		_carrier.paint(current);
+		assertTrue(current.sameAs(previous));
+
+		_carrier.move(500, 500);
+		current.clear();
+		_carrier.paint(current);
+		assertFalse(current.sameAs(previous));
+		assertEquals(previous.size(), current.size());
+	}
+
+	/**
+	 * Checks that robots outside a RecordingPainter's clip are not recorded,
+	 * other than named robots, whose names may overflow their bounds.
+	 */
+	@Test
+	public void testClipLeavesOutRobots() {
+		RecordingPainter recorder = new RecordingPainter();
+		recorder.setClip(new Rectangle(100, 100, 60, 60));
+		_carrier.paint(recorder);
+		MockPainter replayed = new MockPainter();
+		recorder.replay(replayed);
+		assertEquals("(rectangle 0,0,200,200)(line 100,125,120,100)(line 120,100,130,100)"
+				+ "(line 130,100,150,125)(line 150,125,130,150)(line 130,150,120,150)(line 120,150,100,125)"
+				+ "(rectangle 120,20,30,20)",
+				replayed.toString());
+	}
+
+	/**
+	 * Checks that recording a frame allocates nothing once the
+	 * RecordingPainter has grown to hold it.
+	 */
+	@Test
+	public void testRecordingDoesNotAllocate() {
+		CarrierRobot root = new CarrierRobot(0, 0, 0, 0, 1000, 1000);
+		for (int i = 0; i < 500; i++) {
+			root.add(i % 2 == 0 ? new TrackedRobot(i, i, 1, 1, 50, 50) : new FlyingRobot(i, i, 1, 1, 30, 30));
+		}
+		RecordingPainter recorder = new RecordingPainter();
+		for (int frame = 0; frame < 2000; frame++) {
+			recorder.clear();
+			root.paint(recorder);
+		}
+
+		long before = allocatedBytes();
+		long overhead = allocatedBytes() - before;
+		before = allocatedBytes();
+		for (int frame = 0; frame < 100; frame++) {
+			recorder.clear();
+			root.paint(recorder);
+		}
+		long allocated = allocatedBytes() - before - overhead;
+		assertTrue(allocated + " bytes allocated", allocated < 100 * 16);
+	}
+
+	private static BufferedImage newImage() {
+		return new BufferedImage(210, 210, BufferedImage.TYPE_INT_RGB);
+	}
+
+	/*
+	 * Returns the number of bytes allocated by the current thread so far.
+	 */
+	private static long allocatedBytes() {
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+}
@@ -0,0 +1,1127 @@
+package robot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+import robot.views.TableModelAdapter;
+import robot.views.Task2;
+
+/**
+ * Class to test that the SimulationEngine implementations usable by a
+ * RobotModel progress a robot composition identically, that collisions
+ * between robots are detected and resolved, that spatial queries on a 
+ * RobotModel find the robots a scan of the composition would find, that
+ * advance() is equivalent to repeated clock() calls, that damage tracking
+ * reports the areas that change, that published snapshots record the
+ * composition faithfully, that changes submitted from other threads are
+ * applied in order at tick boundaries, that batched and bulk changes are
+ * reported with coalesced events, and that the per-tick notification path does not
+ * allocate.
+ */
+public class TestRobotModel {
+
+	private static final Dimension BOUNDS = new Dimension(500, 400);
+
+	/**
+	 * Checks that an ArraySimulationEngine produces the same positions,
+	 * deltas and bounce flags as the default TreeSimulationEngine for a
+	 * nested composition, including robots added and removed part way
+	 * through the animation.
+	 */
+	@Test
+	public void testArrayEngineMatchesTreeEngine() {
+		RobotModel expected = new RobotModel(BOUNDS);
+		RobotModel actual = new RobotModel(BOUNDS, new ArraySimulationEngine());
+		populate(expected, 7);
+		populate(actual, 7);
+
+		for (int tick = 0; tick < 500; tick++) {
+			if (tick == 120) {
+				expected.remove(expected.root().robotAt(1));
+				actual.remove(actual.root().robotAt(1));
+			}
+			if (tick == 250) {
+				expected.add(new WheeledRobot(30, 40, -7, 3, 20, 20), expected.root());
+				actual.add(new WheeledRobot(30, 40, -7, 3, 20, 20), actual.root());
+			}
+			expected.clock();
+			actual.clock();
+			assertEquals(describe(expected.root()), describe(actual.root()));
+		}
+	}
+
+	/**
+	 * Checks that a ParallelSimulationEngine with a threshold low enough to
+	 * split both child lists and subtrees produces the same state as the 
+	 * default TreeSimulationEngine.
+	 */
+	@Test
+	public void testParallelEngineMatchesTreeEngine() {
+		RobotModel expected = new RobotModel(BOUNDS);
+		RobotModel actual = new RobotModel(BOUNDS, new ParallelSimulationEngine(4));
+		populate(expected, 11);
+		populate(actual, 11);
+
+		for (int tick = 0; tick < 300; tick++) {
+			expected.clock();
+			actual.clock();
+			assertEquals(describe(expected.root()), describe(actual.root()));
+		}
+	}
+
+	/**
+	 * Checks that a ParallelSimulationEngine splits a wide, shallow tree, 
+	 * whose carriers are each smaller than the threshold, by the weight of
+	 * its subtrees, and still produces the same state as the default 
+	 * TreeSimulationEngine.
+	 */
+	@Test
+	public void testParallelEngineSplitsWideTreeByWeight() {
+		RobotModel expected = new RobotModel(BOUNDS);
+		RobotModel actual = new RobotModel(BOUNDS, new ParallelSimulationEngine(64));
+		for (RobotModel model : new RobotModel[] {expected, actual}) {
+			Random random = new Random(5);
+			for (int i = 0; i < 40; i++) {
+				CarrierRobot carrier = new CarrierRobot(random.nextInt(400), random.nextInt(300), 
+						1 + random.nextInt(3), 1 + random.nextInt(3), 60, 60);
+				for (int j = 0; j < 40; j++) {
+					model.add(new WheeledRobot(random.nextInt(50), random.nextInt(50), 
+							1 + random.nextInt(4), 1 + random.nextInt(4), 8, 8), carrier);
+				}
+				model.add(carrier, model.root());
+			}
+		}
+
+		for (int tick = 0; tick < 200; tick++) {
+			expected.clock();
+			actual.clock();
+			assertEquals(describe(expected.root()), describe(actual.root()));
+		}
+	}
+
+	/**
+	 * Checks that painting a Robot attached to an ArraySimulationEngine
+	 * paints it at its current position.
+	 */
+	@Test
+	public void testPaintReadsSlotState() {
+		RobotModel model = new RobotModel(BOUNDS, new ArraySimulationEngine());
+		WheeledRobot robot = new WheeledRobot(100, 20, 12, 15);
+		model.add(robot, model.root());
+		model.clock();
+
+		MockPainter painter = new MockPainter();
+		robot.paint(painter);
+		assertEquals("(rectangle 112,35,25,35)", painter.toString());
+	}
+
+	/**
+	 * Checks that two robots moving towards each other have their deltas
+	 * reversed when they overlap, and only along the axis on which they are
+	 * approaching.
+	 */
+	@Test
+	public void testHeadOnCollisionReversesDeltas() {
+		RobotModel model = new RobotModel(BOUNDS);
+		model.root().setCollisionDetection(true);
+		WheeledRobot left = new WheeledRobot(10, 10, 5, 3, 20, 20);
+		WheeledRobot right = new WheeledRobot(40, 10, -5, 3, 20, 20);
+		model.add(left, model.root());
+		model.add(right, model.root());
+
+		model.clock();
+		assertEquals(5, left.deltaX());
+		assertEquals(-5, right.deltaX());
+
+		model.clock();
+		assertEquals(-5, left.deltaX());
+		assertEquals(5, right.deltaX());
+		assertEquals(3, left.deltaY());
+		assertEquals(3, right.deltaY());
+	}
+
+	/**
+	 * Checks that the CollisionGrid finds exactly the overlapping pairs that
+	 * a brute force comparison of every pair finds, as robots move between
+	 * cells.
+	 */
+	@Test
+	public void testCollisionGridFindsAllOverlaps() {
+		RobotModel model = new RobotModel(BOUNDS);
+		Random random = new Random(3);
+		CarrierRobot root = model.root();
+		for (int i = 0; i < 300; i++) {
+			model.add(randomRobot(random, root.width(), root.height()), root);
+		}
+		CollisionGrid grid = new CollisionGrid();
+
+		for (int tick = 0; tick < 100; tick++) {
+			model.clock();
+			assertEquals(countOverlaps(root), grid.resolve(root));
+		}
+	}
+
+	/**
+	 * Checks that a few large robots among many small ones do not enlarge
+	 * the CollisionGrid's cells, and that their overlaps are still all found.
+	 */
+	@Test
+	public void testCollisionGridKeepsLargeRobotsApart() {
+		RobotModel model = new RobotModel(BOUNDS);
+		Random random = new Random(8);
+		CarrierRobot root = model.root();
+		for (int i = 0; i < 300; i++) {
+			model.add(randomRobot(random, root.width(), root.height()), root);
+		}
+		model.add(new WheeledRobot(10, 20, 3, 2, 300, 250), root);
+		model.add(new FlyingRobot(150, 100, -4, 1, 200, 280), root);
+		CollisionGrid grid = new CollisionGrid();
+
+		for (int tick = 0; tick < 100; tick++) {
+			model.clock();
+			assertEquals(countOverlaps(root), grid.resolve(root));
+		}
+		assertTrue(grid.cellSize() <= 48);
+		assertEquals(2, grid.oversizedCount());
+	}
+
+	/**
+	 * Checks that the array and parallel engines resolve collisions exactly
+	 * as the default TreeSimulationEngine does.
+	 */
+	@Test
+	public void testEnginesMatchWithCollisionDetection() {
+		RobotModel expected = new RobotModel(BOUNDS);
+		RobotModel array = new RobotModel(BOUNDS, new ArraySimulationEngine());
+		RobotModel parallel = new RobotModel(BOUNDS, new ParallelSimulationEngine(4));
+		populate(expected, 13);
+		populate(array, 13);
+		populate(parallel, 13);
+		enableCollisionDetection(expected.root());
+		enableCollisionDetection(array.root());
+		enableCollisionDetection(parallel.root());
+
+		for (int tick = 0; tick < 300; tick++) {
+			expected.clock();
+			array.clock();
+			parallel.clock();
+			assertEquals(describe(expected.root()), describe(array.root()));
+			assertEquals(describe(expected.root()), describe(parallel.root()));
+		}
+	}
+
+	/**
+	 * Checks that robotAt() returns the deepest robot under a point, using
+	 * absolute coordinates for robots within carriers, and tracks the robots
+	 * as they move.
+	 */
+	@Test
+	public void testRobotAtReturnsDeepestRobot() {
+		RobotModel model = new RobotModel(BOUNDS);
+		CarrierRobot carrier = new CarrierRobot(100, 100, 0, 0, 200, 200);
+		WheeledRobot inner = new WheeledRobot(50, 50, 10, 0, 20, 20);
+		model.add(inner, carrier);
+		model.add(carrier, model.root());
+
+		assertSame(inner, model.robotAt(new Point(155, 155)));
+		assertSame(carrier, model.robotAt(new Point(105, 105)));
+		assertNull(model.robotAt(new Point(5, 5)));
+
+		model.clock();
+		assertSame(carrier, model.robotAt(new Point(155, 155)));
+		assertSame(inner, model.robotAt(new Point(165, 155)));
+	}
+
+	/**
+	 * Checks that robotAt() tracks stationary robots within a moving carrier
+	 * as well as stationary robots that are never updated.
+	 */
+	@Test
+	public void testRobotAtTracksRobotsOfMovingCarrier() {
+		RobotModel model = new RobotModel(BOUNDS);
+		CarrierRobot moving = new CarrierRobot(100, 100, 7, 0, 100, 100);
+		WheeledRobot passenger = new WheeledRobot(40, 40, 0, 0, 20, 20);
+		CarrierRobot still = new CarrierRobot(300, 300, 0, 0, 100, 100);
+		WheeledRobot resident = new WheeledRobot(10, 10, 0, 0, 20, 20);
+		model.add(passenger, moving);
+		model.add(resident, still);
+		model.add(moving, model.root());
+		model.add(still, model.root());
+
+		assertSame(passenger, model.robotAt(new Point(145, 145)));
+		for (int tick = 0; tick < 5; tick++) {
+			model.clock();
+		}
+		assertSame(moving, model.robotAt(new Point(145, 145)));
+		assertSame(passenger, model.robotAt(new Point(180, 145)));
+		assertSame(resident, model.robotAt(new Point(315, 315)));
+	}
+
+	/**
+	 * Checks that robotsIn() and nearestRobots() agree with a scan of every
+	 * robot in a nested composition while the robots move and while robots
+	 * are added and removed.
+	 */
+	@Test
+	public void testSpatialQueriesMatchScan() {
+		RobotModel model = new RobotModel(BOUNDS);
+		populate(model, 17);
+		Random random = new Random(5);
+
+		for (int tick = 0; tick < 50; tick++) {
+			if (tick == 20) {
+				model.remove(model.root().robotAt(42));
+			}
+			if (tick == 30) {
+				model.add(new FlyingRobot(200, 200, 3, 4, 30, 30), model.root());
+			}
+			model.clock();
+
+			List<Robot> robots = new ArrayList<Robot>();
+			List<Rectangle> bounds = new ArrayList<Rectangle>();
+			scan(model.root(), 0, 0, robots, bounds);
+
+			Rectangle region = new Rectangle(random.nextInt(BOUNDS.width), random.nextInt(BOUNDS.height),
+					random.nextInt(150), random.nextInt(150));
+			HashSet<Robot> expected = new HashSet<Robot>();
+			for (int i = 0; i < robots.size(); i++) {
+				if (bounds.get(i).intersects(region)) {
+					expected.add(robots.get(i));
+				}
+			}
+			assertEquals(expected, new HashSet<Robot>(model.robotsIn(region)));
+
+			Point point = new Point(random.nextInt(BOUNDS.width), random.nextInt(BOUNDS.height));
+			List<Robot> nearest = model.nearestRobots(point, 5);
+			assertEquals(5, nearest.size());
+			long[] distances = new long[robots.size()];
+			for (int i = 0; i < robots.size(); i++) {
+				distances[i] = distance(point, bounds.get(i));
+			}
+			Arrays.sort(distances);
+			for (int i = 0; i < nearest.size(); i++) {
+				Rectangle found = bounds.get(robots.indexOf(nearest.get(i)));
+				assertEquals(distances[i], distance(point, found));
+			}
+		}
+	}
+
+	/**
+	 * Checks that advance() leaves a nested composition in exactly the state
+	 * that the same number of clock() calls would, for each engine, including
+	 * robots that are stationary, as large as their bounds or initially out
+	 * of bounds.
+	 */
+	@Test
+	public void testAdvanceMatchesClock() {
+		long[] steps = {1, 2, 3, 7, 50, 149, 1000, 4321};
+		SimulationEngine[] engines = {new TreeSimulationEngine(), new ArraySimulationEngine(),
+				new ParallelSimulationEngine(4)};
+
+		for (SimulationEngine engine : engines) {
+			RobotModel expected = new RobotModel(BOUNDS);
+			RobotModel actual = new RobotModel(BOUNDS, engine);
+			populateAwkward(expected);
+			populateAwkward(actual);
+
+			for (long ticks : steps) {
+				for (long tick = 0; tick < ticks; tick++) {
+					expected.clock();
+				}
+				actual.advance(ticks);
+				assertEquals(describe(expected.root()), describe(actual.root()));
+				actual.clock();
+				expected.clock();
+				assertEquals(describe(expected.root()), describe(actual.root()));
+			}
+		}
+	}
+
+	/**
+	 * Checks that advancing a robot larger than the bounds it moves within,
+	 * moving or not, leaves it in the state that stepping it would.
+	 */
+	@Test
+	public void testAdvanceRobotLargerThanBounds() {
+		int[][] deltas = {{0, 0}, {0, 3}, {5, 0}, {-4, 7}};
+		long[] steps = {1, 2, 3, 4, 5, 13, 100};
+		for (int[] delta : deltas) {
+			for (long ticks : steps) {
+				CarrierRobot expected = new CarrierRobot(30, 20, delta[0], delta[1], 120, 90);
+				CarrierRobot actual = new CarrierRobot(30, 20, delta[0], delta[1], 120, 90);
+				for (long tick = 0; tick < ticks; tick++) {
+					expected.moveSelf(100, 60);
+				}
+				BounceMotion.advance(actual, 100, 60, ticks);
+				assertEquals(describe(expected), describe(actual));
+			}
+		}
+	}
+
+	/**
+	 * Checks that advance() honours collision detection, which requires the
+	 * children of the affected carrier to be stepped one tick at a time.
+	 */
+	@Test
+	public void testAdvanceWithCollisionDetection() {
+		RobotModel expected = new RobotModel(BOUNDS);
+		RobotModel actual = new RobotModel(BOUNDS);
+		populate(expected, 19);
+		populate(actual, 19);
+		enableCollisionDetection((CarrierRobot) expected.root().robotAt(40));
+		enableCollisionDetection((CarrierRobot) actual.root().robotAt(40));
+
+		for (int tick = 0; tick < 777; tick++) {
+			expected.clock();
+		}
+		actual.advance(777);
+		assertEquals(describe(expected.root()), describe(actual.root()));
+	}
+
+	/**
+	 * Checks that advance() fires one RobotMoved event covering all of the
+	 * ticks, and rejects a negative number of ticks.
+	 */
+	@Test
+	public void testAdvanceFiresOneEvent() {
+		RobotModel model = new RobotModel(BOUNDS);
+		final List<RobotModelEvent> events = new ArrayList<RobotModelEvent>();
+		model.addRobotModelListener(new RobotModelListener() {
+			public void update(RobotModelEvent event) {
+				events.add(event);
+			}
+		});
+		model.advance(5000000000L);
+		model.advance(0);
+		assertEquals(1, events.size());
+		assertEquals(RobotModelEvent.EventType.RobotMoved, events.get(0).eventType());
+		assertEquals(5000000000L, events.get(0).ticks());
+
+		try {
+			model.advance(-1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// Expected.
+		}
+	}
+
+	/**
+	 * Checks that damage tracking reports the old and new areas of a moving,
+	 * named robot, including its name, without touching stationary robots,
+	 * and that adding or removing a robot damages everything.
+	 */
+	@Test
+	public void testDamageCoversOnlyChangedRobots() {
+		RobotModel model = new RobotModel(BOUNDS);
+		List<Robot> stationary = new ArrayList<Robot>();
+		for (int i = 0; i < 8; i++) {
+			Robot robot = new WheeledRobot(20 + i * 55, 300, 0, 0, 30, 30);
+			stationary.add(robot);
+			model.add(robot, model.root());
+		}
+		CarrierRobot carrier = new CarrierRobot(100, 50, 0, 0, 200, 150);
+		model.add(carrier, model.root());
+		Robot mover = new FlyingRobot(40, 40, 3, 2, 20, 20, "a rather long name");
+		model.add(mover, carrier);
+
+		FontMetrics metrics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics()
+				.getFontMetrics(new Font(Font.SANS_SERIF, Font.PLAIN, 12));
+		model.setDamageTracking(metrics);
+		model.clock();
+		assertTrue(model.takeDamage().isFull());
+
+		for (int tick = 0; tick < 10; tick++) {
+			Rectangle before = new Rectangle(100 + mover.x(), 50 + mover.y(), 21, 21);
+			model.clock();
+			Rectangle after = new Rectangle(100 + mover.x(), 50 + mover.y(), 21, 21);
+			int nameWidth = metrics.stringWidth("a rather long name");
+			Rectangle name = new Rectangle(after.x + 10 - nameWidth / 2, after.y, nameWidth, 10);
+
+			DamageRegion damage = model.takeDamage();
+			assertFalse(damage.isFull());
+			assertTrue(covers(damage, before));
+			assertTrue(covers(damage, after));
+			assertTrue(covers(damage, name));
+			for (Robot robot : stationary) {
+				Rectangle bounds = new Rectangle(robot.x(), robot.y(), robot.width() + 1, robot.height() + 1);
+				for (Rectangle rectangle : damage.rectangles()) {
+					assertFalse(rectangle.intersects(bounds));
+				}
+			}
+		}
+
+		model.remove(stationary.get(0));
+		assertTrue(model.takeDamage().isFull());
+		model.setDamageTracking(null);
+		assertTrue(model.takeDamage().isFull());
+	}
+
+	/**
+	 * Checks that, while snapshots are published, each event carries the
+	 * damage of the frame its snapshot shows, so that a view need not take
+	 * damage from the live model, and that the snapshots leave none behind.
+	 */
+	@Test
+	public void testSnapshotsCarryDamage() {
+		RobotModel model = new RobotModel(BOUNDS);
+		model.add(new WheeledRobot(20, 300, 0, 0, 30, 30), model.root());
+		Robot mover = new FlyingRobot(40, 40, 3, 2, 20, 20);
+		model.add(mover, model.root());
+		final List<RobotModelEvent> events = new ArrayList<RobotModelEvent>();
+		model.addRobotModelListener(new RobotModelListener() {
+			public void update(RobotModelEvent event) {
+				event.snapshot().retain();
+				events.add(event);
+			}
+		});
+
+		FontMetrics metrics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB).createGraphics()
+				.getFontMetrics(new Font(Font.SANS_SERIF, Font.PLAIN, 12));
+		model.setDamageTracking(metrics);
+		model.setPublishSnapshots(true);
+		model.clock();
+		assertTrue(events.get(0).damage().isFull());
+
+		List<Rectangle> areas = new ArrayList<Rectangle>();
+		for (int tick = 0; tick < 5; tick++) {
+			areas.add(new Rectangle(mover.x(), mover.y(), 21, 21));
+			model.clock();
+		}
+		areas.add(new Rectangle(mover.x(), mover.y(), 21, 21));
+		assertTrue(model.takeDamage().isEmpty());
+
+		for (int tick = 0; tick < 5; tick++) {
+			DamageRegion damage = events.get(tick + 1).damage();
+			assertFalse(damage.isFull());
+			assertTrue(covers(damage, areas.get(tick)));
+			assertTrue(covers(damage, areas.get(tick + 1)));
+			assertFalse(damage.bounds().intersects(new Rectangle(20, 300, 31, 31)));
+		}
+		for (RobotModelEvent event : events) {
+			event.snapshot().release();
+		}
+	}
+
+	/**
+	 * Checks that a DamageRegion keeps a bounded number of rectangles that
+	 * together, and with their bounding box, cover every rectangle added.
+	 */
+	@Test
+	public void testDamageRegionMergesRectangles() {
+		DamageRegion damage = new DamageRegion();
+		List<Rectangle> added = new ArrayList<Rectangle>();
+		Random random = new Random(5);
+		for (int i = 0; i < 100; i++) {
+			Rectangle rectangle = new Rectangle(random.nextInt(1000), random.nextInt(1000),
+					1 + random.nextInt(30), 1 + random.nextInt(30));
+			added.add(rectangle);
+			damage.add(rectangle.x, rectangle.y, rectangle.width, rectangle.height);
+			assertTrue(damage.rectangles().size() <= DamageRegion.MAX_RECTANGLES);
+		}
+		Rectangle bounds = damage.bounds();
+		for (Rectangle rectangle : added) {
+			assertTrue(covers(damage, rectangle));
+			assertTrue(bounds.contains(rectangle));
+		}
+		List<Rectangle> rectangles = damage.rectangles();
+		for (int i = 0; i < rectangles.size(); i++) {
+			for (int j = i + 1; j < rectangles.size(); j++) {
+				assertFalse(rectangles.get(i).intersects(rectangles.get(j)));
+			}
+		}
+	}
+
+	/**
+	 * Checks that a published RobotSnapshot records the state and structure
+	 * of every robot, and that it is unaffected by later changes while a
+	 * reference to it is held.
+	 */
+	@Test
+	public void testSnapshotRecordsComposition() {
+		RobotModel model = new RobotModel(BOUNDS, new ArraySimulationEngine());
+		populate(model, 31);
+		model.setPublishSnapshots(true);
+		for (int tick = 0; tick < 25; tick++) {
+			model.clock();
+		}
+
+		RobotSnapshot snapshot = model.acquireSnapshot();
+		String expected = describe(model.root());
+		assertEquals(expected, describe(snapshot));
+		for (int i = 0; i < snapshot.size(); i++) {
+			Robot robot = snapshot.robot(i);
+			assertEquals(i, snapshot.indexOf(robot));
+			assertEquals(robot.width(), snapshot.width(i));
+			if (robot instanceof CarrierRobot) {
+				CarrierRobot carrier = (CarrierRobot) robot;
+				assertEquals(carrier.robotCount(), snapshot.childCount(i));
+				for (int n = 0; n < carrier.robotCount(); n++) {
+					int child = snapshot.child(i, n);
+					assertSame(carrier.robotAt(n), snapshot.robot(child));
+					assertEquals(i, snapshot.parent(child));
+				}
+			}
+		}
+		assertEquals(-1, snapshot.parent(0));
+		assertEquals(-1, snapshot.indexOf(new WheeledRobot()));
+
+		for (int tick = 0; tick < 25; tick++) {
+			model.clock();
+		}
+		model.remove(model.root().robotAt(0));
+		assertEquals(expected, describe(snapshot));
+		snapshot.release();
+	}
+
+	/**
+	 * Checks that snapshots are reused once released, so that a model whose
+	 * readers keep up publishes from a small, fixed set of snapshots.
+	 */
+	@Test
+	public void testSnapshotsAreReused() {
+		RobotModel model = new RobotModel(BOUNDS);
+		populate(model, 37);
+		final List<RobotSnapshot> held = new ArrayList<RobotSnapshot>();
+		model.addRobotModelListener(new RobotModelListener() {
+			public void update(RobotModelEvent event) {
+				// Hold each frame until the next, as a view would.
+				held.add(event.snapshot().retain());
+				if (held.size() > 1) {
+					held.remove(0).release();
+				}
+			}
+		});
+		model.setPublishSnapshots(true);
+
+		Set<RobotSnapshot> distinct = Collections.newSetFromMap(
+				new IdentityHashMap<RobotSnapshot, Boolean>());
+		for (int tick = 0; tick < 100; tick++) {
+			model.clock();
+			RobotSnapshot snapshot = model.acquireSnapshot();
+			distinct.add(snapshot);
+			snapshot.release();
+		}
+		assertTrue(distinct.size() <= 3);
+
+		model.setPublishSnapshots(false);
+		assertNull(model.acquireSnapshot());
+	}
+
+	/**
+	 * Checks that a SnapshotRenderer paints a snapshot exactly as the live
+	 * composition it records would be painted.
+	 */
+	@Test
+	public void testRendererPaintsSnapshot() {
+		RobotModel model = new RobotModel(BOUNDS);
+		populate(model, 41);
+		model.add(new DynamicWheeledRobot(0, 0, 7, 5, 30, 30, "dynamic", Color.RED), model.root());
+		model.setPublishSnapshots(true);
+		SnapshotRenderer renderer = new SnapshotRenderer();
+
+		for (int tick = 0; tick < 60; tick++) {
+			model.clock();
+			RobotSnapshot snapshot = model.acquireSnapshot();
+			MockPainter fromSnapshot = new MockPainter();
+			renderer.paint(snapshot, fromSnapshot);
+			snapshot.release();
+
+			MockPainter live = new MockPainter();
+			model.root().paint(live);
+			assertEquals(live.toString(), fromSnapshot.toString());
+		}
+	}
+
+	/**
+	 * Checks that adds submitted concurrently by several threads are all
+	 * applied by the next clock() call, each thread's in the order it
+	 * submitted them, and not before.
+	 */
+	@Test
+	public void testSubmittedAddsApplyAtNextTick() throws InterruptedException {
+		final RobotModel model = new RobotModel(BOUNDS);
+		final int threads = 4;
+		final int robotsPerThread = 500;
+		final List<List<Robot>> submitted = new ArrayList<List<Robot>>();
+		List<Thread> producers = new ArrayList<Thread>();
+
+		for (int t = 0; t < threads; t++) {
+			final List<Robot> robots = new ArrayList<Robot>();
+			for (int i = 0; i < robotsPerThread; i++) {
+				robots.add(new WheeledRobot(i % 400, t * 20, 1, 1, 10, 10));
+			}
+			submitted.add(robots);
+			producers.add(new Thread(new Runnable() {
+				public void run() {
+					for (Robot robot : robots) {
+						model.submitAdd(robot, model.root());
+					}
+				}
+			}));
+		}
+		for (Thread producer : producers) {
+			producer.start();
+		}
+		for (Thread producer : producers) {
+			producer.join();
+		}
+		assertEquals(0, model.root().robotCount());
+
+		model.clock();
+		assertEquals(threads * robotsPerThread, model.root().robotCount());
+		for (List<Robot> robots : submitted) {
+			int previous = -1;
+			for (Robot robot : robots) {
+				int index = model.root().indexOf(robot);
+				assertTrue(index > previous);
+				previous = index;
+			}
+		}
+		assertEquals(0, model.applyCommands());
+	}
+
+	/**
+	 * Checks that submitted removes and reparents are applied in order, and
+	 * that reparents that would not fit or would create a cycle are ignored.
+	 */
+	@Test
+	public void testSubmittedReparentAndRemove() {
+		RobotModel model = new RobotModel(BOUNDS);
+		CarrierRobot first = new CarrierRobot(0, 0, 1, 1, 200, 200);
+		CarrierRobot second = new CarrierRobot(200, 0, 1, 1, 100, 100);
+		Robot small = new FlyingRobot(10, 10, 2, 2, 20, 20);
+		Robot large = new FlyingRobot(0, 0, 2, 2, 150, 150);
+		model.add(first, model.root());
+		model.add(second, model.root());
+		model.add(small, first);
+		model.add(large, first);
+
+		final List<RobotModelEvent.EventType> events = new ArrayList<RobotModelEvent.EventType>();
+		model.addRobotModelListener(new RobotModelListener() {
+			public void update(RobotModelEvent event) {
+				events.add(event.eventType());
+			}
+		});
+
+		model.submitReparent(small, second);
+		model.submitReparent(large, second);
+		model.submitReparent(first, first);
+		model.submitRemove(large);
+		model.submitAdd(large, second);
+		assertEquals(2, model.applyCommands());
+
+		assertSame(second, small.parent());
+		assertSame(null, large.parent());
+		assertSame(model.root(), first.parent());
+		assertEquals(Arrays.asList(RobotModelEvent.EventType.RobotRemoved, RobotModelEvent.EventType.RobotAdded,
+				RobotModelEvent.EventType.RobotRemoved), events);
+	}
+
+	/**
+	 * Checks that the events caused within a batch are held back until it 
+	 * ends and that runs of adds, removes and moves are coalesced.
+	 */
+	@Test
+	public void testBatchCoalescesEvents() {
+		final RobotModel model = new RobotModel(BOUNDS);
+		final CarrierRobot carrier = new CarrierRobot(0, 0, 1, 1, 200, 200);
+		model.add(carrier, model.root());
+		final List<Robot> robots = new ArrayList<Robot>();
+		for (int i = 0; i < 100; i++) {
+			robots.add(new WheeledRobot(i, i, 1, 1, 10, 10));
+		}
+		final List<RobotModelEvent> events = new ArrayList<RobotModelEvent>();
+		model.addRobotModelListener(new RobotModelListener() {
+			public void update(RobotModelEvent event) {
+				events.add(event);
+			}
+		});
+
+		model.batch(new Runnable() {
+			public void run() {
+				for (Robot robot : robots.subList(0, 90)) {
+					model.add(robot, model.root());
+				}
+				model.batch(new Runnable() {
+					public void run() {
+						for (Robot robot : robots.subList(90, 100)) {
+							model.add(robot, carrier);
+						}
+					}
+				});
+				model.clock();
+				model.advance(4);
+				assertTrue(events.isEmpty());
+
+				// Remove robots 0-9, then 89 down to 80, then 50 alone.
+				for (int i = 0; i < 10; i++) {
+					model.remove(robots.get(i));
+				}
+				for (int i = 89; i >= 80; i--) {
+					model.remove(robots.get(i));
+				}
+				model.remove(robots.get(50));
+			}
+		});
+
+		assertEquals(6, events.size());
+		assertRange(events.get(0), RobotModelEvent.EventType.RobotsAdded, model.root(), 1,
+				robots.subList(0, 90));
+		assertRange(events.get(1), RobotModelEvent.EventType.RobotsAdded, carrier, 0,
+				robots.subList(90, 100));
+		assertEquals(RobotModelEvent.EventType.RobotMoved, events.get(2).eventType());
+		assertEquals(5, events.get(2).ticks());
+		assertRange(events.get(3), RobotModelEvent.EventType.RobotsRemoved, model.root(), 1,
+				robots.subList(0, 10));
+		assertRange(events.get(4), RobotModelEvent.EventType.RobotsRemoved, model.root(), 71,
+				robots.subList(80, 90));
+		assertRange(events.get(5), RobotModelEvent.EventType.RobotRemoved, model.root(), 41,
+				robots.subList(50, 51));
+		assertEquals(70, model.root().robotCount());
+	}
+
+	/**
+	 * Checks that addAll() adds every robot with a single range event, and
+	 * that it adds none if any robot does not fit or is already placed.
+	 */
+	@Test
+	public void testAddAllIsAtomic() {
+		RobotModel model = new RobotModel(BOUNDS);
+		model.add(new WheeledRobot(0, 0, 1, 1, 10, 10), model.root());
+		final List<RobotModelEvent> events = new ArrayList<RobotModelEvent>();
+		model.addRobotModelListener(new RobotModelListener() {
+			public void update(RobotModelEvent event) {
+				events.add(event);
+			}
+		});
+		List<Robot> robots = new ArrayList<Robot>();
+		for (int i = 0; i < 1000; i++) {
+			robots.add(new WheeledRobot(i % 400, i % 300, 1, 1, 10, 10));
+		}
+
+		List<Robot> tooBig = new ArrayList<Robot>(robots);
+		tooBig.add(new WheeledRobot(0, 0, 1, 1, BOUNDS.width + 1, 10));
+		assertFalse(model.addAll(tooBig, model.root()));
+		List<Robot> duplicated = new ArrayList<Robot>(robots);
+		duplicated.add(robots.get(500));
+		assertFalse(model.addAll(duplicated, model.root()));
+		assertEquals(1, model.root().robotCount());
+		assertNull(robots.get(0).parent());
+		assertTrue(events.isEmpty());
+
+		assertTrue(model.addAll(robots, model.root()));
+		assertEquals(1, events.size());
+		assertRange(events.get(0), RobotModelEvent.EventType.RobotsAdded, model.root(), 1, robots);
+		assertEquals(1001, model.root().robotCount());
+		assertSame(robots.get(999), model.root().robotAt(1000));
+	}
+
+	/**
+	 * Checks that removeAll() reports each contiguous range removed from a
+	 * parent with one event, ranges being reported from the last, and 
+	 * ignores robots without a parent.
+	 */
+	@Test
+	public void testRemoveAllFiresRangeEvents() {
+		RobotModel model = new RobotModel(BOUNDS);
+		CarrierRobot carrier = new CarrierRobot(0, 0, 1, 1, 200, 200);
+		model.add(carrier, model.root());
+		List<Robot> robots = new ArrayList<Robot>();
+		for (int i = 0; i < 100; i++) {
+			robots.add(new WheeledRobot(i, i, 1, 1, 10, 10));
+		}
+		model.addAll(robots, model.root());
+		Robot nested = new WheeledRobot(0, 0, 1, 1, 10, 10);
+		model.add(nested, carrier);
+		final List<RobotModelEvent> events = new ArrayList<RobotModelEvent>();
+		model.addRobotModelListener(new RobotModelListener() {
+			public void update(RobotModelEvent event) {
+				events.add(event);
+			}
+		});
+
+		// Robots 10-29 and 60-89 of the root, in no particular order.
+		List<Robot> doomed = new ArrayList<Robot>(robots.subList(60, 90));
+		doomed.addAll(robots.subList(10, 30));
+		Collections.shuffle(doomed, new Random(3));
+		doomed.add(nested);
+		doomed.add(new WheeledRobot(0, 0, 1, 1, 10, 10));
+		assertTrue(model.removeAll(doomed));
+
+		assertEquals(3, events.size());
+		assertRange(events.get(0), RobotModelEvent.EventType.RobotsRemoved, model.root(), 61,
+				robots.subList(60, 90));
+		assertRange(events.get(1), RobotModelEvent.EventType.RobotsRemoved, model.root(), 11,
+				robots.subList(10, 30));
+		assertRange(events.get(2), RobotModelEvent.EventType.RobotRemoved, carrier, 0,
+				Collections.singletonList(nested));
+		assertEquals(51, model.root().robotCount());
+		assertSame(robots.get(30), model.root().robotAt(11));
+		assertFalse(model.removeAll(doomed));
+	}
+
+	/**
+	 * Checks that the gap left by a removal made outside a batch is closed
+	 * at the next tick, so indexed access does not stay on the slow path.
+	 */
+	@Test
+	public void testUnbatchedRemovalGapClosedAtNextTick() {
+		RobotModel model = new RobotModel(BOUNDS);
+		List<Robot> robots = new ArrayList<Robot>();
+		for (int i = 0; i < 100; i++) {
+			robots.add(new WheeledRobot(i, i, 1, 1, 10, 10));
+		}
+		model.addAll(robots, model.root());
+
+		model.remove(robots.remove(10));
+		assertTrue(model.root().hasChildGaps());
+		assertSame(robots.get(10), model.root().robotAt(10));
+
+		model.clock();
+		assertFalse(model.root().hasChildGaps());
+		for (int i = 0; i < robots.size(); i++) {
+			assertSame(robots.get(i), model.root().robotAt(i));
+			assertEquals(i, model.root().indexOf(robots.get(i)));
+		}
+	}
+
+	/**
+	 * Checks that, once warmed up, a clock() call notifying a table view and
+	 * a tree view of a model that publishes snapshots allocates nothing.
+	 */
+	@Test
+	public void testClockDoesNotAllocate() {
+		RobotModel model = new RobotModel(BOUNDS);
+		populate(model, 43);
+		model.setPublishSnapshots(true);
+		model.addRobotModelListener(new TableModelAdapter(model.root()));
+		model.addRobotModelListener(new Task2(model));
+
+		for (int tick = 0; tick < 20000; tick++) {
+			model.clock();
+		}
+		long before = allocatedBytes();
+		long overhead = allocatedBytes() - before;
+		before = allocatedBytes();
+		for (int tick = 0; tick < 1000; tick++) {
+			model.clock();
+		}
+		long allocated = allocatedBytes() - before - overhead;
+		// Any object allocated per tick would take at least 16 bytes.
+		assertTrue(allocated + " bytes allocated", allocated < 1000 * 16);
+	}
+
+	/*
+	 * Returns the number of bytes allocated by the current thread so far.
+	 */
+	private static long allocatedBytes() {
+		com.sun.management.ThreadMXBean threads =
+				(com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		return threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	/*
+	 * Checks the type, parent, first index and robots of an event.
+	 */
+	private static void assertRange(RobotModelEvent event, RobotModelEvent.EventType type,
+			CarrierRobot parent, int index, List<Robot> robots) {
+		assertEquals(type, event.eventType());
+		assertSame(parent, event.parent());
+		assertEquals(index, event.index());
+		assertEquals(robots.size(), event.count());
+		assertEquals(robots, event.operands());
+	}
+
+	/*
+	 * Returns the description describe() gives of the root of a snapshot.
+	 */
+	private static String describe(RobotSnapshot snapshot) {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < snapshot.size(); i++) {
+			builder.append("(" + snapshot.x(i) + "," + snapshot.y(i) + "," + snapshot.deltaX(i) + ","
+					+ snapshot.deltaY(i) + "," + snapshot.didBounceOffVertical(i) + ","
+					+ snapshot.didBounceOffHorizontal(i) + ")");
+		}
+		return builder.toString();
+	}
+
+	/*
+	 * Returns true if a single rectangle of damage contains area.
+	 */
+	private static boolean covers(DamageRegion damage, Rectangle area) {
+		for (Rectangle rectangle : damage.rectangles()) {
+			if (rectangle.contains(area)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Builds a composition that includes robots whose movement does not
+	 * follow the usual shuttle between walls.
+	 */
+	private static void populateAwkward(RobotModel model) {
+		populate(model, 23);
+		CarrierRobot root = model.root();
+		model.add(new WheeledRobot(100, 100, 0, 0, 20, 20), root);
+		model.add(new WheeledRobot(0, 100, 0, 3, 20, 20), root);
+		model.add(new WheeledRobot(100, 0, 7, 0, 20, 20), root);
+		model.add(new FlyingRobot(-30, -40, 4, 5, 20, 20), root);
+		model.add(new FlyingRobot(-3, 10, 2, -9, 20, 20), root);
+		model.add(new TrackedRobot(0, 0, 3, 4, BOUNDS.width, 30), root);
+		model.add(new TrackedRobot(0, 0, -6, 2, BOUNDS.width, BOUNDS.height), root);
+		model.add(new WheeledRobot(10, 10, 997, -391, 15, 15), root);
+		CarrierRobot tight = new CarrierRobot(5, 5, 1, 1, 40, 40);
+		model.add(new WheeledRobot(0, 0, 5, 5, 40, 39), tight);
+		model.add(new WheeledRobot(10, 10, 1, -1, 5, 5), tight);
+		model.add(tight, root);
+	}
+
+	/*
+	 * Collects every robot below carrier, whose absolute position is (x, y),
+	 * together with its absolute bounds.
+	 */
+	private static void scan(CarrierRobot carrier, int x, int y, List<Robot> robots, List<Rectangle> bounds) {
+		for (int i = 0; i < carrier.robotCount(); i++) {
+			Robot robot = carrier.robotAt(i);
+			Rectangle rectangle = new Rectangle(x + robot.x(), y + robot.y(), robot.width(), robot.height());
+			robots.add(robot);
+			bounds.add(rectangle);
+			if (robot instanceof CarrierRobot) {
+				scan((CarrierRobot) robot, rectangle.x, rectangle.y, robots, bounds);
+			}
+		}
+	}
+
+	/*
+	 * Returns the squared distance from point to the nearest pixel of bounds.
+	 */
+	private static long distance(Point point, Rectangle bounds) {
+		long dx = Math.max(Math.max(bounds.x - point.x, point.x - (bounds.x + bounds.width - 1)), 0);
+		long dy = Math.max(Math.max(bounds.y - point.y, point.y - (bounds.y + bounds.height - 1)), 0);
+		return dx * dx + dy * dy;
+	}
+
+	/*
+	 * Enables collision detection on carrier and every CarrierRobot below it.
+	 */
+	private static void enableCollisionDetection(CarrierRobot carrier) {
+		carrier.setCollisionDetection(true);
+		for (int i = 0; i < carrier.robotCount(); i++) {
+			if (carrier.robotAt(i) instanceof CarrierRobot) {
+				enableCollisionDetection((CarrierRobot) carrier.robotAt(i));
+			}
+		}
+	}
+
+	/*
+	 * Builds a reproducible composition of simple and nested robots.
+	 */
+	static void populate(RobotModel model, long seed) {
+		Random random = new Random(seed);
+		CarrierRobot root = model.root();
+
+		for (int i = 0; i < 40; i++) {
+			model.add(randomRobot(random, root.width(), root.height()), root);
+		}
+		for (int i = 0; i < 4; i++) {
+			CarrierRobot carrier = new CarrierRobot(random.nextInt(100), random.nextInt(100),
+					random.nextInt(9) - 4, random.nextInt(9) - 4, 150, 120);
+			for (int j = 0; j < 10; j++) {
+				model.add(randomRobot(random, carrier.width(), carrier.height()), carrier);
+			}
+			CarrierRobot inner = new CarrierRobot(0, 0, 1, 2, 60, 50);
+			model.add(new FlyingRobot(5, 5, 3, -2, 10, 10), inner);
+			model.add(inner, carrier);
+			model.add(carrier, root);
+		}
+	}
+
+	/*
+	 * Returns a Robot that fits within the specified bounds.
+	 */
+	/*
+	 * Returns the number of overlapping pairs of children of carrier, found
+	 * by comparing every pair.
+	 */
+	private static int countOverlaps(CarrierRobot carrier) {
+		int overlaps = 0;
+		for (int i = 0; i < carrier.robotCount(); i++) {
+			for (int j = i + 1; j < carrier.robotCount(); j++) {
+				Robot a = carrier.robotAt(i);
+				Robot b = carrier.robotAt(j);
+				if (a.x() < b.x() + b.width() && b.x() < a.x() + a.width()
+						&& a.y() < b.y() + b.height() && b.y() < a.y() + a.height()) {
+					overlaps++;
+				}
+			}
+		}
+		return overlaps;
+	}
+
+	private static Robot randomRobot(Random random, int boundWidth, int boundHeight) {
+		int width = 5 + random.nextInt(20);
+		int height = 5 + random.nextInt(20);
+		int x = random.nextInt(boundWidth - width);
+		int y = random.nextInt(boundHeight - height);
+		int deltaX = random.nextInt(21) - 10;
+		int deltaY = random.nextInt(21) - 10;
+
+		switch (random.nextInt(3)) {
+		case 0:
+			return new WheeledRobot(x, y, deltaX, deltaY, width, height);
+		case 1:
+			return new FlyingRobot(x, y, deltaX, deltaY, width, height);
+		default:
+			return new TrackedRobot(x, y, deltaX, deltaY, width, height);
+		}
+	}
+
+	/*
+	 * Returns a textual description of the state of every robot within the
+	 * composition rooted at robot, in preorder.
+	 */
+	static String describe(Robot robot) {
+		StringBuilder builder = new StringBuilder();
+		List<Robot> pending = new ArrayList<Robot>();
+		pending.add(robot);
+
+		while (!pending.isEmpty()) {
+			Robot next = pending.remove(pending.size() - 1);
+			builder.append("(" + next.x() + "," + next.y() + "," + next.deltaX() + ","
+					+ next.deltaY() + "," + next.didBounceOffVertical() + ","
+					+ next.didBounceOffHorizontal() + ")");
+			if (next instanceof CarrierRobot) {
+				CarrierRobot carrier = (CarrierRobot) next;
+				for (int i = carrier.robotCount() - 1; i >= 0; i--) {
+					pending.add(carrier.robotAt(i));
+				}
+			}
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,76 @@
+package robot;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Dimension;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Class to test that a SimulationLoop clocks its model until stopped, and
+ * stops observably when clock() throws.
+ */
+public class TestSimulationLoop {
+
+	private static final Dimension BOUNDS = new Dimension(500, 400);
+
+	/**
+	 * Checks that the loop ticks until stopped.
+	 */
+	@Test
+	public void testTicksUntilStopped() throws InterruptedException {
+		RobotModel model = new RobotModel(BOUNDS);
+		model.add(new WheeledRobot(10, 10, 3, 2, 20, 20), model.root());
+		SimulationLoop loop = new SimulationLoop(model, 200, 5);
+		loop.start();
+		try {
+			awaitTicks(loop, 5);
+			assertTrue(loop.isRunning());
+		} finally {
+			loop.stop();
+		}
+		assertFalse(loop.isRunning());
+		assertNull(loop.failure());
+	}
+
+	/**
+	 * Checks that an exception thrown by a listener stops the loop, which
+	 * reports it through failure(), rather than ending the simulation thread
+	 * silently.
+	 */
+	@Test
+	public void testListenerFailureStopsLoop() throws InterruptedException {
+		RobotModel model = new RobotModel(BOUNDS);
+		model.add(new WheeledRobot(10, 10, 3, 2, 20, 20), model.root());
+		final IllegalStateException thrown = new IllegalStateException("listener failed");
+		model.addRobotModelListener(new RobotModelListener() {
+			public void update(RobotModelEvent event) {
+				throw thrown;
+			}
+		});
+		SimulationLoop loop = new SimulationLoop(model, 200, 5);
+		loop.start();
+		try {
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+			while (loop.isRunning() && System.nanoTime() < deadline) {
+				Thread.sleep(5);
+			}
+			assertFalse(loop.isRunning());
+			assertSame(thrown, loop.failure());
+		} finally {
+			loop.stop();
+		}
+	}
+
+	private static void awaitTicks(SimulationLoop loop, long ticks) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+		while (loop.ticks() < ticks && System.nanoTime() < deadline) {
+			Thread.sleep(5);
+		}
+		assertTrue(loop.ticks() >= ticks);
+	}
+}
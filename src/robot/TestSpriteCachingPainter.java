@@ -0,0 +1,115 @@
+package robot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+
+import org.junit.Test;
+
+/**
+ * Class to test that a SpriteCachingPainter paints robots exactly as a
+ * GraphicsPainter would, rasterising each appearance once, and that its
+ * SpriteCache stays within its bound.
+ */
+public class TestSpriteCachingPainter {
+
+	/**
+	 * Checks that robots of each kind, with and without names, look the same
+	 * painted from sprites as painted directly.
+	 */
+	@Test
+	public void testSpritesMatchDirectPainting() {
+		Robot[] robots = {
+				new WheeledRobot(10, 10, 0, 0, 30, 20),
+				new FlyingRobot(60, 10, 0, 0, 25, 35),
+				new TrackedRobot(100, 10, 0, 0, 50, 45),
+				new TrackedRobot(160, 10, 0, 0, 20, 20),
+				new WheeledRobot(10, 80, 0, 0, 30, 20, "a long name"),
+				new DynamicWheeledRobot(100, 80, 0, 0, 40, 40, Color.red),
+				new CarrierRobot(10, 150, 0, 0, 100, 50)};
+		((CarrierRobot) robots[6]).add(new FlyingRobot(5, 5, 0, 0, 10, 10));
+
+		BufferedImage direct = paint(robots, null);
+		SpriteCache cache = new SpriteCache();
+		BufferedImage sprites = paint(robots, cache);
+		assertSameImage(direct, sprites);
+		// The CarrierRobot is painted directly, its child from a sprite.
+		assertEquals(7, cache.size());
+
+		// Painting again rasterises nothing.
+		assertSameImage(direct, paint(robots, cache));
+		assertEquals(7, cache.misses());
+		assertEquals(7, cache.hits());
+	}
+
+	/**
+	 * Checks that a DynamicWheeledRobot's sprite follows its fill, which 
+	 * changes as it bounces, and is shared with identical robots.
+	 */
+	@Test
+	public void testSpriteFollowsFill() {
+		DynamicWheeledRobot robot = new DynamicWheeledRobot(2, 10, -5, 0, 20, 20, Color.blue);
+		DynamicWheeledRobot twin = new DynamicWheeledRobot(40, 10, 0, 0, 20, 20, Color.blue);
+		SpriteCache cache = new SpriteCache();
+		Robot[] robots = {robot, twin};
+
+		assertSameImage(paint(robots, null), paint(robots, cache));
+		assertEquals(1, cache.size());
+
+		// Bouncing off the left wall fills the robot.
+		robot.move(100, 100);
+		assertTrue(robot.didBounceOffVertical());
+		BufferedImage sprites = paint(robots, cache);
+		assertEquals(Color.blue.getRGB(), sprites.getRGB(10, 15));
+		assertEquals(2, cache.size());
+		assertSameImage(paint(robots, null), sprites);
+	}
+
+	/**
+	 * Checks that the least recently used sprites are evicted to keep a
+	 * SpriteCache within its bound.
+	 */
+	@Test
+	public void testCacheIsBounded() {
+		// Room for two 10x10 sprites, whose outlines make them 11x11.
+		SpriteCache cache = new SpriteCache(2 * 4 * 11 * 11);
+		for (int size = 10; size < 20; size++) {
+			paint(new Robot[] {new WheeledRobot(0, 0, 0, 0, 10, size)}, cache);
+		}
+		assertTrue(cache.bytes() <= 2 * 4 * 11 * 11);
+		assertEquals(1, cache.size());
+		assertEquals(4 * 11 * 20, cache.bytes());
+	}
+
+	/*
+	 * Paints robots onto a new image, from sprites held by cache or directly
+	 * if cache is null.
+	 */
+	private static BufferedImage paint(Robot[] robots, SpriteCache cache) {
+		BufferedImage image = new BufferedImage(250, 250, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.white);
+		g.fillRect(0, 0, 250, 250);
+		g.setColor(Color.black);
+		Painter painter = cache == null ? new GraphicsPainter(g) : new SpriteCachingPainter(g, cache);
+		for (Robot robot : robots) {
+			robot.paint(painter);
+		}
+		g.dispose();
+		return image;
+	}
+
+	private static void assertSameImage(BufferedImage expected, BufferedImage actual) {
+		for (int y = 0; y < expected.getHeight(); y++) {
+			for (int x = 0; x < expected.getWidth(); x++) {
+				if (expected.getRGB(x, y) != actual.getRGB(x, y)) {
+					assertEquals("pixel " + x + "," + y, 
+							Integer.toHexString(expected.getRGB(x, y)), Integer.toHexString(actual.getRGB(x, y)));
+				}
+			}
+		}
+	}
+}
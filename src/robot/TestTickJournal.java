@@ -0,0 +1,196 @@
+package robot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Image;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Class to test that a RobotModel journalled by a TickJournal can be rebuilt
+ * by a JournalReplayer at any tick.
+ */
+public class TestTickJournal {
+
+	private Path _file;
+
+	@Before
+	public void createFile() throws IOException {
+		_file = Files.createTempFile("robot", ".journal");
+	}
+
+	@After
+	public void deleteFile() throws IOException {
+		Files.deleteIfExists(_file);
+	}
+
+	/**
+	 * Journals a model through a mix of clock(), advance(), add() and 
+	 * remove() calls, spanning several keyframes, and checks that replaying
+	 * to each tick reproduces the model's state at that tick.
+	 */
+	@Test
+	public void testReplayReproducesEveryTick() throws IOException {
+		RobotModel model = new RobotModel(new Dimension(500, 400));
+		TestRobotModel.populate(model, 29);
+		((CarrierRobot) model.root().robotAt(41)).setCollisionDetection(true);
+		Map<Long, String> expected = new HashMap<Long, String>();
+
+		TickJournal journal = new TickJournal(_file, model, 100);
+		expected.put(0L, describe(model));
+		long tick = 0;
+		for (int step = 0; step < 60; step++) {
+			if (step % 7 == 3) {
+				model.remove(model.root().robotAt(step % 5));
+			}
+			if (step % 9 == 4) {
+				CarrierRobot carrier = new CarrierRobot(20, 20, 2, -1, 100, 80, "carrier" + step);
+				model.add(new DynamicWheeledRobot(5, 5, 3, 3, 20, 20), carrier);
+				model.add(carrier, model.root());
+				model.add(new FlyingRobot(10, 10, -2, 5, 15, 15), carrier);
+			}
+			if (step % 11 == 5) {
+				model.advance(1234);
+				tick += 1234;
+			} else {
+				model.clock();
+				tick++;
+			}
+			expected.put(tick, describe(model));
+		}
+		journal.close();
+
+		JournalReplayer replayer = new JournalReplayer(_file);
+		assertEquals(tick, replayer.ticks());
+		for (Map.Entry<Long, String> entry : expected.entrySet()) {
+			assertEquals(entry.getValue(), describe(replayer.replay(entry.getKey())));
+		}
+		assertEquals(describe(replayer.replay(1000, new ArraySimulationEngine())),
+				describe(replayer.replay(1000)));
+	}
+
+	/**
+	 * Checks that a journal whose final record was only partly written can
+	 * still be replayed up to its last complete record.
+	 */
+	@Test
+	public void testTruncatedJournal() throws IOException {
+		RobotModel model = new RobotModel(new Dimension(500, 400));
+		TestRobotModel.populate(model, 31);
+		TickJournal journal = new TickJournal(_file, model, 50);
+		for (int i = 0; i < 120; i++) {
+			model.clock();
+		}
+		String expected = describe(model);
+		model.add(new WheeledRobot(10, 10, 1, 1, 10, 10), model.root());
+		journal.close();
+
+		try (FileChannel channel = FileChannel.open(_file, StandardOpenOption.WRITE)) {
+			channel.truncate(channel.size() - 3);
+		}
+		JournalReplayer replayer = new JournalReplayer(_file);
+		assertEquals(120, replayer.ticks());
+		assertEquals(expected, describe(replayer.replay(120)));
+		assertTrue(Files.size(_file) > 0);
+	}
+
+	/**
+	 * Checks that a DynamicWheeledRobot's colour and fill are replayed.
+	 */
+	@Test
+	public void testReplaysColourAndFill() throws IOException {
+		RobotModel model = new RobotModel(new Dimension(500, 400));
+		DynamicWheeledRobot robot = new DynamicWheeledRobot(470, 10, 12, 3, 20, 20, "dynamic", Color.red);
+		model.add(robot, model.root());
+		model.clock();
+		robot.paint(new RecordingPainter());
+		assertTrue(robot.isFilled());
+		TickJournal journal = new TickJournal(_file, model, 100);
+		model.add(new DynamicWheeledRobot(10, 10, 1, 1, 20, 20, new Color(0x80123456, true)), model.root());
+		model.clock();
+		journal.close();
+
+		RobotModel replayed = new JournalReplayer(_file).replay(1);
+		DynamicWheeledRobot first = (DynamicWheeledRobot) replayed.root().robotAt(0);
+		DynamicWheeledRobot second = (DynamicWheeledRobot) replayed.root().robotAt(1);
+		assertEquals(Color.red, first.robotColor());
+		assertTrue(first.isFilled());
+		assertEquals(new Color(0x80123456, true), second.robotColor());
+		assertFalse(second.isFilled());
+	}
+
+	/**
+	 * Checks that a robot that cannot be recreated from the journal, such as
+	 * a CustomRobot, detaches the journal rather than failing the model's
+	 * methods, and that the journal can be replayed up to that point.
+	 */
+	@Test
+	public void testUnjournallableRobotDetachesJournal() throws IOException {
+		RobotModel model = new RobotModel(new Dimension(500, 400));
+		TestRobotModel.populate(model, 37);
+		TickJournal journal = new TickJournal(_file, model, 50);
+		model.clock();
+		String expected = describe(model);
+		Image image = new BufferedImage(20, 10, BufferedImage.TYPE_INT_RGB);
+		assertTrue(model.add(new CustomRobot(10, 10, 2, 2, image), model.root()));
+		assertNotNull(journal.failure());
+		model.clock();
+		assertEquals(1, journal.ticks());
+		journal.close();
+
+		JournalReplayer replayer = new JournalReplayer(_file);
+		assertEquals(1, replayer.ticks());
+		assertEquals(expected, describe(replayer.replay(1)));
+	}
+
+	/**
+	 * Checks that a TickJournal cannot be created for a model holding a
+	 * robot that cannot be journalled.
+	 */
+	@Test(expected = IOException.class)
+	public void testRejectsUnjournallableModel() throws IOException {
+		RobotModel model = new RobotModel(new Dimension(500, 400));
+		Image image = new BufferedImage(20, 10, BufferedImage.TYPE_INT_RGB);
+		model.add(new CustomRobot(10, 10, 2, 2, image), model.root());
+		new TickJournal(_file, model);
+	}
+
+	/*
+	 * Returns a description of the state, class and name of every robot in
+	 * model.
+	 */
+	private static String describe(RobotModel model) {
+		StringBuilder builder = new StringBuilder(TestRobotModel.describe(model.root()));
+		List<Robot> pending = new ArrayList<Robot>();
+		pending.add(model.root());
+		while (!pending.isEmpty()) {
+			Robot next = pending.remove(pending.size() - 1);
+			builder.append(" " + next.getClass().getSimpleName() + ":" + next.text());
+			if (next instanceof CarrierRobot) {
+				CarrierRobot carrier = (CarrierRobot) next;
+				builder.append(":" + carrier.collisionDetection());
+				for (int i = carrier.robotCount() - 1; i >= 0; i--) {
+					pending.add(carrier.robotAt(i));
+				}
+			}
+		}
+		return builder.toString();
+	}
+}
@@ -0,0 +1,110 @@
+package robot;
+
+import static org.junit.Assert.assertEquals;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Class to test that a TiledRenderer paints a Robot composition exactly as
+ * painting it on a single thread would, including robots that span several
+ * tiles and names that overflow their robots.
+ */
+public class TestTiledRenderer {
+
+	private static final int SIZE = 300;
+
+	private CarrierRobot _root;
+	private TiledRenderer _renderer;
+
+	@Before
+	public void setUp() {
+		_root = new CarrierRobot(0, 0, 0, 0, SIZE - 1, SIZE - 1);
+		CarrierRobot carrier = new CarrierRobot(40, 40, 0, 0, 120, 120);
+		// Within one tile: Java2D draws an oval crossing its clip slightly 
+		// differently.
+		carrier.add(new FlyingRobot(30, 30, 0, 0, 20, 20));
+		carrier.add(new WheeledRobot(90, 90, 0, 0, 25, 25, "inner"));
+		_root.add(carrier);
+		_root.add(new TrackedRobot(60, 200, 0, 0, 50, 50));
+		_root.add(new WheeledRobot(63, 63, 0, 0, 1, 1));
+		_root.add(new DynamicWheeledRobot(180, 20, 0, 0, 70, 40, Color.red));
+		_root.add(new WheeledRobot(190, 240, 0, 0, 40, 20, "a name overflowing tiles"));
+		_renderer = new TiledRenderer(64, 3);
+	}
+
+	@After
+	public void tearDown() {
+		_renderer.close();
+	}
+
+	/**
+	 * Checks that painting through a TiledRenderer matches painting directly.
+	 */
+	@Test
+	public void testTilesMatchDirectPainting() {
+		BufferedImage direct = newImage();
+		Graphics2D g = direct.createGraphics();
+		g.setColor(Color.black);
+		_root.paint(new GraphicsPainter(g));
+		g.dispose();
+
+		BufferedImage tiled = newImage();
+		g = tiled.createGraphics();
+		g.setColor(Color.black);
+		_renderer.paint(_root, g, new Rectangle(0, 0, SIZE, SIZE), Color.white);
+		g.dispose();
+
+		assertSameImage(direct, tiled, new Rectangle(0, 0, SIZE, SIZE));
+	}
+
+	/**
+	 * Checks that only the area within the Graphics object's clip is painted.
+	 */
+	@Test
+	public void testPaintsWithinClip() {
+		BufferedImage direct = newImage();
+		Graphics2D g = direct.createGraphics();
+		g.setColor(Color.black);
+		_root.paint(new GraphicsPainter(g));
+		g.dispose();
+
+		Rectangle clip = new Rectangle(70, 30, 100, 150);
+		BufferedImage tiled = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+		g = tiled.createGraphics();
+		g.setColor(Color.black);
+		g.setClip(clip);
+		_renderer.paint(_root, g, new Rectangle(0, 0, SIZE, SIZE), Color.white);
+		g.dispose();
+
+		assertSameImage(direct, tiled, clip);
+		assertEquals(Color.black.getRGB(), tiled.getRGB(clip.x - 1, clip.y));
+		assertEquals(Color.black.getRGB(), tiled.getRGB(clip.x, clip.y + clip.height));
+	}
+
+	private static BufferedImage newImage() {
+		BufferedImage image = new BufferedImage(SIZE, SIZE, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		g.setColor(Color.white);
+		g.fillRect(0, 0, SIZE, SIZE);
+		g.dispose();
+		return image;
+	}
+
+	private static void assertSameImage(BufferedImage expected, BufferedImage actual, Rectangle area) {
+		for (int y = area.y; y < area.y + area.height; y++) {
+			for (int x = area.x; x < area.x + area.width; x++) {
+				if (expected.getRGB(x, y) != actual.getRGB(x, y)) {
+					assertEquals("pixel " + x + "," + y,
+							Integer.toHexString(expected.getRGB(x, y)), Integer.toHexString(actual.getRGB(x, y)));
+				}
+			}
+		}
+	}
+}
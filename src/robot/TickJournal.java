@@ -0,0 +1,476 @@
+package robot;
+
+import java.io.Closeable;
+import java.awt.Color;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * RobotModelListener that appends every change made to a RobotModel to a
+ * compact binary journal file, from which a JournalReplayer can rebuild the
+ * model as it was at any tick. A TickJournal registers itself with its model
+ * on creation and deregisters when closed.
+ *
+ * The journal identifies robots by integer IDs and robot classes by integer
+ * class IDs, each class name being written once in a DEFINE_CLASS record.
+ * Robots are described by their class and the parameters of their
+ * (x, y, deltaX, deltaY, width, height[, name]) constructor, together with
+ * their bounce flags, for DynamicWheeledRobots, their colour and fill, and
+ * for CarrierRobots, their collision detection setting and children. A
+ * robot whose class lacks a public constructor of that form (such as a
+ * CustomRobot, which is built from an image) cannot be journalled. A
+ * collision detection setting changed after a robot was added is only
+ * captured by the next keyframe. Changes made within a RobotModel batch()
+ * are journalled when the batch ends, from the robots' state at that time,
+ * so a batch should not move robots that it adds.
+ *
+ * Should a change fail to be journalled, because the file cannot be written
+ * or a robot cannot be journalled, the TickJournal records the failure,
+ * which failure() returns, and detaches itself from the model rather than
+ * throwing from the model's methods. The file then ends with the last
+ * record written, and can still be replayed up to that record.
+ *
+ * The file begins with a header, followed by records. Each record is a type
+ * byte and a payload length (so that readers can skip records), then the
+ * payload:
+ * <pre>
+ *   DEFINE_CLASS  class ID, class name
+ *   ADD           parent ID, robot
+ *   REMOVE        robot ID
+ *   CLOCK         number of ticks
+ *   KEYFRAME      tick, root robot
+ * </pre>
+ * where a robot is written as its ID, class ID, x, y, deltaX, deltaY, width,
+ * height, flags, optional name, optional colour, child count and children. Consecutive
+ * clock() and advance() calls are merged into a single CLOCK record, and a
+ * KEYFRAME holding the whole composition is written whenever
+ * keyframeInterval ticks have passed since the previous one, so that a
+ * replay need not start from the beginning of the file.
+ *
+ * Records are assembled in a buffer and written to a FileChannel when the
+ * buffer fills, when flush() is called and when the journal is closed.
+ */
+public class TickJournal implements RobotModelListener, Closeable {
+	// Default number of ticks between keyframes.
+	public static final int DEFAULT_KEYFRAME_INTERVAL = 10000;
+
+	// === File format.
+	static final int MAGIC = 0x524A4E4C;
+	static final short VERSION = 2;
+
+	// Size of the type byte and length field preceding each payload.
+	static final int RECORD_HEADER_SIZE = 5;
+
+	static final byte DEFINE_CLASS = 1;
+	static final byte ADD = 2;
+	static final byte REMOVE = 3;
+	static final byte CLOCK = 4;
+	static final byte KEYFRAME = 5;
+
+	static final int BOUNCED_OFF_VERTICAL = 1;
+	static final int BOUNCED_OFF_HORIZONTAL = 2;
+	static final int NAMED = 4;
+	static final int COLLISION_DETECTION = 8;
+	static final int COLOURED = 16;
+	static final int FILLED = 32;
+	// ===
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final RobotModel _model;
+
+	private final FileChannel _channel;
+
+	private final ByteBuffer _buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+	private final int _keyframeInterval;
+
+	// Number of bytes written to the channel so far.
+	private long _written = 0;
+
+	// IDs of the robots currently connected to the model's root.
+	private final Map<Robot, Integer> _ids = new IdentityHashMap<Robot, Integer>();
+
+	private final Map<Class<?>, Integer> _classIds = new HashMap<Class<?>, Integer>();
+
+	// Defined classes that also have a named constructor.
+	private final Set<Class<?>> _namedClasses = new HashSet<Class<?>>();
+
+	private int _nextId = 0;
+
+	// Ticks journalled so far, and those not yet written as a CLOCK record.
+	private long _ticks = 0;
+	private long _pendingTicks = 0;
+
+	private long _lastKeyframe = 0;
+
+	private boolean _closed = false;
+
+	// Failure that detached this TickJournal from its model, if any.
+	private volatile IOException _failure;
+
+	/**
+	 * Creates a TickJournal with the default keyframe interval.
+	 * @see #TickJournal(Path, RobotModel, int)
+	 */
+	public TickJournal(Path path, RobotModel model) throws IOException {
+		this(path, model, DEFAULT_KEYFRAME_INTERVAL);
+	}
+
+	/**
+	 * Creates a TickJournal that writes to the specified file, replacing any
+	 * existing content. The current state of model is written as a keyframe
+	 * at tick 0 and the TickJournal then registers itself with model.
+	 * @param keyframeInterval the number of ticks between keyframes.
+	 * @throws IllegalArgumentException if keyframeInterval is less than 1.
+	 * @throws IOException if the file cannot be opened or written, or model
+	 * holds a robot that cannot be journalled.
+	 */
+	public TickJournal(Path path, RobotModel model, int keyframeInterval) throws IOException {
+		if (keyframeInterval < 1) {
+			throw new IllegalArgumentException();
+		}
+		_model = model;
+		_keyframeInterval = keyframeInterval;
+		_channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING);
+
+		synchronized (model) {
+			try {
+				_buffer.putInt(MAGIC);
+				_buffer.putShort(VERSION);
+				_buffer.putInt(model.bounds().width);
+				_buffer.putInt(model.bounds().height);
+				writeKeyframe();
+			} catch (IOException e) {
+				_channel.close();
+				throw e;
+			}
+			model.addRobotModelListener(this);
+		}
+	}
+
+	/**
+	 * Returns the number of ticks journalled.
+	 */
+	public long ticks() {
+		return _ticks;
+	}
+
+	/**
+	 * Returns the failure that detached this TickJournal from its model, or
+	 * null if every change has been journalled.
+	 */
+	public IOException failure() {
+		return _failure;
+	}
+
+	/**
+	 * Records a change to the model. Should the change fail to be journalled,
+	 * the failure is recorded and this TickJournal detaches itself from the
+	 * model.
+	 */
+	@Override
+	public void update(RobotModelEvent event) {
+		try {
+			switch (event.eventType()) {
+			case RobotAdded:
+			case RobotsAdded:
+				Integer parentId = _ids.get(event.parent());
+				if (parentId != null) {
+					// Robots added to a carrier that is not (yet) part of the
+					// model are journalled when the carrier is added.
+					writePendingTicks();
+					for (Robot robot : event.operands()) {
+						defineClasses(robot);
+						long start = beginRecord(ADD);
+						_buffer.putInt(parentId);
+						writeRobot(robot);
+						endRecord(start);
+					}
+				}
+				break;
+			case RobotRemoved:
+			case RobotsRemoved:
+				for (Robot robot : event.operands()) {
+					Integer id = _ids.get(robot);
+					if (id != null) {
+						writePendingTicks();
+						long start = beginRecord(REMOVE);
+						_buffer.putInt(id);
+						endRecord(start);
+						forget(robot);
+					}
+				}
+				break;
+			case RobotMoved:
+				_ticks += event.ticks();
+				_pendingTicks += event.ticks();
+				if (_ticks - _lastKeyframe >= _keyframeInterval) {
+					writePendingTicks();
+					writeKeyframe();
+				}
+				break;
+			}
+		} catch (IOException e) {
+			detach(e);
+		}
+	}
+
+	/**
+	 * Writes all buffered records to the file.
+	 * @throws IOException if the file cannot be written, or this TickJournal
+	 * has been detached by a failure.
+	 */
+	public void flush() throws IOException {
+		synchronized (_model) {
+			if (_failure != null) {
+				throw new IOException("Journal detached by an earlier failure", _failure);
+			}
+			writePendingTicks();
+			drain();
+		}
+	}
+
+	/**
+	 * Deregisters this TickJournal from its model, writes all buffered
+	 * records and closes the file.
+	 */
+	@Override
+	public void close() throws IOException {
+		synchronized (_model) {
+			if (_closed) {
+				return;
+			}
+			_closed = true;
+			_model.removeRobotModelListener(this);
+			try {
+				writePendingTicks();
+				drain();
+			} finally {
+				_channel.close();
+			}
+		}
+	}
+
+	/*
+	 * Records failure, deregisters this TickJournal from its model and
+	 * closes the file, after writing out whatever complete records are
+	 * buffered.
+	 */
+	private void detach(IOException failure) {
+		_failure = failure;
+		_closed = true;
+		_model.removeRobotModelListener(this);
+		try {
+			drain();
+		} catch (IOException e) {
+			failure.addSuppressed(e);
+		}
+		try {
+			_channel.close();
+		} catch (IOException e) {
+			failure.addSuppressed(e);
+		}
+	}
+
+	/*
+	 * Writes a CLOCK record for ticks not yet written.
+	 */
+	private void writePendingTicks() throws IOException {
+		if (_pendingTicks > 0) {
+			long start = beginRecord(CLOCK);
+			_buffer.putLong(_pendingTicks);
+			endRecord(start);
+			_pendingTicks = 0;
+		}
+	}
+
+	/*
+	 * Writes a KEYFRAME record holding the whole composition. Robot IDs are
+	 * reassigned, so the IDs used by subsequent records are those in the
+	 * keyframe.
+	 */
+	private void writeKeyframe() throws IOException {
+		CarrierRobot root = _model.root();
+		_ids.clear();
+		defineClasses(root);
+		long start = beginRecord(KEYFRAME);
+		_buffer.putLong(_ticks);
+		writeRobot(root);
+		endRecord(start);
+		_lastKeyframe = _ticks;
+	}
+
+	/*
+	 * Writes a DEFINE_CLASS record for each class used within the composition
+	 * rooted at robot that has not yet been defined. Throws an IOException,
+	 * before writing anything, if a robot's class lacks the constructor 
+	 * through which a JournalReplayer would recreate it.
+	 */
+	private void defineClasses(Robot robot) throws IOException {
+		Class<?> type = robot.getClass();
+		if (!_classIds.containsKey(type)) {
+			try {
+				type.getConstructor(int.class, int.class, int.class, int.class, int.class, int.class);
+			} catch (NoSuchMethodException e) {
+				throw new IOException("Cannot journal robot of class " + type.getName(), e);
+			}
+			try {
+				type.getConstructor(int.class, int.class, int.class, int.class, int.class, int.class,
+						String.class);
+				_namedClasses.add(type);
+			} catch (NoSuchMethodException e) {
+				// Only unnamed robots of this class can be journalled.
+			}
+			int classId = _classIds.size();
+			_classIds.put(type, classId);
+			long start = beginRecord(DEFINE_CLASS);
+			_buffer.putInt(classId);
+			writeString(type.getName());
+			endRecord(start);
+		}
+		if (robot._Name != null && !_namedClasses.contains(type)) {
+			throw new IOException("Cannot journal named robot of class " + type.getName());
+		}
+		if (robot instanceof CarrierRobot) {
+			List<Robot> children = ((CarrierRobot) robot)._ChildRobotList;
+			for (int i = 0; i < children.size(); i++) {
+				defineClasses(children.get(i));
+			}
+		}
+	}
+
+	/*
+	 * Assigns an ID to robot and writes it and its descendants.
+	 */
+	private void writeRobot(Robot robot) throws IOException {
+		robot.pull();
+		int id = _nextId++;
+		_ids.put(robot, id);
+
+		ensure(41);
+		_buffer.putInt(id);
+		_buffer.putInt(_classIds.get(robot.getClass()));
+		_buffer.putInt(robot._x);
+		_buffer.putInt(robot._y);
+		_buffer.putInt(robot._deltaX);
+		_buffer.putInt(robot._deltaY);
+		_buffer.putInt(robot._width);
+		_buffer.putInt(robot._height);
+
+		int flags = (robot._didBounceOffVertical ? BOUNCED_OFF_VERTICAL : 0)
+				| (robot._didBounceOffHorizontal ? BOUNCED_OFF_HORIZONTAL : 0)
+				| (robot._Name != null ? NAMED : 0);
+		if (robot instanceof CarrierRobot && ((CarrierRobot) robot).collisionDetection()) {
+			flags |= COLLISION_DETECTION;
+		}
+		Color colour = null;
+		if (robot instanceof DynamicWheeledRobot) {
+			DynamicWheeledRobot dynamic = (DynamicWheeledRobot) robot;
+			colour = dynamic.robotColor();
+			flags |= (colour != null ? COLOURED : 0) | (dynamic.isFilled() ? FILLED : 0);
+		}
+		_buffer.put((byte) flags);
+		if (robot._Name != null) {
+			writeString(robot._Name);
+		}
+		if (colour != null) {
+			ensure(4);
+			_buffer.putInt(colour.getRGB());
+		}
+
+		if (robot instanceof CarrierRobot) {
+			List<Robot> children = ((CarrierRobot) robot)._ChildRobotList;
+			ensure(4);
+			_buffer.putInt(children.size());
+			for (int i = 0; i < children.size(); i++) {
+				writeRobot(children.get(i));
+			}
+		} else {
+			ensure(4);
+			_buffer.putInt(0);
+		}
+	}
+
+	/*
+	 * Removes the IDs of robot and its descendants.
+	 */
+	private void forget(Robot robot) {
+		_ids.remove(robot);
+		if (robot instanceof CarrierRobot) {
+			List<Robot> children = ((CarrierRobot) robot)._ChildRobotList;
+			for (int i = 0; i < children.size(); i++) {
+				forget(children.get(i));
+			}
+		}
+	}
+
+	private void writeString(String value) throws IOException {
+		byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+		ensure(2 + bytes.length);
+		_buffer.putShort((short) bytes.length);
+		_buffer.put(bytes);
+	}
+
+	/*
+	 * Writes the header of a record of the specified type, leaving space for
+	 * the payload length, and makes room for the fixed fields at the start of
+	 * the payload (at most 8 bytes). Returns the file offset of the length
+	 * field.
+	 */
+	private long beginRecord(byte type) throws IOException {
+		ensure(RECORD_HEADER_SIZE + 8);
+		_buffer.put(type);
+		long offset = _written + _buffer.position();
+		_buffer.putInt(0);
+		return offset;
+	}
+
+	/*
+	 * Fills in the payload length of the record whose length field is at
+	 * the specified file offset.
+	 */
+	private void endRecord(long offset) throws IOException {
+		int length = (int) (_written + _buffer.position() - offset - 4);
+		if (offset >= _written) {
+			_buffer.putInt((int) (offset - _written), length);
+		} else {
+			// The start of the record has already been written out.
+			ByteBuffer patch = ByteBuffer.allocate(4).putInt(0, length);
+			while (patch.hasRemaining()) {
+				_channel.write(patch, offset + patch.position());
+			}
+		}
+	}
+
+	/*
+	 * Makes room in the buffer for the specified number of bytes.
+	 */
+	private void ensure(int bytes) throws IOException {
+		if (_buffer.remaining() < bytes) {
+			drain();
+		}
+	}
+
+	/*
+	 * Writes the contents of the buffer to the channel.
+	 */
+	private void drain() throws IOException {
+		_buffer.flip();
+		while (_buffer.hasRemaining()) {
+			_written += _channel.write(_buffer);
+		}
+		_buffer.clear();
+	}
+}
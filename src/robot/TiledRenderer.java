@@ -0,0 +1,253 @@
+package robot;
+
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Class to paint a composition of Robots using several threads. The area to
+ * paint is split into square tiles, each with its own offscreen image. The
+ * root's children are first sorted into the tiles they can affect; each
+ * tile is then painted on a worker thread, through a GraphicsPainter clipped
+ * to the tile, with only the children sorted into it. Finally the tiles are
+ * drawn, on the calling thread, onto the Graphics object given to paint().
+ * Java2D draws an oval that crosses the edge of its clip along a slightly
+ * different path from one that lies within it, so an oval crossing a tile
+ * edge may differ by a pixel from one painted on a single thread.
+ *
+ * The Robots are read by several threads at once, so they must not change
+ * while they are painted: they should be the shadows loaded by a
+ * SnapshotRenderer rather than live Robots. A TiledRenderer itself may only
+ * be used by one thread at a time, e.g. the Event Dispatch Thread, and owns
+ * its worker threads, which are stopped by close().
+ */
+public class TiledRenderer implements Closeable {
+	// Default width and height of a tile, in pixels.
+	public static final int DEFAULT_TILE_SIZE = 256;
+
+	private final int _tileSize;
+
+	private final ExecutorService _workers;
+
+	// Sprites from which the tiles paint robots, or null.
+	private volatile SpriteCache _sprites;
+
+	// Tiles, by row and then column, created as the area painted grows.
+	private Tile[] _tiles = new Tile[0];
+	private int _columns = 0;
+
+	// Tiles to paint in the current frame.
+	private final List<Tile> _dirty = new ArrayList<Tile>();
+
+	/**
+	 * Creates a TiledRenderer with tiles of DEFAULT_TILE_SIZE pixels, painted
+	 * by as many threads as there are processors.
+	 */
+	public TiledRenderer() {
+		this(DEFAULT_TILE_SIZE, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Creates a TiledRenderer.
+	 * @param tileSize the width and height of a tile, in pixels.
+	 * @param threads the number of threads that paint tiles.
+	 */
+	public TiledRenderer(int tileSize, int threads) {
+		if (tileSize < 1 || threads < 1) {
+			throw new IllegalArgumentException();
+		}
+		_tileSize = tileSize;
+		_workers = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private int _count = 0;
+
+			public synchronized Thread newThread(Runnable task) {
+				Thread thread = new Thread(task, "robot-tile-" + _count++);
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * Sets the SpriteCache from which robots are painted, or null to paint
+	 * them directly.
+	 */
+	public void setSpriteCache(SpriteCache sprites) {
+		_sprites = sprites;
+	}
+
+	/**
+	 * Paints root and its descendants onto g, within area and g's clip.
+	 * Tiles are filled with background before robots are painted onto them,
+	 * in g's colour and font and with g's rendering hints.
+	 */
+	public void paint(CarrierRobot root, Graphics g, Rectangle area, Color background) {
+		Rectangle bounds = g.getClipBounds();
+		bounds = bounds == null ? new Rectangle(area) : bounds.intersection(area);
+		if (bounds.isEmpty()) {
+			return;
+		}
+		int firstColumn = Math.max(0, bounds.x / _tileSize);
+		int firstRow = Math.max(0, bounds.y / _tileSize);
+		int lastColumn = (bounds.x + bounds.width - 1) / _tileSize;
+		int lastRow = (bounds.y + bounds.height - 1) / _tileSize;
+		ensureTiles(lastColumn + 1, lastRow + 1);
+
+		_dirty.clear();
+		for (int row = firstRow; row <= lastRow; row++) {
+			for (int column = firstColumn; column <= lastColumn; column++) {
+				Tile tile = _tiles[row * _columns + column];
+				tile._children.clear();
+				_dirty.add(tile);
+			}
+		}
+		sort(root, firstColumn, firstRow, lastColumn, lastRow);
+
+		RenderingHints hints = g instanceof Graphics2D ? ((Graphics2D) g).getRenderingHints() : null;
+		for (Tile tile : _dirty) {
+			tile.prepare(root, g.getColor(), g.getFont(), hints, background);
+		}
+		try {
+			for (Future<Void> future : _workers.invokeAll(_dirty)) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return;
+		} catch (ExecutionException e) {
+			throw new IllegalStateException(e.getCause());
+		}
+
+		for (Tile tile : _dirty) {
+			g.drawImage(tile._image, tile._x, tile._y, null);
+			tile._root = null;
+		}
+	}
+
+	/**
+	 * Stops the threads that paint tiles.
+	 */
+	public void close() {
+		_workers.shutdown();
+	}
+
+	/*
+	 * Sorts root's children into the tiles within the specified range that
+	 * they can affect. A named robot may affect any tile.
+	 */
+	private void sort(CarrierRobot root, int firstColumn, int firstRow, int lastColumn, int lastRow) {
+		root.pull();
+		List<Robot> children = root._ChildRobotList;
+		for (int i = 0; i < children.size(); i++) {
+			Robot child = children.get(i);
+			child.pull();
+			int fromColumn = firstColumn;
+			int fromRow = firstRow;
+			int toColumn = lastColumn;
+			int toRow = lastRow;
+			if (child._Name == null) {
+				// The outline covers one more pixel each way than the bounds.
+				int x = root._x + child._x;
+				int y = root._y + child._y;
+				fromColumn = Math.max(fromColumn, Math.floorDiv(x, _tileSize));
+				fromRow = Math.max(fromRow, Math.floorDiv(y, _tileSize));
+				toColumn = Math.min(toColumn, Math.floorDiv(x + child._width, _tileSize));
+				toRow = Math.min(toRow, Math.floorDiv(y + child._height, _tileSize));
+			}
+			for (int row = fromRow; row <= toRow; row++) {
+				for (int column = fromColumn; column <= toColumn; column++) {
+					_tiles[row * _columns + column]._children.add(child);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Makes sure there are tiles covering the specified number of columns
+	 * and rows.
+	 */
+	private void ensureTiles(int columns, int rows) {
+		int currentRows = _columns == 0 ? 0 : _tiles.length / _columns;
+		if (columns <= _columns && rows <= currentRows) {
+			return;
+		}
+		columns = Math.max(columns, _columns);
+		rows = Math.max(rows, currentRows);
+		Tile[] tiles = new Tile[columns * rows];
+		for (int row = 0; row < rows; row++) {
+			for (int column = 0; column < columns; column++) {
+				tiles[row * columns + column] = row < currentRows && column < _columns
+						? _tiles[row * _columns + column]
+						: new Tile(column * _tileSize, row * _tileSize, _tileSize);
+			}
+		}
+		_tiles = tiles;
+		_columns = columns;
+	}
+
+	/*
+	 * Square of the area painted, with its own image and the root's children
+	 * that can affect it.
+	 */
+	private final class Tile implements Callable<Void> {
+		final int _x;
+		final int _y;
+		final BufferedImage _image;
+		final List<Robot> _children = new ArrayList<Robot>();
+
+		// State for the next call(), set by prepare().
+		CarrierRobot _root;
+		Color _color;
+		Font _font;
+		RenderingHints _hints;
+		Color _background;
+
+		Tile(int x, int y, int size) {
+			_x = x;
+			_y = y;
+			_image = new BufferedImage(size, size, BufferedImage.TYPE_INT_RGB);
+		}
+
+		void prepare(CarrierRobot root, Color color, Font font, RenderingHints hints, Color background) {
+			_root = root;
+			_color = color;
+			_font = font;
+			_hints = hints;
+			_background = background;
+		}
+
+		public Void call() {
+			Graphics2D g = _image.createGraphics();
+			try {
+				if (_hints != null) {
+					g.setRenderingHints(_hints);
+				}
+				g.setColor(_background);
+				g.fillRect(0, 0, _tileSize, _tileSize);
+				g.translate(-_x, -_y);
+				g.clipRect(_x, _y, _tileSize, _tileSize);
+				g.setColor(_color);
+				g.setFont(_font);
+				SpriteCache sprites = _sprites;
+				Painter painter = sprites == null ? new GraphicsPainter(g) : new SpriteCachingPainter(g, sprites);
+				_root.paint(painter, _children);
+			} finally {
+				g.dispose();
+			}
+			return null;
+		}
+	}
+}
@@ -73,4 +73,9 @@ public class TrackedRobot extends Robot{
         }
 
     }
+
+    @Override
+    protected Object spriteState() {
+        return PLAIN_SPRITE;
+    }
 }
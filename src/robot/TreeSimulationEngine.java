@@ -0,0 +1,34 @@
+package robot;
+
+/**
+ * Default SimulationEngine implementation that progresses a robot 
+ * composition by calling move() on its root CarrierRobot. The root in turn
+ * moves each of its children, recursively walking the composition.
+ */
+public class TreeSimulationEngine implements SimulationEngine {
+
+	/**
+	 * @see robot.SimulationEngine.clock
+	 */
+	@Override
+	public void clock(CarrierRobot root, int width, int height) {
+		root.move(width, height);
+	}
+
+	/**
+	 * Computes each Robot's state directly (see BounceMotion).
+	 * @see robot.SimulationEngine.advance
+	 */
+	@Override
+	public void advance(CarrierRobot root, int width, int height, long ticks) {
+		BounceMotion.advance(root, width, height, ticks);
+	}
+
+	/**
+	 * No action is necessary; the composition is walked afresh on each 
+	 * clock() call.
+	 */
+	@Override
+	public void structureChanged() {
+	}
+}
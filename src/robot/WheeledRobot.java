@@ -53,4 +53,9 @@ public class WheeledRobot extends Robot {
 	protected void doPaint(Painter painter) {
 		painter.drawRect(_x,_y,_width,_height);
 	}
+
+	@Override
+	protected Object spriteState() {
+		return PLAIN_SPRITE;
+	}
 }
@@ -0,0 +1,49 @@
+package robot.bench;
+
+/**
+ * Abstract superclass for a micro-benchmark run by BenchmarkSuite. A 
+ * Benchmark is parameterised by a number of robots: setUp() builds the
+ * fixture for that number of robots and run() performs the operation being
+ * measured once. BenchmarkSuite calls run() repeatedly, first to warm up the
+ * JIT compiler and then to measure the mean time per call.
+ */
+public abstract class Benchmark {
+	// Written by benchmarks with results that the JIT compiler must not be
+	// allowed to optimise away.
+	protected static volatile long _sink;
+
+	private final String _name;
+
+	protected Benchmark(String name) {
+		_name = name;
+	}
+
+	/**
+	 * Returns the name used to report and select this Benchmark.
+	 */
+	public String name() {
+		return _name;
+	}
+
+	/**
+	 * Builds the fixture used by run() for the specified number of robots.
+	 */
+	public abstract void setUp(int robots);
+
+	/**
+	 * Performs the measured operation once.
+	 */
+	public abstract void run();
+
+	/**
+	 * Returns the number of robots processed by each run() call, so that
+	 * results can be reported per robot.
+	 */
+	public abstract int robotsPerRun();
+
+	/**
+	 * Releases the fixture built by setUp(). Does nothing by default.
+	 */
+	public void tearDown() {
+	}
+}
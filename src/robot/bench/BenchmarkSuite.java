@@ -0,0 +1,165 @@
+package robot.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import robot.AggrgateRobot;
+import robot.CarrierRobot;
+import robot.DynamicWheeledRobot;
+import robot.FlyingRobot;
+import robot.TrackedRobot;
+import robot.WheeledRobot;
+
+/**
+ * Program that runs the application's micro-benchmarks. Each Benchmark is
+ * run once for each robot count: it is first warmed up for WARMUP_MILLIS and
+ * then measured over ITERATIONS iterations of ITERATION_MILLIS each. The 
+ * mean time per run() call, its standard deviation across iterations and the
+ * mean time per robot are reported.
+ * 
+ * Usage: BenchmarkSuite [option value]...
+ *   --robots n[,n...]   robot counts to run each benchmark with 
+ *                       (default 1000,10000,100000)
+ *   --filter text       only run benchmarks whose name contains text
+ */
+public class BenchmarkSuite {
+	private static final long WARMUP_MILLIS = 500;
+	private static final long ITERATION_MILLIS = 300;
+	private static final int ITERATIONS = 5;
+
+	private static final int[] DEFAULT_ROBOTS = {1000, 10000, 100000};
+
+	/**
+	 * Returns all benchmarks in the suite.
+	 */
+	public static List<Benchmark> benchmarks() {
+		List<Benchmark> benchmarks = new ArrayList<Benchmark>();
+
+		benchmarks.add(new MoveBenchmark(WheeledRobot.class));
+		benchmarks.add(new MoveBenchmark(FlyingRobot.class));
+		benchmarks.add(new MoveBenchmark(TrackedRobot.class));
+		benchmarks.add(new MoveBenchmark(DynamicWheeledRobot.class));
+		benchmarks.add(new MoveBenchmark(AggrgateRobot.class));
+		benchmarks.add(new MoveBenchmark(CarrierRobot.class));
+
+		benchmarks.add(new CarrierMoveBenchmark(0));
+		benchmarks.add(new CarrierMoveBenchmark(32));
+		benchmarks.add(new CarrierMoveBenchmark(4));
+
+		benchmarks.add(new PaintBenchmark(WheeledRobot.class));
+		benchmarks.add(new PaintBenchmark(FlyingRobot.class));
+		benchmarks.add(new PaintBenchmark(TrackedRobot.class));
+		benchmarks.add(new PaintBenchmark(DynamicWheeledRobot.class));
+		benchmarks.add(new PaintBenchmark(WheeledRobot.class, "sprites"));
+		benchmarks.add(new PaintBenchmark(FlyingRobot.class, "sprites"));
+		benchmarks.add(new PaintBenchmark(TrackedRobot.class, "sprites"));
+		benchmarks.add(new PaintBenchmark(DynamicWheeledRobot.class, "sprites"));
+		benchmarks.add(new PaintBenchmark(TrackedRobot.class, "record"));
+		benchmarks.add(new PaintBenchmark(TrackedRobot.class, "replay"));
+
+		benchmarks.add(new ColourStateBenchmark("direct"));
+		benchmarks.add(new ColourStateBenchmark("recorded"));
+
+		benchmarks.add(new TiledPaintBenchmark(0));
+		benchmarks.add(new TiledPaintBenchmark(Runtime.getRuntime().availableProcessors()));
+
+		benchmarks.add(new ClockBenchmark(0));
+		benchmarks.add(new ClockBenchmark(1));
+		benchmarks.add(new ClockBenchmark(3));
+
+		benchmarks.add(new CollisionBenchmark("tree"));
+		benchmarks.add(new CollisionBenchmark("array"));
+
+		benchmarks.add(new BulkLoadBenchmark("unbatched"));
+		benchmarks.add(new BulkLoadBenchmark("batched"));
+		benchmarks.add(new BulkLoadBenchmark("addAll"));
+
+		return benchmarks;
+	}
+
+	public static void main(String[] args) {
+		int[] robotCounts = DEFAULT_ROBOTS;
+		String filter = "";
+
+		for (int i = 0; i + 1 < args.length; i += 2) {
+			if (args[i].equals("--robots")) {
+				String[] values = args[i + 1].split(",");
+				robotCounts = new int[values.length];
+				for (int j = 0; j < values.length; j++) {
+					robotCounts[j] = Integer.parseInt(values[j].trim());
+				}
+			} else if (args[i].equals("--filter")) {
+				filter = args[i + 1];
+			} else {
+				System.err.println("Unknown option " + args[i]);
+				System.exit(1);
+			}
+		}
+
+		System.out.printf("%-32s %9s %14s %12s %12s%n", "benchmark", "robots", "ns/run", "+/-", "ns/robot");
+		for (Benchmark benchmark : benchmarks()) {
+			if (!benchmark.name().contains(filter)) {
+				continue;
+			}
+			for (int robots : robotCounts) {
+				benchmark.setUp(robots);
+				try {
+					double[] nanosPerRun = measure(benchmark);
+					double mean = mean(nanosPerRun);
+					System.out.printf("%-32s %9d %14.0f %12.0f %12.2f%n", benchmark.name(),
+							benchmark.robotsPerRun(), mean, standardDeviation(nanosPerRun, mean),
+							mean / benchmark.robotsPerRun());
+				} finally {
+					benchmark.tearDown();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Warms up benchmark, whose fixture must already be set up, and then
+	 * returns the mean time per run() call, in nanoseconds, for each 
+	 * measured iteration.
+	 */
+	public static double[] measure(Benchmark benchmark) {
+		runFor(benchmark, WARMUP_MILLIS * 1000000L);
+
+		double[] nanosPerRun = new double[ITERATIONS];
+		for (int i = 0; i < ITERATIONS; i++) {
+			long start = System.nanoTime();
+			long runs = runFor(benchmark, ITERATION_MILLIS * 1000000L);
+			nanosPerRun[i] = (double) (System.nanoTime() - start) / runs;
+		}
+		return nanosPerRun;
+	}
+
+	/*
+	 * Calls benchmark's run() method repeatedly for at least the specified
+	 * time, and returns the number of calls made.
+	 */
+	private static long runFor(Benchmark benchmark, long nanos) {
+		long deadline = System.nanoTime() + nanos;
+		long runs = 0;
+		do {
+			benchmark.run();
+			runs++;
+		} while (System.nanoTime() < deadline);
+		return runs;
+	}
+
+	private static double mean(double[] values) {
+		double sum = 0;
+		for (double value : values) {
+			sum += value;
+		}
+		return sum / values.length;
+	}
+
+	private static double standardDeviation(double[] values, double mean) {
+		double sum = 0;
+		for (double value : values) {
+			sum += (value - mean) * (value - mean);
+		}
+		return Math.sqrt(sum / values.length);
+	}
+}
@@ -0,0 +1,103 @@
+package robot.bench;
+
+import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JTable;
+import javax.swing.JTree;
+
+import robot.Robot;
+import robot.RobotModel;
+import robot.WheeledRobot;
+import robot.views.TableModelAdapter;
+import robot.views.Task2;
+
+/**
+ * Benchmark that measures loading robots into an empty RobotModel that 
+ * publishes snapshots and is viewed by a JTable (through a 
+ * TableModelAdapter) and a JTree (through Task2), as in the application.
+ * The robots are added in one of three ways:
+ * <ul>
+ * <li>"unbatched": one add() call at a time, each notifying the views;</li>
+ * <li>"batched": add() calls within a single batch() call, which notifies
+ * the views once;</li>
+ * <li>"addAll": a single addAll() call, which checks the robots in one pass,
+ * grows the child storage once and notifies the views once.</li>
+ * </ul>
+ *
+ * Unbatched loading costs time quadratic in the number of robots, so at most
+ * MAX_UNBATCHED_ROBOTS robots are loaded per run.
+ */
+public class BulkLoadBenchmark extends Benchmark {
+	private static final int MAX_UNBATCHED_ROBOTS = 10000;
+
+	// One of "unbatched", "batched" or "addAll".
+	private final String _mode;
+
+	// Parameters of the robots to load.
+	private int[][] _parameters;
+
+	public BulkLoadBenchmark(String mode) {
+		super("bulk-load:" + mode);
+		_mode = mode;
+	}
+
+	@Override
+	public void setUp(int robots) {
+		if (_mode.equals("unbatched")) {
+			robots = Math.min(robots, MAX_UNBATCHED_ROBOTS);
+		}
+		Robot[] templates = Scenario.robots(WheeledRobot.class, robots, 20);
+		_parameters = new int[templates.length][];
+		for (int i = 0; i < templates.length; i++) {
+			Robot robot = templates[i];
+			_parameters[i] = new int[] {robot.x(), robot.y(), robot.deltaX(), robot.deltaY(),
+					robot.width(), robot.height()};
+		}
+	}
+
+	@Override
+	public void run() {
+		final RobotModel model = new RobotModel(new Dimension(Scenario.BOUNDS));
+		model.setPublishSnapshots(true);
+		TableModelAdapter tableModel = new TableModelAdapter(model.root());
+		Task2 treeModel = new Task2(model);
+		new JTable(tableModel);
+		new JTree(treeModel);
+		model.addRobotModelListener(tableModel);
+		model.addRobotModelListener(treeModel);
+
+		if (_mode.equals("addAll")) {
+			List<Robot> robots = new ArrayList<Robot>(_parameters.length);
+			for (int[] p : _parameters) {
+				robots.add(new WheeledRobot(p[0], p[1], p[2], p[3], p[4], p[5]));
+			}
+			model.addAll(robots, model.root());
+		} else {
+			Runnable load = new Runnable() {
+				public void run() {
+					for (int[] p : _parameters) {
+						model.add(new WheeledRobot(p[0], p[1], p[2], p[3], p[4], p[5]), model.root());
+					}
+				}
+			};
+			if (_mode.equals("batched")) {
+				model.batch(load);
+			} else {
+				load.run();
+			}
+		}
+		_sink = tableModel.getRowCount();
+	}
+
+	@Override
+	public int robotsPerRun() {
+		return _parameters.length;
+	}
+
+	@Override
+	public void tearDown() {
+		_parameters = null;
+	}
+}
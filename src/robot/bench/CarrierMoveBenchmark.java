@@ -0,0 +1,55 @@
+package robot.bench;
+
+import robot.CarrierRobot;
+import robot.RobotModel;
+import robot.TreeSimulationEngine;
+
+/**
+ * Benchmark that measures CarrierRobot's move() method on compositions of
+ * different shapes. With a fan-out of zero all robots are direct children of
+ * the root; otherwise the robots are the leaves of a complete tree with the
+ * given fan-out, as deep as necessary to hold the requested number of robots.
+ */
+public class CarrierMoveBenchmark extends Benchmark {
+	private final int _fanOut;
+
+	private CarrierRobot _root;
+	private int _robots;
+
+	public CarrierMoveBenchmark(int fanOut) {
+		super(fanOut == 0 ? "carrier:flat" : "carrier:fanout" + fanOut);
+		_fanOut = fanOut;
+	}
+
+	@Override
+	public void setUp(int robots) {
+		RobotModel model;
+		if (_fanOut == 0) {
+			model = Scenario.flat(robots, new TreeSimulationEngine());
+		} else {
+			int depth = 1;
+			for (long leaves = _fanOut; leaves < robots; leaves *= _fanOut) {
+				depth++;
+			}
+			model = Scenario.tree(depth, _fanOut, new TreeSimulationEngine());
+		}
+		_root = model.root();
+		_robots = Scenario.size(model);
+	}
+
+	@Override
+	public void run() {
+		_root.move(Scenario.BOUNDS.width, Scenario.BOUNDS.height);
+		_sink = _root.x();
+	}
+
+	@Override
+	public int robotsPerRun() {
+		return _robots;
+	}
+
+	@Override
+	public void tearDown() {
+		_root = null;
+	}
+}
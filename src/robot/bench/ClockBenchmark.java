@@ -0,0 +1,62 @@
+package robot.bench;
+
+import java.awt.Dimension;
+
+import robot.RobotModel;
+import robot.TreeSimulationEngine;
+import robot.views.AnimationView;
+import robot.views.TableModelAdapter;
+import robot.views.Task2;
+
+/**
+ * Benchmark that measures RobotModel's clock() method, including the cost
+ * of notifying its listeners. The listeners are the application's own views:
+ * with one listener the model notifies a TableModelAdapter; with three it 
+ * additionally notifies a Task2 tree model and an AnimationView.
+ */
+public class ClockBenchmark extends Benchmark {
+	private final int _listeners;
+
+	private RobotModel _model;
+	private int _robots;
+
+	public ClockBenchmark(int listeners) {
+		super("clock:listeners=" + listeners);
+		if (listeners != 0 && listeners != 1 && listeners != 3) {
+			throw new IllegalArgumentException();
+		}
+		_listeners = listeners;
+	}
+
+	@Override
+	public void setUp(int robots) {
+		_model = Scenario.create(Scenario.NESTED, robots, new TreeSimulationEngine());
+		_robots = Scenario.size(_model);
+
+		if (_listeners >= 1) {
+			_model.addRobotModelListener(new TableModelAdapter(_model.root()));
+		}
+		if (_listeners == 3) {
+			_model.addRobotModelListener(new Task2(_model));
+			AnimationView view = new AnimationView(new Dimension(Scenario.BOUNDS));
+			view.attach(_model);
+			_model.addRobotModelListener(view);
+		}
+	}
+
+	@Override
+	public void run() {
+		_model.clock();
+		_sink = _model.root().x();
+	}
+
+	@Override
+	public int robotsPerRun() {
+		return _robots;
+	}
+
+	@Override
+	public void tearDown() {
+		_model = null;
+	}
+}
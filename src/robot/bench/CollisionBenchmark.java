@@ -0,0 +1,48 @@
+package robot.bench;
+
+import robot.RobotModel;
+
+/**
+ * Benchmark that measures RobotModel's clock() method on a crowd scenario,
+ * in which the root has collision detection enabled and robots are spread at
+ * a constant density however many there are. Because collisions are found
+ * with a uniform grid, the time per robot should stay roughly constant as
+ * the number of robots grows.
+ */
+public class CollisionBenchmark extends Benchmark {
+	private final String _engine;
+
+	private RobotModel _model;
+	private int _robots;
+
+	/**
+	 * @param engine the name of the SimulationEngine to use, as accepted by
+	 * HeadlessRunner's --engine option.
+	 */
+	public CollisionBenchmark(String engine) {
+		super("collision:" + engine);
+		_engine = engine;
+	}
+
+	@Override
+	public void setUp(int robots) {
+		_model = Scenario.crowd(robots, HeadlessRunner.createEngine(_engine));
+		_robots = Scenario.size(_model);
+	}
+
+	@Override
+	public void run() {
+		_model.clock();
+		_sink = _model.root().robotAt(0).x();
+	}
+
+	@Override
+	public int robotsPerRun() {
+		return _robots;
+	}
+
+	@Override
+	public void tearDown() {
+		_model = null;
+	}
+}
@@ -0,0 +1,97 @@
+package robot.bench;
+
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.Random;
+
+import robot.CarrierRobot;
+import robot.DynamicWheeledRobot;
+import robot.GraphicsPainter;
+import robot.RecordingPainter;
+import robot.RobotModel;
+
+/**
+ * Benchmark that measures painting a frame of DynamicWheeledRobots in mixed
+ * colours, most of them filled, onto an offscreen BufferedImage. The frame
+ * is painted in one of two ways:
+ * <ul>
+ * <li>"direct": through a GraphicsPainter, setting the colour twice per
+ * filled robot;</li>
+ * <li>"recorded": recorded into a RecordingPainter, reused from run to run,
+ * and replayed through a GraphicsPainter, which drops setColor() calls that
+ * would not change the colour.</li>
+ * </ul>
+ */
+public class ColourStateBenchmark extends Benchmark {
+	private static final Color[] COLOURS = {Color.red, Color.green, Color.blue, Color.orange};
+
+	// Either "direct" or "recorded".
+	private final String _mode;
+
+	private CarrierRobot _root;
+	private int _robots;
+	private BufferedImage _image;
+	private Graphics2D _graphics;
+	private GraphicsPainter _painter;
+	private RecordingPainter _recorder;
+
+	public ColourStateBenchmark(String mode) {
+		super("colour-state:" + mode);
+		_mode = mode;
+	}
+
+	@Override
+	public void setUp(int robots) {
+		Random random = new Random(42);
+		RobotModel model = new RobotModel(new Dimension(Scenario.BOUNDS));
+		_root = model.root();
+		for (int i = 0; i < robots; i++) {
+			int width = 5 + random.nextInt(20);
+			int height = 5 + random.nextInt(20);
+			int x = random.nextInt(Scenario.BOUNDS.width - width);
+			int y = random.nextInt(Scenario.BOUNDS.height - height);
+			DynamicWheeledRobot robot = new DynamicWheeledRobot(x, y, 0, 0, width, height,
+					COLOURS[random.nextInt(COLOURS.length)]);
+			if (random.nextInt(4) != 0) {
+				// Bounce off a vertical wall, filling the robot.
+				robot.move(x + width, Scenario.BOUNDS.height);
+			}
+			model.add(robot, _root);
+		}
+		_robots = robots;
+		_image = new BufferedImage(Scenario.BOUNDS.width, Scenario.BOUNDS.height, BufferedImage.TYPE_INT_RGB);
+		_graphics = _image.createGraphics();
+		_graphics.setColor(Color.black);
+		_painter = new GraphicsPainter(_graphics);
+		_recorder = new RecordingPainter();
+	}
+
+	@Override
+	public void run() {
+		if (_mode.equals("direct")) {
+			_root.paint(_painter);
+		} else {
+			_recorder.clear();
+			_root.paint(_recorder);
+			_recorder.replay(_painter);
+		}
+		_sink = _image.getRGB(0, 0);
+	}
+
+	@Override
+	public int robotsPerRun() {
+		return _robots;
+	}
+
+	@Override
+	public void tearDown() {
+		_graphics.dispose();
+		_root = null;
+		_image = null;
+		_graphics = null;
+		_painter = null;
+		_recorder = null;
+	}
+}
@@ -0,0 +1,149 @@
+package robot.bench;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+
+import robot.ArraySimulationEngine;
+import robot.ParallelSimulationEngine;
+import robot.RobotModel;
+import robot.SimulationEngine;
+import robot.TreeSimulationEngine;
+
+/**
+ * Program that runs a RobotModel without any GUI and reports its throughput.
+ * A model is built from a named Scenario and clocked a fixed number of times,
+ * either as fast as possible or at a target rate. The program then reports
+ * the number of ticks per second, the number of robot moves per second 
+ * (robots x ticks / second) and percentiles of the time taken by individual
+ * clock() calls.
+ * 
+ * Usage: HeadlessRunner [option value]...
+ *   --scenario flat|nested|tree|crowd
+ *                                 model to build (default nested)
+ *   --robots n                    approximate number of robots (default 10000)
+ *   --engine tree|array|parallel  simulation engine (default tree)
+ *   --ticks n                     measured clock() calls (default 1000)
+ *   --warmup n                    unmeasured clock() calls first (default 200)
+ *   --rate n                      target ticks per second, 0 for as fast as
+ *                                 possible (default 0)
+ */
+public class HeadlessRunner {
+
+	private String _scenario = Scenario.NESTED;
+	private int _robots = 10000;
+	private String _engine = "tree";
+	private int _ticks = 1000;
+	private int _warmup = 200;
+	private int _rate = 0;
+
+	public static void main(String[] args) {
+		HeadlessRunner runner = new HeadlessRunner();
+		try {
+			runner.parse(args);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.exit(1);
+		}
+		runner.run();
+	}
+
+	/*
+	 * Reads option/value pairs from args.
+	 */
+	private void parse(String[] args) {
+		for (int i = 0; i < args.length; i += 2) {
+			if (i + 1 == args.length) {
+				throw new IllegalArgumentException("Missing value for " + args[i]);
+			}
+			String option = args[i];
+			String value = args[i + 1];
+
+			try {
+				if (option.equals("--scenario")) {
+					_scenario = value;
+				} else if (option.equals("--robots")) {
+					_robots = Integer.parseInt(value);
+				} else if (option.equals("--engine")) {
+					_engine = value;
+				} else if (option.equals("--ticks")) {
+					_ticks = Integer.parseInt(value);
+				} else if (option.equals("--warmup")) {
+					_warmup = Integer.parseInt(value);
+				} else if (option.equals("--rate")) {
+					_rate = Integer.parseInt(value);
+				} else {
+					throw new IllegalArgumentException("Unknown option " + option);
+				}
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Invalid value for " + option + ": " + value);
+			}
+		}
+		if (_ticks < 1 || _warmup < 0 || _rate < 0) {
+			throw new IllegalArgumentException("ticks must be positive; warmup and rate must not be negative");
+		}
+	}
+
+	private void run() {
+		RobotModel model = Scenario.create(_scenario, _robots, createEngine(_engine));
+		int robots = Scenario.size(model);
+
+		for (int i = 0; i < _warmup; i++) {
+			model.clock();
+		}
+
+		long[] latencies = new long[_ticks];
+		long period = _rate == 0 ? 0 : 1000000000L / _rate;
+		long start = System.nanoTime();
+
+		for (int i = 0; i < _ticks; i++) {
+			if (period > 0) {
+				long due = start + i * period;
+				long now;
+				while ((now = System.nanoTime()) < due) {
+					LockSupport.parkNanos(due - now);
+				}
+			}
+			long before = System.nanoTime();
+			model.clock();
+			latencies[i] = System.nanoTime() - before;
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		Arrays.sort(latencies);
+		System.out.println("scenario:           " + _scenario);
+		System.out.println("engine:             " + _engine);
+		System.out.println("robots:             " + robots);
+		System.out.println("ticks:              " + _ticks);
+		System.out.printf("elapsed (s):        %.3f%n", seconds);
+		System.out.printf("ticks/s:            %.1f%n", _ticks / seconds);
+		System.out.printf("robot-ticks/s:      %.0f%n", (double) robots * _ticks / seconds);
+		System.out.printf("latency p50 (us):   %.1f%n", percentile(latencies, 50) / 1e3);
+		System.out.printf("latency p90 (us):   %.1f%n", percentile(latencies, 90) / 1e3);
+		System.out.printf("latency p99 (us):   %.1f%n", percentile(latencies, 99) / 1e3);
+		System.out.printf("latency p99.9 (us): %.1f%n", percentile(latencies, 99.9) / 1e3);
+		System.out.printf("latency max (us):   %.1f%n", latencies[latencies.length - 1] / 1e3);
+	}
+
+	/*
+	 * Returns the value at percentile p of sorted, using the nearest-rank 
+	 * method.
+	 */
+	private static long percentile(long[] sorted, double p) {
+		int rank = (int) Math.ceil(p / 100 * sorted.length);
+		return sorted[Math.max(rank - 1, 0)];
+	}
+
+	/*
+	 * Returns a SimulationEngine given its name.
+	 */
+	static SimulationEngine createEngine(String name) {
+		if (name.equals("tree")) {
+			return new TreeSimulationEngine();
+		} else if (name.equals("array")) {
+			return new ArraySimulationEngine();
+		} else if (name.equals("parallel")) {
+			return new ParallelSimulationEngine();
+		}
+		throw new IllegalArgumentException("Unknown engine: " + name);
+	}
+}
@@ -0,0 +1,42 @@
+package robot.bench;
+
+import robot.Robot;
+
+/**
+ * Benchmark that measures Robot's move() method for a particular kind of
+ * Robot, by moving an array of unrelated robots of that kind once per run.
+ */
+public class MoveBenchmark extends Benchmark {
+	private final Class<? extends Robot> _type;
+
+	private Robot[] _robots;
+
+	public MoveBenchmark(Class<? extends Robot> type) {
+		super("move:" + type.getSimpleName());
+		_type = type;
+	}
+
+	@Override
+	public void setUp(int robots) {
+		_robots = Scenario.robots(_type, robots, 25);
+	}
+
+	@Override
+	public void run() {
+		Robot[] robots = _robots;
+		for (int i = 0; i < robots.length; i++) {
+			robots[i].move(Scenario.BOUNDS.width, Scenario.BOUNDS.height);
+		}
+		_sink = robots[robots.length - 1].x();
+	}
+
+	@Override
+	public int robotsPerRun() {
+		return _robots.length;
+	}
+
+	@Override
+	public void tearDown() {
+		_robots = null;
+	}
+}
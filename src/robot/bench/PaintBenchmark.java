@@ -0,0 +1,100 @@
+package robot.bench;
+
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import robot.GraphicsPainter;
+import robot.Painter;
+import robot.RecordingPainter;
+import robot.Robot;
+import robot.SpriteCache;
+import robot.SpriteCachingPainter;
+
+/**
+ * Benchmark that measures Robot's paint() method for a particular kind of 
+ * Robot, painting an array of robots onto an offscreen BufferedImage once
+ * per run. The robots are painted in one of four ways:
+ * <ul>
+ * <li>"direct": through a GraphicsPainter;</li>
+ * <li>"sprites": through a SpriteCachingPainter, whose cache is filled 
+ * during warm-up;</li>
+ * <li>"record": into a RecordingPainter, reused from run to run, without
+ * touching the image;</li>
+ * <li>"replay": by replaying a display list, recorded once, through a
+ * GraphicsPainter.</li>
+ * </ul>
+ */
+public class PaintBenchmark extends Benchmark {
+	// Room for a sprite of every size of robot that Scenario creates.
+	private static final long SPRITE_CACHE_BYTES = 64L * 1024 * 1024;
+
+	private final Class<? extends Robot> _type;
+
+	// One of "direct", "sprites", "record" or "replay".
+	private final String _mode;
+
+	private Robot[] _robots;
+	private BufferedImage _image;
+	private Graphics2D _graphics;
+	private Painter _painter;
+	private RecordingPainter _recorder;
+
+	public PaintBenchmark(Class<? extends Robot> type) {
+		this(type, "direct");
+	}
+
+	public PaintBenchmark(Class<? extends Robot> type, String mode) {
+		super("paint:" + type.getSimpleName() + (mode.equals("direct") ? "" : ":" + mode));
+		_type = type;
+		_mode = mode;
+	}
+
+	@Override
+	public void setUp(int robots) {
+		_robots = Scenario.robots(_type, robots, 55);
+		_image = new BufferedImage(Scenario.BOUNDS.width, Scenario.BOUNDS.height, BufferedImage.TYPE_INT_RGB);
+		_graphics = _image.createGraphics();
+		_painter = _mode.equals("sprites") ? new SpriteCachingPainter(_graphics, new SpriteCache(SPRITE_CACHE_BYTES))
+				: new GraphicsPainter(_graphics);
+		_recorder = new RecordingPainter();
+		if (_mode.equals("replay")) {
+			for (Robot robot : _robots) {
+				robot.paint(_recorder);
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		Robot[] robots = _robots;
+		if (_mode.equals("replay")) {
+			_recorder.replay(_painter);
+		} else if (_mode.equals("record")) {
+			_recorder.clear();
+			for (int i = 0; i < robots.length; i++) {
+				robots[i].paint(_recorder);
+			}
+			_sink = _recorder.size();
+			return;
+		} else {
+			for (int i = 0; i < robots.length; i++) {
+				robots[i].paint(_painter);
+			}
+		}
+		_sink = _image.getRGB(0, 0);
+	}
+
+	@Override
+	public int robotsPerRun() {
+		return _robots.length;
+	}
+
+	@Override
+	public void tearDown() {
+		_graphics.dispose();
+		_robots = null;
+		_image = null;
+		_graphics = null;
+		_painter = null;
+		_recorder = null;
+	}
+}
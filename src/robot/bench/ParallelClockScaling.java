@@ -0,0 +1,73 @@
+package robot.bench;
+
+import java.util.concurrent.ForkJoinPool;
+
+import robot.ParallelSimulationEngine;
+import robot.RobotModel;
+import robot.SimulationEngine;
+import robot.TreeSimulationEngine;
+
+/**
+ * Program that measures how RobotModel's clock() scales when the model is
+ * progressed by a ParallelSimulationEngine. The time per clock() call is
+ * measured for a sequential TreeSimulationEngine and then for 
+ * ParallelSimulationEngines running on pools of 1, 2, 4, ... threads up to 
+ * the number of available processors. For each pool size the speedup over
+ * the sequential engine is reported.
+ * 
+ * Usage: ParallelClockScaling [carriers] [robotsPerCarrier] [threshold]
+ */
+public class ParallelClockScaling {
+	private static final int WARMUP_TICKS = 50;
+	private static final int MEASURED_TICKS = 200;
+
+	public static void main(String[] args) {
+		int carriers = args.length > 0 ? Integer.parseInt(args[0]) : 64;
+		int robotsPerCarrier = args.length > 1 ? Integer.parseInt(args[1]) : 8192;
+		int threshold = args.length > 2 ? Integer.parseInt(args[2]) : ParallelSimulationEngine.DEFAULT_THRESHOLD;
+		int processors = Runtime.getRuntime().availableProcessors();
+
+		System.out.println("Robots: " + carriers * robotsPerCarrier + " (" + carriers + " carriers x "
+				+ robotsPerCarrier + "), threshold: " + threshold + ", processors: " + processors);
+
+		double sequential = measure(Scenario.nested(carriers, robotsPerCarrier, new TreeSimulationEngine()));
+		System.out.printf("%-12s %12s %10s%n", "engine", "ms/clock", "speedup");
+		System.out.printf("%-12s %12.3f %10.2f%n", "sequential", sequential, 1.0);
+
+		for (int threads = 1; threads <= processors; threads = nextPoolSize(threads, processors)) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			try {
+				SimulationEngine engine = new ParallelSimulationEngine(threshold, pool);
+				double parallel = measure(Scenario.nested(carriers, robotsPerCarrier, engine));
+				System.out.printf("%-12s %12.3f %10.2f%n", threads + " threads", parallel, sequential / parallel);
+			} finally {
+				pool.shutdown();
+			}
+		}
+	}
+
+	/*
+	 * Returns the mean time, in milliseconds, of a clock() call on model.
+	 */
+	private static double measure(RobotModel model) {
+		for (int i = 0; i < WARMUP_TICKS; i++) {
+			model.clock();
+		}
+		long start = System.nanoTime();
+		for (int i = 0; i < MEASURED_TICKS; i++) {
+			model.clock();
+		}
+		return (System.nanoTime() - start) / 1e6 / MEASURED_TICKS;
+	}
+
+	/*
+	 * Doubles the pool size, making sure the number of processors is the 
+	 * last size measured.
+	 */
+	private static int nextPoolSize(int threads, int processors) {
+		if (threads == processors) {
+			return processors + 1;
+		}
+		return Math.min(threads * 2, processors);
+	}
+}
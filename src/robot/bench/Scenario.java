@@ -0,0 +1,209 @@
+package robot.bench;
+
+import java.awt.Dimension;
+import java.lang.reflect.Constructor;
+import java.util.Random;
+
+import robot.CarrierRobot;
+import robot.FlyingRobot;
+import robot.Robot;
+import robot.RobotModel;
+import robot.SimulationEngine;
+import robot.TrackedRobot;
+import robot.WheeledRobot;
+
+/**
+ * Factory for reproducible RobotModels used to measure the performance of
+ * the robot application. Robot positions, sizes and speeds are drawn from a
+ * seeded random number generator, so the same scenario always produces the
+ * same model.
+ */
+public class Scenario {
+	// Bounds of the world used by all scenarios.
+	public static final Dimension BOUNDS = new Dimension(1000, 1000);
+
+	private static final long SEED = 42;
+
+	// Names of the scenarios understood by create().
+	public static final String FLAT = "flat";
+	public static final String NESTED = "nested";
+	public static final String TREE = "tree";
+	public static final String CROWD = "crowd";
+
+	// Number of carriers used when create() builds a nested scenario.
+	private static final int NESTED_CARRIERS = 64;
+
+	// Fan-out used when create() builds a tree scenario.
+	private static final int TREE_FAN_OUT = 8;
+
+	// Area, in square pixels, per robot in a crowd scenario.
+	private static final int CROWD_AREA_PER_ROBOT = 2000;
+
+	/**
+	 * Creates a model from a named scenario holding approximately robots
+	 * robots.
+	 * @param name one of FLAT, NESTED, TREE or CROWD.
+	 * @param robots the approximate number of robots the model should hold.
+	 * @param engine the SimulationEngine the model should use.
+	 * @throws IllegalArgumentException if name is not a known scenario.
+	 */
+	public static RobotModel create(String name, int robots, SimulationEngine engine) {
+		if (name.equals(FLAT)) {
+			return flat(robots, engine);
+		} else if (name.equals(NESTED)) {
+			return nested(NESTED_CARRIERS, Math.max(robots / NESTED_CARRIERS, 1), engine);
+		} else if (name.equals(TREE)) {
+			int depth = 1;
+			for (long leaves = TREE_FAN_OUT; leaves < robots; leaves *= TREE_FAN_OUT) {
+				depth++;
+			}
+			return tree(depth, TREE_FAN_OUT, engine);
+		} else if (name.equals(CROWD)) {
+			return crowd(robots, engine);
+		}
+		throw new IllegalArgumentException("Unknown scenario: " + name);
+	}
+
+	/**
+	 * Creates a model whose root holds robots simple robots.
+	 */
+	public static RobotModel flat(int robots, SimulationEngine engine) {
+		RobotModel model = new RobotModel(BOUNDS, engine);
+		Random random = new Random(SEED);
+		CarrierRobot root = model.root();
+
+		for (int i = 0; i < robots; i++) {
+			model.add(simpleRobot(random, root), root);
+		}
+		return model;
+	}
+
+	/**
+	 * Creates a model whose root holds robots simple robots with collision
+	 * detection enabled. Unlike the other scenarios, the world grows with the
+	 * number of robots so that they are always spread at the same density.
+	 */
+	public static RobotModel crowd(int robots, SimulationEngine engine) {
+		int side = (int) Math.ceil(Math.sqrt((double) robots * CROWD_AREA_PER_ROBOT));
+		RobotModel model = new RobotModel(new Dimension(side, side), engine);
+		Random random = new Random(SEED);
+		CarrierRobot root = model.root();
+		root.setCollisionDetection(true);
+
+		for (int i = 0; i < robots; i++) {
+			model.add(simpleRobot(random, root), root);
+		}
+		return model;
+	}
+
+	/**
+	 * Creates a model whose root holds carriers CarrierRobots, each of which
+	 * holds robotsPerCarrier simple robots.
+	 */
+	public static RobotModel nested(int carriers, int robotsPerCarrier, SimulationEngine engine) {
+		RobotModel model = new RobotModel(BOUNDS, engine);
+		Random random = new Random(SEED);
+
+		for (int i = 0; i < carriers; i++) {
+			CarrierRobot carrier = new CarrierRobot(random.nextInt(700), random.nextInt(700),
+					random.nextInt(5) - 2, random.nextInt(5) - 2, 300, 300);
+			for (int j = 0; j < robotsPerCarrier; j++) {
+				model.add(simpleRobot(random, carrier), carrier);
+			}
+			model.add(carrier, model.root());
+		}
+		return model;
+	}
+
+	/**
+	 * Creates a model holding a complete tree of CarrierRobots of the 
+	 * specified depth, where each CarrierRobot holds fanOut children. The
+	 * leaves of the tree are simple robots.
+	 */
+	public static RobotModel tree(int depth, int fanOut, SimulationEngine engine) {
+		RobotModel model = new RobotModel(BOUNDS, engine);
+		Random random = new Random(SEED);
+		populate(model, model.root(), depth, fanOut, random);
+		return model;
+	}
+
+	/**
+	 * Creates an array of unrelated robots of the specified type, placed 
+	 * within BOUNDS. The type must declare a constructor taking x, y, deltaX,
+	 * deltaY, width and height.
+	 * @param maxSize upper bound on the width and height of each robot.
+	 */
+	public static Robot[] robots(Class<? extends Robot> type, int count, int maxSize) {
+		Random random = new Random(SEED);
+		Robot[] robots = new Robot[count];
+		try {
+			Constructor<? extends Robot> constructor = type.getConstructor(int.class, int.class,
+					int.class, int.class, int.class, int.class);
+			for (int i = 0; i < count; i++) {
+				int width = 5 + random.nextInt(maxSize - 4);
+				int height = 5 + random.nextInt(maxSize - 4);
+				robots[i] = constructor.newInstance(random.nextInt(BOUNDS.width - width),
+						random.nextInt(BOUNDS.height - height), random.nextInt(11) - 5,
+						random.nextInt(11) - 5, width, height);
+			}
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException(type.getName(), e);
+		}
+		return robots;
+	}
+
+	/**
+	 * Returns the total number of robots in model, excluding its root.
+	 */
+	public static int size(RobotModel model) {
+		return count(model.root());
+	}
+
+	private static void populate(RobotModel model, CarrierRobot parent, int depth, int fanOut, Random random) {
+		for (int i = 0; i < fanOut; i++) {
+			if (depth <= 1) {
+				model.add(simpleRobot(random, parent), parent);
+			} else {
+				int width = Math.max(parent.width() * 3 / 4, 20);
+				int height = Math.max(parent.height() * 3 / 4, 20);
+				CarrierRobot carrier = new CarrierRobot(random.nextInt(parent.width() - width + 1),
+						random.nextInt(parent.height() - height + 1), random.nextInt(5) - 2,
+						random.nextInt(5) - 2, width, height);
+				populate(model, carrier, depth - 1, fanOut, random);
+				model.add(carrier, parent);
+			}
+		}
+	}
+
+	private static int count(CarrierRobot carrier) {
+		int count = carrier.robotCount();
+		for (int i = 0; i < carrier.robotCount(); i++) {
+			Robot child = carrier.robotAt(i);
+			if (child instanceof CarrierRobot) {
+				count += count((CarrierRobot) child);
+			}
+		}
+		return count;
+	}
+
+	/*
+	 * Returns a simple robot that fits within parent.
+	 */
+	private static Robot simpleRobot(Random random, CarrierRobot parent) {
+		int width = Math.min(5 + random.nextInt(20), parent.width() - 1);
+		int height = Math.min(5 + random.nextInt(20), parent.height() - 1);
+		int x = random.nextInt(parent.width() - width);
+		int y = random.nextInt(parent.height() - height);
+		int deltaX = random.nextInt(11) - 5;
+		int deltaY = random.nextInt(11) - 5;
+
+		switch (random.nextInt(3)) {
+		case 0:
+			return new WheeledRobot(x, y, deltaX, deltaY, width, height);
+		case 1:
+			return new FlyingRobot(x, y, deltaX, deltaY, width, height);
+		default:
+			return new TrackedRobot(x, y, deltaX, deltaY, width, height);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package robot.bench;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+
+import robot.GraphicsPainter;
+import robot.RobotModel;
+import robot.TiledRenderer;
+import robot.TreeSimulationEngine;
+
+/**
+ * Benchmark that measures painting a whole frame of a flat scenario onto an
+ * offscreen BufferedImage, either directly through a GraphicsPainter (with 
+ * no threads) or through a TiledRenderer with the specified number of
+ * threads.
+ */
+public class TiledPaintBenchmark extends Benchmark {
+	private final int _threads;
+
+	private RobotModel _model;
+	private int _robots;
+	private BufferedImage _image;
+	private Graphics2D _graphics;
+	private TiledRenderer _renderer;
+
+	public TiledPaintBenchmark(int threads) {
+		super("paint-frame:threads=" + threads);
+		_threads = threads;
+	}
+
+	@Override
+	public void setUp(int robots) {
+		_model = Scenario.create(Scenario.FLAT, robots, new TreeSimulationEngine());
+		_robots = Scenario.size(_model);
+		_image = new BufferedImage(Scenario.BOUNDS.width, Scenario.BOUNDS.height, BufferedImage.TYPE_INT_RGB);
+		_graphics = _image.createGraphics();
+		_graphics.setColor(Color.black);
+		if (_threads > 0) {
+			_renderer = new TiledRenderer(TiledRenderer.DEFAULT_TILE_SIZE, _threads);
+		}
+	}
+
+	@Override
+	public void run() {
+		if (_renderer == null) {
+			_graphics.setColor(Color.white);
+			_graphics.fillRect(0, 0, _image.getWidth(), _image.getHeight());
+			_graphics.setColor(Color.black);
+			_model.root().paint(new GraphicsPainter(_graphics));
+		} else {
+			_renderer.paint(_model.root(), _graphics, new Rectangle(0, 0, _image.getWidth(), _image.getHeight()),
+					Color.white);
+		}
+		_sink = _image.getRGB(0, 0);
+	}
+
+	@Override
+	public int robotsPerRun() {
+		return _robots;
+	}
+
+	@Override
+	public void tearDown() {
+		_graphics.dispose();
+		if (_renderer != null) {
+			_renderer.close();
+		}
+		_model = null;
+		_image = null;
+		_graphics = null;
+		_renderer = null;
+	}
+}
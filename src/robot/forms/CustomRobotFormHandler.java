@@ -81,9 +81,10 @@ public class CustomRobotFormHandler implements FormHandler {
 		protected void done(){
 			try {
 				BufferedImage image = this.get();
-				// Create the new CustomRobot and add it to the model.
+				// Create the new CustomRobot and queue it for adding to the
+				// model, so the EDT never waits for a tick in progress.
 				CustomRobot robot = new CustomRobot(_deltaX, _deltaY, image);
-				_model.add(robot, _nest);
+				_model.submitAdd(robot, _nest);
 			} catch (InterruptedException | ExecutionException e) {
 				e.printStackTrace();
 			}
@@ -5,8 +5,11 @@ import java.awt.Color;
 import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.FlowLayout;
+import java.awt.Point;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.util.List;
 
 import javax.swing.BorderFactory;
@@ -21,7 +24,6 @@ import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.JTree;
 import javax.swing.SwingUtilities;
-import javax.swing.Timer;
 import javax.swing.event.TreeSelectionEvent;
 import javax.swing.event.TreeSelectionListener;
 import javax.swing.plaf.basic.BasicComboBoxRenderer;
@@ -35,11 +37,17 @@ import robot.FlyingRobot;
 import robot.WheeledRobot;
 import robot.Robot;
 import robot.RobotModel;
+import robot.SimulationLoop;
+import robot.SpriteCache;
+import robot.TiledRenderer;
 import robot.forms.FormResolver;
 import robot.forms.util.Form;
 import robot.forms.util.FormComponent;
 import robot.forms.util.FormHandler;
+import robot.views.ActiveAnimationScrollPane;
+import robot.views.ActiveAnimationView;
 import robot.views.AnimationView;
+import robot.views.EdtDispatcher;
 import robot.views.TableModelAdapter;
 import robot.views.Task2;
 
@@ -49,28 +57,38 @@ import robot.views.Task2;
  * comprising three views of a RobotModel: an animation view, a table view and
  * a tree view. In addition the GUI includes buttons and associated event
  * handlers to add new robots to the animation and to remove existing robots. 
- * A RobotApp object uses a Timer to progress the animation; this results in the 
- * RobotModel being sent a clock() message to which it responds by moving its
- * constituent Robot objects and then by notifying the three views 
- * (RobotModelListeners). The application uses a RobotConfig object to read 
- * properties from the robot.properties file, one of which is the name of a
- * RobotFactory implementation class that is used to create Robots on request. 
+ * A RobotApp object uses a SimulationLoop to progress the animation on a 
+ * dedicated simulation thread; this results in the RobotModel being sent 
+ * clock() messages to which it responds by moving its constituent Robot 
+ * objects and then by notifying the three views (RobotModelListeners). The
+ * views are notified via an EdtDispatcher, so they only ever run on the Event
+ * Dispatch thread, and render the latest frame published by the simulation.
+ * Alternatively, when a frame rate is configured, the animation is painted by
+ * an ActiveAnimationView on its own render thread. The application uses a
+ * RobotConfig object to read properties from the robot.properties file, one
+ * of which is the name of a RobotFactory implementation class that is used to
+ * create Robots on request. 
  * 
  * @author Craig Sutherland
  * 
  */
 @SuppressWarnings("serial")
 public class RobotApp extends JPanel {
-	private static final int DELAY = 25;
-
 	// Underlying model for the application.
 	private RobotModel _model;
 	
+	// Progresses the model on a dedicated simulation thread.
+	private SimulationLoop _simulation;
+	
 	private RobotClassComboBoxModel _comboBoxModel;
 	
 	// View instances.
 	private JTree _treeView;
 	private AnimationView _animationView;
+	private ActiveAnimationView _activeAnimationView;
+	
+	// Component presenting the animation, one of the two views above.
+	private Component _animation;
 	private JTable _tabularView;
 	
 	/*
@@ -102,10 +120,18 @@ public class RobotApp extends JPanel {
 		// Instantiate GUI objects and construct GUI.
 		buildGUI();
 		
-		// Register views with models.
-		_model.addRobotModelListener(_animationView);
-		_model.addRobotModelListener(_tableModelAdapter);
-		_model.addRobotModelListener(_treeModelAdapter);
+		// Register views with models. The views are notified on the EDT and
+		// read the snapshot published with each event, so they agree on the
+		// state of every robot in a frame.
+		_model.setPublishSnapshots(true);
+		EdtDispatcher dispatcher = new EdtDispatcher();
+		if (_animationView != null) {
+			_animationView.attach(_model);
+			dispatcher.addRobotModelListener(_animationView);
+		}
+		dispatcher.addRobotModelListener(_tableModelAdapter);
+		dispatcher.addRobotModelListener(_treeModelAdapter);
+		_model.addRobotModelListener(dispatcher);
 		
 		// Setup event handlers to process user input.
 		setUpEventHandlers();
@@ -114,12 +140,11 @@ public class RobotApp extends JPanel {
 		_treeView.setSelectionPath(new TreePath(_model.root()));
 		
 		// Start animation.
-		Timer timer = new Timer(DELAY, new ActionListener() {
-			public void actionPerformed(ActionEvent e) {
-				_model.clock();
-			}
-		} );
-		timer.start();
+		_simulation = new SimulationLoop(_model, config.getTickRate(), config.getMaxCatchUpSteps());
+		_simulation.start();
+		if (_activeAnimationView != null) {
+			_activeAnimationView.start();
+		}
 	}
 
 	private static void createAndShowGUI() {
@@ -208,6 +233,30 @@ public class RobotApp extends JPanel {
 			}
 		});
 		
+		/*
+		 * Event handling code to be executed whenever the user clicks within
+		 * the animation view. The deepest robot under the mouse pointer is
+		 * looked up in the model's spatial index and selected in the JTree
+		 * view; clicking on empty space selects the root.
+		 */
+		_animation.addMouseListener(new MouseAdapter() {
+			public void mouseClicked(MouseEvent e) {
+				Point point = e.getPoint();
+				if (_activeAnimationView != null) {
+					// Convert from view to world coordinates.
+					Point origin = _activeAnimationView.getViewPosition();
+					point.translate(origin.x, origin.y);
+				}
+				Robot hit = _model.robotAt(point);
+				if (hit == null) {
+					hit = _model.root();
+				}
+				TreePath selectionPath = new TreePath(hit.path().toArray());
+				_treeView.setSelectionPath(selectionPath);
+				_treeView.scrollPathToVisible(selectionPath);
+			}
+		});
+		
 		/*
 		 * Event handling code to be executed whenever the user selects a node
 		 * within the JTree view. The event handler records which robot is
@@ -259,7 +308,30 @@ public class RobotApp extends JPanel {
 		_treeView = new JTree(_treeModelAdapter);
 		_treeView.getSelectionModel().setSelectionMode(TreeSelectionModel.SINGLE_TREE_SELECTION);
 		_tabularView = new JTable(_tableModelAdapter);
-		_animationView = new AnimationView(RobotConfig.instance().getAnimationBounds());
+		Dimension bounds = RobotConfig.instance().getAnimationBounds();
+		int frameRate = RobotConfig.instance().getFrameRate();
+		SpriteCache sprites = null;
+		int spriteCacheKB = RobotConfig.instance().getSpriteCacheKB();
+		if (spriteCacheKB > 0) {
+			sprites = new SpriteCache(spriteCacheKB * 1024L);
+		}
+		TiledRenderer tiles = null;
+		int renderThreads = RobotConfig.instance().getRenderThreads();
+		if (renderThreads > 0) {
+			tiles = new TiledRenderer(TiledRenderer.DEFAULT_TILE_SIZE, renderThreads);
+		}
+		if (frameRate > 0) {
+			_activeAnimationView = new ActiveAnimationView(_model, bounds, frameRate);
+			_activeAnimationView.setSpriteCache(sprites);
+			_activeAnimationView.setTiledRenderer(tiles);
+			_animation = _activeAnimationView;
+		} else {
+			_animationView = new AnimationView(bounds);
+			_animationView.setSpriteCache(sprites);
+			_animationView.setTiledRenderer(tiles);
+			_animationView.setPreferredSize(bounds);
+			_animation = _animationView;
+		}
 		
 		/*
 		 * Create a panel to house the JTree component. The panel includes a 
@@ -274,14 +346,19 @@ public class RobotApp extends JPanel {
 		/*
 		 * Create a panel to house the animation view. This panel includes a 
 		 * titled border and scroll bars if the animation area exceeds the 
-		 * allocated screen space.
+		 * allocated screen space. An ActiveAnimationView is a heavyweight
+		 * component, which a JScrollPane cannot clip, so it is scrolled by an
+		 * ActiveAnimationScrollPane instead.
 		 */
 		JPanel animationPanel = new JPanel();
 		animationPanel.setBorder(BorderFactory.createTitledBorder("Robot animation"));
-		JScrollPane scrollPaneForAnimation = new JScrollPane(_animationView);
-		scrollPaneForAnimation.setPreferredSize(new Dimension(504,504));
-		animationPanel.add(scrollPaneForAnimation);
-		_animationView.setPreferredSize(RobotConfig.instance().getAnimationBounds());
+		if (_activeAnimationView != null) {
+			animationPanel.add(new ActiveAnimationScrollPane(_activeAnimationView, new Dimension(504,504)));
+		} else {
+			JScrollPane scrollPaneForAnimation = new JScrollPane(_animationView);
+			scrollPaneForAnimation.setPreferredSize(new Dimension(504,504));
+			animationPanel.add(scrollPaneForAnimation);
+		}
 
 		
 		/*
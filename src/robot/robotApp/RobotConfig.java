@@ -13,6 +13,7 @@ import java.util.List;
 import java.util.Properties;
 
 import robot.Robot;
+import robot.SimulationLoop;
 
 
 /**
@@ -36,16 +37,36 @@ public class RobotConfig {
 	public static final int DEFAULT_ANIMATION_HEIGHT = 500;
 	public static final int MAX_ANIMATION_WIDTH = 1000;
 	public static final int MAX_ANIMATION_HEIGHT = 1000;
+	public static final int DEFAULT_TICK_RATE = SimulationLoop.DEFAULT_TICK_RATE;
+	public static final int MAX_TICK_RATE = 1000;
+	public static final int DEFAULT_MAX_CATCH_UP_STEPS = SimulationLoop.DEFAULT_MAX_CATCH_UP_STEPS;
+	public static final int MAX_CATCH_UP_STEPS = 100;
+	public static final int DEFAULT_SPRITE_CACHE_KB = 0;
+	public static final int MAX_SPRITE_CACHE_KB = 256 * 1024;
+	public static final int DEFAULT_RENDER_THREADS = 0;
+	public static final int MAX_RENDER_THREADS = 64;
+	public static final int DEFAULT_FRAME_RATE = 0;
+	public static final int MAX_FRAME_RATE = 240;
 	
 	// Property names (keys).
 	private static final String ANIMATION_WIDTH = "animation_width";
 	private static final String ANIMATION_HEIGHT = "animation_height";
 	private static final String ROBOTS = "robot_classes";
+	private static final String TICK_RATE = "tick_rate";
+	private static final String MAX_CATCH_UP = "max_catch_up_steps";
+	private static final String SPRITE_CACHE = "sprite_cache_kb";
+	private static final String RENDER_THREADS = "render_threads";
+	private static final String FRAME_RATE = "frame_rate";
 	
 	// Property values.
 	private Dimension _bounds;
 	private String[] _robotClassNames;
 	private List<Class<? extends Robot>> _robotClasses;
+	private int _tickRate;
+	private int _maxCatchUpSteps;
+	private int _spriteCacheKB;
+	private int _renderThreads;
+	private int _frameRate;
 	
 	// Singleton instance.
 	private static RobotConfig instance;
@@ -98,6 +119,29 @@ public class RobotConfig {
 			}
 			_bounds = new Dimension(width, height);
 			
+			// Read simulation loop properties, restoring default values if 
+			// they are out of range.
+			_tickRate = getBound(TICK_RATE, DEFAULT_TICK_RATE, props);
+			if(_tickRate < 1 || _tickRate > MAX_TICK_RATE) {
+				_tickRate = DEFAULT_TICK_RATE;
+			}
+			_maxCatchUpSteps = getBound(MAX_CATCH_UP, DEFAULT_MAX_CATCH_UP_STEPS, props);
+			if(_maxCatchUpSteps < 1 || _maxCatchUpSteps > MAX_CATCH_UP_STEPS) {
+				_maxCatchUpSteps = DEFAULT_MAX_CATCH_UP_STEPS;
+			}
+			_spriteCacheKB = getBound(SPRITE_CACHE, DEFAULT_SPRITE_CACHE_KB, props);
+			if(_spriteCacheKB < 0 || _spriteCacheKB > MAX_SPRITE_CACHE_KB) {
+				_spriteCacheKB = DEFAULT_SPRITE_CACHE_KB;
+			}
+			_renderThreads = getBound(RENDER_THREADS, DEFAULT_RENDER_THREADS, props);
+			if(_renderThreads < 0 || _renderThreads > MAX_RENDER_THREADS) {
+				_renderThreads = DEFAULT_RENDER_THREADS;
+			}
+			_frameRate = getBound(FRAME_RATE, DEFAULT_FRAME_RATE, props);
+			if(_frameRate < 0 || _frameRate > MAX_FRAME_RATE) {
+				_frameRate = DEFAULT_FRAME_RATE;
+			}
+			
 			// Set robots property.
 			String robotTypes = props.getProperty(ROBOTS);
 			if(robotTypes == null) {
@@ -120,6 +164,52 @@ public class RobotConfig {
 		return _bounds;
 	}
 	
+	/**
+	 * Returns the number of times per second the animation is progressed, in
+	 * the range 1 .. MAX_TICK_RATE. Defaults to DEFAULT_TICK_RATE.
+	 */
+	public int getTickRate() {
+		return _tickRate;
+	}
+	
+	/**
+	 * Returns the maximum number of ticks the animation may run back-to-back
+	 * to catch up after falling behind, in the range 1 .. MAX_CATCH_UP_STEPS.
+	 * Defaults to DEFAULT_MAX_CATCH_UP_STEPS.
+	 */
+	public int getMaxCatchUpSteps() {
+		return _maxCatchUpSteps;
+	}
+	
+	/**
+	 * Returns the size, in kilobytes, of the cache of sprites from which the
+	 * animation paints robots, in the range 0 .. MAX_SPRITE_CACHE_KB. 
+	 * Defaults to DEFAULT_SPRITE_CACHE_KB; 0 means robots are painted 
+	 * directly.
+	 */
+	public int getSpriteCacheKB() {
+		return _spriteCacheKB;
+	}
+	
+	/**
+	 * Returns the number of threads that paint the animation, in tiles, in 
+	 * the range 0 .. MAX_RENDER_THREADS. Defaults to DEFAULT_RENDER_THREADS;
+	 * 0 means the animation is painted on the Event Dispatch Thread alone.
+	 */
+	public int getRenderThreads() {
+		return _renderThreads;
+	}
+	
+	/**
+	 * Returns the number of frames per second at which the animation is 
+	 * actively rendered, in the range 0 .. MAX_FRAME_RATE. Defaults to 
+	 * DEFAULT_FRAME_RATE; 0 means the animation is repainted by Swing 
+	 * whenever the model changes.
+	 */
+	public int getFrameRate() {
+		return _frameRate;
+	}
+	
 	/**
 	 * Returns an array of strings containing names of robot classes. If no 
 	 * robot classes are named in the properties file, this method returns an 
@@ -198,6 +288,18 @@ public class RobotConfig {
 		System.out.println("Animation bounds ...");
 		System.out.println("  " + config.getAnimationBounds());
 		
+		System.out.println("Tick rate ...");
+		System.out.println("  " + config.getTickRate() + " (max catch-up steps " + config.getMaxCatchUpSteps() + ")");
+		
+		System.out.println("Sprite cache ...");
+		System.out.println("  " + config.getSpriteCacheKB() + " KB");
+		
+		System.out.println("Render threads ...");
+		System.out.println("  " + config.getRenderThreads());
+		
+		System.out.println("Frame rate ...");
+		System.out.println("  " + config.getFrameRate());
+		
 		System.out.println("Robot class names ... ");
 		for(String className : config.getRobotClassNames()) {
 			System.out.println("  " + className);
@@ -16,6 +16,14 @@ import org.junit.runners.Suite;
 @Suite.SuiteClasses({robot.TestCarrierRobot.class, 
 	robot.views.TestTask1.class, 
 	robot.views.TestTask2.class,
-	robot.forms.TestCustomRobotFormHandler.class})
+	robot.forms.TestCustomRobotFormHandler.class,
+	robot.TestRobotModel.class,
+	robot.TestTickJournal.class,
+	robot.TestAsyncDispatcher.class,
+	robot.TestImageCache.class,
+	robot.TestSpriteCachingPainter.class,
+	robot.TestRecordingPainter.class,
+	robot.TestTiledRenderer.class, robot.views.TestActiveAnimationView.class, robot.TestSimulationLoop.class,
+	robot.views.TestEdtDispatcher.class})
 public class TestAll {}
 
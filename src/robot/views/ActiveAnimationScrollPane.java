@@ -0,0 +1,75 @@
+package robot.views;
+
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.Point;
+import java.awt.event.AdjustmentEvent;
+import java.awt.event.AdjustmentListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+
+import javax.swing.JPanel;
+import javax.swing.JScrollBar;
+
+/**
+ * Panel that presents an ActiveAnimationView with scroll bars. A JScrollPane
+ * cannot clip a heavyweight component, so rather than moving the view within
+ * a viewport, an ActiveAnimationScrollPane lays the view out to fill the
+ * space beside its scroll bars and sets the view's position from them, so
+ * that the view paints the part of its world scrolled to.
+ */
+@SuppressWarnings("serial")
+public class ActiveAnimationScrollPane extends JPanel {
+	private final ActiveAnimationView _view;
+
+	private final JScrollBar _horizontal = new JScrollBar(JScrollBar.HORIZONTAL);
+
+	private final JScrollBar _vertical = new JScrollBar(JScrollBar.VERTICAL);
+
+	/**
+	 * Creates an ActiveAnimationScrollPane presenting view.
+	 * @param size the preferred size of the ActiveAnimationScrollPane.
+	 */
+	public ActiveAnimationScrollPane(ActiveAnimationView view, Dimension size) {
+		super(new BorderLayout());
+		_view = view;
+		add(view, BorderLayout.CENTER);
+		add(_horizontal, BorderLayout.SOUTH);
+		add(_vertical, BorderLayout.EAST);
+		setPreferredSize(size);
+
+		AdjustmentListener scroller = new AdjustmentListener() {
+			@Override
+			public void adjustmentValueChanged(AdjustmentEvent e) {
+				_view.setViewPosition(new Point(_horizontal.getValue(), _vertical.getValue()));
+			}
+		};
+		_horizontal.addAdjustmentListener(scroller);
+		_vertical.addAdjustmentListener(scroller);
+
+		view.addComponentListener(new ComponentAdapter() {
+			@Override
+			public void componentResized(ComponentEvent e) {
+				updateScrollBars();
+			}
+		});
+		updateScrollBars();
+	}
+
+	/*
+	 * Sizes the scroll bars' extents to the view and their ranges to the
+	 * world it shows.
+	 */
+	private void updateScrollBars() {
+		Dimension world = _view.worldSize();
+		Point position = _view.getViewPosition();
+		int width = Math.max(Math.min(_view.getWidth(), world.width), 1);
+		int height = Math.max(Math.min(_view.getHeight(), world.height), 1);
+		_horizontal.setValues(position.x, width, 0, world.width);
+		_horizontal.setBlockIncrement(width);
+		_horizontal.setUnitIncrement(Math.max(width / 20, 1));
+		_vertical.setValues(position.y, height, 0, world.height);
+		_vertical.setBlockIncrement(height);
+		_vertical.setUnitIncrement(Math.max(height / 20, 1));
+	}
+}
@@ -0,0 +1,382 @@
+package robot.views;
+
+import java.awt.Canvas;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.Graphics;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import robot.CarrierRobot;
+import robot.GraphicsPainter;
+import robot.Painter;
+import robot.Robot;
+import robot.RobotModel;
+import robot.RobotSnapshot;
+import robot.SnapshotRenderer;
+import robot.SpriteCache;
+import robot.SpriteCachingPainter;
+import robot.TiledRenderer;
+
+/**
+ * Class that presents an animation view of a RobotModel by active rendering.
+ * Where an AnimationView asks Swing to repaint it, and Swing may coalesce or
+ * drop repaints when busy, an ActiveAnimationView paints every frame itself
+ * from a dedicated render thread, at a fixed frame rate, into a
+ * BufferStrategy with two buffers. The strategy flips pages where the
+ * platform supports it and otherwise copies the back buffer to the screen.
+ *
+ * Each frame paints the latest RobotSnapshot published by the model, which
+ * must be publishing snapshots (see RobotModel.setPublishSnapshots()); the
+ * live robots are never read, so painting need not be synchronised with the
+ * simulation. Robots are painted through a GraphicsPainter, or through a
+ * SpriteCachingPainter or TiledRenderer when one is set, exactly as an
+ * AnimationView paints them.
+ *
+ * The render thread is paced like a SimulationLoop's: a frame that finishes
+ * late is followed at once by the next, and frames more than a whole frame
+ * period behind are dropped rather than painted in a burst. frameRate()
+ * reports the rate actually achieved.
+ *
+ * Being a heavyweight component, an ActiveAnimationView cannot be clipped by
+ * a JScrollPane. Instead it may be laid out smaller than the world it shows,
+ * and then paints only the viewport of the world whose top left corner is
+ * set with setViewPosition(); an ActiveAnimationScrollPane drives the view
+ * position from scroll bars.
+ */
+@SuppressWarnings("serial")
+public class ActiveAnimationView extends Canvas implements Runnable {
+	// Default number of frames painted per second.
+	public static final int DEFAULT_FRAME_RATE = 60;
+
+	// Interval over which frameRate() is measured.
+	private static final long RATE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+	private final RobotModel _model;
+
+	private final long _frameNanos;
+
+	private final Dimension _world;
+
+	// Top left corner of the viewport, in world coordinates.
+	private volatile int _viewX = 0;
+	private volatile int _viewY = 0;
+
+	// Used only by the render thread.
+	private final SnapshotRenderer _renderer = new SnapshotRenderer();
+
+	// Sprites from which robots are painted, or null to paint them directly.
+	private volatile SpriteCache _sprites;
+
+	// Renderer that paints frames in parallel, or null.
+	private volatile TiledRenderer _tiles;
+
+	private volatile boolean _running = false;
+
+	// Render thread most recently started, which may still be finishing a
+	// frame after being signalled to stop.
+	private volatile Thread _thread;
+
+	// Statistics, written only by the render thread.
+	private volatile long _frames = 0;
+
+	private volatile long _droppedFrames = 0;
+
+	private volatile double _frameRate = 0;
+
+	/**
+	 * Creates an ActiveAnimationView of model, with the specified bounds,
+	 * painting DEFAULT_FRAME_RATE frames per second.
+	 */
+	public ActiveAnimationView(RobotModel model, Dimension bounds) {
+		this(model, bounds, DEFAULT_FRAME_RATE);
+	}
+
+	/**
+	 * Creates an ActiveAnimationView.
+	 * @param model the RobotModel to display.
+	 * @param bounds the size of the world shown, and the preferred size of
+	 * the view.
+	 * @param frameRate the number of frames to paint per second.
+	 * @throws IllegalArgumentException if frameRate is less than 1.
+	 */
+	public ActiveAnimationView(RobotModel model, Dimension bounds, int frameRate) {
+		if (frameRate < 1) {
+			throw new IllegalArgumentException();
+		}
+		_model = model;
+		_frameNanos = TimeUnit.SECONDS.toNanos(1) / frameRate;
+		_world = new Dimension(bounds);
+		setSize(bounds);
+		setPreferredSize(bounds);
+
+		// Frames are painted by the render thread, not in response to
+		// repaint requests.
+		setIgnoreRepaint(true);
+	}
+
+	/**
+	 * Sets the SpriteCache from which this ActiveAnimationView paints robots,
+	 * or null to paint them directly.
+	 */
+	public void setSpriteCache(SpriteCache sprites) {
+		_sprites = sprites;
+	}
+
+	/**
+	 * Sets the TiledRenderer with which this ActiveAnimationView paints
+	 * frames, or null to paint them on the render thread alone.
+	 */
+	public void setTiledRenderer(TiledRenderer tiles) {
+		_tiles = tiles;
+	}
+
+	/**
+	 * Returns the size of the world shown by this ActiveAnimationView.
+	 */
+	public Dimension worldSize() {
+		return new Dimension(_world);
+	}
+
+	/**
+	 * Returns the world coordinates of the top left corner of the viewport.
+	 */
+	public Point getViewPosition() {
+		return new Point(_viewX, _viewY);
+	}
+
+	/**
+	 * Scrolls the viewport so that its top left corner is at position, in
+	 * world coordinates, moved as little as necessary to keep the viewport
+	 * within the world.
+	 */
+	public void setViewPosition(Point position) {
+		_viewX = Math.max(Math.min(position.x, _world.width - getWidth()), 0);
+		_viewY = Math.max(Math.min(position.y, _world.height - getHeight()), 0);
+	}
+
+	/**
+	 * Keeps the viewport within the world when this ActiveAnimationView is
+	 * resized.
+	 */
+	@Override
+	public void setBounds(int x, int y, int width, int height) {
+		super.setBounds(x, y, width, height);
+		setViewPosition(getViewPosition());
+	}
+
+	/**
+	 * Creates the BufferStrategy into which frames are painted, once this
+	 * ActiveAnimationView is displayable.
+	 */
+	@Override
+	public void addNotify() {
+		super.addNotify();
+		createBufferStrategy(2);
+	}
+
+	/**
+	 * Signals the render thread to stop before the BufferStrategy is disposed
+	 * of. The thread is not waited for: removeNotify() is called holding the
+	 * AWT tree lock, which the thread may need to finish its frame. A frame
+	 * that finds the buffers disposed of is abandoned.
+	 */
+	@Override
+	public void removeNotify() {
+		signalStop();
+		super.removeNotify();
+	}
+
+	/**
+	 * Starts the render thread. Has no effect if it is already running.
+	 * Frames are painted only while this ActiveAnimationView is displayable.
+	 */
+	public synchronized void start() {
+		if (_running) {
+			return;
+		}
+		// A thread signalled by removeNotify() may still be finishing a frame.
+		join(_thread);
+		_running = true;
+		_thread = new Thread(this, "robot-render");
+		_thread.setDaemon(true);
+		_thread.start();
+	}
+
+	/**
+	 * Stops the render thread, waiting for the current frame to finish. Must
+	 * not be called holding the AWT tree lock.
+	 */
+	public void stop() {
+		join(signalStop());
+	}
+
+	/*
+	 * Signals the render thread to stop, and returns it.
+	 */
+	private Thread signalStop() {
+		_running = false;
+		Thread thread = _thread;
+		if (thread != null) {
+			LockSupport.unpark(thread);
+		}
+		return thread;
+	}
+
+	/*
+	 * Waits for thread, if any, to finish, unless it is the current thread.
+	 */
+	private static void join(Thread thread) {
+		if (thread == null || thread == Thread.currentThread()) {
+			return;
+		}
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * Returns true if the render thread is running.
+	 */
+	public boolean isRunning() {
+		return _running;
+	}
+
+	/**
+	 * Returns the number of frames painted since this ActiveAnimationView
+	 * was created.
+	 */
+	public long frames() {
+		return _frames;
+	}
+
+	/**
+	 * Returns the number of frames that were skipped because the render
+	 * thread fell more than a frame period behind.
+	 */
+	public long droppedFrames() {
+		return _droppedFrames;
+	}
+
+	/**
+	 * Returns the number of frames painted per second, measured over the
+	 * latest half second or so.
+	 */
+	public double frameRate() {
+		return _frameRate;
+	}
+
+	/**
+	 * Paints frames until stop() is called. This method is executed by the
+	 * render thread.
+	 */
+	@Override
+	public void run() {
+		long next = System.nanoTime();
+		long rateStart = next;
+		long rateFrames = 0;
+
+		while (_running) {
+			if (paintFrame()) {
+				_frames++;
+				rateFrames++;
+			}
+
+			long now = System.nanoTime();
+			if (now - rateStart >= RATE_INTERVAL_NANOS) {
+				_frameRate = rateFrames * (double) TimeUnit.SECONDS.toNanos(1) / (now - rateStart);
+				rateStart = now;
+				rateFrames = 0;
+			}
+
+			next += _frameNanos;
+			if (now - next >= _frameNanos) {
+				// Too far behind: drop the missed frames rather than racing.
+				long missed = (now - next) / _frameNanos;
+				_droppedFrames += missed;
+				next += missed * _frameNanos;
+			}
+			LockSupport.parkNanos(next - now);
+		}
+	}
+
+	/*
+	 * Paints the latest snapshot into the BufferStrategy and shows it,
+	 * repainting if the strategy's buffers are lost meanwhile. Returns false,
+	 * having painted nothing, if this ActiveAnimationView is not displayable.
+	 */
+	private boolean paintFrame() {
+		BufferStrategy strategy = getBufferStrategy();
+		if (strategy == null || !isDisplayable()) {
+			return false;
+		}
+		RobotSnapshot snapshot = _model.acquireSnapshot();
+		try {
+			do {
+				do {
+					Graphics g = strategy.getDrawGraphics();
+					try {
+						paintFrame(g, snapshot);
+					} finally {
+						g.dispose();
+					}
+				} while (strategy.contentsRestored());
+				strategy.show();
+			} while (strategy.contentsLost());
+		} catch (IllegalStateException e) {
+			// The buffers were disposed of by removeNotify() meanwhile.
+			return false;
+		} finally {
+			if (snapshot != null) {
+				snapshot.release();
+			}
+		}
+		Toolkit.getDefaultToolkit().sync();
+		return true;
+	}
+
+	/*
+	 * Clears g and paints the robots recorded by snapshot, if any, within the
+	 * viewport onto it.
+	 */
+	private void paintFrame(Graphics g, RobotSnapshot snapshot) {
+		Color background = getBackground();
+		if (background == null) {
+			background = Color.WHITE;
+		}
+		g.setColor(background);
+		g.fillRect(0, 0, getWidth(), getHeight());
+		if (snapshot == null) {
+			return;
+		}
+		Rectangle viewport = new Rectangle(_viewX, _viewY, getWidth(), getHeight());
+		g.translate(-viewport.x, -viewport.y);
+		g.clipRect(viewport.x, viewport.y, viewport.width, viewport.height);
+		Color foreground = getForeground();
+		g.setColor(foreground == null ? Color.BLACK : foreground);
+		Font font = getFont();
+		if (font != null) {
+			g.setFont(font);
+		}
+
+		SpriteCache sprites = _sprites;
+		TiledRenderer tiles = _tiles;
+		if (tiles != null) {
+			Robot root = _renderer.load(snapshot);
+			if (root instanceof CarrierRobot) {
+				tiles.setSpriteCache(sprites);
+				tiles.paint((CarrierRobot) root, g, viewport, background);
+			}
+		} else {
+			Painter painter = sprites == null ? new GraphicsPainter(g) : new SpriteCachingPainter(g, sprites);
+			_renderer.paint(snapshot, painter);
+		}
+	}
+}
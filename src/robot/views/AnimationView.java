@@ -2,14 +2,23 @@ package robot.views;
 
 import java.awt.Dimension;
 import java.awt.Graphics;
+import java.awt.Rectangle;
 
 import javax.swing.JPanel;
 
 import robot.GraphicsPainter;
 import robot.CarrierRobot;
+import robot.DamageRegion;
 import robot.Painter;
+import robot.Robot;
+import robot.RobotModel;
 import robot.RobotModelEvent;
 import robot.RobotModelListener;
+import robot.RobotSnapshot;
+import robot.SnapshotRenderer;
+import robot.SpriteCache;
+import robot.SpriteCachingPainter;
+import robot.TiledRenderer;
 
 /**
  * Class that presents an animation view of a RobotModel. This class implements
@@ -19,6 +28,19 @@ import robot.RobotModelListener;
  * animation, removing a deleted robot from the animation, or updating the 
  * positions of robots that have moved.
  * 
+ * An AnimationView attached to a RobotModel (see attach()) enables damage 
+ * tracking on the model and, on each event, requests a single repaint of the
+ * bounding box of the areas the model reports as changed; when most of the
+ * view has changed, the whole view is repainted instead. The damage is that
+ * carried by the event, which matches the snapshot it is painting, or that
+ * taken from the model if it does not publish snapshots. Events from a model
+ * the AnimationView is not attached to repaint the whole view.
+ * 
+ * When the model publishes RobotSnapshots, an AnimationView paints the 
+ * snapshot attached to the latest event it has received rather than the live
+ * robots, so painting need not be synchronised with the simulation. A 
+ * snapshot may then be painted by several threads through a TiledRenderer.
+ * 
  * @author Craig Sutherland
  *
  */
@@ -27,6 +49,21 @@ public class AnimationView extends JPanel implements RobotModelListener {
 	// Reference to root CarrierRobot.
 	private CarrierRobot _root;
 	
+	// Model to which this AnimationView is attached, whose damage it tracks.
+	private RobotModel _model;
+	
+	// Snapshot to paint, on which this AnimationView holds a reference, or
+	// null to paint the live robots.
+	private RobotSnapshot _snapshot;
+	
+	private SnapshotRenderer _renderer = new SnapshotRenderer();
+	
+	// Sprites from which robots are painted, or null to paint them directly.
+	private SpriteCache _sprites;
+	
+	// Renderer that paints snapshots in parallel, or null.
+	private TiledRenderer _tiles;
+	
 	/**
 	 * Creates an AnimationView object with specified bounds.
 	 */
@@ -43,24 +80,95 @@ public class AnimationView extends JPanel implements RobotModelListener {
 		super.paintComponent(g);
 		
 		// Create a GraphicsPainter to paint the Swing component.
-		Painter painter = new GraphicsPainter(g);
+		Painter painter = _sprites == null ? new GraphicsPainter(g) : new SpriteCachingPainter(g, _sprites);
 		
 		/*
 		 * Paint the robots, starting with the root and recursively work
 		 * through the composition structure.
 		 */
-		if(_root != null) {
+		if(_snapshot != null && _tiles != null) {
+			Robot root = _renderer.load(_snapshot);
+			if (root instanceof CarrierRobot) {
+				_tiles.setSpriteCache(_sprites);
+				_tiles.paint((CarrierRobot) root, g, new Rectangle(0, 0, getWidth(), getHeight()), getBackground());
+			}
+		} else if(_snapshot != null) {
+			_renderer.paint(_snapshot, painter);
+		} else if(_root != null) {
 			_root.paint(painter);
 		}
 	}
 	
+	/**
+	 * Sets the SpriteCache from which this AnimationView paints robots, or 
+	 * null to paint them directly.
+	 */
+	public void setSpriteCache(SpriteCache sprites) {
+		_sprites = sprites;
+		repaint();
+	}
+	
+	/**
+	 * Sets the TiledRenderer with which this AnimationView paints snapshots,
+	 * or null to paint them on the Event Dispatch Thread alone. Live robots
+	 * are always painted on the Event Dispatch Thread alone.
+	 */
+	public void setTiledRenderer(TiledRenderer tiles) {
+		_tiles = tiles;
+		repaint();
+	}
+	
+	/**
+	 * Attaches this AnimationView to model, enabling damage tracking on model
+	 * so that only the areas that change are repainted. This AnimationView
+	 * must still be registered to receive model's events, directly or through
+	 * a dispatcher. Any model previously attached to stops tracking damage.
+	 */
+	public void attach(RobotModel model) {
+		if (_model != null) {
+			_model.setDamageTracking(null);
+		}
+		_model = model;
+		_root = model.root();
+		model.setDamageTracking(getFontMetrics(getFont()));
+		repaint();
+	}
+	
 	/**
 	 * Updates this AnimationView so that it is consistent with the RobotModel
 	 * that made the update() call.
 	 */
 	public void update(RobotModelEvent event) {
-		_root = event.source().root();
-		repaint();
+		RobotModel model = event.source();
+		_root = model.root();
+		
+		RobotSnapshot snapshot = event.snapshot();
+		if (snapshot != null) {
+			snapshot.retain();
+		}
+		if (_snapshot != null) {
+			_snapshot.release();
+		}
+		_snapshot = snapshot;
+		
+		if (model != _model) {
+			repaint();
+			return;
+		}
+		
+		// Without snapshots the live robots are painted, so the damage up to
+		// now is what needs repainting.
+		DamageRegion damage = snapshot == null ? model.takeDamage() : event.damage();
+		if (damage == null) {
+			repaint();
+			return;
+		}
+		Rectangle bounds = damage.bounds();
+		if (damage.isFull() || 2L * bounds.width * bounds.height > (long) getWidth() * getHeight()) {
+			repaint();
+		} else if (!bounds.isEmpty()) {
+			repaint(bounds);
+		}
 	}
 	
 }
@@ -0,0 +1,169 @@
+package robot.views;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.SwingUtilities;
+
+import robot.RobotModelEvent;
+import robot.RobotModelListener;
+
+/**
+ * RobotModelListener that hands RobotModelEvents over to the Swing Event 
+ * Dispatch thread (EDT) before passing them on to its own listeners, which
+ * are typically Swing views. This allows a RobotModel to be clocked by a
+ * simulation thread without the views being called from that thread.
+ * 
+ * Every event passes through a single queue, so the listeners receive 
+ * events in the order they were fired, whichever thread fired them. Events
+ * fired on the EDT are delivered before update() returns, after any events
+ * still queued ahead of them; events fired on other threads are delivered
+ * later on the EDT. RobotMoved events are coalesced: the queue holds at 
+ * most one, which a later RobotMoved event replaces with an event covering
+ * the ticks and damage of both (see RobotModelEvent.makeCoalescedMovedEvent()).
+ * A replacing event is queued behind any RobotAdded or RobotRemoved events fired since the one
+ * it replaces, so a RobotMoved event is never delivered ahead of a change
+ * its snapshot already includes, nor after a change its snapshot predates.
+ * The views therefore render only the latest completed frame, no matter how
+ * many clock() calls the simulation thread has made since the previous 
+ * frame.
+ * 
+ * An EdtDispatcher retains the RobotSnapshot attached to each event it 
+ * queues until the event has been delivered (or replaced by a later 
+ * RobotMoved event), so the views read the state published with the event
+ * rather than the live robots.
+ */
+public class EdtDispatcher implements RobotModelListener {
+
+	// Listeners to which events are delivered on the EDT.
+	private List<RobotModelListener> _listeners = new ArrayList<RobotModelListener>();
+
+	// Events waiting to be delivered, in the order they were fired. Guarded
+	// by itself, as are _pendingMove and _scheduled.
+	private ArrayDeque<RobotModelEvent> _queue = new ArrayDeque<RobotModelEvent>();
+
+	// RobotMoved event within _queue, or null if there is none.
+	private RobotModelEvent _pendingMove;
+
+	// Whether _drain has been scheduled to run on the EDT.
+	private boolean _scheduled;
+
+	// Whether _queue is being drained, so that events fired by listeners
+	// are delivered by the loop already running. Accessed only on the EDT.
+	private boolean _draining;
+
+	private Runnable _drain = new Runnable() {
+		public void run() {
+			drain();
+		}
+	};
+
+	/**
+	 * Registers a RobotModelListener to be notified on the EDT. This method
+	 * should be called on the EDT.
+	 */
+	public void addRobotModelListener(RobotModelListener listener) {
+		_listeners.add(listener);
+	}
+
+	/**
+	 * Deregisters a RobotModelListener. This method should be called on the
+	 * EDT.
+	 */
+	public void removeRobotModelListener(RobotModelListener listener) {
+		_listeners.remove(listener);
+	}
+
+	/**
+	 * Forwards event to the registered listeners on the EDT.
+	 */
+	@Override
+	public void update(RobotModelEvent event) {
+		boolean onEdt = SwingUtilities.isEventDispatchThread();
+		if (event.snapshot() != null) {
+			event.snapshot().retain();
+		}
+		RobotModelEvent replaced = null;
+		boolean schedule = false;
+		synchronized (_queue) {
+			if (event.eventType() == RobotModelEvent.EventType.RobotMoved) {
+				replaced = _pendingMove;
+				if (replaced != null) {
+					if (_queue.peekLast() == replaced) {
+						_queue.pollLast();
+					} else {
+						_queue.removeFirstOccurrence(replaced);
+					}
+					event = RobotModelEvent.makeCoalescedMovedEvent(replaced, event);
+				}
+				_pendingMove = event;
+			}
+			_queue.addLast(event);
+			if (!onEdt && !_scheduled) {
+				_scheduled = true;
+				schedule = true;
+			}
+		}
+		if (replaced != null && replaced.snapshot() != null) {
+			replaced.snapshot().release();
+		}
+		if (onEdt) {
+			drain();
+		} else if (schedule) {
+			SwingUtilities.invokeLater(_drain);
+		}
+	}
+
+	/*
+	 * Delivers the queued events in order, releasing the snapshot retained
+	 * for each. Called on the EDT.
+	 */
+	private void drain() {
+		if (_draining) {
+			return;
+		}
+		_draining = true;
+		try {
+			while (true) {
+				RobotModelEvent event;
+				synchronized (_queue) {
+					event = _queue.pollFirst();
+					if (event == null) {
+						_scheduled = false;
+						return;
+					}
+					if (event == _pendingMove) {
+						_pendingMove = null;
+					}
+				}
+				try {
+					deliver(event);
+				} finally {
+					if (event.snapshot() != null) {
+						event.snapshot().release();
+					}
+				}
+			}
+		} finally {
+			_draining = false;
+			synchronized (_queue) {
+				// A listener threw: deliver the rest later rather than 
+				// leaving them queued with nothing scheduled to drain them.
+				if (!_queue.isEmpty()) {
+					_scheduled = true;
+					SwingUtilities.invokeLater(_drain);
+				}
+			}
+		}
+	}
+
+	/*
+	 * Notifies each registered listener of event. Called on the EDT.
+	 */
+	private void deliver(RobotModelEvent event) {
+		for (int i = 0; i < _listeners.size(); i++) {
+			_listeners.get(i).update(event);
+		}
+	}
+}
@@ -1,11 +1,13 @@
 package robot.views;
 
+import javax.swing.event.TableModelEvent;
 import javax.swing.table.AbstractTableModel;
 
 import robot.CarrierRobot;
 import robot.Robot;
 import robot.RobotModelEvent;
 import robot.RobotModelListener;
+import robot.RobotSnapshot;
 
 /**
  * Adapter class that adapts Robot/CarrierRobot to the TableModel target 
@@ -14,6 +16,10 @@ import robot.RobotModelListener;
  * TableModel interface from scratch this class extends AbstractTableModel and
  * simply overrides selected methods as necessary.
  * 
+ * When the RobotModel publishes RobotSnapshots, a TableModelAdapter shows the
+ * state recorded in the snapshot attached to the latest event it received,
+ * so that it agrees with other views of the same frame.
+ * 
  * @author Craig Sutherland
  * 
  */
@@ -25,6 +31,13 @@ public class TableModelAdapter extends AbstractTableModel implements RobotModelL
 	 */
 	private Robot _adaptee;
 	
+	// Snapshot from which values are read, on which this TableModelAdapter 
+	// holds a reference, or null to read the live robots.
+	private RobotSnapshot _snapshot;
+	
+	// Notification that every cell may have changed, reused on each tick.
+	private final TableModelEvent _dataChanged = new TableModelEvent(this);
+	
 	 // Column names for table.
 	private static final String[] _columnNames = {"Type", "X-pos", "Y-pos", "X-delta", "Y-delta", "Width", "Height", "Text"};
 
@@ -65,8 +78,13 @@ public class TableModelAdapter extends AbstractTableModel implements RobotModelL
 	@Override
 	public int getRowCount() {
 		int rowCount = 1;
+		int index = snapshotIndex();
 		
-		if(_adaptee instanceof CarrierRobot) {
+		if(index >= 0) {
+			if(_adaptee instanceof CarrierRobot) {
+				rowCount = _snapshot.childCount(index);
+			}
+		} else if(_adaptee instanceof CarrierRobot) {
 			CarrierRobot nestingRobot = (CarrierRobot)_adaptee;
 			rowCount = nestingRobot.robotCount();
 		}
@@ -79,6 +97,14 @@ public class TableModelAdapter extends AbstractTableModel implements RobotModelL
 	 */
 	@Override
 	public Object getValueAt(int row, int col) {
+		int index = snapshotIndex();
+		if(index >= 0) {
+			if(_adaptee instanceof CarrierRobot) {
+				index = _snapshot.child(index, row);
+			}
+			return getSnapshotValueAt(index, col);
+		}
+		
 		Robot targetRobot = _adaptee;
 		Object result = null;
 		
@@ -116,6 +142,50 @@ public class TableModelAdapter extends AbstractTableModel implements RobotModelL
 		return result;
 	}
 	
+	/*
+	 * Returns the value of a column for the Robot at the specified index of
+	 * the current snapshot.
+	 */
+	private Object getSnapshotValueAt(int index, int col) {
+		Object result = null;
+		
+		switch(col) {
+		case 0: // Type
+			result = _snapshot.robot(index).toString();
+			break;
+		case 1: // X-Pos
+			result = _snapshot.x(index);
+			break;
+		case 2: // Y-Pos.
+			result = _snapshot.y(index);
+			break;
+		case 3: // X-delta.
+			result = _snapshot.deltaX(index);
+			break;
+		case 4: // Y-delta.
+			result = _snapshot.deltaY(index);
+			break;
+		case 5: // Width.
+			result = _snapshot.width(index);
+			break;
+		case 6: // Height.
+			result = _snapshot.height(index);
+			break;
+		case 7: // Text.
+			result = _snapshot.name(index);
+			break;
+		}
+		return result;
+	}
+	
+	/*
+	 * Returns the index of the adaptee within the current snapshot, or -1 if
+	 * there is no snapshot or the adaptee is not part of it.
+	 */
+	private int snapshotIndex() {
+		return _snapshot == null ? -1 : _snapshot.indexOf(_adaptee);
+	}
+	
 	/**
 	 * Sets the adaptee Robot/CarrierRobot object that should be represented by 
 	 * this TableModelAdapter instance.
@@ -140,14 +210,28 @@ public class TableModelAdapter extends AbstractTableModel implements RobotModelL
 	public void update(RobotModelEvent event) {
 		// Unpack event.
 		RobotModelEvent.EventType eventType = event.eventType();
-		Robot robot = event.operand();
 		
-		if(eventType == RobotModelEvent.EventType.RobotAdded) {
-			CarrierRobot parent = robot.parent();
+		RobotSnapshot snapshot = event.snapshot();
+		if(snapshot != null) {
+			snapshot.retain();
+		}
+		if(_snapshot != null) {
+			_snapshot.release();
+		}
+		_snapshot = snapshot;
+		
+		if(eventType == RobotModelEvent.EventType.RobotAdded
+				|| eventType == RobotModelEvent.EventType.RobotsAdded) {
+			CarrierRobot parent = event.parent();
 			if(parent == _adaptee) {
-				// The new robots's parent is represented by this TableModel,
-				// so the view will need to be updated to show the new robot.
-				fireTableRowsInserted(parent.robotCount() - 1, parent.robotCount() - 1);
+				// The new robots' parent is represented by this TableModel,
+				// so the view will need to be updated to show the new robots.
+				fireTableRowsInserted(event.index(), event.index() + event.count() - 1);
+			}
+		} else if(eventType == RobotModelEvent.EventType.RobotsRemoved) {
+			if(event.parent() == _adaptee) {
+				// A range of rows has gone; one notification covers it.
+				fireTableRowsDeleted(event.index(), event.index() + event.count() - 1);
 			}
 		} else if(eventType == RobotModelEvent.EventType.RobotRemoved) {
 			CarrierRobot parent = event.parent();
@@ -159,7 +243,7 @@ public class TableModelAdapter extends AbstractTableModel implements RobotModelL
 			} 
 		} else {
 			// Processing a RobotMoved event.
-			fireTableDataChanged();
+			fireTableChanged(_dataChanged);
 		}
 	}
 	
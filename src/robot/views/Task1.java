@@ -7,12 +7,49 @@ import javax.swing.tree.TreePath;
 import robot.CarrierRobot;
 import robot.Robot;
 import robot.RobotModel;
+import robot.RobotSnapshot;
 
 public class Task1 implements TreeModel {
 	private RobotModel _adaptee;
+	
+	// Snapshot describing the tree, on which this Task1 holds a reference, or
+	// null to describe the live robots.
+	private RobotSnapshot _snapshot;
+	
 	public Task1(RobotModel model) {
 		_adaptee = model;
 	}
+	
+	/**
+	 * Sets the RobotSnapshot from which the structure of the tree is read,
+	 * retaining it and releasing the previous one. With a null snapshot the
+	 * live robots are read.
+	 */
+	protected void setSnapshot(RobotSnapshot snapshot) {
+		if (snapshot != null) {
+			snapshot.retain();
+		}
+		if (_snapshot != null) {
+			_snapshot.release();
+		}
+		_snapshot = snapshot;
+	}
+	
+	/**
+	 * Returns the RobotSnapshot from which the structure of the tree is read,
+	 * or null.
+	 */
+	protected RobotSnapshot snapshot() {
+		return _snapshot;
+	}
+	
+	/*
+	 * Returns the index of robot within the snapshot, or -1 if there is no
+	 * snapshot or robot is not part of it.
+	 */
+	private int snapshotIndex(Object robot) {
+		return _snapshot != null && robot instanceof Robot ? _snapshot.indexOf((Robot) robot) : -1;
+	}
 	@Override
 	public void addTreeModelListener(TreeModelListener TMListner) {
 		throw new UnsupportedOperationException();
@@ -20,7 +57,14 @@ public class Task1 implements TreeModel {
 
 	@Override
 	public Object getChild(Object _parent, int index) {
-		if (_parent instanceof CarrierRobot) {
+		int parentIndex = snapshotIndex(_parent);
+		if (parentIndex >= 0) {
+			try {
+				return _snapshot.robot(_snapshot.child(parentIndex, index));
+			} catch (IndexOutOfBoundsException e) {
+				return null;
+			}
+		} else if (_parent instanceof CarrierRobot) {
 			try {
 			return ((CarrierRobot) _parent).robotAt(index);
 			} catch (IndexOutOfBoundsException e) {
@@ -33,7 +77,10 @@ public class Task1 implements TreeModel {
 
 	@Override
 	public int getChildCount(Object robot) {
-		if (robot instanceof CarrierRobot) {
+		int robotIndex = snapshotIndex(robot);
+		if (robotIndex >= 0) {
+			return _snapshot.childCount(robotIndex);
+		} else if (robot instanceof CarrierRobot) {
 			return ((CarrierRobot) robot).robotCount();
 		} else {
 			return 0;
@@ -42,7 +89,14 @@ public class Task1 implements TreeModel {
 
 	@Override
 	public int getIndexOfChild(Object _parent, Object _child) {
-		if (_parent instanceof CarrierRobot && _child instanceof Robot) {
+		int parentIndex = snapshotIndex(_parent);
+		if (parentIndex >= 0) {
+			int childIndex = snapshotIndex(_child);
+			if (childIndex < 0 || _snapshot.parent(childIndex) != parentIndex) {
+				return -1;
+			}
+			return _snapshot.indexInParent(childIndex);
+		} else if (_parent instanceof CarrierRobot && _child instanceof Robot) {
 			CarrierRobot parent = (CarrierRobot) _parent;
 			Robot child = (Robot) _child;
 			return parent.indexOf(child);
@@ -3,12 +3,12 @@
  */
 package robot.views;
 
-import org.junit.experimental.theories.Theories;
-
+import robot.Robot;
 import robot.RobotModel;
 import robot.RobotModelEvent;
 import robot.RobotModelEvent.EventType;
 import robot.RobotModelListener;
+import robot.RobotSnapshot;
 import java.util.ArrayList;
 import java.util.List;
 import javax.swing.event.TreeModelEvent;
@@ -21,6 +21,11 @@ import javax.swing.tree.TreePath;
  */
 public class Task2 extends Task1 implements RobotModelListener {
 	
+	// Ranges of more robots than this are reported as a structure change of
+	// their parent: JTree inserts and removes rows one at a time, taking time
+	// quadratic in the size of the range.
+	static final int MAX_RANGE = 1000;
+	
 	private List<TreeModelListener> _listeners = new ArrayList<TreeModelListener>();
 	
 	
@@ -30,6 +35,21 @@ public class Task2 extends Task1 implements RobotModelListener {
 	
 	@Override
 	public void update(RobotModelEvent robotModelEvent) {
+		setSnapshot(robotModelEvent.snapshot());
+		if (robotModelEvent.eventType() == EventType.RobotMoved) {
+			// Movement leaves the tree unchanged; build no TreeModelEvent.
+			return;
+		}
+		
+		if (robotModelEvent.count() > MAX_RANGE) {
+			TreeModelEvent structureEvent = new TreeModelEvent(
+					robotModelEvent.source(), pathTo(robotModelEvent.parent()));
+			for(TreeModelListener tListener : _listeners) {
+				tListener.treeStructureChanged(structureEvent);
+			}
+			return;
+		}
+		
 		TreeModelEvent treeModelEvent;
 		try {
 			treeModelEvent = CreateTreeModelEvent(robotModelEvent);
@@ -40,11 +60,13 @@ public class Task2 extends Task1 implements RobotModelListener {
 		
 		switch (robotModelEvent.eventType()) {
 		case RobotAdded:
+		case RobotsAdded:
 			for(TreeModelListener tListener : _listeners) {
 				tListener.treeNodesInserted(treeModelEvent);
 			}
 			break;
 		case RobotRemoved:
+		case RobotsRemoved:
 			for(TreeModelListener tListener : _listeners) {
 				tListener.treeNodesRemoved(treeModelEvent);
 			}
@@ -61,14 +83,40 @@ public class Task2 extends Task1 implements RobotModelListener {
 	}
 	
 	private TreeModelEvent CreateTreeModelEvent(RobotModelEvent event){
+		// A batched event covers a range of consecutive children.
+		int[] indices = new int[event.count()];
+		for (int i = 0; i < indices.length; i++) {
+			indices[i] = event.index() + i;
+		}
 		return new TreeModelEvent(
 				event.source(),						// source RobotModelEvent
-				new TreePath(event.parent().path().toArray()), 	// Path to root/former parent
-				new int[] {event.index()},			// index of Robot added/removed 
-				new Object[] {event.operand()}  	// Robot added/removed
+				pathTo(event.parent()), 			// Path to root/former parent
+				indices,							// indices of Robots added/removed 
+				event.operands().toArray()  		// Robots added/removed
 				);	
 	}
 	
+	/*
+	 * Returns the path to robot, as recorded by the current snapshot if robot
+	 * is part of it.
+	 */
+	private TreePath pathTo(Robot robot) {
+		RobotSnapshot snapshot = snapshot();
+		int index = snapshot == null ? -1 : snapshot.indexOf(robot);
+		if (index < 0) {
+			return new TreePath(robot.path().toArray());
+		}
+		int depth = 0;
+		for (int i = index; i >= 0; i = snapshot.parent(i)) {
+			depth++;
+		}
+		Object[] path = new Object[depth];
+		for (int i = index; i >= 0; i = snapshot.parent(i)) {
+			path[--depth] = snapshot.robot(i);
+		}
+		return new TreePath(path);
+	}
+	
 	@Override
 	public void addTreeModelListener(TreeModelListener TMListner) {
 		_listeners.add(TMListner);
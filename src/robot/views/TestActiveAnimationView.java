@@ -0,0 +1,244 @@
+package robot.views;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.BufferCapabilities;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.ImageCapabilities;
+import java.awt.Point;
+import java.awt.image.BufferStrategy;
+import java.awt.image.BufferedImage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import robot.CarrierRobot;
+import robot.DynamicWheeledRobot;
+import robot.FlyingRobot;
+import robot.GraphicsPainter;
+import robot.RobotModel;
+import robot.TrackedRobot;
+import robot.WheeledRobot;
+
+/**
+ * Class to test that an ActiveAnimationView paints the model's latest
+ * snapshot on its render thread, as painting the robots directly would, and
+ * measures the frame rate it achieves. The view paints into a BufferStrategy
+ * backed by a BufferedImage, so no screen is needed.
+ */
+public class TestActiveAnimationView {
+
+	private static final Dimension BOUNDS = new Dimension(200, 200);
+
+	private RobotModel _model;
+	private ImageBufferView _view;
+
+	@Before
+	public void setUp() {
+		_model = new RobotModel(BOUNDS);
+		_model.setPublishSnapshots(true);
+		CarrierRobot root = _model.root();
+		CarrierRobot carrier = new CarrierRobot(20, 20, 0, 0, 80, 80);
+		_model.add(new FlyingRobot(10, 10, 0, 0, 30, 30), carrier);
+		_model.add(carrier, root);
+		_model.add(new TrackedRobot(110, 30, 0, 0, 60, 40), root);
+		_model.add(new DynamicWheeledRobot(40, 130, 0, 0, 50, 30, Color.red), root);
+		_model.add(new WheeledRobot(120, 120, 0, 0, 40, 40, "name"), root);
+		_view = new ImageBufferView(_model, 50);
+	}
+
+	@After
+	public void tearDown() {
+		_view.stop();
+	}
+
+	/**
+	 * Checks that each frame matches the robots painted directly.
+	 */
+	@Test
+	public void testPaintsLatestSnapshot() throws InterruptedException {
+		_view.start();
+		awaitFrames(3);
+		_view.stop();
+
+		BufferedImage expected = new BufferedImage(BOUNDS.width, BOUNDS.height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = expected.createGraphics();
+		g.setColor(Color.white);
+		g.fillRect(0, 0, BOUNDS.width, BOUNDS.height);
+		g.setColor(Color.black);
+		_model.root().paint(new GraphicsPainter(g));
+		g.dispose();
+
+		for (int y = 0; y < BOUNDS.height; y++) {
+			for (int x = 0; x < BOUNDS.width; x++) {
+				assertEquals("pixel (" + x + ", " + y + ")", expected.getRGB(x, y), _view._image.getRGB(x, y));
+			}
+		}
+	}
+
+	/**
+	 * Checks that the frame rate achieved is measured, and that frames are
+	 * not painted faster than the frame rate requested.
+	 */
+	@Test
+	public void testMeasuresFrameRate() throws InterruptedException {
+		long start = System.nanoTime();
+		_view.start();
+		awaitFrames(40);
+		_view.stop();
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		assertTrue(_view.frameRate() > 0);
+		assertTrue(_view.frameRate() < 55);
+		assertTrue(_view.frames() <= 50 * seconds + 1);
+		assertFalse(_view.isRunning());
+	}
+
+	/**
+	 * Checks that nothing is painted while the view is not displayable.
+	 */
+	@Test
+	public void testPaintsNothingWhenNotDisplayable() throws InterruptedException {
+		_view._displayable = false;
+		_view.start();
+		Thread.sleep(100);
+		_view.stop();
+		assertEquals(0, _view.frames());
+	}
+
+	/**
+	 * Checks that a view smaller than its world paints the viewport scrolled
+	 * to, and that the view position is kept within the world.
+	 */
+	@Test
+	public void testPaintsViewport() throws InterruptedException {
+		_view.setSize(120, 80);
+		_view.setViewPosition(new Point(60, 500));
+		assertEquals(new Point(60, 120), _view.getViewPosition());
+		_view.start();
+		awaitFrames(3);
+		_view.stop();
+
+		BufferedImage expected = new BufferedImage(BOUNDS.width, BOUNDS.height, BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = expected.createGraphics();
+		g.setColor(Color.white);
+		g.fillRect(0, 0, BOUNDS.width, BOUNDS.height);
+		g.setColor(Color.black);
+		_model.root().paint(new GraphicsPainter(g));
+		g.dispose();
+
+		for (int y = 0; y < 80; y++) {
+			for (int x = 0; x < 120; x++) {
+				assertEquals("pixel (" + x + ", " + y + ")", expected.getRGB(x + 60, y + 120),
+						_view._image.getRGB(x, y));
+			}
+		}
+
+		_view.setSize(BOUNDS);
+		assertEquals(new Point(0, 0), _view.getViewPosition());
+	}
+
+	/**
+	 * Checks that removeNotify(), which is called holding the AWT tree lock,
+	 * does not wait for a render thread that needs the tree lock to finish
+	 * its frame.
+	 */
+	@Test(timeout = 10000)
+	public void testRemoveNotifyDoesNotWaitForRenderThread() throws InterruptedException {
+		_view.start();
+		awaitFrames(1);
+		synchronized (_view.getTreeLock()) {
+			_view._lockTree = true;
+			// Wait for the render thread to block on the tree lock mid-frame.
+			while (_view._drawing == null || _view._drawing.getState() != Thread.State.BLOCKED) {
+				Thread.sleep(1);
+			}
+			_view.removeNotify();
+			assertFalse(_view.isRunning());
+		}
+		_view.stop();
+		long frames = _view.frames();
+		Thread.sleep(100);
+		assertEquals(frames, _view.frames());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testRejectsFrameRateBelowOne() {
+		new ActiveAnimationView(_model, BOUNDS, 0);
+	}
+
+	private void awaitFrames(long frames) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + 10000;
+		while (_view.frames() < frames && System.currentTimeMillis() < deadline) {
+			Thread.sleep(10);
+		}
+		assertTrue(_view.frames() >= frames);
+	}
+
+	/*
+	 * ActiveAnimationView whose BufferStrategy paints into a BufferedImage.
+	 */
+	@SuppressWarnings("serial")
+	private static final class ImageBufferView extends ActiveAnimationView {
+		final BufferedImage _image = new BufferedImage(BOUNDS.width, BOUNDS.height, BufferedImage.TYPE_INT_RGB);
+		volatile boolean _displayable = true;
+
+		// Set to take the AWT tree lock when drawing, as a platform may.
+		volatile boolean _lockTree = false;
+
+		// Thread that last took the tree lock to draw.
+		volatile Thread _drawing;
+
+		private final BufferStrategy _strategy = new BufferStrategy() {
+			@Override
+			public BufferCapabilities getCapabilities() {
+				return new BufferCapabilities(new ImageCapabilities(false), new ImageCapabilities(false), null);
+			}
+
+			@Override
+			public Graphics getDrawGraphics() {
+				if (_lockTree) {
+					_drawing = Thread.currentThread();
+					synchronized (getTreeLock()) {
+						return _image.createGraphics();
+					}
+				}
+				return _image.createGraphics();
+			}
+
+			@Override
+			public boolean contentsLost() {
+				return false;
+			}
+
+			@Override
+			public boolean contentsRestored() {
+				return false;
+			}
+
+			@Override
+			public void show() {
+			}
+		};
+
+		ImageBufferView(RobotModel model, int frameRate) {
+			super(model, BOUNDS, frameRate);
+		}
+
+		@Override
+		public BufferStrategy getBufferStrategy() {
+			return _strategy;
+		}
+
+		@Override
+		public boolean isDisplayable() {
+			return _displayable;
+		}
+	}
+}
@@ -0,0 +1,211 @@
+package robot.views;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import javax.swing.SwingUtilities;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import robot.Robot;
+import robot.RobotModel;
+import robot.RobotModelEvent;
+import robot.RobotModelListener;
+import robot.WheeledRobot;
+
+/**
+ * Class to test that an EdtDispatcher delivers events on the EDT in the
+ * order they were fired, whether they were fired on the EDT or not, and
+ * never delivers a coalesced RobotMoved event whose snapshot contradicts
+ * the RobotAdded and RobotRemoved events around it or that loses the damage
+ * of the events it replaced.
+ */
+public class TestEdtDispatcher {
+
+	private static final Dimension BOUNDS = new Dimension(500, 400);
+
+	private RobotModel _model;
+	private EdtDispatcher _dispatcher;
+	private Robot _robot;
+
+	// Types of the events delivered, in order.
+	private List<RobotModelEvent.EventType> _types;
+
+	// For each RobotMoved event delivered, whether its snapshot includes
+	// _robot.
+	private List<Boolean> _movedIncludesRobot;
+
+	@Before
+	public void setUp() {
+		_model = new RobotModel(BOUNDS);
+		_model.setPublishSnapshots(true);
+		_robot = new WheeledRobot(10, 10, 2, 2, 20, 20);
+		_types = new ArrayList<RobotModelEvent.EventType>();
+		_movedIncludesRobot = new ArrayList<Boolean>();
+
+		_dispatcher = new EdtDispatcher();
+		_dispatcher.addRobotModelListener(new RobotModelListener() {
+			public void update(RobotModelEvent event) {
+				assertTrue(SwingUtilities.isEventDispatchThread());
+				_types.add(event.eventType());
+				if (event.eventType() == RobotModelEvent.EventType.RobotMoved) {
+					_movedIncludesRobot.add(event.snapshot().indexOf(_robot) >= 0);
+				}
+			}
+		});
+		_model.addRobotModelListener(_dispatcher);
+	}
+
+	/**
+	 * Checks that a RobotMoved event replacing one queued before a
+	 * RobotAdded event is delivered after the RobotAdded event, since its
+	 * snapshot includes the robot added.
+	 */
+	@Test
+	public void testCoalescedMoveFollowsAdd() throws Exception {
+		CountDownLatch release = blockEdt();
+		_model.clock();
+		_model.add(_robot, _model.root());
+		_model.clock();
+		release.countDown();
+		flushEdt();
+
+		assertEquals(Arrays.asList(RobotModelEvent.EventType.RobotAdded,
+				RobotModelEvent.EventType.RobotMoved), _types);
+		assertEquals(Arrays.asList(true), _movedIncludesRobot);
+	}
+
+	/**
+	 * Checks that a RobotRemoved event fired on the EDT while a RobotMoved
+	 * event fired earlier is still queued is delivered after it, so the
+	 * views never see a move that includes a robot already removed.
+	 */
+	@Test
+	public void testRemoveOnEdtFollowsPendingMove() throws Exception {
+		_model.add(_robot, _model.root());
+		flushEdt();
+		_types.clear();
+
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				started.countDown();
+				awaitQuietly(release);
+				_model.remove(_robot);
+			}
+		});
+		started.await();
+		_model.clock();
+		release.countDown();
+		flushEdt();
+		_model.clock();
+		flushEdt();
+
+		assertEquals(Arrays.asList(RobotModelEvent.EventType.RobotMoved,
+				RobotModelEvent.EventType.RobotRemoved,
+				RobotModelEvent.EventType.RobotMoved), _types);
+		assertEquals(Arrays.asList(true, false), _movedIncludesRobot);
+	}
+
+	/**
+	 * Checks that a RobotMoved event that replaces another covers the ticks
+	 * and damage of both, so a view repaints every area changed since the
+	 * frame it last painted.
+	 */
+	@Test
+	public void testCoalescedMoveUnionsDamage() throws Exception {
+		_model.add(_robot, _model.root());
+		_model.setDamageTracking(new BufferedImage(1, 1, BufferedImage.TYPE_INT_RGB)
+				.createGraphics().getFontMetrics());
+		_model.clock();
+		flushEdt();
+		final List<RobotModelEvent> moves = new ArrayList<RobotModelEvent>();
+		final List<Rectangle> damage = new ArrayList<Rectangle>();
+		_dispatcher.addRobotModelListener(new RobotModelListener() {
+			public void update(RobotModelEvent event) {
+				moves.add(event);
+				damage.addAll(event.damage().rectangles());
+			}
+		});
+
+		Rectangle first = new Rectangle(_robot.x(), _robot.y(), 21, 21);
+		CountDownLatch release = blockEdt();
+		_model.clock();
+		Rectangle second = new Rectangle(_robot.x(), _robot.y(), 21, 21);
+		_model.clock();
+		Rectangle third = new Rectangle(_robot.x(), _robot.y(), 21, 21);
+		release.countDown();
+		flushEdt();
+
+		assertEquals(1, moves.size());
+		assertEquals(2, moves.get(0).ticks());
+		for (Rectangle area : new Rectangle[] {first, second, third}) {
+			boolean covered = false;
+			for (Rectangle rectangle : damage) {
+				covered |= rectangle.contains(area);
+			}
+			assertTrue(covered);
+		}
+	}
+
+	/**
+	 * Checks that events fired on the EDT with nothing queued are delivered
+	 * before update() returns.
+	 */
+	@Test
+	public void testEventOnEdtIsDeliveredImmediately() throws Exception {
+		SwingUtilities.invokeAndWait(new Runnable() {
+			public void run() {
+				_model.add(_robot, _model.root());
+				assertEquals(Arrays.asList(RobotModelEvent.EventType.RobotAdded), _types);
+			}
+		});
+		assertFalse(_types.isEmpty());
+	}
+
+	/*
+	 * Occupies the EDT until the returned latch is released, so that events
+	 * fired meanwhile on other threads are queued.
+	 */
+	private CountDownLatch blockEdt() throws InterruptedException {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch release = new CountDownLatch(1);
+		SwingUtilities.invokeLater(new Runnable() {
+			public void run() {
+				started.countDown();
+				awaitQuietly(release);
+			}
+		});
+		started.await();
+		return release;
+	}
+
+	/*
+	 * Waits for everything already queued on the EDT to run.
+	 */
+	private static void flushEdt() throws Exception {
+		SwingUtilities.invokeAndWait(new Runnable() {
+			public void run() {
+			}
+		});
+	}
+
+	private static void awaitQuietly(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
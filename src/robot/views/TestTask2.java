@@ -1,6 +1,8 @@
 package robot.views;
 
 import java.awt.Dimension;
+import java.util.ArrayList;
+import java.util.List;
 
 import javax.swing.event.TreeModelEvent;
 import javax.swing.event.TreeModelListener;
@@ -125,6 +127,44 @@ public class TestTask2 {
 		assertTrue( _listenerMethodCalled );
 	}
 
+	/**
+	 * Checks that a range of robots too large for a JTree to insert row by 
+	 * row is reported as a structure change of the robots' parent.
+	 */
+	@Test
+	public void test_largeRangeAdded() {
+		final List<TreeModelEvent> changes = new ArrayList<TreeModelEvent>();
+		_adapter.addTreeModelListener( new TreeModelListener() {
+
+			public void treeNodesChanged( TreeModelEvent e ) {
+				fail();
+			}
+
+			public void treeNodesInserted( TreeModelEvent e ) {
+				fail();
+			}
+
+			public void treeNodesRemoved( TreeModelEvent e ) {
+				fail();
+			}
+
+			public void treeStructureChanged( TreeModelEvent e ) {
+				changes.add( e );
+			}
+		} );
+		
+		List<Robot> robots = new ArrayList<Robot>();
+		for ( int i = 0; i <= Task2.MAX_RANGE; i++ ) {
+			robots.add( new WheeledRobot( 0, 0, 1, 1, 5, 5 ) );
+		}
+		assertTrue( _model.addAll( robots, _emptyNest ) );
+		
+		assertEquals( 1, changes.size() );
+		Object[] path = changes.get( 0 ).getPath();
+		assertEquals( 2, path.length );
+		assertSame( _emptyNest, path[ 1 ] );
+	}
+
 	/**
 	 * Checks that calling Task2's update() method with a RobotModelEvent that 
 	 * describes a Robot's addition to a RobotModel results in a correctly 